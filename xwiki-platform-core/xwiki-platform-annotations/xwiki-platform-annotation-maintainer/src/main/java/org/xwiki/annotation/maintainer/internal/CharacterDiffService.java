@@ -20,9 +20,10 @@
 
 package org.xwiki.annotation.maintainer.internal;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
+import java.util.RandomAccess;
 
 import org.incava.util.diff.Diff;
 import org.incava.util.diff.Difference;
@@ -45,18 +46,42 @@ public Collection<XDelta> getDifferences(String previous, String current)
         // get differences at character level
         // FIXME: do we want at character level or we'd better get word level, to have it working faster
         Collection<XDelta> deltas = new ArrayList<XDelta>();
-        List<Character> previousContent = new ArrayList<Character>();
-        for (int i = 0; i < previous.length(); ++i) {
-            previousContent.add(previous.charAt(i));
+        char[] previousChars = previous.toCharArray();
+        char[] currentChars = current.toCharArray();
+
+        // an edit usually touches a small region of the content, so skip the common prefix and suffix and only diff
+        // the characters in between, instead of computing the diff of the whole content
+        int prefix = 0;
+        int maxPrefix = Math.min(previousChars.length, currentChars.length);
+        while (prefix < maxPrefix && previousChars[prefix] == currentChars[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        int maxSuffix = maxPrefix - prefix;
+        while (suffix < maxSuffix
+            && previousChars[previousChars.length - suffix - 1] == currentChars[currentChars.length - suffix - 1]) {
+            suffix++;
         }
-        List<Character> currentContent = new ArrayList<Character>();
-        for (int i = 0; i < current.length(); ++i) {
-            currentContent.add(current.charAt(i));
+
+        int previousEnd = previousChars.length - suffix;
+        int currentEnd = currentChars.length - suffix;
+        if (prefix == previousEnd && prefix == currentEnd) {
+            // identical content
+            return deltas;
         }
-        Diff<Character> diff = new Diff<Character>(previousContent, currentContent);
+        if (prefix == previousEnd || prefix == currentEnd) {
+            // pure insertion or pure deletion, no need to diff anything
+            deltas.add(new ChunksXDelta(prefix, previous.substring(prefix, previousEnd), current.substring(prefix,
+                currentEnd)));
+            return deltas;
+        }
+
+        Diff<Character> diff =
+            new Diff<Character>(new CharacterList(previousChars, prefix, previousEnd), new CharacterList(
+                currentChars, prefix, currentEnd));
         // prepare the XDeltas for all diffs
         for (Difference it : diff.diff()) {
-            XDelta delta = getDelta(previous, current, it);
+            XDelta delta = getDelta(previous, current, it, prefix);
             if (delta != null) {
                 deltas.add(delta);
             }
@@ -70,9 +95,10 @@ public Collection<XDelta> getDifferences(String previous, String current)
      * @param previous the previous content
      * @param current the current content
      * @param diff the difference to prepare the XDelta object for
+     * @param offset the offset in both contents of the regions that were compared to produce {@code diff}
      * @return an {@link XDelta} object corresponding to {@code diff}
      */
-    private XDelta getDelta(String previous, String current, Difference diff)
+    private XDelta getDelta(String previous, String current, Difference diff, int offset)
     {
         int position;
         String original = "";
@@ -85,19 +111,70 @@ private XDelta getDelta(String previous, String current, Difference diff)
             return null;
         }
 
-        position = diff.getDeletedStart();
+        position = offset + diff.getDeletedStart();
 
         // the content that was deleted
         if (diff.getDeletedEnd() != Difference.NONE) {
-            original = previous.substring(diff.getDeletedStart(), diff.getDeletedEnd() + 1);
+            original = previous.substring(position, offset + diff.getDeletedEnd() + 1);
         }
 
         // the content that was added
         if (diff.getAddedEnd() != Difference.NONE) {
-            modified = current.substring(diff.getAddedStart(), diff.getAddedEnd() + 1);
+            modified = current.substring(offset + diff.getAddedStart(), offset + diff.getAddedEnd() + 1);
         }
 
         // else return the built chunk
         return new ChunksXDelta(position, original, modified);
     }
+
+    /**
+     * Read-only list view over a region of a character array, to feed the diff without copying the content in a list
+     * of boxed characters.
+     */
+    private static final class CharacterList extends AbstractList<Character> implements RandomAccess
+    {
+        /**
+         * The viewed characters.
+         */
+        private final char[] chars;
+
+        /**
+         * The index of the first character of the view.
+         */
+        private final int start;
+
+        /**
+         * The size of the view.
+         */
+        private final int size;
+
+        /**
+         * Creates a view over the characters between {@code start} (inclusive) and {@code end} (exclusive).
+         * 
+         * @param chars the characters to view
+         * @param start the index of the first character of the view
+         * @param end the index after the last character of the view
+         */
+        CharacterList(char[] chars, int start, int end)
+        {
+            this.chars = chars;
+            this.start = start;
+            this.size = end - start;
+        }
+
+        @Override
+        public Character get(int index)
+        {
+            if (index < 0 || index >= this.size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+            }
+            return this.chars[this.start + index];
+        }
+
+        @Override
+        public int size()
+        {
+            return this.size;
+        }
+    }
 }
@@ -117,8 +117,9 @@ public void onEvent(Event event, Object source, Object data)
             } catch (MaintainerServiceException e) {
                 this.logger.warn(e.getMessage(), e);
                 // nothing else, just go further
+            } finally {
+                isUpdating = false;
             }
-            isUpdating = false;
         }
     }
 }
@@ -0,0 +1,92 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.annotation.maintainer.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.annotation.maintainer.XDelta;
+
+/**
+ * Unit tests for {@link CharacterDiffService}.
+ * 
+ * @version $Id$
+ */
+public class CharacterDiffServiceTest
+{
+    private CharacterDiffService diffService = new CharacterDiffService();
+
+    @Test
+    public void testIdenticalContent()
+    {
+        Assert.assertTrue(this.diffService.getDifferences("some content", "some content").isEmpty());
+    }
+
+    @Test
+    public void testInsertion()
+    {
+        List<XDelta> deltas = getDifferences("some content", "some new content");
+
+        Assert.assertEquals(1, deltas.size());
+        assertDelta(deltas.get(0), 5, "", "new ");
+    }
+
+    @Test
+    public void testDeletion()
+    {
+        List<XDelta> deltas = getDifferences("some old content", "some content");
+
+        Assert.assertEquals(1, deltas.size());
+        assertDelta(deltas.get(0), 5, "old ", "");
+    }
+
+    @Test
+    public void testChangesInTheMiddleOfTheContent()
+    {
+        List<XDelta> deltas = getDifferences("one two three four five", "one 2 three 4 five");
+
+        Assert.assertEquals(2, deltas.size());
+        assertDelta(deltas.get(0), 4, "two", "2");
+        assertDelta(deltas.get(1), 14, "four", "4");
+    }
+
+    @Test
+    public void testChangedContent()
+    {
+        List<XDelta> deltas = getDifferences("abc", "xyz");
+
+        Assert.assertEquals(1, deltas.size());
+        assertDelta(deltas.get(0), 0, "abc", "xyz");
+    }
+
+    private List<XDelta> getDifferences(String previous, String current)
+    {
+        return new ArrayList<XDelta>(this.diffService.getDifferences(previous, current));
+    }
+
+    private void assertDelta(XDelta delta, int offset, String original, String changed)
+    {
+        Assert.assertEquals(offset, delta.getOffset());
+        Assert.assertEquals(original, delta.getOriginal());
+        Assert.assertEquals(changed, delta.getChanged());
+    }
+}
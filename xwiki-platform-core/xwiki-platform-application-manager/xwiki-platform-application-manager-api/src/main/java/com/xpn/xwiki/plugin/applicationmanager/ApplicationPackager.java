@@ -143,7 +143,7 @@ public void importApplication(XWikiDocument packageDoc, String packageName, Stri
         PackageAPI importer = ((PackageAPI) context.getWiki().getPluginApi(PACKAGEPLUGIN_NAME, context));
 
         try {
-            importer.Import(packFile.getContent(context));
+            importer.Import(packFile.getContentInputStream(context));
         } catch (IOException e) {
             throw new ApplicationManagerException(XWikiException.ERROR_XWIKI_UNKNOWN, getMessageTool(context).get(
                 ApplicationManagerMessageTool.ERROR_IMORT_IMPORT, packageName), e);
@@ -337,6 +337,20 @@ Object getProperty(DocumentReference documentReference, DocumentReference classR
      */
     List<Object> getProperties(String documentReference, String className);
 
+    /**
+     * Retrieves the values of all the properties of the first object of the given class. Unlike
+     * {@link #getProperty(DocumentReference, DocumentReference, String)}, a failure to load the document is reported
+     * instead of being taken for a missing property.
+     * 
+     * @param documentReference the reference of the document to access
+     * @param classReference the reference to the XWiki Class
+     * @return the property values indexed by property name, empty if the document or the object doesn't exist
+     * @throws Exception if the document cannot be accessed
+     * @since 4.4M1
+     */
+    Map<String, Object> getProperties(DocumentReference documentReference, DocumentReference classReference)
+        throws Exception;
+
     /**
      * @param className The name of the class.
      * @param propertyName The name of the property.
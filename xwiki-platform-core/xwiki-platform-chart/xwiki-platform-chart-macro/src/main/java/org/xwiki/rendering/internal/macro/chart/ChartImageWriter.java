@@ -41,6 +41,17 @@
      */
     void writeImage(ImageId imageId, byte[] imageData) throws MacroExecutionException;
 
+    /**
+     * Check if an image has already been stored for the passed id, in which case there's no need to generate it again.
+     * A stored image is considered used by this call, so that it's kept as long as it's reused.
+     *
+     * @param imageId the image id for the image to look for
+     * @return {@code true} if the image is already stored, {@code false} otherwise
+     * @throws MacroExecutionException if an error happened when computing the location of the image
+     * @since 4.4M1
+     */
+    boolean hasImage(ImageId imageId) throws MacroExecutionException;
+
     /**
      * Compute the URL to use to access the stored generate chart image.
      *
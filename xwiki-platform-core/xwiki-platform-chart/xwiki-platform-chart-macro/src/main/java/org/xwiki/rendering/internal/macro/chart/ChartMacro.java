@@ -107,9 +107,9 @@ public List<Block> execute(ChartMacroParameters macroParams, String content, Mac
         throws MacroExecutionException
     {
         // Generate the chart image in a temporary location.
-        generateChart(macroParams, content, context);
+        ImageId imageId = generateChart(macroParams, content, context);
 
-        String imageLocation = this.imageWriter.getURL(new ImageId(macroParams));
+        String imageLocation = this.imageWriter.getURL(imageId);
         String title = macroParams.getTitle();
         ResourceReference reference = new ResourceReference(imageLocation, ResourceType.URL);
         ImageBlock imageBlock = new ImageBlock(new ResourceReference(imageLocation, ResourceType.URL), true);
@@ -129,14 +129,16 @@ public List<Block> execute(ChartMacroParameters macroParams, String content, Mac
     }
 
     /**
-     * Builds the chart image according to the specifications passed in.
+     * Builds the chart image according to the specifications passed in. The image is identified by the chart
+     * parameters and data, so it is drawn only if no image was already stored for the same chart.
      *
      * @param parameters the macro parameters
      * @param content the macro content
      * @param context the macro transformation context, used for example to find out the current document reference
+     * @return the id of the chart image
      * @throws MacroExecutionException if an error occurs while generating / saving the chart image
      */
-    private void generateChart(ChartMacroParameters parameters, String content, MacroTransformationContext context)
+    private ImageId generateChart(ChartMacroParameters parameters, String content, MacroTransformationContext context)
         throws MacroExecutionException
     {
         String source = computeSource(parameters.getSource(), content);
@@ -153,12 +155,18 @@ private void generateChart(ChartMacroParameters parameters, String content, Macr
 
         dataSource.buildDataset(content, sourceParameters, context);
 
-        try {
-            this.imageWriter.writeImage(new ImageId(parameters),
-                this.chartGenerator.generate(dataSource.getChartModel(), sourceParameters));
-        } catch (ChartGeneratorException e) {
-            throw new MacroExecutionException("Error while rendering chart", e);
+        ImageId imageId = new ImageId(parameters, dataSource.getChartModel());
+        // Only the images identified by the chart data can be reused, the other ids are not guaranteed to be unique
+        if (!imageId.isShareable() || !this.imageWriter.hasImage(imageId)) {
+            try {
+                this.imageWriter.writeImage(imageId,
+                    this.chartGenerator.generate(dataSource.getChartModel(), sourceParameters));
+            } catch (ChartGeneratorException e) {
+                throw new MacroExecutionException("Error while rendering chart", e);
+            }
         }
+
+        return imageId;
     }
 
     /**
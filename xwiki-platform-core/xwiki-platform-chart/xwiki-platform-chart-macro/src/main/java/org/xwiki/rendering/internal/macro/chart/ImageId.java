@@ -19,21 +19,54 @@
  */
 package org.xwiki.rendering.internal.macro.chart;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.xwiki.chart.model.ChartModel;
 import org.xwiki.rendering.macro.chart.ChartMacroParameters;
 
 /**
  * Compute a unique id for the image that the chart macro generates.
+ * <p/>
+ * When the chart model is known the id is a digest of the macro parameters and of the chart data, so that charts
+ * drawing the same data the same way share the same image, and a chart gets a new id as soon as its source data
+ * changes.
  *
  * @version $Id$
  * @since 4.2M1
  */
 public class ImageId
 {
+    /**
+     * The algorithm used to compute the digest of the chart.
+     */
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
     /**
      * @see ImageId#ImageId(org.xwiki.rendering.macro.chart.ChartMacroParameters)
      */
     private ChartMacroParameters macroParameters;
 
+    /**
+     * @see ImageId#ImageId(ChartMacroParameters, ChartModel)
+     */
+    private ChartModel chartModel;
+
+    /**
+     * The computed id, cached since computing the digest of the chart data is not free.
+     */
+    private String id;
+
+    /**
+     * @see #isShareable()
+     */
+    private boolean shareable;
+
     /**
      * @param macroParameters the chart macro parameters
      */
@@ -43,12 +76,75 @@ public ImageId(ChartMacroParameters macroParameters)
     }
 
     /**
-     * Compute a unique id based on the macro parameters.
+     * @param macroParameters the chart macro parameters
+     * @param chartModel the chart model holding the data drawn by the chart
+     * @since 4.4M1
+     */
+    public ImageId(ChartMacroParameters macroParameters, ChartModel chartModel)
+    {
+        this(macroParameters);
+        this.chartModel = chartModel;
+    }
+
+    /**
+     * Compute a unique id based on the macro parameters, and on the chart data when it's known.
      *
      * @return the unique image id used for storing the generated chart image
      */
     public String getId()
     {
-        return String.format("%s", Math.abs(this.macroParameters.hashCode()));
+        if (this.id == null) {
+            String digest = this.chartModel != null ? getDigest() : null;
+            this.shareable = digest != null;
+            this.id = digest != null ? digest : String.format("%s", Math.abs(this.macroParameters.hashCode()));
+        }
+
+        return this.id;
+    }
+
+    /**
+     * @return {@code true} if the id identifies the chart data, in which case the image stored for this id can be
+     *         reused by the other charts having the same id, {@code false} if the id is only unique to this chart
+     * @since 4.4M1
+     */
+    public boolean isShareable()
+    {
+        getId();
+
+        return this.shareable;
+    }
+
+    /**
+     * @return the digest of the macro parameters and of the chart data, or {@code null} if the chart data can't be
+     *         serialized
+     */
+    private String getDigest()
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Should not happen since SHA-1 is required on all Java platforms
+            return null;
+        }
+
+        try {
+            ObjectOutputStream oos = new ObjectOutputStream(new DigestOutputStream(new NullOutputStream(), digest));
+            oos.writeObject(this.macroParameters.getTitle());
+            oos.writeInt(this.macroParameters.getWidth());
+            oos.writeInt(this.macroParameters.getHeight());
+            oos.writeObject(this.macroParameters.getType());
+            oos.writeObject(this.macroParameters.getSource());
+            oos.writeObject(this.macroParameters.getParams());
+            // The axes are configured from the macro parameters so the dataset is the only missing part of what is
+            // drawn. JFreeChart datasets are serializable.
+            oos.writeObject(this.chartModel.getDataset());
+            oos.close();
+        } catch (IOException e) {
+            // Some part of the chart model is not serializable, the chart won't be shared
+            return null;
+        }
+
+        return String.format("%040x", new BigInteger(1, digest.digest()));
     }
 }
@@ -20,9 +20,14 @@
 package org.xwiki.rendering.internal.macro.chart;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -71,6 +76,23 @@ public class TemporaryChartImageWriter implements ChartImageWriter
      */
     private static final String PAGE = "page";
 
+    /**
+     * The maximum number of chart images kept in the temporary location of a wiki. Since the images are shared by all
+     * the charts drawing the same data, the least recently used ones are removed when this limit is reached.
+     */
+    private static final int MAX_IMAGES = 1000;
+
+    /**
+     * The extension of the stored images.
+     */
+    private static final String IMAGE_EXTENSION = ".png";
+
+    /**
+     * The last time each stored image was written or reused. The modification date of the images is not updated when
+     * they are reused, since it's used by the clients to revalidate their copy of the images.
+     */
+    private final ConcurrentMap<File, Long> lastUses = new ConcurrentHashMap<File, Long>();
+
     /**
      * Used to get the temporary directory.
      */
@@ -94,16 +116,92 @@ public void writeImage(ImageId imageId, byte[] imageData) throws MacroExecutionE
     {
         File imageFile = getStorageLocation(imageId);
 
+        // Write to a temporary file first and then move it, so that a concurrent request never reads a partially
+        // written image when the same chart is rendered several times at once.
+        File tmpFile =
+            new File(imageFile.getParentFile(), imageFile.getName() + ".tmp" + Thread.currentThread().getId());
         FileOutputStream fos = null;
         try {
-            fos = new FileOutputStream(imageFile);
+            fos = new FileOutputStream(tmpFile);
             fos.write(imageData);
             fos.close();
+            if (!tmpFile.renameTo(imageFile)) {
+                // The target may exist on some platforms (an identical image written concurrently)
+                imageFile.delete();
+                if (!tmpFile.renameTo(imageFile)) {
+                    throw new IOException(String.format("Failed to move [%s] to [%s]", tmpFile, imageFile));
+                }
+            }
         } catch (IOException e) {
             throw new MacroExecutionException("Failed to write the generated chart image", e);
         } finally {
             IOUtils.closeQuietly(fos);
+            tmpFile.delete();
+        }
+        this.lastUses.put(imageFile, System.currentTimeMillis());
+
+        removeOldImages(imageFile.getParentFile());
+    }
+
+    @Override
+    public boolean hasImage(ImageId imageId) throws MacroExecutionException
+    {
+        File imageFile = getStorageLocation(imageId);
+        if (!imageFile.isFile()) {
+            this.lastUses.remove(imageFile);
+            return false;
         }
+
+        this.lastUses.put(imageFile, System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Remove the least recently used images when there are more than {@link #MAX_IMAGES} images stored.
+     *
+     * @param directory the directory holding the images
+     */
+    private void removeOldImages(File directory)
+    {
+        File[] images = directory.listFiles(new FileFilter()
+        {
+            @Override
+            public boolean accept(File file)
+            {
+                return file.getName().endsWith(IMAGE_EXTENSION);
+            }
+        });
+        if (images == null || images.length <= MAX_IMAGES) {
+            return;
+        }
+
+        Arrays.sort(images, new Comparator<File>()
+        {
+            @Override
+            public int compare(File file1, File file2)
+            {
+                long lastUse1 = getLastUse(file1);
+                long lastUse2 = getLastUse(file2);
+                return lastUse1 < lastUse2 ? -1 : (lastUse1 == lastUse2 ? 0 : 1);
+            }
+        });
+        // Remove down to 90% of the limit, to avoid listing the directory again on each write.
+        for (int i = 0; i < images.length - MAX_IMAGES * 9 / 10; i++) {
+            images[i].delete();
+            this.lastUses.remove(images[i]);
+        }
+    }
+
+    /**
+     * @param imageFile a stored image
+     * @return the last time the image was written or reused, its modification date if it was not used since the
+     *         application started
+     */
+    private long getLastUse(File imageFile)
+    {
+        Long lastUse = this.lastUses.get(imageFile);
+
+        return lastUse != null ? lastUse : imageFile.lastModified();
     }
 
     /**
@@ -128,7 +226,7 @@ protected File getStorageLocation(ImageId imageId) throws MacroExecutionExceptio
             // Should not happen since UTF8 encoding should always be present
             throw new MacroExecutionException("Failed to compute chart image location", e);
         }
-        File locationFile = new File(directory, String.format("%s.png", imageId.getId()));
+        File locationFile = new File(directory, imageId.getId() + IMAGE_EXTENSION);
         return locationFile;
     }
 
@@ -151,6 +249,7 @@ public String getURL(ImageId imageId)
     {
         DocumentReference reference = new DocumentReference("unused", SPACE, PAGE);
         String prefix = this.documentAccessBridge.getDocumentURL(reference, "temp", null, null);
-        return String.format("%s/%s/%s.png", prefix, MODULE_NAME, imageId.getId());
+        // The temp action lets the clients keep the shared images since their name is the digest of the chart data
+        return String.format("%s/%s/%s%s", prefix, MODULE_NAME, imageId.getId(), IMAGE_EXTENSION);
     }
 }
@@ -19,7 +19,11 @@
  */
 package org.xwiki.rendering.internal.macro.chart;
 
+import org.jfree.chart.axis.Axis;
+import org.jfree.data.general.Dataset;
+import org.jfree.data.general.DefaultPieDataset;
 import org.junit.Test;
+import org.xwiki.chart.model.ChartModel;
 import org.xwiki.rendering.macro.chart.ChartMacroParameters;
 
 import junit.framework.Assert;
@@ -43,4 +47,82 @@ public void testGetIdWithSameParametersButDifferentInstances()
 
         Assert.assertFalse(new ImageId(parameters1).getId().equals(new ImageId(parameters2).getId()));
     }
+
+    /**
+     * Verify charts drawing the same data with the same parameters share the same id.
+     */
+    @Test
+    public void testGetIdWithSameParametersAndData()
+    {
+        ChartMacroParameters parameters1 = createParameters();
+        ChartMacroParameters parameters2 = createParameters();
+
+        Assert.assertEquals(new ImageId(parameters1, createChartModel(1.0)).getId(),
+            new ImageId(parameters2, createChartModel(1.0)).getId());
+    }
+
+    /**
+     * Verify the id changes when the chart data changes.
+     */
+    @Test
+    public void testGetIdWithDifferentData()
+    {
+        ChartMacroParameters parameters = createParameters();
+
+        Assert.assertFalse(new ImageId(parameters, createChartModel(1.0)).getId().equals(
+            new ImageId(parameters, createChartModel(2.0)).getId()));
+    }
+
+    /**
+     * Verify the id changes when the chart parameters change.
+     */
+    @Test
+    public void testGetIdWithDifferentParameters()
+    {
+        ChartMacroParameters parameters1 = createParameters();
+        ChartMacroParameters parameters2 = createParameters();
+        parameters2.setWidth(parameters1.getWidth() * 2);
+
+        Assert.assertFalse(new ImageId(parameters1, createChartModel(1.0)).getId().equals(
+            new ImageId(parameters2, createChartModel(1.0)).getId()));
+    }
+
+    /**
+     * Verify only the ids identifying the chart data allow to reuse the stored images.
+     */
+    @Test
+    public void testIsShareable()
+    {
+        Assert.assertTrue(new ImageId(createParameters(), createChartModel(1.0)).isShareable());
+        Assert.assertFalse(new ImageId(createParameters()).isShareable());
+    }
+
+    private ChartMacroParameters createParameters()
+    {
+        ChartMacroParameters parameters = new ChartMacroParameters();
+        parameters.setTitle("title");
+        parameters.setType("pie");
+        parameters.setSource("inline");
+        return parameters;
+    }
+
+    private ChartModel createChartModel(double value)
+    {
+        final DefaultPieDataset dataset = new DefaultPieDataset();
+        dataset.setValue("key", value);
+        return new ChartModel()
+        {
+            @Override
+            public Dataset getDataset()
+            {
+                return dataset;
+            }
+
+            @Override
+            public Axis getAxis(int index)
+            {
+                return null;
+            }
+        };
+    }
 }
@@ -21,9 +21,13 @@
 
 import java.io.File;
 
+import org.jfree.chart.axis.Axis;
+import org.jfree.data.general.Dataset;
+import org.jfree.data.general.DefaultPieDataset;
 import org.jmock.Expectations;
 import org.junit.Test;
 import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.chart.model.ChartModel;
 import org.xwiki.environment.Environment;
 import org.xwiki.model.ModelContext;
 import org.xwiki.model.reference.DocumentReference;
@@ -76,4 +80,33 @@ public void getURL() throws Exception
         String location = getMockedComponent().getURL(new ImageId(new ChartMacroParameters()));
         Assert.assertTrue("Got: " + location, location.toString().matches("temp/Space/Page/chart/.*\\.png"));
     }
+
+    @Test
+    public void getURLOfSharedImage() throws Exception
+    {
+        final DocumentAccessBridge dab = getComponentManager().getInstance(DocumentAccessBridge.class);
+        getMockery().checking(new Expectations() {{
+            oneOf(dab).getDocumentURL(new DocumentReference("unused", "space", "page"), "temp", null, null);
+                will(returnValue("temp/Space/Page"));
+        }});
+
+        ImageId imageId = new ImageId(new ChartMacroParameters(), new ChartModel()
+        {
+            @Override
+            public Dataset getDataset()
+            {
+                return new DefaultPieDataset();
+            }
+
+            @Override
+            public Axis getAxis(int index)
+            {
+                return null;
+            }
+        });
+        // The temp action recognizes the shared images from their name
+        Assert.assertTrue(imageId.getId().matches("[0-9a-f]{40}"));
+        Assert.assertEquals("temp/Space/Page/chart/" + imageId.getId() + ".png",
+            getMockedComponent().getURL(imageId));
+    }
 }
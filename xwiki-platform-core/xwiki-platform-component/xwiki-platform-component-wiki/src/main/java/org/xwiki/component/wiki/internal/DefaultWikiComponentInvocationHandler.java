@@ -28,6 +28,8 @@
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.bridge.DocumentModelBridge;
 import org.xwiki.component.descriptor.ComponentDescriptor;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
@@ -64,7 +66,19 @@ public class DefaultWikiComponentInvocationHandler implements InvocationHandler
      * The proxied wiki component.
      */
     private DefaultWikiComponent wikiComponent;
-    
+
+    /**
+     * The executor used to execute the methods of the wiki component, looked up on first use.
+     */
+    private volatile WikiComponentMethodExecutor methodExecutor;
+
+    /**
+     * The document holding the wiki component, loaded on first use. A new invocation handler is created each time the
+     * component is registered again following a modification of its document, so we can keep it for the whole life of
+     * this handler.
+     */
+    private volatile DocumentModelBridge componentDocument;
+
     /**
      * Constructor of this invocation handler.
      * 
@@ -123,6 +137,39 @@ private void injectComponentDependencies(Map<String, Object> methodContext)
         }
     }
 
+    /**
+     * @return the executor used to execute the methods of the wiki component
+     * @throws ComponentLookupException if the executor cannot be found
+     */
+    private WikiComponentMethodExecutor getMethodExecutor() throws ComponentLookupException
+    {
+        if (this.methodExecutor == null) {
+            this.methodExecutor = this.componentManager.getInstance(WikiComponentMethodExecutor.class);
+        }
+
+        return this.methodExecutor;
+    }
+
+    /**
+     * @return the document holding the wiki component
+     * @throws WikiComponentRuntimeException if the document cannot be loaded
+     */
+    private DocumentModelBridge getComponentDocument() throws WikiComponentRuntimeException
+    {
+        if (this.componentDocument == null) {
+            try {
+                DocumentAccessBridge documentAccessBridge =
+                    this.componentManager.getInstance(DocumentAccessBridge.class);
+                this.componentDocument = documentAccessBridge.getDocument(this.wikiComponent.getDocumentReference());
+            } catch (Exception e) {
+                throw new WikiComponentRuntimeException(String.format("Failed to load wiki component document [%s]",
+                    this.wikiComponent.getDocumentReference()), e);
+            }
+        }
+
+        return this.componentDocument;
+    }
+
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Exception
     {
@@ -143,13 +190,11 @@ public Object invoke(Object proxy, Method method, Object[] args) throws Exceptio
                         method.getName()));
             }
         } else {
-            WikiComponentMethodExecutor methodExecutor =
-                componentManager.getInstance(WikiComponentMethodExecutor.class);
             Map<String, Object> methodContext = new HashMap<String, Object>();
             XDOM xdom = this.wikiComponent.getHandledMethods().get(method.getName());
             methodContext.put(METHOD_CONTEXT_COMPONENT_KEY, proxy);
             this.injectComponentDependencies(methodContext);
-            return methodExecutor.execute(method, args, wikiComponent.getDocumentReference(), xdom,
+            return getMethodExecutor().execute(method, args, getComponentDocument(), xdom,
                 wikiComponent.getSyntax(), methodContext);
         }
     }
@@ -28,13 +28,18 @@
 import javax.inject.Singleton;
 
 import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.bridge.DocumentModelBridge;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.wiki.WikiComponentRuntimeException;
 import org.xwiki.context.Execution;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.properties.ConverterManager;
 import org.xwiki.properties.converter.ConversionException;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.MacroBlock;
 import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.block.match.BlockMatcher;
+import org.xwiki.rendering.block.match.ClassBlockMatcher;
 import org.xwiki.rendering.renderer.BlockRenderer;
 import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
 import org.xwiki.rendering.renderer.printer.WikiPrinter;
@@ -58,6 +63,11 @@ public class DefaultWikiComponentMethodExecutor implements WikiComponentMethodEx
      */
     private static final String XWIKI_CONTEXT_DOC_KEY = "doc";
 
+    /**
+     * Used to find out if a method body contains macros which need to be executed.
+     */
+    private static final BlockMatcher MACRO_MATCHER = new ClassBlockMatcher(MacroBlock.class);
+
     /**
      * The execution context.
      */
@@ -145,6 +155,22 @@ private Object castRenderedContent(XDOM xdom, Method method) throws WikiComponen
     public Object execute(Method method, Object[] args, DocumentReference componentDocumentReference, XDOM xdom,
         Syntax syntax, Map<String, Object> methodContext)
         throws WikiComponentRuntimeException
+    {
+        DocumentModelBridge componentDocument;
+        try {
+            componentDocument = dab.getDocument(componentDocumentReference);
+        } catch (Exception e) {
+            throw new WikiComponentRuntimeException(String.format(
+                "Failed to load wiki component document [%s]", componentDocumentReference), e);
+        }
+
+        return execute(method, args, componentDocument, xdom, syntax, methodContext);
+    }
+
+    @Override
+    public Object execute(Method method, Object[] args, DocumentModelBridge componentDocument, XDOM xdom,
+        Syntax syntax, Map<String, Object> methodContext)
+        throws WikiComponentRuntimeException
     {
         // Prepare and put the method context in the XWiki Context
         Map<Object, Object> xwikiContext = (Map<Object, Object>) execution.getContext().getProperty("xwikicontext");
@@ -156,25 +182,26 @@ public Object execute(Method method, Object[] args, DocumentReference componentD
         try {
             // Put component document in the context, so that macro transformation rights are checked against the
             // component document and not the context one.
-            try {
-                xwikiContext.put(XWIKI_CONTEXT_DOC_KEY, dab.getDocument(componentDocumentReference));
-            } catch (Exception e) {
-                throw new WikiComponentRuntimeException(String.format(
-                    "Failed to load wiki component document [%s]", componentDocumentReference), e);
-            }
+            xwikiContext.put(XWIKI_CONTEXT_DOC_KEY, componentDocument);
 
             // Perform internal macro transformations
             XDOM transformedXDOM;
-            try {
-                TransformationContext transformationContext = new TransformationContext(xdom, syntax);
-                transformationContext.setId(method.getClass().getName() + "#" + method.getName());
-                // We need to clone the xdom to avoid transforming the original and make it useless after the first
-                // transformation
-                transformedXDOM = xdom.clone();
-                macroTransformation.transform(transformedXDOM, transformationContext);
-            } catch (TransformationException e) {
-                throw new WikiComponentRuntimeException(String.format(
-                    "Error while executing wiki component macro transformation for method [%s]", method.getName()), e);
+            if (xdom.getFirstBlock(MACRO_MATCHER, Block.Axes.DESCENDANT) != null) {
+                try {
+                    TransformationContext transformationContext = new TransformationContext(xdom, syntax);
+                    transformationContext.setId(method.getClass().getName() + "#" + method.getName());
+                    // We need to clone the xdom to avoid transforming the original and make it useless after the
+                    // first transformation
+                    transformedXDOM = xdom.clone();
+                    macroTransformation.transform(transformedXDOM, transformationContext);
+                } catch (TransformationException e) {
+                    throw new WikiComponentRuntimeException(String.format(
+                        "Error while executing wiki component macro transformation for method [%s]",
+                        method.getName()), e);
+                }
+            } else {
+                // Nothing to execute, the method body is only static content which is never modified
+                transformedXDOM = xdom;
             }
 
             if (!method.getReturnType().getName().equals("void")) {
@@ -22,6 +22,7 @@
 import java.lang.reflect.Method;
 import java.util.Map;
 
+import org.xwiki.bridge.DocumentModelBridge;
 import org.xwiki.component.annotation.Role;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.rendering.block.XDOM;
@@ -62,4 +63,20 @@
      */
     Object execute(Method method, Object[] args, DocumentReference componentDocumentReference,  XDOM xdom,
         Syntax syntax, Map<String, Object> methodContext);
+
+    /**
+     * Same as {@link #execute(Method, Object[], DocumentReference, XDOM, Syntax, Map)} but with the component document
+     * already loaded, so that callers executing the same component many times don't have to load it for each call.
+     *
+     * @param method The method to match the return value
+     * @param args The arguments passed to the method
+     * @param componentDocument The component Document
+     * @param xdom The XDOM mimicking the method
+     * @param syntax The syntax of the XDOM
+     * @param methodContext A map of key/value pairs to put in the context before executing the XDOM
+     * @return A value matching the return type of the passed method
+     * @since 4.4M1
+     */
+    Object execute(Method method, Object[] args, DocumentModelBridge componentDocument, XDOM xdom, Syntax syntax,
+        Map<String, Object> methodContext);
 }
@@ -0,0 +1,153 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.wiki;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.wiki.internal.DefaultWikiComponent;
+import org.xwiki.component.wiki.internal.DefaultWikiComponentInvocationHandler;
+import org.xwiki.component.wiki.internal.WikiComponentMethodExecutor;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.syntax.Syntax;
+
+/**
+ * Unit tests for {@link DefaultWikiComponentInvocationHandler}.
+ * 
+ * @version $Id$
+ */
+@RunWith(JMock.class)
+public class DefaultWikiComponentInvocationHandlerTest
+{
+    private static final DocumentReference DOC_REFERENCE = new DocumentReference("xwiki", "XWiki", "MyComponent");
+
+    private static final DocumentReference AUTHOR_REFERENCE = new DocumentReference("xwiki", "XWiki", "Admin");
+
+    private Mockery mockery = new JUnit4Mockery();
+
+    private ComponentManager componentManager;
+
+    private DocumentAccessBridge documentAccessBridge;
+
+    private WikiComponentMethodExecutor methodExecutor;
+
+    private XDOM xdom = new XDOM(Collections.<Block> emptyList());
+
+    private Method method;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.componentManager = this.mockery.mock(ComponentManager.class);
+        this.documentAccessBridge = this.mockery.mock(DocumentAccessBridge.class);
+        this.methodExecutor = this.mockery.mock(WikiComponentMethodExecutor.class);
+        this.method = TestRole.class.getMethod("test");
+
+        this.mockery.checking(new Expectations()
+        {{
+            allowing(componentManager).getInstance(DocumentAccessBridge.class);
+            will(returnValue(documentAccessBridge));
+        }});
+    }
+
+    private TestRole createComponent()
+    {
+        DefaultWikiComponent wikiComponent =
+            new DefaultWikiComponent(DOC_REFERENCE, AUTHOR_REFERENCE, TestRole.class, "test", WikiComponentScope.WIKI);
+        wikiComponent.setHandledMethods(Collections.singletonMap("test", this.xdom));
+        wikiComponent.setSyntax(Syntax.XWIKI_2_1);
+
+        return (TestRole) Proxy.newProxyInstance(TestRole.class.getClassLoader(), new Class< ? >[] {TestRole.class},
+            new DefaultWikiComponentInvocationHandler(wikiComponent, this.componentManager));
+    }
+
+    @Test
+    public void invokeReusesComponentDocument() throws Exception
+    {
+        final DocumentModelBridge componentDocument = this.mockery.mock(DocumentModelBridge.class);
+
+        this.mockery.checking(new Expectations()
+        {{
+            // The test is here: both the executor and the document are only looked up for the first call
+            oneOf(componentManager).getInstance(WikiComponentMethodExecutor.class);
+            will(returnValue(methodExecutor));
+            oneOf(documentAccessBridge).getDocument(DOC_REFERENCE);
+            will(returnValue(componentDocument));
+            exactly(2).of(methodExecutor).execute(with(equal(method)), with(aNull(Object[].class)),
+                with(same(componentDocument)), with(same(xdom)), with(equal(Syntax.XWIKI_2_1)),
+                with(any(Map.class)));
+            will(returnValue("result"));
+        }});
+
+        TestRole component = createComponent();
+
+        Assert.assertEquals("result", component.test());
+        Assert.assertEquals("result", component.test());
+    }
+
+    @Test
+    public void invokeAfterComponentDocumentUpdate() throws Exception
+    {
+        final DocumentModelBridge componentDocument = this.mockery.mock(DocumentModelBridge.class, "original");
+        final DocumentModelBridge updatedComponentDocument = this.mockery.mock(DocumentModelBridge.class, "updated");
+
+        this.mockery.checking(new Expectations()
+        {{
+            allowing(componentManager).getInstance(WikiComponentMethodExecutor.class);
+            will(returnValue(methodExecutor));
+            oneOf(documentAccessBridge).getDocument(DOC_REFERENCE);
+            will(returnValue(componentDocument));
+            oneOf(methodExecutor).execute(with(equal(method)), with(aNull(Object[].class)),
+                with(same(componentDocument)), with(same(xdom)), with(equal(Syntax.XWIKI_2_1)),
+                with(any(Map.class)));
+            will(returnValue("original"));
+        }});
+
+        Assert.assertEquals("original", createComponent().test());
+
+        this.mockery.checking(new Expectations()
+        {{
+            // Updating the document registers a newly built component, which must not see the previous document
+            oneOf(documentAccessBridge).getDocument(DOC_REFERENCE);
+            will(returnValue(updatedComponentDocument));
+            oneOf(methodExecutor).execute(with(equal(method)), with(aNull(Object[].class)),
+                with(same(updatedComponentDocument)), with(same(xdom)), with(equal(Syntax.XWIKI_2_1)),
+                with(any(Map.class)));
+            will(returnValue("updated"));
+        }});
+
+        Assert.assertEquals("updated", createComponent().test());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.wiki;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.jmock.Expectations;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.component.wiki.internal.DefaultWikiComponentMethodExecutor;
+import org.xwiki.component.wiki.internal.WikiComponentMethodExecutor;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.properties.ConverterManager;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.renderer.BlockRenderer;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.transformation.Transformation;
+import org.xwiki.rendering.transformation.TransformationContext;
+import org.xwiki.test.AbstractMockingComponentTestCase;
+import org.xwiki.test.annotation.MockingRequirement;
+
+@MockingRequirement(DefaultWikiComponentMethodExecutor.class)
+public class DefaultWikiComponentMethodExecutorTest extends AbstractMockingComponentTestCase
+{
+    private static final DocumentReference DOC_REFERENCE = new DocumentReference("xwiki", "XWiki", "MyComponent");
+
+    private WikiComponentMethodExecutor methodExecutor;
+
+    private Transformation macroTransformation;
+
+    private BlockRenderer blockRenderer;
+
+    private ConverterManager converterManager;
+
+    private DocumentAccessBridge documentAccessBridge;
+
+    private DocumentModelBridge componentDoc;
+
+    private Map<Object, Object> xwikiContext;
+
+    private Method method;
+
+    @Before
+    public void configure() throws Exception
+    {
+        this.methodExecutor = getComponentManager().getInstance(WikiComponentMethodExecutor.class);
+        this.macroTransformation = getComponentManager().getInstance(Transformation.class, "macro");
+        this.blockRenderer = getComponentManager().getInstance(BlockRenderer.class, "plain/1.0");
+        this.converterManager = getComponentManager().getInstance(ConverterManager.class);
+        this.documentAccessBridge = getComponentManager().getInstance(DocumentAccessBridge.class);
+        this.componentDoc = getMockery().mock(DocumentModelBridge.class);
+        this.method = TestRole.class.getMethod("test");
+
+        final Execution execution = getComponentManager().getInstance(Execution.class);
+        final ExecutionContext context = new ExecutionContext();
+        this.xwikiContext = new HashMap<Object, Object>();
+        context.setProperty("xwikicontext", this.xwikiContext);
+
+        getMockery().checking(new Expectations()
+        {{
+            allowing(execution).getContext();
+            will(returnValue(context));
+            allowing(converterManager).convert(String.class, "");
+            will(returnValue("result"));
+        }});
+    }
+
+    @Test
+    public void executeWithoutMacro() throws Exception
+    {
+        final XDOM xdom = new XDOM(Arrays.<Block> asList(new WordBlock("result")));
+
+        getMockery().checking(new Expectations()
+        {{
+            // The test is here: there's nothing to execute and the component document is already loaded
+            never(macroTransformation).transform(with(any(Block.class)), with(any(TransformationContext.class)));
+            never(documentAccessBridge).getDocument(with(any(DocumentReference.class)));
+            oneOf(blockRenderer).render(with(same(xdom)), with(any(WikiPrinter.class)));
+        }});
+
+        Assert.assertEquals("result", this.methodExecutor.execute(this.method, null, this.componentDoc, xdom,
+            Syntax.XWIKI_2_1, new HashMap<String, Object>()));
+    }
+
+    @Test
+    public void executeWithMacro() throws Exception
+    {
+        final XDOM xdom = new XDOM(Arrays.<Block> asList(new MacroBlock("velocity",
+            Collections.<String, String> emptyMap(), "result", false)));
+
+        getMockery().checking(new Expectations()
+        {{
+            oneOf(documentAccessBridge).getDocument(DOC_REFERENCE);
+            will(returnValue(componentDoc));
+            oneOf(macroTransformation).transform(with(any(XDOM.class)), with(any(TransformationContext.class)));
+            oneOf(blockRenderer).render(with(any(XDOM.class)), with(any(WikiPrinter.class)));
+        }});
+
+        Assert.assertEquals("result", this.methodExecutor.execute(this.method, null, DOC_REFERENCE, xdom,
+            Syntax.XWIKI_2_1, new HashMap<String, Object>()));
+
+        // The original method body must not have been transformed
+        Assert.assertEquals(1, xdom.getChildren().size());
+        Assert.assertTrue(xdom.getChildren().get(0) instanceof MacroBlock);
+    }
+}
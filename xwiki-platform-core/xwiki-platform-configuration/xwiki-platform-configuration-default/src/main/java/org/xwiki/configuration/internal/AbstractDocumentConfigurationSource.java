@@ -45,6 +45,12 @@ public abstract class AbstractDocumentConfigurationSource extends AbstractConfig
     @Inject
     private DocumentAccessBridge documentAccessBridge;
 
+    /**
+     * Used to read the properties without accessing the document each time.
+     */
+    @Inject
+    private DocumentConfigurationCache documentConfigurationCache;
+
     /** @see #getCurrentWikiReference() */
     @Inject
     private ModelContext modelContext;
@@ -141,7 +147,7 @@ private Object getPropertyObject(String key)
         DocumentReference documentReference = getFailsafeDocumentReference();
         DocumentReference classReference = getFailsafeClassReference();
         if (documentReference != null && classReference != null) {
-            result = getDocumentAccessBridge().getProperty(documentReference, classReference, key);
+            result = this.documentConfigurationCache.getProperty(documentReference, classReference, key);
         } else {
             result = null;
         }
@@ -0,0 +1,199 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.configuration.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.bridge.event.WikiCopiedEvent;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Default {@link DocumentConfigurationCache}. The properties of each document are kept in an immutable snapshot, built
+ * at once from the configuration object of the document and dropped as a whole when the document is created, updated
+ * or deleted so that the next read builds a new snapshot from the new version of the document. All the snapshots are
+ * dropped when a wiki is copied, since a copy made directly in the database doesn't send any document event.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+@Component
+@Singleton
+public class DefaultDocumentConfigurationCache implements DocumentConfigurationCache, Initializable
+{
+    /**
+     * The maximum number of documents to keep properties for. When reached, the least recently used snapshots are
+     * dropped.
+     */
+    private static final int CAPACITY = 1000;
+
+    /**
+     * The events which invalidate the snapshot of a document, or all the snapshots.
+     */
+    private static final List<Event> EVENTS = Arrays.<Event> asList(new DocumentCreatedEvent(),
+        new DocumentUpdatedEvent(), new DocumentDeletedEvent(), new WikiCopiedEvent());
+
+    /**
+     * Used to read the properties from the documents.
+     */
+    @Inject
+    private DocumentAccessBridge documentAccessBridge;
+
+    /**
+     * Used to be notified of the documents modifications.
+     */
+    @Inject
+    private ObservationManager observationManager;
+
+    /**
+     * Used to create the cache of the snapshots.
+     */
+    @Inject
+    private CacheManager cacheManager;
+
+    /**
+     * The keys in the cache are generated from the document references.
+     */
+    @Inject
+    private EntityReferenceSerializer<String> keySerializer;
+
+    /**
+     * Used to report documents which can't be loaded.
+     */
+    @Inject
+    private Logger logger;
+
+    /**
+     * The properties of each document, indexed by class reference and property name.
+     */
+    private Cache<Map<DocumentReference, Map<String, Object>>> snapshots;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration();
+        cacheConfiguration.setConfigurationId("configuration.document");
+        LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+        lru.setMaxEntries(CAPACITY);
+        cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+        try {
+            this.snapshots = this.cacheManager.createNewCache(cacheConfiguration);
+        } catch (Exception e) {
+            throw new InitializationException("Failed to create the document configuration cache", e);
+        }
+
+        this.observationManager.addListener(new EventListener()
+        {
+            @Override
+            public List<Event> getEvents()
+            {
+                return EVENTS;
+            }
+
+            @Override
+            public String getName()
+            {
+                return DefaultDocumentConfigurationCache.class.getName();
+            }
+
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                if (event instanceof WikiCopiedEvent) {
+                    // A wiki copied in bulk inside the database replaces the documents of the target wiki without
+                    // document events, and the cache can't list the snapshots of a wiki.
+                    snapshots.removeAll();
+                } else {
+                    snapshots.remove(keySerializer.serialize(((DocumentModelBridge) source).getDocumentReference()));
+                }
+            }
+        });
+    }
+
+    @Override
+    public Object getProperty(DocumentReference documentReference, DocumentReference classReference, String key)
+    {
+        Map<String, Object> properties = getProperties(documentReference, classReference);
+
+        return properties != null ? properties.get(key) : null;
+    }
+
+    /**
+     * @param documentReference the reference of the document containing the configuration object
+     * @param classReference the reference of the class of the configuration object
+     * @return the properties of the configuration object, {@code null} if the document can't be loaded
+     */
+    private Map<String, Object> getProperties(DocumentReference documentReference, DocumentReference classReference)
+    {
+        String key = this.keySerializer.serialize(documentReference);
+
+        Map<DocumentReference, Map<String, Object>> snapshot = this.snapshots.get(key);
+        if (snapshot != null && snapshot.containsKey(classReference)) {
+            return snapshot.get(classReference);
+        }
+
+        Map<String, Object> properties;
+        try {
+            properties =
+                Collections.unmodifiableMap(this.documentAccessBridge.getProperties(documentReference, classReference));
+        } catch (Exception e) {
+            // Don't remember a temporary failure as missing properties
+            this.logger.warn("Failed to read the configuration of document [{}]: {}", documentReference,
+                e.getMessage());
+
+            return null;
+        }
+
+        // Snapshots are never modified once published, a new one is published when the properties of another class
+        // are read from the same document
+        Map<DocumentReference, Map<String, Object>> newSnapshot =
+            new HashMap<DocumentReference, Map<String, Object>>();
+        if (snapshot != null) {
+            newSnapshot.putAll(snapshot);
+        }
+        newSnapshot.put(classReference, properties);
+        this.snapshots.set(key, Collections.unmodifiableMap(newSnapshot));
+
+        return properties;
+    }
+}
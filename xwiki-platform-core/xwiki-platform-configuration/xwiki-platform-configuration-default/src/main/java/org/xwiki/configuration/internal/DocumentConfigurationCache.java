@@ -0,0 +1,43 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.configuration.internal;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.model.reference.DocumentReference;
+
+/**
+ * Keeps the configuration properties read from wiki documents so that reading them again doesn't require to access
+ * the documents. The properties of a document are forgotten as soon as the document is modified.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+@Role
+public interface DocumentConfigurationCache
+{
+    /**
+     * @param documentReference the reference of the document containing the configuration object
+     * @param classReference the reference of the class of the configuration object
+     * @param key the name of the property
+     * @return the value of the property, {@code null} if the document, the object or the property does not exist or
+     *         if the document cannot be loaded
+     */
+    Object getProperty(DocumentReference documentReference, DocumentReference classReference, String key);
+}
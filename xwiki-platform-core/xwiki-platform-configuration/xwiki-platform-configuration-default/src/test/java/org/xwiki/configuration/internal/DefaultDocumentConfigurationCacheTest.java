@@ -0,0 +1,222 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.configuration.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.bridge.event.WikiCopiedEvent;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.test.AbstractMockingComponentTestCase;
+import org.xwiki.test.annotation.MockingRequirement;
+
+/**
+ * Unit tests for {@link DefaultDocumentConfigurationCache}.
+ *
+ * @version $Id$
+ * @since 4.4M1
+ */
+@MockingRequirement(DefaultDocumentConfigurationCache.class)
+public class DefaultDocumentConfigurationCacheTest extends AbstractMockingComponentTestCase
+{
+    private static final DocumentReference DOCUMENT = new DocumentReference("wiki", "XWiki", "XWikiPreferences");
+
+    private DocumentConfigurationCache cache;
+
+    private DocumentAccessBridge dab;
+
+    private EventListener listener;
+
+    @Before
+    public void configure() throws Exception
+    {
+        this.dab = getComponentManager().getInstance(DocumentAccessBridge.class);
+        final ObservationManager observationManager = getComponentManager().getInstance(ObservationManager.class);
+        final CacheManager cacheManager = getComponentManager().getInstance(CacheManager.class);
+        final EntityReferenceSerializer<String> serializer =
+            getComponentManager().getInstance(EntityReferenceSerializer.TYPE_STRING);
+        final Cache<Object> snapshots = getMockery().mock(Cache.class);
+        final Map<String, Object> entries = new HashMap<String, Object>();
+
+        getMockery().checking(new Expectations() {{
+            oneOf(cacheManager).createNewCache(with(any(CacheConfiguration.class)));
+                will(returnValue(snapshots));
+            allowing(serializer).serialize(DOCUMENT);
+                will(returnValue("wiki:XWiki.XWikiPreferences"));
+            allowing(snapshots).get(with(any(String.class)));
+                will(new CustomAction("get entry")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        return entries.get(invocation.getParameter(0));
+                    }
+                });
+            allowing(snapshots).set(with(any(String.class)), with(any(Object.class)));
+                will(new CustomAction("set entry")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        entries.put((String) invocation.getParameter(0), invocation.getParameter(1));
+                        return null;
+                    }
+                });
+            allowing(snapshots).remove(with(any(String.class)));
+                will(new CustomAction("remove entry")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        entries.remove(invocation.getParameter(0));
+                        return null;
+                    }
+                });
+            allowing(snapshots).removeAll();
+                will(new CustomAction("remove all entries")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        entries.clear();
+                        return null;
+                    }
+                });
+            oneOf(observationManager).addListener(with(any(EventListener.class)));
+                will(new CustomAction("save listener")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        listener = (EventListener) invocation.getParameter(0);
+                        return null;
+                    }
+                });
+        }});
+
+        this.cache = getComponentManager().getInstance(DocumentConfigurationCache.class);
+    }
+
+    @Test
+    public void getPropertyIsReadOnce() throws Exception
+    {
+        getMockery().checking(new Expectations() {{
+            oneOf(dab).getProperties(DOCUMENT, DOCUMENT);
+                will(returnValue(Collections.singletonMap("key", "value")));
+        }});
+
+        Assert.assertEquals("value", this.cache.getProperty(DOCUMENT, DOCUMENT, "key"));
+        Assert.assertEquals("value", this.cache.getProperty(DOCUMENT, DOCUMENT, "key"));
+        Assert.assertNull(this.cache.getProperty(DOCUMENT, DOCUMENT, "missing"));
+        Assert.assertNull(this.cache.getProperty(DOCUMENT, DOCUMENT, "missing"));
+    }
+
+    @Test
+    public void getPropertyAfterDocumentUpdate() throws Exception
+    {
+        final DocumentModelBridge document = getMockery().mock(DocumentModelBridge.class);
+
+        getMockery().checking(new Expectations() {{
+            oneOf(dab).getProperties(DOCUMENT, DOCUMENT);
+                will(returnValue(Collections.singletonMap("key", "value")));
+            allowing(document).getDocumentReference();
+                will(returnValue(DOCUMENT));
+            oneOf(dab).getProperties(DOCUMENT, DOCUMENT);
+                will(returnValue(Collections.singletonMap("key", "newvalue")));
+        }});
+
+        Assert.assertEquals("value", this.cache.getProperty(DOCUMENT, DOCUMENT, "key"));
+
+        this.listener.onEvent(new DocumentUpdatedEvent(DOCUMENT), document, null);
+
+        Assert.assertEquals("newvalue", this.cache.getProperty(DOCUMENT, DOCUMENT, "key"));
+    }
+
+    @Test
+    public void getPropertyAfterWikiCopy() throws Exception
+    {
+        getMockery().checking(new Expectations() {{
+            oneOf(dab).getProperties(DOCUMENT, DOCUMENT);
+                will(returnValue(Collections.singletonMap("key", "value")));
+            oneOf(dab).getProperties(DOCUMENT, DOCUMENT);
+                will(returnValue(Collections.singletonMap("key", "copiedvalue")));
+        }});
+
+        Assert.assertEquals("value", this.cache.getProperty(DOCUMENT, DOCUMENT, "key"));
+
+        // A wiki copied in bulk doesn't send document events
+        this.listener.onEvent(new WikiCopiedEvent("source", "wiki"), "source", null);
+
+        Assert.assertEquals("copiedvalue", this.cache.getProperty(DOCUMENT, DOCUMENT, "key"));
+    }
+
+    @Test
+    public void getPropertyWhenDocumentCannotBeLoaded() throws Exception
+    {
+        getMockery().checking(new Expectations() {{
+            oneOf(dab).getProperties(DOCUMENT, DOCUMENT);
+                will(throwException(new Exception("Store unavailable")));
+            oneOf(any(Logger.class)).method("warn");
+            oneOf(dab).getProperties(DOCUMENT, DOCUMENT);
+                will(returnValue(Collections.singletonMap("key", "value")));
+        }});
+
+        Assert.assertNull(this.cache.getProperty(DOCUMENT, DOCUMENT, "key"));
+
+        // The failure isn't remembered
+        Assert.assertEquals("value", this.cache.getProperty(DOCUMENT, DOCUMENT, "key"));
+        Assert.assertEquals("value", this.cache.getProperty(DOCUMENT, DOCUMENT, "key"));
+    }
+
+    @Test
+    public void getPropertiesOfSeveralClasses() throws Exception
+    {
+        final DocumentReference otherClass = new DocumentReference("wiki", "XWiki", "OtherClass");
+
+        getMockery().checking(new Expectations() {{
+            oneOf(dab).getProperties(DOCUMENT, DOCUMENT);
+                will(returnValue(Collections.singletonMap("key", "value")));
+            oneOf(dab).getProperties(DOCUMENT, otherClass);
+                will(returnValue(Collections.singletonMap("key", "othervalue")));
+        }});
+
+        Assert.assertEquals("value", this.cache.getProperty(DOCUMENT, DOCUMENT, "key"));
+        Assert.assertEquals("othervalue", this.cache.getProperty(DOCUMENT, otherClass, "key"));
+        Assert.assertEquals("value", this.cache.getProperty(DOCUMENT, DOCUMENT, "key"));
+        Assert.assertEquals("othervalue", this.cache.getProperty(DOCUMENT, otherClass, "key"));
+    }
+}
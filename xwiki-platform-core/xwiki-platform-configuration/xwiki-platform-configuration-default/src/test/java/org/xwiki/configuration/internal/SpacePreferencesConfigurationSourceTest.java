@@ -56,13 +56,14 @@ public void getPropertyForStringWhenExists() throws Exception
         final DocumentReference currentDocument = new DocumentReference("wiki", "space", "page");
 
         final DocumentAccessBridge dab = getComponentManager().getInstance(DocumentAccessBridge.class);
+        final DocumentConfigurationCache cache = getComponentManager().getInstance(DocumentConfigurationCache.class);
         final ModelContext modelContext = getComponentManager().getInstance(ModelContext.class);
         getMockery().checking(new Expectations() {{
             allowing(dab).getCurrentDocumentReference();
                 will(returnValue(currentDocument));
             allowing(modelContext).getCurrentEntityReference();
                 will(returnValue(new WikiReference("wiki")));
-            oneOf(dab).getProperty(webPreferencesReference, xwikiPreferencesReference, "key");
+            oneOf(cache).getProperty(webPreferencesReference, xwikiPreferencesReference, "key");
                 will(returnValue("value"));
         }});
 
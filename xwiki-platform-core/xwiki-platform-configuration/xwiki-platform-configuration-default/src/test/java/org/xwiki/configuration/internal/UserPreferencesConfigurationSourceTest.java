@@ -50,11 +50,12 @@ public void configure() throws Exception
         final DocumentReference userPreferencesReference = new DocumentReference("xwiki", "XWiki", "XWikiUsers");
         final DocumentReference currentUserReference = new DocumentReference("xwiki", "XWiki", "User");
         final DocumentAccessBridge dab = getComponentManager().getInstance(DocumentAccessBridge.class);
+        final DocumentConfigurationCache cache = getComponentManager().getInstance(DocumentConfigurationCache.class);
 
         getMockery().checking(new Expectations() {{
             allowing(dab).getCurrentUserReference();
                 will(returnValue(currentUserReference));
-            oneOf(dab).getProperty(currentUserReference, userPreferencesReference, "key");
+            oneOf(cache).getProperty(currentUserReference, userPreferencesReference, "key");
                 will(returnValue("value"));
         }});
     }
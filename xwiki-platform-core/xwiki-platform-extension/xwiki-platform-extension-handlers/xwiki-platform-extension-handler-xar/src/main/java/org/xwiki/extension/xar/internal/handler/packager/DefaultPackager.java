@@ -23,11 +23,21 @@
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -41,6 +51,7 @@
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Logger;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
@@ -51,10 +62,19 @@
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
 import org.xwiki.extension.xar.internal.handler.packager.xml.DocumentImporterHandler;
 import org.xwiki.extension.xar.internal.handler.packager.xml.RootHandler;
 import org.xwiki.extension.xar.internal.handler.packager.xml.UnknownRootElement;
 import org.xwiki.extension.xar.internal.handler.packager.xml.XarPageLimitedHandler;
+import org.xwiki.logging.LogQueue;
+import org.xwiki.logging.LoggerManager;
+import org.xwiki.logging.event.LogEvent;
+import org.xwiki.logging.event.LoggerListener;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReference;
@@ -77,6 +97,12 @@
 @Singleton
 public class DefaultPackager implements Packager, Initializable
 {
+    /**
+     * The name of the property indicating how many wikis can be imported at the same time when a XAR is installed on
+     * the whole farm.
+     */
+    private static final String IMPORT_THREADS_PROPERTY = "extension.xar.importThreads";
+
     @Inject
     private ComponentManager componentManager;
 
@@ -99,6 +125,15 @@ public class DefaultPackager implements Packager, Initializable
     @Inject
     private DocumentMergeImporter importer;
 
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private ExecutionContextManager executionContextManager;
+
+    @Inject
+    private LoggerManager loggerManager;
+
     private SAXParserFactory parserFactory;
 
     @Override
@@ -120,9 +155,7 @@ public void importXAR(XarFile previousXarFile, File xarFile, PackageConfiguratio
                     importXARToWiki(previousXarFile, xarFile, xcontext.getMainXWiki(), configuration);
                 }
 
-                for (String subwiki : wikis) {
-                    importXARToWiki(previousXarFile, xarFile, subwiki, configuration);
-                }
+                importXARToWikis(previousXarFile, xarFile, wikis, configuration);
             } else {
                 importXARToWiki(previousXarFile, xarFile, xcontext.getMainXWiki(), configuration);
             }
@@ -131,6 +164,158 @@ public void importXAR(XarFile previousXarFile, File xarFile, PackageConfiguratio
         }
     }
 
+    /**
+     * Import the XAR in each of the passed wikis. The wikis are independent so they are imported in parallel when
+     * {@link #IMPORT_THREADS_PROPERTY} allows it. Each wiki is imported by a single thread, which keeps the order of
+     * the events generated for each document and the import events surrounding them. The logs of each wiki are
+     * forwarded to the current thread, and so to the log of the current job, once the wiki is imported.
+     */
+    private void importXARToWikis(final XarFile previousXarFile, final File xarFile, List<String> wikis,
+        final PackageConfiguration configuration) throws IOException, ComponentLookupException
+    {
+        int threads = Math.min(getImportThreads(), wikis.size());
+
+        // Conflict questions can't be asked for several wikis at the same time
+        if (threads <= 1 || configuration.isInteractive()) {
+            for (String wiki : wikis) {
+                importXARToWiki(previousXarFile, xarFile, wiki, configuration);
+            }
+
+            return;
+        }
+
+        this.logger.info("Importing XAR in [{}] wikis using [{}] threads", wikis.size(), threads);
+
+        final XWikiContext xcontext = this.xcontextProvider.get();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<String> completionService = new ExecutorCompletionService<String>(executor);
+        Map<Future<String>, LogQueue> logs = new HashMap<Future<String>, LogQueue>();
+        try {
+            for (final String wiki : wikis) {
+                final XWikiContext wikiContext = xcontext.clone();
+                final LogQueue wikiLog = new LogQueue();
+                Future<String> future = completionService.submit(new Callable<String>()
+                {
+                    @Override
+                    public String call() throws Exception
+                    {
+                        loggerManager.pushLogListener(new LoggerListener(LoggerListener.class.getName() + '_'
+                            + wiki, wikiLog));
+                        try {
+                            importXARToWiki(previousXarFile, xarFile, wiki, configuration, wikiContext);
+                        } catch (Exception e) {
+                            throw new PackagerException(String.format("Failed to import XAR in wiki [%s]", wiki), e);
+                        } finally {
+                            loggerManager.popLogListener();
+                        }
+
+                        return wiki;
+                    }
+                });
+                logs.put(future, wikiLog);
+            }
+
+            Throwable failure = null;
+            for (int i = 1; i <= wikis.size(); ++i) {
+                Future<String> future = completionService.take();
+                forwardLogs(logs.remove(future));
+                try {
+                    String wiki = future.get();
+                    this.logger.info("Imported XAR in wiki [{}] ({}/{})", new Object[] {wiki, i, wikis.size()});
+                } catch (ExecutionException e) {
+                    this.logger.error(e.getCause().getMessage(), e.getCause().getCause());
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+
+            if (failure != null) {
+                throw new IOException(failure.getMessage(), failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while importing XAR in wikis");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Log again in the current thread the logs produced by another thread.
+     * 
+     * @param logs the logs to forward
+     */
+    private void forwardLogs(LogQueue logs)
+    {
+        for (LogEvent log : logs) {
+            Object[] arguments = log.getArgumentArray() != null ? log.getArgumentArray() : new Object[0];
+            if (log.getThrowable() != null) {
+                arguments = ArrayUtils.add(arguments, log.getThrowable());
+            }
+
+            switch (log.getLevel()) {
+                case ERROR:
+                    this.logger.error(log.getMarker(), log.getMessage(), arguments);
+                    break;
+                case WARN:
+                    this.logger.warn(log.getMarker(), log.getMessage(), arguments);
+                    break;
+                case INFO:
+                    this.logger.info(log.getMarker(), log.getMessage(), arguments);
+                    break;
+                case DEBUG:
+                    this.logger.debug(log.getMarker(), log.getMessage(), arguments);
+                    break;
+                default:
+                    this.logger.trace(log.getMarker(), log.getMessage(), arguments);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Import the XAR in the passed wiki from a thread which is not the one of the current request.
+     */
+    private void importXARToWiki(XarFile previousXarFile, File xarFile, String wiki,
+        PackageConfiguration configuration, XWikiContext xcontext) throws IOException, ComponentLookupException,
+        ExecutionContextException
+    {
+        ExecutionContext context = new ExecutionContext();
+        this.executionContextManager.initialize(context);
+
+        // Bridge with old XWiki Context, required for old code.
+        context.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, xcontext);
+
+        this.execution.pushContext(context);
+
+        try {
+            importXARToWiki(previousXarFile, xarFile, wiki, configuration);
+        } finally {
+            // Make sure the ThreadLocal variables located in the Execution component are cleaned
+            this.execution.removeContext();
+        }
+    }
+
+    /**
+     * @return the maximum number of wikis to import at the same time
+     */
+    private int getImportThreads()
+    {
+        try {
+            ConfigurationSource configurationSource =
+                this.componentManager.getInstance(ConfigurationSource.class, "xwikiproperties");
+
+            return configurationSource.getProperty(IMPORT_THREADS_PROPERTY, 1);
+        } catch (ComponentLookupException e) {
+            this.logger.debug("Failed to lookup XWiki properties, importing one wiki at a time", e);
+
+            return 1;
+        }
+    }
+
     private XarMergeResult importXARToWiki(XarFile previousXarFile, File xarFile, String wiki,
         PackageConfiguration configuration) throws IOException, ComponentLookupException
     {
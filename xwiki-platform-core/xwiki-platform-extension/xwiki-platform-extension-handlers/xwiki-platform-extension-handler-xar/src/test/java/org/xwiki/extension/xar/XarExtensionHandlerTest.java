@@ -24,6 +24,7 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import junit.framework.Assert;
 
@@ -33,6 +34,7 @@
 import org.junit.Before;
 import org.junit.Test;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.extension.ExtensionId;
 import org.xwiki.extension.InstallException;
 import org.xwiki.extension.UninstallException;
@@ -80,8 +82,9 @@ public class XarExtensionHandlerTest extends AbstractBridgedComponentTestCase
 
     private JobStatus mockJobStatus;
 
+    // Concurrent since the wikis can be imported in parallel
     private Map<DocumentReference, Map<String, XWikiDocument>> documents =
-        new HashMap<DocumentReference, Map<String, XWikiDocument>>();
+        new ConcurrentHashMap<DocumentReference, Map<String, XWikiDocument>>();
 
     private ExtensionId localXarExtensiontId1;
 
@@ -736,6 +739,66 @@ public void testInstallOnRoot() throws Throwable
         Assert.assertTrue(pageWiki2.isNew());
     }
 
+    @Test
+    public void testInstallOnRootInParallel() throws Throwable
+    {
+        final ConfigurationSource xwikiProperties =
+            registerMockComponent(ConfigurationSource.class, "xwikiproperties");
+
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(xwikiProperties).getProperty("extension.xar.importThreads", 1);
+                will(returnValue(2));
+                allowing(xwikiProperties).getProperty(with(any(String.class)), with(any(Object.class)));
+                will(new CustomAction("getProperty")
+                {
+                    @Override
+                    public Object invoke(org.jmock.api.Invocation invocation) throws Throwable
+                    {
+                        return invocation.getParameter(1);
+                    }
+                });
+                ignoring(xwikiProperties);
+
+                allowing(mockXWiki).getVirtualWikisDatabaseNames(with(any(XWikiContext.class)));
+                will(returnValue(Arrays.asList("wiki1", "wiki2", "wiki3")));
+
+                oneOf(mockRightService).hasAccessLevel(with(equal("admin")), with(equal("xwiki:XWiki.ExtensionUser")),
+                    with(equal("XWiki.XWikiPreferences")), with(any(XWikiContext.class)));
+                will(returnValue(true));
+            }
+        });
+
+        InstallRequest installRequest = new InstallRequest();
+        installRequest.setProperty("user.reference", getContext().getUserReference());
+        installRequest.setProperty("checkrights", true);
+        installRequest.addExtension(this.localXarExtensiontId1);
+        Job installJob = this.jobManager.executeJob(InstallJob.JOBTYPE, installRequest);
+
+        List<LogEvent> errors = installJob.getStatus().getLog().getLogsFrom(LogLevel.WARN);
+        if (!errors.isEmpty()) {
+            throw errors.get(0).getThrowable();
+        }
+
+        // validate
+
+        for (String wiki : Arrays.asList("wiki1", "wiki2", "wiki3")) {
+            XWikiDocument page =
+                this.mockXWiki.getDocument(new DocumentReference(wiki, "space1", "page1"), getContext());
+
+            Assert.assertFalse("Page not imported in wiki [" + wiki + "]", page.isNew());
+
+            // The logs of the threads importing the wikis end up in the log of the job
+            boolean logged = false;
+            for (LogEvent log : installJob.getStatus().getLog().getLogs(LogLevel.INFO)) {
+                String message = log.getFormattedMessage();
+                logged |= message.startsWith("Successfully imported document") && message.contains(wiki + ':');
+            }
+            Assert.assertTrue("Missing import logs for wiki [" + wiki + "]", logged);
+        }
+    }
+
     // DocumentImporterHandler
 
     private XWikiDocument importDocument(String resource, boolean interactive, String wiki)
@@ -33,7 +33,18 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +66,8 @@
 import com.sun.syndication.feed.synd.SyndFeedImpl;
 import com.sun.syndication.feed.synd.SyndImage;
 import com.sun.syndication.feed.synd.SyndImageImpl;
+import com.sun.syndication.fetcher.impl.FeedFetcherCache;
+import com.sun.syndication.fetcher.impl.LinkedHashMapFeedInfoCache;
 import com.sun.syndication.io.SyndFeedOutput;
 import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
@@ -70,11 +83,32 @@
 
 public class FeedPlugin extends XWikiDefaultPlugin implements XWikiPluginInterface
 {
-    private Cache<SyndFeed> feedCache;
+    private Cache<CachedFeed> feedCache;
 
     private int refreshPeriod;
 
-    private Map<String, UpdateThread> updateThreads = new HashMap<String, UpdateThread>();
+    private ConcurrentMap<String, UpdateThread> updateThreads = new ConcurrentHashMap<String, UpdateThread>();
+
+    /**
+     * The ETag and Last-Modified values of the fetched feeds, used to make conditional requests. It holds as many
+     * feeds as the feed cache.
+     */
+    private volatile FeedFetcherCache feedInfoCache;
+
+    /**
+     * The HTTP connections shared by all the feed fetches, which limits the number of connections per host.
+     */
+    private MultiThreadedHttpConnectionManager connectionManager;
+
+    /**
+     * The threads used to fetch the feeds in parallel and to refresh the expired feeds in the background.
+     */
+    private ThreadPoolExecutor fetcherExecutor;
+
+    /**
+     * The feeds which are currently refreshed in the background.
+     */
+    private final ConcurrentMap<String, Boolean> pendingRefreshes = new ConcurrentHashMap<String, Boolean>();
 
     private Converter syntaxConverter;
 
@@ -102,6 +136,31 @@ public int compare(SyndEntry entry1, SyndEntry entry2)
         }
     }
 
+    /**
+     * A feed stored in the cache, along with the date when it was fetched.
+     */
+    private static class CachedFeed
+    {
+        private final SyndFeed feed;
+
+        private final long date = System.currentTimeMillis();
+
+        CachedFeed(SyndFeed feed)
+        {
+            this.feed = feed;
+        }
+
+        public SyndFeed getFeed()
+        {
+            return this.feed;
+        }
+
+        public boolean isExpired(int refreshPeriod)
+        {
+            return System.currentTimeMillis() - this.date > refreshPeriod * 1000L;
+        }
+    }
+
     public static class EntriesComparator implements Comparator<com.xpn.xwiki.api.Object>
     {
         @Override
@@ -150,6 +209,7 @@ public void flushCache()
             this.feedCache.dispose();
         }
         this.feedCache = null;
+        this.feedInfoCache = null;
     }
 
     @Override
@@ -157,8 +217,9 @@ public void init(XWikiContext context)
     {
         super.init(context);
 
-        prepareCache(context);
         this.refreshPeriod = (int) context.getWiki().ParamAsLong("xwiki.plugins.feed.cacherefresh", 3600);
+        prepareCache(context);
+        initFetcher(context);
 
         // Make sure we have this class
         try {
@@ -189,12 +250,18 @@ public void initCache(XWikiContext context) throws XWikiException
 
     public void initCache(int iCapacity, XWikiContext context) throws XWikiException
     {
+        LinkedHashMapFeedInfoCache infoCache = new LinkedHashMapFeedInfoCache();
+        infoCache.setMaxEntries(iCapacity);
+        this.feedInfoCache = infoCache;
+
         try {
             CacheConfiguration configuration = new CacheConfiguration();
             configuration.setConfigurationId("xwiki.plugin.feedcache");
             LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
             lru.setMaxEntries(iCapacity);
-            lru.setTimeToLive(this.refreshPeriod);
+            // Expired feeds are served while they are refreshed in the background so keep them longer than the
+            // refresh period.
+            lru.setTimeToLive(this.refreshPeriod * 24);
             configuration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
 
             this.feedCache = context.getWiki().getLocalCacheFactory().newCache(configuration);
@@ -214,6 +281,38 @@ protected void prepareCache(XWikiContext context)
         }
     }
 
+    /**
+     * Initializes the thread pool and the HTTP connections used to fetch the feeds.
+     * 
+     * @param context the XWiki context
+     */
+    private void initFetcher(XWikiContext context)
+    {
+        if (this.fetcherExecutor == null) {
+            int threads = (int) context.getWiki().ParamAsLong("xwiki.plugins.feed.fetcher.threads", 10);
+            int maxConnectionsPerHost =
+                (int) context.getWiki().ParamAsLong("xwiki.plugins.feed.fetcher.maxConnectionsPerHost", 2);
+
+            this.connectionManager = new MultiThreadedHttpConnectionManager();
+            this.connectionManager.getParams().setMaxTotalConnections(threads);
+            this.connectionManager.getParams().setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+
+            this.fetcherExecutor =
+                new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory()
+                    {
+                        @Override
+                        public Thread newThread(Runnable runnable)
+                        {
+                            Thread thread = new Thread(runnable, "XWiki feed fetcher");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            this.fetcherExecutor.allowCoreThreadTimeOut(true);
+        }
+    }
+
     public SyndFeed getFeeds(String sfeeds, XWikiContext context) throws IOException
     {
         return getFeeds(sfeeds, false, true, context);
@@ -224,7 +323,7 @@ public SyndFeed getFeeds(String sfeeds, boolean force, XWikiContext context) thr
         return getFeeds(sfeeds, false, force, context);
     }
 
-    public SyndFeed getFeeds(String sfeeds, boolean ignoreInvalidFeeds, boolean force, XWikiContext context)
+    public SyndFeed getFeeds(String sfeeds, boolean ignoreInvalidFeeds, final boolean force, XWikiContext context)
         throws IOException
     {
         String[] feeds;
@@ -243,8 +342,33 @@ public SyndFeed getFeeds(String sfeeds, boolean ignoreInvalidFeeds, boolean forc
             outputFeed.setTitle("XWiki Feeds");
             outputFeed.setAuthor("XWiki Team");
         }
+
+        // Fetch the feeds in parallel so that the page waits for the slowest feed instead of the sum of all of them.
+        prepareCache(context);
+        initFetcher(context);
+        final String userAgent = getUserAgent(context);
+        final int timeout = getTimeout(context);
+        List<Future<SyndFeed>> results = new ArrayList<Future<SyndFeed>>(feeds.length);
+        for (final String sfeed : feeds) {
+            results.add(this.fetcherExecutor.submit(new Callable<SyndFeed>()
+            {
+                @Override
+                public SyndFeed call() throws Exception
+                {
+                    return getCachedFeed(sfeed, force, userAgent, timeout);
+                }
+            }));
+        }
+
+        // Leave time to wait for a connection, to connect and to read the feed.
+        long deadline = System.currentTimeMillis() + 3L * timeout;
         for (int i = 0; i < feeds.length; i++) {
-            SyndFeed feed = getFeed(feeds[i], ignoreInvalidFeeds, force, context);
+            SyndFeed feed;
+            try {
+                feed = waitForFeed(results.get(i), timeout > 0 ? deadline - System.currentTimeMillis() : -1);
+            } catch (Exception e) {
+                feed = handleInvalidFeed(feeds[i], e, ignoreInvalidFeeds, context);
+            }
             if (feed != null) {
                 entries.addAll(feed.getEntries());
             }
@@ -269,52 +393,152 @@ public SyndFeed getFeed(String sfeed, boolean force, XWikiContext context) throw
     public SyndFeed getFeed(String sfeed, boolean ignoreInvalidFeeds, boolean force, XWikiContext context)
         throws IOException
     {
-        SyndFeed feed = null;
         prepareCache(context);
+        initFetcher(context);
+
+        try {
+            return getCachedFeed(sfeed, force, getUserAgent(context), getTimeout(context));
+        } catch (Exception ex) {
+            return handleInvalidFeed(sfeed, ex, ignoreInvalidFeeds, context);
+        }
+    }
+
+    public SyndFeed getFeedForce(String sfeed, boolean ignoreInvalidFeeds, XWikiContext context) throws IOException
+    {
+        prepareCache(context);
+        initFetcher(context);
 
-        if (!force) {
-            feed = this.feedCache.get(sfeed);
+        try {
+            return refreshFeed(sfeed, getUserAgent(context), getTimeout(context));
+        } catch (Exception ex) {
+            return handleInvalidFeed(sfeed, ex, ignoreInvalidFeeds, context);
         }
+    }
 
-        if (feed == null) {
-            feed = getFeedForce(sfeed, ignoreInvalidFeeds, context);
+    /**
+     * Get a feed from the cache, fetching it if it's missing. An expired feed is returned as is and refreshed in the
+     * background, so that a slow host doesn't delay the page.
+     * 
+     * @param sfeed the feed URL
+     * @param force {@code true} to fetch the feed even if it's in the cache
+     * @param userAgent the user agent to use when fetching the feed
+     * @param timeout the connection and read timeout, in milliseconds
+     * @return the feed
+     * @throws Exception if fetching the feed fails
+     */
+    private SyndFeed getCachedFeed(String sfeed, boolean force, String userAgent, int timeout) throws Exception
+    {
+        Cache<CachedFeed> cache = this.feedCache;
+        CachedFeed cachedFeed = (force || cache == null) ? null : cache.get(sfeed);
+        if (cachedFeed == null) {
+            return refreshFeed(sfeed, userAgent, timeout);
         }
 
-        if (feed != null) {
-            this.feedCache.set(sfeed, feed);
+        if (cachedFeed.isExpired(this.refreshPeriod)) {
+            scheduleRefresh(sfeed, userAgent, timeout);
+        }
+
+        return cachedFeed.getFeed();
+    }
+
+    /**
+     * Fetches a feed and stores it in the cache.
+     * 
+     * @param sfeed the feed URL
+     * @param userAgent the user agent to use when fetching the feed
+     * @param timeout the connection and read timeout, in milliseconds
+     * @return the feed
+     * @throws Exception if fetching the feed fails
+     */
+    private SyndFeed refreshFeed(String sfeed, String userAgent, int timeout) throws Exception
+    {
+        XWikiFeedFetcher feedFetcher = new XWikiFeedFetcher(this.feedInfoCache);
+        feedFetcher.setConnectionManager(this.connectionManager);
+        feedFetcher.setUserAgent(userAgent);
+        SyndFeed feed = feedFetcher.retrieveFeed(new URL(sfeed), timeout);
+
+        Cache<CachedFeed> cache = this.feedCache;
+        if (feed != null && cache != null) {
+            cache.set(sfeed, new CachedFeed(feed));
         }
 
         return feed;
     }
 
-    public SyndFeed getFeedForce(String sfeed, boolean ignoreInvalidFeeds, XWikiContext context) throws IOException
+    /**
+     * Refreshes a feed in the background, unless it's already being refreshed.
+     * 
+     * @param sfeed the feed URL
+     * @param userAgent the user agent to use when fetching the feed
+     * @param timeout the connection and read timeout, in milliseconds
+     */
+    private void scheduleRefresh(final String sfeed, final String userAgent, final int timeout)
     {
-        try {
-            URL feedURL = new URL(sfeed);
-            XWikiFeedFetcher feedFetcher = new XWikiFeedFetcher();
-            feedFetcher.setUserAgent(context.getWiki().Param("xwiki.plugins.feed.useragent",
-                context.getWiki().getHttpUserAgent(context)));
-            SyndFeed feed =
-                feedFetcher.retrieveFeed(
-                    feedURL,
-                    (int) context.getWiki().ParamAsLong("xwiki.plugins.feed.timeout",
-                        context.getWiki().getHttpTimeout(context)));
-            return feed;
-        } catch (Exception ex) {
-            if (ignoreInvalidFeeds) {
-                @SuppressWarnings("unchecked")
-                Map<String, Exception> map = (Map<String, Exception>) context.get("invalidFeeds");
-                if (map == null) {
-                    map = new HashMap<String, Exception>();
-                    context.put("invalidFeeds", map);
+        if (this.pendingRefreshes.putIfAbsent(sfeed, Boolean.TRUE) == null) {
+            this.fetcherExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try {
+                        refreshFeed(sfeed, userAgent, timeout);
+                    } catch (Exception e) {
+                        LOGGER.warn("Failed to refresh feed [{}]: {}", sfeed, e.getMessage());
+                    } finally {
+                        pendingRefreshes.remove(sfeed);
+                    }
                 }
-                map.put(sfeed, ex);
+            });
+        }
+    }
 
-                return null;
+    /**
+     * Waits for a feed fetched in the background.
+     * 
+     * @param result the result of the fetch
+     * @param timeout the maximum time to wait, in milliseconds, or a negative value to wait until the fetch is done
+     * @return the feed
+     * @throws Exception if fetching the feed failed or took too long
+     */
+    private SyndFeed waitForFeed(Future<SyndFeed> result, long timeout) throws Exception
+    {
+        try {
+            return timeout < 0 ? result.get() : result.get(Math.max(timeout, 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    private String getUserAgent(XWikiContext context)
+    {
+        return context.getWiki().Param("xwiki.plugins.feed.useragent", context.getWiki().getHttpUserAgent(context));
+    }
+
+    private int getTimeout(XWikiContext context)
+    {
+        return (int) context.getWiki().ParamAsLong("xwiki.plugins.feed.timeout",
+            context.getWiki().getHttpTimeout(context));
+    }
+
+    private SyndFeed handleInvalidFeed(String sfeed, Exception ex, boolean ignoreInvalidFeeds, XWikiContext context)
+        throws IOException
+    {
+        if (ignoreInvalidFeeds) {
+            @SuppressWarnings("unchecked")
+            Map<String, Exception> map = (Map<String, Exception>) context.get("invalidFeeds");
+            if (map == null) {
+                map = new HashMap<String, Exception>();
+                context.put("invalidFeeds", map);
             }
+            map.put(sfeed, ex);
 
-            throw new java.io.IOException("Error processing " + sfeed + ": " + ex.getMessage());
+            return null;
         }
+
+        throw new java.io.IOException("Error processing " + sfeed + ": " + ex.getMessage());
     }
 
     public int updateFeeds(XWikiContext context) throws XWikiException
@@ -427,16 +651,19 @@ public int updateFeedsInSpace(String space, boolean fullContent, boolean oneDocP
     public boolean startUpdateFeedsInSpace(String space, boolean fullContent, int scheduleTimer, XWikiContext context)
         throws XWikiException
     {
-        UpdateThread updateThread = this.updateThreads.get(context.getDatabase() + ":" + space);
-        if (updateThread == null) {
-            updateThread = new UpdateThread(space, fullContent, scheduleTimer, this, context);
-            this.updateThreads.put(context.getDatabase() + ":" + space, updateThread);
-            Thread thread = new Thread(updateThread);
-            thread.start();
-            return true;
-        } else {
+        String key = context.getDatabase() + ":" + space;
+        if (this.updateThreads.containsKey(key)) {
+            return false;
+        }
+
+        UpdateThread updateThread = new UpdateThread(space, fullContent, scheduleTimer, this, context);
+        if (this.updateThreads.putIfAbsent(key, updateThread) != null) {
+            // Started concurrently by another request.
             return false;
         }
+        Thread thread = new Thread(updateThread);
+        thread.start();
+        return true;
     }
 
     public void stopUpdateFeedsInSpace(String space, XWikiContext context) throws XWikiException
@@ -451,9 +678,7 @@ public void removeUpdateThread(String space, UpdateThread thread, XWikiContext c
     {
         // make sure the update thread is removed.
         // this is called by the update thread when the loop is last exited
-        if (thread == this.updateThreads.get(context.getDatabase() + ":" + space)) {
-            this.updateThreads.remove(context.getDatabase() + ":" + space);
-        }
+        this.updateThreads.remove(context.getDatabase() + ":" + space, thread);
     }
 
     public UpdateThread getUpdateThread(String space, XWikiContext context)
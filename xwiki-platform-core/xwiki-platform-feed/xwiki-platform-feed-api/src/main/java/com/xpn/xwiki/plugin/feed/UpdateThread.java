@@ -39,11 +39,11 @@ public class UpdateThread extends AbstractXWikiRunnable
 
     protected int scheduleTimer;
 
-    protected boolean updateInProgress = false;
+    protected volatile boolean updateInProgress = false;
 
-    protected boolean forceUpdate = false;
+    protected volatile boolean forceUpdate = false;
 
-    protected boolean stopUpdate = false;
+    protected volatile boolean stopUpdate = false;
 
     protected Date startDate;
 
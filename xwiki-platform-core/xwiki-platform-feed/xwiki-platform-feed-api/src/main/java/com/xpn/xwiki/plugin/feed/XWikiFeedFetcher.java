@@ -29,6 +29,7 @@
 import org.apache.commons.httpclient.Credentials;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
@@ -51,6 +52,8 @@ public class XWikiFeedFetcher extends AbstractFeedFetcher
 
     private CredentialSupplier credentialSupplier;
 
+    private HttpConnectionManager connectionManager;
+
     public XWikiFeedFetcher()
     {
         super();
@@ -103,6 +106,25 @@ public synchronized void setCredentialSupplier(CredentialSupplier credentialSupp
         this.credentialSupplier = credentialSupplier;
     }
 
+    /**
+     * @return the connection manager shared by the HTTP clients, {@code null} if each request uses its own connection
+     * @since 4.4M1
+     */
+    public synchronized HttpConnectionManager getConnectionManager()
+    {
+        return connectionManager;
+    }
+
+    /**
+     * @param connectionManager the connection manager to share between the HTTP clients, which can pool the
+     *            connections and limit the number of connections per host
+     * @since 4.4M1
+     */
+    public synchronized void setConnectionManager(HttpConnectionManager connectionManager)
+    {
+        this.connectionManager = connectionManager;
+    }
+
     @Override
     public SyndFeed retrieveFeed(URL feedUrl)
         throws IllegalArgumentException, IOException, FeedException, FetcherException
@@ -119,10 +141,13 @@ public SyndFeed retrieveFeed(URL feedUrl, int timeout)
         if (feedUrl == null) {
             throw new IllegalArgumentException("null is not a valid URL");
         }
-        HttpClient client = new HttpClient();
+        HttpConnectionManager manager = getConnectionManager();
+        HttpClient client = (manager != null) ? new HttpClient(manager) : new HttpClient();
         if (timeout != 0) {
             client.getParams().setSoTimeout(timeout);
             client.getParams().setParameter("http.connection.timeout", new Integer(timeout));
+            // Don't wait forever for a free connection when the per host limit is reached.
+            client.getParams().setConnectionManagerTimeout(timeout);
         }
 
         System.setProperty("http.useragent", getUserAgent());
@@ -160,7 +185,9 @@ public SyndFeed retrieveFeed(URL feedUrl, int timeout)
                 // Note that syndFeedInfo will be null if it is not in the cache
                 SyndFeedInfo syndFeedInfo = cache.getFeedInfo(feedUrl);
                 if (syndFeedInfo != null) {
-                    method.setRequestHeader("If-None-Match", syndFeedInfo.getETag());
+                    if (syndFeedInfo.getETag() != null) {
+                        method.setRequestHeader("If-None-Match", syndFeedInfo.getETag());
+                    }
 
                     if (syndFeedInfo.getLastModified() instanceof String) {
                         method.setRequestHeader("If-Modified-Since", (String) syndFeedInfo.getLastModified());
@@ -0,0 +1,274 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.feed;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheFactory;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.event.CacheEntryListener;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.syndication.feed.synd.SyndFeed;
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.test.AbstractBridgedComponentTestCase;
+
+/**
+ * Unit tests for {@link FeedPlugin}, using a local HTTP server.
+ * 
+ * @version $Id$
+ */
+public class FeedPluginTest extends AbstractBridgedComponentTestCase
+{
+    private static final String FEED = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<rss version=\"2.0\"><channel><title>%s</title><link>http://www.xwiki.org</link>"
+        + "<description>Test</description><item><title>Entry</title><link>http://www.xwiki.org/%s</link>"
+        + "</item></channel></rss>";
+
+    private HttpServer server;
+
+    private FeedPlugin plugin;
+
+    @Override
+    @Before
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        final XWiki xwiki = getMockery().mock(XWiki.class);
+        final CacheFactory cacheFactory = getMockery().mock(CacheFactory.class);
+
+        getMockery().checking(new Expectations()
+        {
+            {
+                // Refresh the feeds after one second.
+                allowing(xwiki).ParamAsLong("xwiki.plugins.feed.cacherefresh", 3600);
+                will(returnValue(1L));
+                allowing(xwiki).ParamAsLong(with(any(String.class)), with(any(long.class)));
+                will(new CustomAction("return the default value")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        return invocation.getParameter(1);
+                    }
+                });
+                allowing(xwiki).Param("xwiki.plugins.feed.cache.capacity");
+                will(returnValue(null));
+                allowing(xwiki).Param(with(any(String.class)), with(any(String.class)));
+                will(new CustomAction("return the default value")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        return invocation.getParameter(1);
+                    }
+                });
+                allowing(xwiki).getHttpTimeout(with(any(XWikiContext.class)));
+                will(returnValue(5000));
+                allowing(xwiki).getHttpUserAgent(with(any(XWikiContext.class)));
+                will(returnValue("XWikiBot"));
+                allowing(xwiki).getLocalCacheFactory();
+                will(returnValue(cacheFactory));
+                allowing(cacheFactory).newCache(with(any(CacheConfiguration.class)));
+                will(returnValue(new MapCache<Object>()));
+                // The feed classes are not needed to fetch feeds.
+                allowing(xwiki).getDocument(with(any(String.class)), with(any(XWikiContext.class)));
+                will(throwException(new XWikiException()));
+            }
+        });
+        getContext().setWiki(xwiki);
+
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.start();
+
+        this.plugin = new FeedPlugin("feed", FeedPlugin.class.getName(), getContext());
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception
+    {
+        this.server.stop(0);
+
+        super.tearDown();
+    }
+
+    private String getURL(String path)
+    {
+        return "http://localhost:" + this.server.getAddress().getPort() + path;
+    }
+
+    private static void sendFeed(HttpExchange exchange, String title) throws IOException
+    {
+        byte[] content = String.format(FEED, title, title).getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/rss+xml; charset=UTF-8");
+        exchange.sendResponseHeaders(200, content.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(content);
+        out.close();
+    }
+
+    @Test
+    public void getFeedsFetchesFeedsInParallel() throws Exception
+    {
+        // Each feed is sent only once the other one is requested, which fails if the feeds are fetched one by one.
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        HttpHandler handler = new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                try {
+                    barrier.await(4, TimeUnit.SECONDS);
+                    sendFeed(exchange, exchange.getRequestURI().getPath());
+                } catch (Exception e) {
+                    exchange.sendResponseHeaders(500, -1);
+                }
+                exchange.close();
+            }
+        };
+        this.server.createContext("/feed1", handler);
+        this.server.createContext("/feed2", handler);
+
+        SyndFeed feed = this.plugin.getFeeds(getURL("/feed1") + '|' + getURL("/feed2"), false, true, getContext());
+
+        Assert.assertEquals(2, feed.getEntries().size());
+    }
+
+    @Test
+    public void expiredFeedIsRefreshedInBackground() throws Exception
+    {
+        final AtomicInteger requests = new AtomicInteger();
+        final CountDownLatch refreshAllowed = new CountDownLatch(1);
+        final CountDownLatch refreshed = new CountDownLatch(1);
+        this.server.createContext("/feed", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                if (requests.incrementAndGet() > 1) {
+                    try {
+                        refreshAllowed.await(4, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        // Send the feed.
+                    }
+                }
+                sendFeed(exchange, "Version " + requests.get());
+                exchange.close();
+                if (requests.get() > 1) {
+                    refreshed.countDown();
+                }
+            }
+        });
+
+        Assert.assertEquals("Version 1", this.plugin.getFeed(getURL("/feed"), getContext()).getTitle());
+
+        // Wait for the feed to expire.
+        Thread.sleep(1500);
+
+        // The expired feed is returned without waiting for the slow refresh.
+        long start = System.currentTimeMillis();
+        Assert.assertEquals("Version 1", this.plugin.getFeed(getURL("/feed"), getContext()).getTitle());
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+
+        refreshAllowed.countDown();
+        Assert.assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+
+        // Wait for the refreshed feed to be stored in the cache.
+        long deadline = System.currentTimeMillis() + 5000;
+        String title = null;
+        while (!"Version 2".equals(title) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            title = this.plugin.getFeed(getURL("/feed"), getContext()).getTitle();
+        }
+        Assert.assertEquals("Version 2", title);
+        Assert.assertEquals(2, requests.get());
+    }
+
+    /**
+     * Simple cache implementation backed by a map.
+     */
+    private static class MapCache<T> implements Cache<T>
+    {
+        private final Map<String, T> map = new HashMap<String, T>();
+
+        @Override
+        public synchronized void set(String key, T value)
+        {
+            this.map.put(key, value);
+        }
+
+        @Override
+        public synchronized T get(String key)
+        {
+            return this.map.get(key);
+        }
+
+        @Override
+        public synchronized void remove(String key)
+        {
+            this.map.remove(key);
+        }
+
+        @Override
+        public synchronized void removeAll()
+        {
+            this.map.clear();
+        }
+
+        @Override
+        public void addCacheEntryListener(CacheEntryListener<T> listener)
+        {
+        }
+
+        @Override
+        public void removeCacheEntryListener(CacheEntryListener<T> listener)
+        {
+        }
+
+        @Override
+        public void dispose()
+        {
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.feed;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.syndication.feed.synd.SyndFeed;
+import com.sun.syndication.fetcher.impl.HashMapFeedInfoCache;
+
+/**
+ * Unit tests for {@link XWikiFeedFetcher}, using a local HTTP server.
+ * 
+ * @version $Id$
+ */
+public class XWikiFeedFetcherTest
+{
+    private static final String ETAG = "\"v1\"";
+
+    private static final String FEED = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<rss version=\"2.0\"><channel><title>Test feed</title><link>http://www.xwiki.org</link>"
+        + "<description>Test</description><item><title>Entry</title><link>http://www.xwiki.org/entry</link>"
+        + "</item></channel></rss>";
+
+    private HttpServer server;
+
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.createContext("/feed", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModifiedResponses.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    byte[] content = FEED.getBytes("UTF-8");
+                    exchange.getResponseHeaders().set("Content-Type", "application/rss+xml; charset=UTF-8");
+                    exchange.getResponseHeaders().set("ETag", ETAG);
+                    exchange.sendResponseHeaders(200, content.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(content);
+                    out.close();
+                }
+                exchange.close();
+            }
+        });
+        this.server.createContext("/slow", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    // Stop waiting.
+                }
+                exchange.close();
+            }
+        });
+        this.server.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.server.stop(0);
+    }
+
+    private URL getURL(String path) throws IOException
+    {
+        return new URL("http://localhost:" + this.server.getAddress().getPort() + path);
+    }
+
+    @Test
+    public void retrieveFeedWithConditionalRequest() throws Exception
+    {
+        XWikiFeedFetcher fetcher = new XWikiFeedFetcher(new HashMapFeedInfoCache());
+        fetcher.setConnectionManager(new MultiThreadedHttpConnectionManager());
+
+        SyndFeed feed = fetcher.retrieveFeed(getURL("/feed"), 5000);
+        Assert.assertEquals("Test feed", feed.getTitle());
+        Assert.assertEquals(0, this.notModifiedResponses.get());
+
+        // The second request sends the ETag and the feed is taken from the cache.
+        SyndFeed cachedFeed = fetcher.retrieveFeed(getURL("/feed"), 5000);
+        Assert.assertEquals(1, this.notModifiedResponses.get());
+        Assert.assertEquals("Test feed", cachedFeed.getTitle());
+        Assert.assertEquals(1, cachedFeed.getEntries().size());
+    }
+
+    @Test
+    public void retrieveFeedFromSlowHost() throws Exception
+    {
+        XWikiFeedFetcher fetcher = new XWikiFeedFetcher(new HashMapFeedInfoCache());
+        fetcher.setConnectionManager(new MultiThreadedHttpConnectionManager());
+
+        long start = System.currentTimeMillis();
+        try {
+            fetcher.retrieveFeed(getURL("/slow"), 200);
+            Assert.fail("The read should have timed out");
+        } catch (IOException expected) {
+            Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+        }
+    }
+}
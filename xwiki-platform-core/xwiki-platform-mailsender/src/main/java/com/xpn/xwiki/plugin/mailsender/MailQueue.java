@@ -0,0 +1,531 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.mailsender;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Outbound mail queue drained by a pool of worker threads. The queued mails are stored on disk, so that they are sent
+ * even if the server is restarted. Each worker keeps its SMTP connection open while there are mails to send, the
+ * mails sent to the same SMTP server can be throttled and failed deliveries are retried with an exponential backoff.
+ * <p>
+ * The SMTP password is not stored with the queued mails: it is resolved through a {@link PasswordResolver} when the
+ * mails are sent.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class MailQueue
+{
+    /** Logging helper object. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MailQueue.class);
+
+    /** The extension of the files holding the messages. */
+    private static final String MESSAGE_EXTENSION = ".eml";
+
+    /** The extension of the files holding the JavaMail session properties and the delivery state of the messages. */
+    private static final String PROPERTIES_EXTENSION = ".properties";
+
+    /** The property holding the SMTP user name. */
+    private static final String USERNAME = "xwiki.mailqueue.username";
+
+    /** The property holding the wiki which queued the mail, used to resolve the SMTP password. */
+    private static final String WIKI = "xwiki.mailqueue.wiki";
+
+    /** The property holding the number of failed delivery attempts. */
+    private static final String ATTEMPTS = "xwiki.mailqueue.attempts";
+
+    /** The time to wait for the workers to stop, in milliseconds. */
+    private static final long STOP_TIMEOUT = 30000;
+
+    /** The maximum number of statuses kept for the mails which are not in the queue anymore. */
+    private static final int MAX_STATUSES = 10000;
+
+    /**
+     * Resolves the SMTP password of a queued mail when it is sent.
+     */
+    public interface PasswordResolver
+    {
+        /**
+         * @param wiki the wiki which queued the mail
+         * @param username the SMTP user name the mail was queued with
+         * @return the SMTP password, {@code null} if it cannot be resolved
+         */
+        String getPassword(String wiki, String username);
+    }
+
+    /**
+     * A mail waiting in the queue. The message itself stays on disk until it's sent.
+     */
+    private static class QueuedMail implements Delayed
+    {
+        private final MailStatus status;
+
+        private final Properties properties;
+
+        private int attempts;
+
+        private long nextAttempt;
+
+        QueuedMail(MailStatus status, Properties properties, int attempts)
+        {
+            this.status = status;
+            this.properties = properties;
+            this.attempts = attempts;
+        }
+
+        public String getServer()
+        {
+            return this.properties.getProperty("mail.smtp.host") + ':' + this.properties.getProperty("mail.smtp.port")
+                + ':' + StringUtils.defaultString(this.properties.getProperty(USERNAME));
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit)
+        {
+            return unit.convert(this.nextAttempt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other)
+        {
+            return Long.valueOf(getDelay(TimeUnit.MILLISECONDS)).compareTo(other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Sends the queued mails, reusing its SMTP connection as long as the mails go to the same server.
+     */
+    private class Worker implements Runnable
+    {
+        private Transport transport;
+
+        private String server;
+
+        @Override
+        public void run()
+        {
+            try {
+                while (!stopped) {
+                    // Close the connection when there's nothing to send for a while.
+                    QueuedMail mail = queue.poll(10, TimeUnit.SECONDS);
+                    if (mail == null) {
+                        closeTransport();
+                    } else {
+                        send(mail);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Stop the worker.
+            } finally {
+                closeTransport();
+            }
+        }
+
+        private void send(QueuedMail mail) throws InterruptedException
+        {
+            mail.status.setState(MailStatus.State.SENDING);
+            try {
+                Session session = Session.getInstance(getSessionProperties(mail.properties));
+                MimeMessage message = readMessage(mail.status.getId(), session);
+                Transport currentTransport = getTransport(session, mail);
+                throttle(mail.getServer());
+                currentTransport.sendMessage(message, message.getAllRecipients());
+
+                delete(mail.status.getId());
+                mail.status.setState(MailStatus.State.SENT);
+            } catch (MessagingException e) {
+                // The connection might be in a bad state.
+                closeTransport();
+                retry(mail, e);
+            } catch (IOException e) {
+                LOGGER.error("Failed to read queued mail [{}]", mail.status.getId(), e);
+                delete(mail.status.getId());
+                mail.status.setFailure(mail.attempts + 1, e.getMessage(), MailStatus.State.FAILED);
+            } catch (RuntimeException e) {
+                // Don't let an unexpected error (e.g. from the password resolver) stop the worker and leave the mail
+                // in the sending state.
+                closeTransport();
+                retry(mail, e);
+            }
+        }
+
+        private Transport getTransport(Session session, QueuedMail mail) throws MessagingException
+        {
+            if (this.transport != null && mail.getServer().equals(this.server) && this.transport.isConnected()) {
+                return this.transport;
+            }
+
+            closeTransport();
+            this.transport = session.getTransport("smtp");
+            String username = mail.properties.getProperty(USERNAME);
+            if (StringUtils.isEmpty(username)) {
+                // no auth info - typical 127.0.0.1 open relay scenario
+                this.transport.connect();
+            } else {
+                // auth info present - typical with external smtp server
+                this.transport.connect(username,
+                    passwordResolver.getPassword(mail.properties.getProperty(WIKI), username));
+            }
+            this.server = mail.getServer();
+
+            return this.transport;
+        }
+
+        private void closeTransport()
+        {
+            if (this.transport != null) {
+                try {
+                    this.transport.close();
+                } catch (MessagingException e) {
+                    LOGGER.debug("Failed to close the SMTP connection", e);
+                }
+                this.transport = null;
+                this.server = null;
+            }
+        }
+    }
+
+    private final File directory;
+
+    private final int maxAttempts;
+
+    private final long retryDelay;
+
+    private final long sendInterval;
+
+    private final PasswordResolver passwordResolver;
+
+    private final DelayQueue<QueuedMail> queue = new DelayQueue<QueuedMail>();
+
+    /**
+     * The statuses of the queued mails and of the last sent or failed ones.
+     */
+    private final Map<String, MailStatus> statuses = Collections.synchronizedMap(
+        new LinkedHashMap<String, MailStatus>()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MailStatus> eldest)
+            {
+                return size() > MAX_STATUSES;
+            }
+        });
+
+    /**
+     * The dates before which no mail must be sent to each SMTP server, used to throttle the delivery.
+     */
+    private final ConcurrentMap<String, AtomicLong> nextSendDates = new ConcurrentHashMap<String, AtomicLong>();
+
+    private final List<Thread> workers = new ArrayList<Thread>();
+
+    private volatile boolean stopped;
+
+    /**
+     * Creates a queue and starts its workers. The mails left in the directory by a previous queue are sent again.
+     * 
+     * @param directory the directory where the queued mails are stored
+     * @param threads the number of workers sending the mails
+     * @param maxAttempts the number of delivery attempts after which a mail is dropped
+     * @param retryDelay the delay before the first retry, in milliseconds, doubled after each failed attempt
+     * @param sendInterval the minimum delay between two mails sent to the same SMTP server, in milliseconds
+     * @param passwordResolver resolves the SMTP password of the mails queued with a user name
+     * @throws IOException if the directory cannot be created
+     */
+    public MailQueue(File directory, int threads, int maxAttempts, long retryDelay, long sendInterval,
+        PasswordResolver passwordResolver) throws IOException
+    {
+        this.directory = directory;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.sendInterval = sendInterval;
+        this.passwordResolver = passwordResolver;
+
+        FileUtils.forceMkdir(directory);
+        load();
+
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(new Worker(), "XWiki mail sender " + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            this.workers.add(thread);
+        }
+    }
+
+    /**
+     * Adds a mail to the queue.
+     * 
+     * @param message the message to send
+     * @param sessionProperties the JavaMail session properties, which specify the SMTP server
+     * @param wiki the wiki which queues the mail, passed to the {@link PasswordResolver}
+     * @param username the SMTP user name, {@code null} if the server doesn't use authentication
+     * @return the identifier of the queued mail, used to get its status
+     * @throws IOException if storing the mail fails
+     * @throws MessagingException if the message cannot be written
+     */
+    public String add(MimeMessage message, Properties sessionProperties, String wiki, String username)
+        throws IOException, MessagingException
+    {
+        String id = UUID.randomUUID().toString();
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(getMessageFile(id)));
+        try {
+            message.writeTo(out);
+        } finally {
+            out.close();
+        }
+
+        Properties properties = new Properties();
+        properties.putAll(sessionProperties);
+        if (wiki != null) {
+            properties.setProperty(WIKI, wiki);
+        }
+        if (username != null) {
+            properties.setProperty(USERNAME, username);
+        }
+        // The properties file is written last since it marks the mail as completely stored.
+        QueuedMail mail = new QueuedMail(new MailStatus(id), properties, 0);
+        store(mail);
+        enqueue(mail);
+
+        return id;
+    }
+
+    /**
+     * @param id the identifier of a queued mail
+     * @return the status of the mail, {@code null} if the mail is unknown
+     */
+    public MailStatus getStatus(String id)
+    {
+        return this.statuses.get(id);
+    }
+
+    /**
+     * @return the number of mails waiting to be sent
+     */
+    public int size()
+    {
+        return this.queue.size();
+    }
+
+    /**
+     * Stops the workers and waits for the mails being sent. The mails not sent yet stay on disk and are sent by the
+     * next queue created for the same directory.
+     */
+    public void stop()
+    {
+        this.stopped = true;
+        for (Thread worker : this.workers) {
+            worker.interrupt();
+        }
+        // A mail still being sent when the next queue loads the directory would be sent twice.
+        for (Thread worker : this.workers) {
+            try {
+                worker.join(STOP_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queues the mails stored in the directory.
+     */
+    private void load()
+    {
+        File[] files = this.directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(PROPERTIES_EXTENSION)) {
+                String id = StringUtils.removeEnd(name, PROPERTIES_EXTENSION);
+                try {
+                    Properties properties = new Properties();
+                    InputStream in = new FileInputStream(file);
+                    try {
+                        properties.load(in);
+                    } finally {
+                        in.close();
+                    }
+                    int attempts = Integer.parseInt(properties.getProperty(ATTEMPTS, "0"));
+                    enqueue(new QueuedMail(new MailStatus(id), properties, attempts));
+                } catch (Exception e) {
+                    LOGGER.error("Failed to load queued mail [{}]", id, e);
+                }
+            } else if (name.endsWith(MESSAGE_EXTENSION)
+                && !getPropertiesFile(StringUtils.removeEnd(name, MESSAGE_EXTENSION)).exists())
+            {
+                // The mail wasn't completely stored.
+                file.delete();
+            }
+        }
+    }
+
+    private void enqueue(QueuedMail mail)
+    {
+        this.statuses.put(mail.status.getId(), mail.status);
+        this.queue.add(mail);
+    }
+
+    /**
+     * Schedules a new delivery attempt, or drops the mail if it failed too many times.
+     * 
+     * @param mail the mail which failed to be sent
+     * @param e the delivery error
+     */
+    private void retry(QueuedMail mail, Exception e)
+    {
+        mail.attempts++;
+        if (mail.attempts >= this.maxAttempts) {
+            LOGGER.error("Failed to send mail [{}] after [{}] attempts", new Object[] {mail.status.getId(),
+                mail.attempts, e});
+            delete(mail.status.getId());
+            mail.status.setFailure(mail.attempts, e.getMessage(), MailStatus.State.FAILED);
+            return;
+        }
+
+        LOGGER.warn("Failed to send mail [{}], it will be retried: {}", mail.status.getId(), e.getMessage());
+        mail.nextAttempt = System.currentTimeMillis() + (this.retryDelay << (mail.attempts - 1));
+        try {
+            store(mail);
+        } catch (IOException ioe) {
+            LOGGER.warn("Failed to store the attempts of mail [{}]", mail.status.getId(), ioe);
+        }
+        mail.status.setFailure(mail.attempts, e.getMessage(), MailStatus.State.QUEUED);
+        this.queue.add(mail);
+    }
+
+    /**
+     * Waits until a mail can be sent to the given SMTP server.
+     * 
+     * @param server the SMTP server
+     * @throws InterruptedException if the queue is stopped while waiting
+     */
+    private void throttle(String server) throws InterruptedException
+    {
+        if (this.sendInterval <= 0) {
+            return;
+        }
+
+        AtomicLong nextSendDate = this.nextSendDates.get(server);
+        if (nextSendDate == null) {
+            this.nextSendDates.putIfAbsent(server, new AtomicLong());
+            nextSendDate = this.nextSendDates.get(server);
+        }
+
+        // Reserve the next free slot.
+        long now;
+        long slot;
+        long current;
+        do {
+            current = nextSendDate.get();
+            now = System.currentTimeMillis();
+            slot = Math.max(current, now);
+        } while (!nextSendDate.compareAndSet(current, slot + this.sendInterval));
+
+        if (slot > now) {
+            Thread.sleep(slot - now);
+        }
+    }
+
+    private Properties getSessionProperties(Properties properties)
+    {
+        Properties sessionProperties = new Properties();
+        sessionProperties.putAll(properties);
+        sessionProperties.remove(USERNAME);
+        sessionProperties.remove(WIKI);
+        sessionProperties.remove(ATTEMPTS);
+
+        return sessionProperties;
+    }
+
+    private MimeMessage readMessage(String id, Session session) throws IOException, MessagingException
+    {
+        InputStream in = new BufferedInputStream(new FileInputStream(getMessageFile(id)));
+        try {
+            return new MimeMessage(session, in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private void store(QueuedMail mail) throws IOException
+    {
+        mail.properties.setProperty(ATTEMPTS, String.valueOf(mail.attempts));
+        OutputStream out = new FileOutputStream(getPropertiesFile(mail.status.getId()));
+        try {
+            mail.properties.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void delete(String id)
+    {
+        getPropertiesFile(id).delete();
+        getMessageFile(id).delete();
+    }
+
+    private File getMessageFile(String id)
+    {
+        return new File(this.directory, id + MESSAGE_EXTENSION);
+    }
+
+    private File getPropertiesFile(String id)
+    {
+        return new File(this.directory, id + PROPERTIES_EXTENSION);
+    }
+}
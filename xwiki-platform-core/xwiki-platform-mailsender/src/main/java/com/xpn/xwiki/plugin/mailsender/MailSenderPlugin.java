@@ -58,6 +58,11 @@
 import org.apache.velocity.context.Context;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.environment.Environment;
 import org.xwiki.rendering.syntax.Syntax;
 
 import com.xpn.xwiki.XWiki;
@@ -73,6 +78,7 @@
 import com.xpn.xwiki.plugin.XWikiPluginInterface;
 import com.xpn.xwiki.render.XWikiVelocityRenderer;
 import com.xpn.xwiki.web.ExternalServletURLFactory;
+import com.xpn.xwiki.web.Utils;
 import com.xpn.xwiki.web.XWikiURLFactory;
 
 /**
@@ -120,6 +126,49 @@ public class MailSenderPlugin extends XWikiDefaultPlugin
     /** The name of the header that specifies the sender of the mail. */
     private static final String FROM = "From";
 
+    /** The queue used to send mails asynchronously, created on first use. */
+    private MailQueue mailQueue;
+
+    /**
+     * Resolves the SMTP password of the queued mails from the mail configuration of the wiki which queued them, so
+     * that the password is not stored with the mails.
+     */
+    private static class ConfigurationPasswordResolver implements MailQueue.PasswordResolver
+    {
+        @Override
+        public String getPassword(String wiki, String username)
+        {
+            // The queue workers are not XWiki threads, so they need their own execution context.
+            ExecutionContext executionContext = new ExecutionContext();
+            try {
+                Utils.getComponent(ExecutionContextManager.class).initialize(executionContext);
+            } catch (ExecutionContextException e) {
+                LOGGER.error("Failed to initialize the execution context to resolve the SMTP password", e);
+                return null;
+            }
+
+            try {
+                XWikiContext context = (XWikiContext) executionContext.getProperty(XWikiContext.EXECUTIONCONTEXT_KEY);
+                if (context == null) {
+                    return null;
+                }
+                if (wiki != null) {
+                    context.setDatabase(wiki);
+                }
+                MailConfiguration mailConfiguration =
+                    new MailConfiguration(new com.xpn.xwiki.api.XWiki(context.getWiki(), context));
+                if (!StringUtils.equals(username, mailConfiguration.getSmtpUsername())) {
+                    LOGGER.warn("The SMTP user name of wiki [{}] changed since the mails were queued", wiki);
+                    return null;
+                }
+
+                return mailConfiguration.getSmtpPassword();
+            } finally {
+                Utils.getComponent(Execution.class).removeContext();
+            }
+        }
+    }
+
     /**
      * Default plugin constructor.
      * 
@@ -138,6 +187,30 @@ public void init(XWikiContext context)
         } catch (Exception e) {
             e.printStackTrace();
         }
+
+        // Start the queue now in order to send the mails left by a previous run.
+        try {
+            getMailQueue(context);
+        } catch (Exception e) {
+            LOGGER.error("Failed to start the mail queue", e);
+        }
+    }
+
+    @Override
+    public void flushCache(XWikiContext context)
+    {
+        // Restart the queue. The mails not sent yet are stored on disk and sent by the new queue.
+        synchronized (this) {
+            if (this.mailQueue != null) {
+                this.mailQueue.stop();
+                this.mailQueue = null;
+            }
+        }
+        try {
+            getMailQueue(context);
+        } catch (Exception e) {
+            LOGGER.error("Failed to restart the mail queue", e);
+        }
     }
 
     @Override
@@ -778,6 +851,103 @@ public boolean sendMails(Collection<Mail> emails, MailConfiguration mailConfigur
         return true;
     }
 
+    /**
+     * @param context the XWiki context
+     * @return the queue used to send mails asynchronously
+     * @throws IOException if the queue directory cannot be created
+     * @since 4.4M1
+     */
+    public synchronized MailQueue getMailQueue(XWikiContext context) throws IOException
+    {
+        if (this.mailQueue == null) {
+            XWiki xwiki = context.getWiki();
+            File directory =
+                new File(Utils.getComponent(Environment.class).getPermanentDirectory(), "mailsender/queue");
+            this.mailQueue =
+                new MailQueue(directory, (int) xwiki.ParamAsLong("xwiki.plugins.mailsender.queue.threads", 2),
+                    (int) xwiki.ParamAsLong("xwiki.plugins.mailsender.queue.maxAttempts", 5),
+                    xwiki.ParamAsLong("xwiki.plugins.mailsender.queue.retryDelay", 60) * 1000,
+                    xwiki.ParamAsLong("xwiki.plugins.mailsender.queue.sendInterval", 0),
+                    new ConfigurationPasswordResolver());
+        }
+
+        return this.mailQueue;
+    }
+
+    /**
+     * Queue a single Mail, to be sent asynchronously.
+     * 
+     * @param mailItem The Mail to send
+     * @return the identifier of the queued mail, used to get its status, or {@code null} if the mail has no recipient
+     * @since 4.4M1
+     */
+    public String queueMail(Mail mailItem, XWikiContext context) throws MessagingException, IOException,
+        XWikiException
+    {
+        com.xpn.xwiki.api.XWiki xwikiApi = new com.xpn.xwiki.api.XWiki(context.getWiki(), context);
+        return queueMail(mailItem, new MailConfiguration(xwikiApi), context);
+    }
+
+    /**
+     * Queue a single Mail, to be sent asynchronously.
+     * 
+     * @param mailItem The Mail to send
+     * @return the identifier of the queued mail, used to get its status, or {@code null} if the mail has no recipient
+     * @since 4.4M1
+     */
+    public String queueMail(Mail mailItem, MailConfiguration mailConfiguration, XWikiContext context)
+        throws MessagingException, IOException, XWikiException
+    {
+        Properties props = initProperties(mailConfiguration);
+        MimeMessage message = createMimeMessage(mailItem, Session.getInstance(props, null), context);
+        if (message == null) {
+            return null;
+        }
+
+        String id =
+            getMailQueue(context).add(message, props, context.getDatabase(),
+                mailConfiguration.usesAuthentication() ? mailConfiguration.getSmtpUsername() : null);
+        LOGGER.info("Queued email [{}]: {}", id, mailItem);
+
+        return id;
+    }
+
+    /**
+     * Queue a Collection of Mails, to be sent asynchronously. A mail which cannot be queued doesn't prevent the
+     * others from being queued.
+     * 
+     * @param emails Mail Collection
+     * @return the identifiers of the queued mails
+     * @since 4.4M1
+     */
+    public List<String> queueMails(Collection<Mail> emails, MailConfiguration mailConfiguration,
+        XWikiContext context)
+    {
+        List<String> ids = new ArrayList<String>(emails.size());
+        for (Mail mail : emails) {
+            try {
+                String id = queueMail(mail, mailConfiguration, context);
+                if (id != null) {
+                    ids.add(id);
+                }
+            } catch (Exception e) {
+                LOGGER.error("Failed to queue email [" + mail + "]", e);
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * @param id the identifier of a queued mail
+     * @return the delivery status of the mail, {@code null} if the mail is unknown
+     * @since 4.4M1
+     */
+    public MailStatus getMailStatus(String id, XWikiContext context) throws IOException
+    {
+        return getMailQueue(context).getStatus(id);
+    }
+
     /**
      * Uses an XWiki document to build the message subject and context, based on variables stored in the
      * VelocityContext. Sends the email.
@@ -794,6 +964,33 @@ public boolean sendMails(Collection<Mail> emails, MailConfiguration mailConfigur
      */
     public int sendMailFromTemplate(String templateDocFullName, String from, String to, String cc, String bcc,
         String language, VelocityContext vcontext, XWikiContext context) throws XWikiException
+    {
+        return sendMailFromTemplate(templateDocFullName, from, to, cc, bcc, language, vcontext, false, context);
+    }
+
+    /**
+     * Uses an XWiki document to build the message subject and context, based on variables stored in the
+     * VelocityContext. Queues the email, to be sent asynchronously.
+     * 
+     * @param templateDocFullName Full name of the template to be used (example: XWiki.MyEmailTemplate). The template
+     *            needs to have an XWiki.Email object attached
+     * @param from Email sender
+     * @param to Email recipient
+     * @param cc Email Carbon Copy
+     * @param bcc Email Hidden Carbon Copy
+     * @param language Language of the email
+     * @param vcontext Velocity context passed to the velocity renderer
+     * @return 0 if the email has been queued
+     * @since 4.4M1
+     */
+    public int queueMailFromTemplate(String templateDocFullName, String from, String to, String cc, String bcc,
+        String language, VelocityContext vcontext, XWikiContext context) throws XWikiException
+    {
+        return sendMailFromTemplate(templateDocFullName, from, to, cc, bcc, language, vcontext, true, context);
+    }
+
+    private int sendMailFromTemplate(String templateDocFullName, String from, String to, String cc, String bcc,
+        String language, VelocityContext vcontext, boolean queue, XWikiContext context) throws XWikiException
     {
         XWikiURLFactory originalURLFactory = context.getURLFactory();
         try {
@@ -833,7 +1030,11 @@ public int sendMailFromTemplate(String templateDocFullName, String from, String
             mail.setAttachments(docApi.getAttachmentList());
 
             try {
-                sendMail(mail, context);
+                if (queue) {
+                    queueMail(mail, context);
+                } else {
+                    sendMail(mail, context);
+                }
                 return 0;
             } catch (Exception e) {
                 LOGGER.error("sendEmailFromTemplate: " + templateDocFullName + " vcontext: " + updatedVelocityContext, e);
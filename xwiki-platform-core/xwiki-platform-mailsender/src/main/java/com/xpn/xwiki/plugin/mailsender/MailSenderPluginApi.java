@@ -205,4 +205,65 @@ public int sendMail(Mail mail, MailConfiguration mailConfiguration)
 
         return result;
     }
+
+    /**
+     * Queues a mail, to be sent asynchronously using the mail configuration of the current wiki.
+     * 
+     * @param mail the mail to send
+     * @return the identifier of the queued mail, used to get its status, or {@code null} on failure. On failure the
+     *         error message is stored in the XWiki context under the "error" key.
+     * @since 4.4M1
+     */
+    public String queueMail(Mail mail)
+    {
+        try {
+            return getProtectedPlugin().queueMail(mail, this.context);
+        } catch (Exception e) {
+            // If the exception is a null pointer exception there is no message and e.getMessage() is null.
+            if (e.getMessage() != null) {
+                this.context.put("error", e.getMessage());
+            }
+            LOGGER.error("Failed to queue email [" + mail.toString() + "]", e);
+            return null;
+        }
+    }
+
+    /**
+     * Queues a mail, to be sent asynchronously using the given mail configuration.
+     * 
+     * @param mail the mail to send
+     * @param mailConfiguration the SMTP server configuration
+     * @return the identifier of the queued mail, used to get its status, or {@code null} on failure. On failure the
+     *         error message is stored in the XWiki context under the "error" key.
+     * @since 4.4M1
+     */
+    public String queueMail(Mail mail, MailConfiguration mailConfiguration)
+    {
+        try {
+            return getProtectedPlugin().queueMail(mail, mailConfiguration, this.context);
+        } catch (Exception e) {
+            // If the exception is a null pointer exception there is no message and e.getMessage() is null.
+            if (e.getMessage() != null) {
+                this.context.put("error", e.getMessage());
+            }
+            LOGGER.error("Failed to queue email [" + mail.toString() + "] using mail configuration ["
+                + mailConfiguration.toString() + "]", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param id the identifier of a queued mail, as returned by {@link #queueMail(Mail)}
+     * @return the delivery status of the mail, {@code null} if the mail is unknown
+     * @since 4.4M1
+     */
+    public MailStatus getMailStatus(String id)
+    {
+        try {
+            return getProtectedPlugin().getMailStatus(id, this.context);
+        } catch (Exception e) {
+            LOGGER.error("Failed to get the status of email [" + id + "]", e);
+            return null;
+        }
+    }
 }
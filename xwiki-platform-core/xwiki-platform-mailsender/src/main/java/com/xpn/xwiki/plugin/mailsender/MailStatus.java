@@ -0,0 +1,136 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.mailsender;
+
+import java.util.Date;
+
+/**
+ * The delivery status of a mail added to the {@link MailQueue}.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class MailStatus
+{
+    /**
+     * The delivery states of a mail.
+     */
+    public enum State
+    {
+        /** The mail waits to be sent, possibly after a failed attempt. */
+        QUEUED,
+
+        /** The mail is being sent. */
+        SENDING,
+
+        /** The mail has been accepted by the SMTP server. */
+        SENT,
+
+        /** The mail couldn't be sent and won't be retried. */
+        FAILED
+    }
+
+    private final String id;
+
+    private volatile State state = State.QUEUED;
+
+    private volatile int attempts;
+
+    private volatile String error;
+
+    private volatile Date date = new Date();
+
+    /**
+     * @param id the identifier of the mail in the queue
+     */
+    MailStatus(String id)
+    {
+        this.id = id;
+    }
+
+    /**
+     * @return the identifier of the mail in the queue
+     */
+    public String getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * @return the delivery state of the mail
+     */
+    public State getState()
+    {
+        return this.state;
+    }
+
+    /**
+     * @return the number of failed delivery attempts
+     */
+    public int getAttempts()
+    {
+        return this.attempts;
+    }
+
+    /**
+     * @return the message of the last delivery error, {@code null} if there was no error
+     */
+    public String getError()
+    {
+        return this.error;
+    }
+
+    /**
+     * @return the date of the last state change
+     */
+    public Date getDate()
+    {
+        return this.date;
+    }
+
+    /**
+     * @param state the new delivery state
+     */
+    void setState(State state)
+    {
+        this.state = state;
+        this.date = new Date();
+    }
+
+    /**
+     * Records a failed delivery attempt.
+     * 
+     * @param attempts the number of failed attempts so far
+     * @param error the error message
+     * @param state the new delivery state
+     */
+    void setFailure(int attempts, String error, State state)
+    {
+        this.attempts = attempts;
+        this.error = error;
+        setState(state);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Mail [" + this.id + "], state [" + this.state + "], attempts [" + this.attempts + "]";
+    }
+}
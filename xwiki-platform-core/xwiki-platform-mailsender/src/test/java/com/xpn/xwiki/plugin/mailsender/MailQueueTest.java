@@ -0,0 +1,229 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.mailsender;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.mail.Message;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.jvnet.mock_javamail.Mailbox;
+
+/**
+ * Unit tests for {@link MailQueue}. The mails are delivered to a mock SMTP server.
+ * 
+ * @version $Id$
+ */
+public class MailQueueTest
+{
+    private static final String RECIPIENT = "peter@acme.org";
+
+    private File directory;
+
+    private MailQueue queue;
+
+    private Properties properties;
+
+    /**
+     * The SMTP passwords resolved by the queue, indexed by wiki and user name.
+     */
+    private final Map<String, String> resolvedPasswords = new ConcurrentHashMap<String, String>();
+
+    private final MailQueue.PasswordResolver passwordResolver = new MailQueue.PasswordResolver()
+    {
+        @Override
+        public String getPassword(String wiki, String username)
+        {
+            if ("broken".equals(wiki)) {
+                throw new IllegalStateException("Cannot resolve the password");
+            }
+            resolvedPasswords.put(wiki + ':' + username, "secret");
+
+            return "secret";
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.directory = new File(System.getProperty("java.io.tmpdir"), "xwikitests/mailqueue");
+        FileUtils.deleteDirectory(this.directory);
+
+        this.properties = new Properties();
+        this.properties.put("mail.smtp.host", "myserver");
+        this.properties.put("mail.smtp.port", "25");
+
+        // Ensure that there are no messages in inbox
+        Mailbox.clearAll();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        if (this.queue != null) {
+            this.queue.stop();
+        }
+        FileUtils.deleteDirectory(this.directory);
+    }
+
+    private MimeMessage createMessage(String subject) throws Exception
+    {
+        MimeMessage message = new MimeMessage(Session.getInstance(this.properties));
+        message.setFrom(new InternetAddress("john@acme.org"));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress(RECIPIENT));
+        message.setSubject(subject);
+        message.setText("Text content");
+
+        return message;
+    }
+
+    private MailStatus waitFor(MailQueue mailQueue, String id, MailStatus.State state) throws Exception
+    {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (mailQueue.getStatus(id).getState() != state) {
+            Assert.assertTrue("Timed out waiting for " + state, System.currentTimeMillis() < timeout);
+            Thread.sleep(20);
+        }
+
+        return mailQueue.getStatus(id);
+    }
+
+    @Test
+    public void sendMails() throws Exception
+    {
+        this.queue = new MailQueue(this.directory, 2, 3, 100, 0, this.passwordResolver);
+
+        String id1 = this.queue.add(createMessage("First"), this.properties, null, null);
+        String id2 = this.queue.add(createMessage("Second"), this.properties, null, null);
+
+        waitFor(this.queue, id1, MailStatus.State.SENT);
+        waitFor(this.queue, id2, MailStatus.State.SENT);
+        Assert.assertEquals(2, Mailbox.get(RECIPIENT).size());
+        // The sent mails are removed from the disk.
+        Assert.assertEquals(0, this.directory.list().length);
+    }
+
+    @Test
+    public void retryFailedMail() throws Exception
+    {
+        this.queue = new MailQueue(this.directory, 1, 5, 100, 0, this.passwordResolver);
+        Mailbox.get(RECIPIENT).setError(true);
+
+        String id = this.queue.add(createMessage("Retried"), this.properties, null, null);
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (this.queue.getStatus(id).getAttempts() == 0) {
+            Assert.assertTrue(System.currentTimeMillis() < timeout);
+            Thread.sleep(20);
+        }
+        Assert.assertNotNull(this.queue.getStatus(id).getError());
+
+        Mailbox.get(RECIPIENT).setError(false);
+        waitFor(this.queue, id, MailStatus.State.SENT);
+        Assert.assertEquals(1, Mailbox.get(RECIPIENT).size());
+    }
+
+    @Test
+    public void failAfterMaxAttempts() throws Exception
+    {
+        this.queue = new MailQueue(this.directory, 1, 2, 10, 0, this.passwordResolver);
+        Mailbox.get(RECIPIENT).setError(true);
+
+        String id = this.queue.add(createMessage("Failed"), this.properties, null, null);
+
+        MailStatus status = waitFor(this.queue, id, MailStatus.State.FAILED);
+        Assert.assertEquals(2, status.getAttempts());
+        Assert.assertEquals(0, this.directory.list().length);
+    }
+
+    @Test
+    public void sendMailsLeftByPreviousQueue() throws Exception
+    {
+        MailQueue previousQueue = new MailQueue(this.directory, 0, 3, 100, 0, this.passwordResolver);
+        String id = previousQueue.add(createMessage("Persistent"), this.properties, null, null);
+        previousQueue.stop();
+        Assert.assertEquals(0, Mailbox.get(RECIPIENT).size());
+
+        this.queue = new MailQueue(this.directory, 1, 3, 100, 0, this.passwordResolver);
+
+        waitFor(this.queue, id, MailStatus.State.SENT);
+        Assert.assertEquals("Persistent", Mailbox.get(RECIPIENT).get(0).getSubject());
+    }
+
+    @Test
+    public void resolvePasswordWhenSending() throws Exception
+    {
+        MailQueue previousQueue = new MailQueue(this.directory, 0, 3, 100, 0, this.passwordResolver);
+        String id = previousQueue.add(createMessage("Authenticated"), this.properties, "wiki", "john");
+        previousQueue.stop();
+
+        // The password is not stored with the queued mail.
+        String storedProperties = FileUtils.readFileToString(new File(this.directory, id + ".properties"));
+        Assert.assertTrue(storedProperties.contains("john"));
+        Assert.assertFalse(storedProperties.contains("secret"));
+        Assert.assertTrue(this.resolvedPasswords.isEmpty());
+
+        this.queue = new MailQueue(this.directory, 1, 3, 100, 0, this.passwordResolver);
+
+        waitFor(this.queue, id, MailStatus.State.SENT);
+        Assert.assertEquals("secret", this.resolvedPasswords.get("wiki:john"));
+    }
+
+    @Test
+    public void sendNextMailAfterUnexpectedError() throws Exception
+    {
+        this.queue = new MailQueue(this.directory, 1, 1, 100, 0, this.passwordResolver);
+
+        String id1 = this.queue.add(createMessage("Broken"), this.properties, "broken", "john");
+        String id2 = this.queue.add(createMessage("Next"), this.properties, null, null);
+
+        MailStatus status = waitFor(this.queue, id1, MailStatus.State.FAILED);
+        Assert.assertEquals("Cannot resolve the password", status.getError());
+        waitFor(this.queue, id2, MailStatus.State.SENT);
+        Assert.assertEquals("Next", Mailbox.get(RECIPIENT).get(0).getSubject());
+        Assert.assertEquals(0, this.directory.list().length);
+    }
+
+    @Test
+    public void throttleMailsSentToTheSameServer() throws Exception
+    {
+        this.queue = new MailQueue(this.directory, 2, 3, 100, 200, this.passwordResolver);
+
+        long start = System.currentTimeMillis();
+        String id1 = this.queue.add(createMessage("First"), this.properties, null, null);
+        String id2 = this.queue.add(createMessage("Second"), this.properties, null, null);
+        String id3 = this.queue.add(createMessage("Third"), this.properties, null, null);
+        waitFor(this.queue, id1, MailStatus.State.SENT);
+        waitFor(this.queue, id2, MailStatus.State.SENT);
+        waitFor(this.queue, id3, MailStatus.State.SENT);
+
+        Assert.assertTrue(System.currentTimeMillis() - start >= 400);
+    }
+}
@@ -136,6 +136,7 @@
 import com.xpn.xwiki.doc.XWikiDeletedDocument;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.doc.XWikiDocumentArchive;
+import com.xpn.xwiki.internal.event.WikiBulkCopiedEvent;
 import com.xpn.xwiki.internal.event.XObjectAddedEvent;
 import com.xpn.xwiki.internal.event.XObjectDeletedEvent;
 import com.xpn.xwiki.internal.event.XObjectEvent;
@@ -144,6 +145,8 @@
 import com.xpn.xwiki.internal.event.XObjectPropertyEvent;
 import com.xpn.xwiki.internal.event.XObjectPropertyUpdatedEvent;
 import com.xpn.xwiki.internal.event.XObjectUpdatedEvent;
+import com.xpn.xwiki.internal.skin.SkinResourceCache;
+import com.xpn.xwiki.internal.template.TemplateResolver;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.objects.PropertyInterface;
 import com.xpn.xwiki.objects.classes.BaseClass;
@@ -162,13 +165,18 @@
 import com.xpn.xwiki.stats.impl.XWikiStatsServiceImpl;
 import com.xpn.xwiki.store.AttachmentRecycleBinStore;
 import com.xpn.xwiki.store.AttachmentVersioningStore;
+import com.xpn.xwiki.store.HibernateWikiCopier;
+import com.xpn.xwiki.store.VoidAttachmentVersioningStore;
 import com.xpn.xwiki.store.XWikiAttachmentStoreInterface;
 import com.xpn.xwiki.store.XWikiCacheStore;
 import com.xpn.xwiki.store.XWikiCacheStoreInterface;
+import com.xpn.xwiki.store.XWikiHibernateAttachmentStore;
 import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xpn.xwiki.store.XWikiHibernateVersioningStore;
 import com.xpn.xwiki.store.XWikiRecycleBinStoreInterface;
 import com.xpn.xwiki.store.XWikiStoreInterface;
 import com.xpn.xwiki.store.XWikiVersioningStoreInterface;
+import com.xpn.xwiki.store.hibernate.HibernateAttachmentVersioningStore;
 import com.xpn.xwiki.user.api.XWikiAuthService;
 import com.xpn.xwiki.user.api.XWikiGroupService;
 import com.xpn.xwiki.user.api.XWikiRightService;
@@ -179,6 +187,7 @@
 import com.xpn.xwiki.user.impl.xwiki.XWikiRightServiceImpl;
 import com.xpn.xwiki.util.Util;
 import com.xpn.xwiki.util.XWikiStubContextProvider;
+import com.xpn.xwiki.web.SkinAction;
 import com.xpn.xwiki.web.Utils;
 import com.xpn.xwiki.web.XWikiEngineContext;
 import com.xpn.xwiki.web.XWikiMessageTool;
@@ -327,6 +336,11 @@ public class XWiki implements EventListener
     private EntityReferenceValueProvider defaultEntityReferenceValueProvider = Utils
         .getComponent((Type) EntityReferenceValueProvider.class);
 
+    /**
+     * Used to find the templates, lazily initialized.
+     */
+    private TemplateResolver templateResolver;
+
     /**
      * Used to resolve a string into a proper Document Reference using the current document's reference to fill the
      * blanks, except for the page name for which the default page name is used instead.
@@ -1761,63 +1775,18 @@ public String evaluateTemplate(String template, XWikiContext context) throws IOE
             return "";
         }
 
-        String content = getResourceContent(template);
+        String content = getTemplateResolver().getTemplate(template, context);
         return XWikiVelocityRenderer.evaluate(content, template, (VelocityContext) context.get("vcontext"), context);
     }
 
     public String parseTemplate(String template, String skin, XWikiContext context)
     {
         try {
-            XWikiDocument doc = getDocument(skin, context);
-            if (!doc.isNew()) {
-                // Try parsing the object property
-                BaseObject object =
-                    doc.getXObject(new DocumentReference(doc.getDocumentReference().getWikiReference().getName(),
-                        SYSTEM_SPACE, "XWikiSkins"));
-                if (object != null) {
-                    String content = object.getStringValue(template);
-                    if (StringUtils.isNotBlank(content)) {
-                        // Let's use this template
-                        // Use "" as namespace to register macros in global namespace. That way it
-                        // can be used in a renderer content not parsed at the same level.
-                        return XWikiVelocityRenderer.evaluate(content, "", (VelocityContext) context.get("vcontext"),
-                            context);
-                    }
-                }
-                // Try parsing a document attachment
-                XWikiAttachment attachment = doc.getAttachment(template);
-                if (attachment != null) {
-                    // It's impossible to know the real attachemtn encoding, but let's assume that they respect the
-                    // standard and use UTF-8 (which is required for the files located on the filesystem)
-                    String content = IOUtils.toString(attachment.getContentInputStream(context), DEFAULT_ENCODING);
-                    if (StringUtils.isNotBlank(content)) {
-                        // Let's use this template
-                        // Use "" as namespace to register macros in global namespace. That way it
-                        // can be used in a renderer content not parsed at the same level.
-                        return XWikiVelocityRenderer.evaluate(content, "", (VelocityContext) context.get("vcontext"),
-                            context);
-                    }
-                }
-            }
-        } catch (Exception e) {
-        }
-
-        // Try parsing a file located in the directory with the same name.
-        try {
-            String path = "/skins/" + skin + "/" + template;
-            // We must make sure the file is taken from the skins directory, otherwise people might
-            // try to read things from WEB-INF.
-            path = URI.create(path).normalize().toString();
-            // This is a safe assumption, as templates found under /templates/ are treated
-            // separately, and there is no need to have templates in another place.
-            if (path.startsWith("/skins/")) {
-                String content = getResourceContent(path);
+            String content = getTemplateResolver().getSkinTemplate(template, skin, context);
+            if (content != null) {
                 // Use "" as namespace to register macros in global namespace. That way it can be
                 // used in a renderer content not parsed at the same level.
                 return XWikiVelocityRenderer.evaluate(content, "", (VelocityContext) context.get("vcontext"), context);
-            } else {
-                LOGGER.warn("Illegal access, tried to use file [" + path + "] as a template."
-                    + " Possible break-in attempt!");
             }
         } catch (Exception e) {
         }
@@ -1825,6 +1794,18 @@ public String parseTemplate(String template, String skin, XWikiContext context)
         return null;
     }
 
+    /**
+     * @return the component used to find and cache the content of the templates
+     */
+    private TemplateResolver getTemplateResolver()
+    {
+        if (this.templateResolver == null) {
+            this.templateResolver = Utils.getComponent(TemplateResolver.class);
+        }
+
+        return this.templateResolver;
+    }
+
     public String renderTemplate(String template, String skin, XWikiContext context)
     {
         try {
@@ -1941,7 +1922,7 @@ public String getSkinFile(String filename, String skin, boolean forceSkinAction,
                     if (StringUtils.isNotBlank(content)) {
                         URL url =
                             urlf.createSkinURL(filename, doc.getSpace(), doc.getName(), doc.getDatabase(), context);
-                        return urlf.getURL(url, context);
+                        return addSkinFileVersion(urlf.getURL(url, context), doc.getVersion());
                     }
                 }
 
@@ -1949,7 +1930,8 @@ public String getSkinFile(String filename, String skin, boolean forceSkinAction,
                 String shortName = StringUtils.replaceChars(filename, '/', '.');
                 XWikiAttachment attachment = doc.getAttachment(shortName);
                 if (attachment != null) {
-                    return doc.getAttachmentURL(shortName, "skin", context);
+                    return addSkinFileVersion(doc.getAttachmentURL(shortName, "skin", context),
+                        attachment.getVersion());
                 }
             }
 
@@ -1963,7 +1945,7 @@ public String getSkinFile(String filename, String skin, boolean forceSkinAction,
                 } else {
                     url = urlf.createSkinURL(filename, skin, context);
                 }
-                return urlf.getURL(url, context);
+                return addSkinFileVersion(urlf.getURL(url, context), SkinAction.getFilesystemVersion(path, context));
             }
 
             // Look for a resource file
@@ -1971,7 +1953,7 @@ public String getSkinFile(String filename, String skin, boolean forceSkinAction,
             if (resourceExists(path)) {
                 URL url;
                 url = urlf.createResourceURL(filename, forceSkinAction, context);
-                return urlf.getURL(url, context);
+                return addSkinFileVersion(urlf.getURL(url, context), SkinAction.getFilesystemVersion(path, context));
             }
 
         } catch (Exception e) {
@@ -1983,6 +1965,28 @@ public String getSkinFile(String filename, String skin, boolean forceSkinAction,
         return null;
     }
 
+    /**
+     * Adds the version of a skin file to its URL, so that the URL changes as soon as the file changes and the clients
+     * can cache the file for long.
+     * 
+     * @param url the URL of the skin file
+     * @param contentVersion the version of the raw content of the skin file, {@code null} if unknown
+     * @return the URL holding the version of the skin file
+     */
+    private String addSkinFileVersion(String url, String contentVersion)
+    {
+        if (contentVersion == null) {
+            return url;
+        }
+
+        String version = Utils.getComponent(SkinResourceCache.class).getResourceVersion(contentVersion);
+        StringBuilder result = new StringBuilder(url);
+        result.append(url.indexOf('?') < 0 ? '?' : '&').append(SkinAction.VERSION_PARAMETER).append('=');
+        result.append(Util.encodeURI(version, null));
+
+        return result.toString();
+    }
+
     public String getSkin(XWikiContext context)
     {
         String skin = "";
@@ -4258,6 +4262,10 @@ public int copyWiki(String sourceWiki, String targetWiki, String language, XWiki
 
     /**
      * Copy an entire wiki to a target wiki.
+     * <p>
+     * When {@code xwiki.store.copy.bulk} is enabled and all the languages are copied into an empty (or cleaned) target
+     * wiki, the documents are copied directly in the database by batches of rows instead of one by one. In that case no
+     * event is sent for each copied document, only the final {@link WikiBulkCopiedEvent}.
      * 
      * @param sourceWiki the source wiki identifier
      * @param targetWiki the target wiki identifier
@@ -4270,17 +4278,58 @@ public int copyWiki(String sourceWiki, String targetWiki, String language, XWiki
     public int copyWiki(String sourceWiki, String targetWiki, String language, boolean clean, XWikiContext context)
         throws XWikiException
     {
-        int documents = copySpaceBetweenWikis(null, sourceWiki, targetWiki, language, clean, context);
+        int documents;
+        WikiCopiedEvent event;
+
+        HibernateWikiCopier copier = language == null ? getBulkWikiCopier() : null;
+        if (copier != null && (clean || copier.isEmpty(targetWiki, context))) {
+            LOGGER.info("Copying wiki [{}] to wiki [{}] in bulk", sourceWiki, targetWiki);
+
+            documents =
+                copier.copyWiki(sourceWiki, targetWiki, "1".equals(Param("xwiki.store.copy.history", "0")), clean,
+                    context);
+
+            // The copied documents did not go through the caches
+            flushCache(context);
+
+            event = new WikiBulkCopiedEvent(sourceWiki, targetWiki);
+        } else {
+            documents = copySpaceBetweenWikis(null, sourceWiki, targetWiki, language, clean, context);
+
+            event = new WikiCopiedEvent(sourceWiki, targetWiki);
+        }
 
         ObservationManager om = Utils.getComponent((Type) ObservationManager.class);
 
         if (om != null) {
-            om.notify(new WikiCopiedEvent(sourceWiki, targetWiki), sourceWiki, context);
+            om.notify(event, sourceWiki, context);
         }
 
         return documents;
     }
 
+    /**
+     * @return the tool used to copy a wiki directly in the database, or null if bulk copy is disabled or not supported
+     *         by the configured stores
+     */
+    private HibernateWikiCopier getBulkWikiCopier()
+    {
+        if (!"1".equals(Param("xwiki.store.copy.bulk", "0")) || hasDynamicCustomMappings()) {
+            return null;
+        }
+
+        // All the documents data must be stored in the tables of the Hibernate mapping
+        XWikiHibernateStore hibernateStore = getHibernateStore();
+        if (hibernateStore == null || !(getVersioningStore() instanceof XWikiHibernateVersioningStore)
+            || !(getAttachmentStore() instanceof XWikiHibernateAttachmentStore)
+            || !(getAttachmentVersioningStore() instanceof HibernateAttachmentVersioningStore
+            || getAttachmentVersioningStore() instanceof VoidAttachmentVersioningStore)) {
+            return null;
+        }
+
+        return new HibernateWikiCopier(hibernateStore);
+    }
+
     public String getEncoding()
     {
         return Param("xwiki.encoding", "UTF-8");
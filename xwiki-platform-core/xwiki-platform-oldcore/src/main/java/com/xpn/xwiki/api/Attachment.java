@@ -20,6 +20,7 @@
 package com.xpn.xwiki.api;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.Date;
 import java.util.List;
@@ -143,6 +144,16 @@ public byte[] getContentAsBytes() throws XWikiException
         }
     }
 
+    /**
+     * @return a stream to read the content of the attachment, without loading the whole content in memory
+     * @throws XWikiException if the attachment content cannot be loaded
+     * @since 4.4M1
+     */
+    public InputStream getContentInputStream() throws XWikiException
+    {
+        return this.attachment.getContentInputStream(getXWikiContext());
+    }
+
     public String getContentAsString() throws XWikiException
     {
         // TODO: detect correct encoding for XML files?
@@ -23,6 +23,7 @@
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -383,6 +384,27 @@ public List<Object> getProperties(String documentReference, String className)
         return result;
     }
 
+    @Override
+    public Map<String, Object> getProperties(DocumentReference documentReference, DocumentReference classReference)
+        throws XWikiException
+    {
+        XWikiContext xcontext = getContext();
+        BaseObject object = xcontext.getWiki().getDocument(documentReference, xcontext).getXObject(classReference);
+        if (object == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Object> properties = new HashMap<String, Object>();
+        for (String propertyName : object.getPropertyList()) {
+            BaseProperty property = (BaseProperty) object.safeget(propertyName);
+            if (property != null) {
+                properties.put(propertyName, property.getValue());
+            }
+        }
+
+        return properties;
+    }
+
     @Override
     public String getPropertyType(String className, String propertyName) throws Exception
     {
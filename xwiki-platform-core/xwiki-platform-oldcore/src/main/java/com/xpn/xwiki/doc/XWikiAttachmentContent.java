@@ -21,36 +21,52 @@
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import com.xpn.xwiki.web.Utils;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.disk.DiskFileItem;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.AutoCloseInputStream;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.io.output.ProxyOutputStream;
 import org.xwiki.environment.Environment;
 import org.xwiki.store.UnexpectedException;
 
 /**
  * The content of an attachment. Objects of this class hold the actual content which will be downloaded when a user
- * downloads an attachment.
+ * downloads an attachment. The content is kept in a temporary file (only small contents stay in memory) so that it can
+ * be read as many times as needed without being loaded on the heap.
  * 
  * @version $Id$
  */
 public class XWikiAttachmentContent implements Cloneable
 {
+    /** The algorithm used to compute the digest of the content. */
+    private static final String DIGEST_ALGORITHM = "MD5";
+
     /** The XWikiAttachment (attachment metadata) which this attachment content is associated with. */
     private XWikiAttachment attachment;
 
     /** True if the content is out of sync with the content stored in the database and thus needs to be saved. */
     private boolean isContentDirty;
 
-    /** Storage which holds the actual content. */
+    /** Storage which holds the actual content, {@code null} as long as no content has been set. */
     private FileItem file;
 
+    /** The hexadecimal digest of the content, {@code null} as long as it's not known. */
+    private String digest;
+
     /** The owner document. */
     private XWikiDocument ownerDocument;
 
@@ -63,6 +79,7 @@ public class XWikiAttachmentContent implements Cloneable
     public XWikiAttachmentContent(XWikiAttachmentContent original)
     {
         this.file = original.file;
+        this.digest = original.digest;
         this.attachment = original.attachment;
         this.isContentDirty = original.isContentDirty;
         this.ownerDocument = original.ownerDocument;
@@ -80,11 +97,11 @@ public XWikiAttachmentContent(XWikiAttachment attachment)
     }
 
     /**
-     * The default Constructor. For creating content which will be associated with an attachment later.
+     * The default Constructor. For creating content which will be associated with an attachment later. No temporary
+     * file is created until some content is set.
      */
     public XWikiAttachmentContent()
     {
-        this.file = this.getNewFileItem();
     }
 
     /**
@@ -144,7 +161,7 @@ public Object clone()
     @Deprecated
     public byte[] getContent()
     {
-        return this.file.get();
+        return this.file != null ? this.file.get() : new byte[0];
     }
 
     /**
@@ -214,6 +231,10 @@ public void setContentDirty(boolean contentDirty)
      */
     public InputStream getContentInputStream()
     {
+        if (this.file == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
         try {
             return new AutoCloseInputStream(this.file.getInputStream());
         } catch (IOException e) {
@@ -221,6 +242,24 @@ public InputStream getContentInputStream()
         }
     }
 
+    /**
+     * Give direct access to the file holding the content of the attachment, if any, so that it can be sent without
+     * going through an InputStream (see {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * ). The caller is responsible for closing the returned channel.
+     * 
+     * @return a channel to read the binary content of this attachment, or null if the content is not stored in a file
+     * @throws IOException if the file cannot be opened
+     * @since 4.4M1
+     */
+    public FileChannel getContentChannel() throws IOException
+    {
+        if (this.file instanceof DiskFileItem && !this.file.isInMemory()) {
+            return new FileInputStream(((DiskFileItem) this.file).getStoreLocation()).getChannel();
+        }
+
+        return null;
+    }
+
     /**
      * Set the content of the attachment by writing to a provided OutputStream.
      * Content is *not* appended, this method clears the content and creates new content.
@@ -235,9 +274,10 @@ public OutputStream getContentOutputStream()
     {
         final FileItem fi = getNewFileItem();
         final XWikiAttachmentContent xac = this;
+        final MessageDigest md = newMessageDigest();
         final OutputStream fios;
         try {
-            fios = fi.getOutputStream();
+            fios = new DigestOutputStream(fi.getOutputStream(), md);
         } catch (IOException e) {
             // DiskFileItem does not do anything which could cause an exception to be thrown.
             // so unless it is modified, this should not happen.
@@ -249,6 +289,7 @@ public void close() throws IOException
             {
                 super.close();
                 xac.file = fi;
+                xac.digest = new String(Hex.encodeHex(md.digest()));
                 xac.setContentDirty(true);
             }
         });
@@ -264,9 +305,11 @@ public void close() throws IOException
      */
     public void setContent(InputStream is, int len) throws IOException
     {
-        // TODO Fix so this sends a EOS when the limit is reached.
-        // this.setContent(new LimitedInputStream(is, ((long) len)));
-        this.setContent(is);
+        // A negative length means that the length is unknown, in which case the whole stream is read.
+        BoundedInputStream bounded = new BoundedInputStream(is, len);
+        // Don't close the provided stream, the caller might still need it (e.g. a ZipInputStream).
+        bounded.setPropagateClose(false);
+        this.setContent(bounded);
     }
 
     /**
@@ -278,8 +321,18 @@ public void setContent(InputStream is, int len) throws IOException
      */
     public void setContent(InputStream is) throws IOException
     {
-        this.file = this.getNewFileItem();
-        IOUtils.copy(is, this.file.getOutputStream());
+        FileItem fi = getNewFileItem();
+        MessageDigest md = newMessageDigest();
+        // The content is streamed to the temporary file and its digest is computed at the same time, so that the
+        // content never has to be fully loaded in memory.
+        OutputStream out = fi.getOutputStream();
+        try {
+            IOUtils.copyLarge(new DigestInputStream(is, md), out);
+        } finally {
+            out.close();
+        }
+        this.file = fi;
+        this.digest = new String(Hex.encodeHex(md.digest()));
         this.setContentDirty(true);
 
         this.attachment.setFilesize(this.getSize());
@@ -291,7 +344,55 @@ public void setContent(InputStream is) throws IOException
      */
     public int getSize()
     {
-        return (int) this.file.getSize();
+        long size = getLongSize();
+        // Don't roll over into the negative space for contents larger than 2GB.
+        return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+    }
+
+    /**
+     * @return the true size of the content of the attachment, which can be larger than 2GB
+     * @since 4.4M1
+     */
+    public long getLongSize()
+    {
+        return this.file != null ? this.file.getSize() : 0;
+    }
+
+    /**
+     * Get the digest of the content. It is computed while the content is set so that it's known without reading the
+     * content again; otherwise it's computed by streaming the content the first time it's requested.
+     * 
+     * @return the hexadecimal MD5 digest of the content
+     * @throws IOException if the content cannot be read
+     * @since 4.4M1
+     */
+    public String getDigest() throws IOException
+    {
+        if (this.digest == null) {
+            MessageDigest md = newMessageDigest();
+            InputStream is = new DigestInputStream(getContentInputStream(), md);
+            try {
+                IOUtils.copyLarge(is, new NullOutputStream());
+            } finally {
+                is.close();
+            }
+            this.digest = new String(Hex.encodeHex(md.digest()));
+        }
+
+        return this.digest;
+    }
+
+    /**
+     * @return a new instance of the algorithm used to compute the digest of the content
+     */
+    private static MessageDigest newMessageDigest()
+    {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // MD5 is provided by every Java platform.
+            throw new UnexpectedException("Failed to create a digest for the attachment content.", e);
+        }
     }
 
     /**
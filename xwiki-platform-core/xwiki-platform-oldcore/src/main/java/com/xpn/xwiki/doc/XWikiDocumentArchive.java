@@ -23,7 +23,9 @@
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
@@ -48,6 +50,12 @@
  */
 public class XWikiDocumentArchive
 {
+    /** Default number of versions between two full versions. */
+    private static final int DEFAULT_NODES_PER_FULL = 5;
+
+    /** Maximum number of reconstructed versions kept in memory. */
+    private static final int VERSION_CACHE_SIZE = 10;
+
     /** =docId. */
     private long id;
 
@@ -70,6 +78,21 @@
     /** Set of {@link XWikiRCSNodeContent} which need to update. */
     private Set<XWikiRCSNodeContent> updatedNodeContents = new TreeSet<XWikiRCSNodeContent>();
 
+    /**
+     * Last reconstructed versions, as lines of XML, so that browsing the history does not apply the same patches over
+     * and over again. Cleared each time the history is modified.
+     */
+    private Map<Version, List<String>> versionCache = new LinkedHashMap<Version, List<String>>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Version, List<String>> eldest)
+        {
+            return size() > VERSION_CACHE_SIZE;
+        }
+    };
+
     /** @param id = {@link XWikiDocument#getId()} */
     public XWikiDocumentArchive(long id)
     {
@@ -104,6 +127,7 @@ protected Version createNextVersion(Version cur, boolean isMinor)
     /** @param node - node added to versionToNode and fullNodes */
     protected void updateNode(XWikiRCSNodeInfo node)
     {
+        clearVersionCache();
         Version ver = node.getId().getVersion();
         versionToNode.put(ver, node);
         if (!node.isDiff()) {
@@ -130,11 +154,10 @@ protected XWikiRCSNodeContent makePatch(XWikiRCSNodeInfo newnode, XWikiDocument
         newnode.setContent(result);
         XWikiRCSNodeInfo latestNode = getLatestNode();
         if (latestNode != null) {
-            int nodesCount = getNodes().size();
-            int nodesPerFull =
-                context.getWiki() == null ? 5 : Integer.parseInt(context.getWiki().getConfig()
-                    .getProperty("xwiki.store.rcs.nodesPerFull", "5"));
-            if (nodesPerFull <= 0 || (nodesCount % nodesPerFull) != 0) {
+            int nodesPerFull = getNodesPerFull(context);
+            // Keep the previous version as a full version when the patches leading to it already reached the limit,
+            // so that loading any version never requires to apply more than nodesPerFull - 1 patches.
+            if (nodesPerFull <= 0 || countOlderDiffs(latestNode.getVersion(), nodesPerFull) < nodesPerFull - 1) {
                 XWikiRCSNodeContent latestContent = latestNode.getContent(context);
                 latestContent.getPatch().setDiffVersion(latestContent.getPatch().getContent(),
                     doc, context);
@@ -146,6 +169,78 @@ protected XWikiRCSNodeContent makePatch(XWikiRCSNodeInfo newnode, XWikiDocument
         return result;
     }
 
+    /**
+     * @param context used to access the configuration
+     * @return the maximum number of versions between two full versions, 0 or less meaning that only the latest
+     *         version is stored as a full version
+     */
+    protected int getNodesPerFull(XWikiContext context)
+    {
+        if (context == null || context.getWiki() == null) {
+            return DEFAULT_NODES_PER_FULL;
+        }
+
+        return Integer.parseInt(context.getWiki().getConfig()
+            .getProperty("xwiki.store.rcs.nodesPerFull", String.valueOf(DEFAULT_NODES_PER_FULL)));
+    }
+
+    /**
+     * @param version the version from which to count
+     * @param max the number after which to stop counting
+     * @return the number of consecutive patches stored just before the passed version, up to max
+     */
+    private int countOlderDiffs(Version version, int max)
+    {
+        int count = 0;
+        Iterator<XWikiRCSNodeInfo> it = versionToNode.tailMap(version).values().iterator();
+        // Skip the version itself
+        it.next();
+        while (count < max && it.hasNext() && it.next().isDiff()) {
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Make sure that no more than {@code nodesPerFull - 1} patches need to be applied to load any version, by storing
+     * as full versions the versions which are too far from the nearest full version. This is needed for histories
+     * created with a different configuration, by older versions, or after versions have been removed. Modified nodes
+     * need to be saved after.
+     * 
+     * @param context used for loading nodes content and accessing the configuration
+     * @return true if the history has been modified
+     * @throws XWikiException if any error
+     * @since 4.4M1
+     */
+    public boolean checkpoint(XWikiContext context) throws XWikiException
+    {
+        int nodesPerFull = getNodesPerFull(context);
+        if (nodesPerFull <= 0) {
+            return false;
+        }
+
+        boolean modified = false;
+        int diffs = 0;
+        List<String> text = new ArrayList<String>();
+        for (XWikiRCSNodeInfo node : getNodes()) {
+            XWikiRCSNodeContent content = node.getContent(context);
+            content.getPatch().patch(text);
+            if (!node.isDiff()) {
+                diffs = 0;
+            } else if (++diffs >= nodesPerFull) {
+                content.getPatch().setFullVersion(ToString.arrayToString(text.toArray()));
+                node.setContent(content);
+                updateNode(node);
+                getUpdatedNodeContents().add(content);
+                diffs = 0;
+                modified = true;
+            }
+        }
+
+        return modified;
+    }
+
     /** @return {@link XWikiDocument#getId()} - primary key */
     public long getId()
     {
@@ -311,6 +406,7 @@ public void removeVersions(Version newerVersion, Version olderVersion, XWikiCont
             deletedNodes.add(ni);
             it.remove();
         }
+        clearVersionCache();
     }
 
     /**
@@ -359,15 +455,44 @@ public String getVersionXml(Version version, XWikiContext context) throws XWikiE
     {
         Version nearestFullVersion = getNearestFullVersion(version);
 
-        List<XWikiRCSNodeContent> lstContent = loadRCSNodeContents(nearestFullVersion, version, context);
+        // Start from the closest already reconstructed version, if any
         List<String> origText = new ArrayList<String>();
+        Version startVersion = nearestFullVersion;
+        synchronized (this.versionCache) {
+            for (Version cachedVersion : versionToNode.subMap(nearestFullVersion, version).keySet()) {
+                if (this.versionCache.containsKey(cachedVersion)) {
+                    startVersion = cachedVersion;
+                }
+            }
+            List<String> cachedText = this.versionCache.get(version);
+            if (cachedText != null) {
+                return ToString.arrayToString(cachedText.toArray());
+            } else if (this.versionCache.containsKey(startVersion)) {
+                origText.addAll(this.versionCache.get(startVersion));
+                startVersion = getPrevVersion(startVersion);
+            }
+        }
+
+        List<XWikiRCSNodeContent> lstContent = loadRCSNodeContents(startVersion, version, context);
         for (XWikiRCSNodeContent nodeContent : lstContent) {
             nodeContent.getPatch().patch(origText);
         }
 
+        synchronized (this.versionCache) {
+            this.versionCache.put(version, new ArrayList<String>(origText));
+        }
+
         return ToString.arrayToString(origText.toArray());
     }
 
+    /** Forget the reconstructed versions. */
+    private void clearVersionCache()
+    {
+        synchronized (this.versionCache) {
+            this.versionCache.clear();
+        }
+    }
+
     /**
      * @return {@link XWikiRCSNodeInfo} by version. null if none.
      * @param version which version to get
@@ -452,6 +577,7 @@ public void resetArchive()
     {
         versionToNode.clear();
         fullVersions.clear();
+        clearVersionCache();
         deletedNodes.addAll(updatedNodeInfos);
         updatedNodeInfos.clear();
         updatedNodeContents.clear();
@@ -43,6 +43,8 @@
 import org.xwiki.observation.ObservationManager;
 import org.xwiki.observation.event.Event;
 
+import com.xpn.xwiki.internal.event.WikiBulkCopiedEvent;
+
 /**
  * Specialized cache component related to documents. It automatically clean the cache when the document is related.
  * <p>
@@ -60,7 +62,7 @@
      * Event listened by the component.
      */
     private static final List<Event> EVENTS = Arrays.<Event> asList(new DocumentCreatedEvent(),
-        new DocumentUpdatedEvent(), new DocumentDeletedEvent());
+        new DocumentUpdatedEvent(), new DocumentDeletedEvent(), new WikiBulkCopiedEvent());
 
     /**
      * Used to listen to document modification events.
@@ -84,6 +86,14 @@ public List<Event> getEvents()
         @Override
         public void onEvent(Event event, Object source, Object data)
         {
+            if (event instanceof WikiBulkCopiedEvent) {
+                // The documents of the target wiki have been replaced without document events and the cache can't
+                // tell which entries depend on them.
+                removeAll();
+
+                return;
+            }
+
             String documentReferenceString = ((AbstractDocumentEvent) event).getEventFilter().getFilter();
 
             Collection<String> keys = mappingCache.get(documentReferenceString);
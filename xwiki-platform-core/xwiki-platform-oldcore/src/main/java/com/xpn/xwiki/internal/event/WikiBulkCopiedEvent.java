@@ -0,0 +1,57 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.event;
+
+import org.xwiki.bridge.event.WikiCopiedEvent;
+
+/**
+ * An event triggered after a wiki has been copied directly in the database. Unlike a document by document copy, no
+ * event is sent for each copied document. Since it's a {@link WikiCopiedEvent}, the listeners of the wiki copies
+ * receive it too.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class WikiBulkCopiedEvent extends WikiCopiedEvent
+{
+    /**
+     * The version identifier for this Serializable class. Increment only if the <i>serialized</i> form of the class
+     * changes.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Matches all {@link WikiBulkCopiedEvent} events.
+     */
+    public WikiBulkCopiedEvent()
+    {
+    }
+
+    /**
+     * Matches the bulk copies between the same wikis.
+     * 
+     * @param sourceWikiId the source wiki identifier
+     * @param targetWikiId the target wiki identifier
+     */
+    public WikiBulkCopiedEvent(String sourceWikiId, String targetWikiId)
+    {
+        super(sourceWikiId, targetWikiId);
+    }
+}
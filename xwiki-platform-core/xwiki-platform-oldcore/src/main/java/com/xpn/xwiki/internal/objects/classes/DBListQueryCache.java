@@ -0,0 +1,56 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.objects.classes;
+
+import java.util.List;
+
+import org.xwiki.component.annotation.Role;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+
+/**
+ * Cache the results of the queries used by the database list properties, which are otherwise executed each time such
+ * a property is displayed or validated. The results are indexed by wiki and query, the query being evaluated so that
+ * queries depending on the current user or document are cached separately. An entry is invalidated as soon as a
+ * document holding an object of one of the classes named in the query is modified, or as soon as any document of the
+ * wiki is modified when the query doesn't name any class.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+@Role
+public interface DBListQueryCache
+{
+    /**
+     * Execute a query, or get its results from the cache.
+     * 
+     * @param query the HQL query to execute
+     * @param context the XWiki context
+     * @return the results of the query, which must not be modified
+     * @throws XWikiException if executing the query fails
+     */
+    List<Object> search(String query, XWikiContext context) throws XWikiException;
+
+    /**
+     * Remove all the query results from the cache.
+     */
+    void removeAll();
+}
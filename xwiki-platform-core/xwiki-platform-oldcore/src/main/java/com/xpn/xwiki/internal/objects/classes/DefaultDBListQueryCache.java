@@ -0,0 +1,345 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.objects.classes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.WikiBulkCopiedEvent;
+
+/**
+ * Default implementation of {@link DBListQueryCache}.
+ * <p>
+ * Instead of looking for the entries to remove when a document is modified, each entry remembers the version of the
+ * classes (or of the wiki) it depends on at the time the query was executed. Modifying a document increments the
+ * version of the classes of its objects and of the wiki, which makes the dependent entries obsolete.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+@Component
+@Singleton
+public class DefaultDBListQueryCache implements DBListQueryCache, Initializable
+{
+    /**
+     * Identifier of the database list query cache.
+     */
+    private static final String NAME = "core.dblistquerycache";
+
+    /**
+     * Name of the property indicating the size of the cache.
+     */
+    private static final String PROPNAME_SIZE = NAME + ".size";
+
+    /**
+     * The default size of the cache.
+     */
+    private static final int PROPVALUE_SIZE = 1000;
+
+    /**
+     * Matches the class constraints of a query, like {@code obj.className='XWiki.XWikiUsers'}.
+     */
+    private static final Pattern CLASSNAME_PATTERN = Pattern.compile("\\bclassName\\s*=\\s*'([^']*)'");
+
+    /**
+     * Used to detect the class constraints which cannot be parsed, like parameters or lists of classes.
+     */
+    private static final String CLASSNAME = "className";
+
+    /**
+     * Separates the wiki from the class name in the version keys.
+     */
+    private static final char SEPARATOR = ':';
+
+    /**
+     * Event listened by the component.
+     */
+    private static final List<Event> EVENTS = Arrays.<Event> asList(new DocumentCreatedEvent(),
+        new DocumentUpdatedEvent(), new DocumentDeletedEvent(), new WikiBulkCopiedEvent());
+
+    /**
+     * The results of a query along with the versions of what they depend on.
+     */
+    private static class CachedResults
+    {
+        private final List<Object> results;
+
+        private final String[] versionKeys;
+
+        private final long[] versions;
+
+        CachedResults(List<Object> results, String[] versionKeys, long[] versions)
+        {
+            this.results = results;
+            this.versionKeys = versionKeys;
+            this.versions = versions;
+        }
+    }
+
+    /**
+     * Used to listen to document modification events.
+     * 
+     * @version $Id$
+     */
+    protected class Listener implements EventListener
+    {
+        @Override
+        public String getName()
+        {
+            return NAME;
+        }
+
+        @Override
+        public List<Event> getEvents()
+        {
+            return EVENTS;
+        }
+
+        @Override
+        public void onEvent(Event event, Object source, Object data)
+        {
+            if (event instanceof WikiBulkCopiedEvent) {
+                invalidateWiki(((WikiBulkCopiedEvent) event).getTargetWikiId());
+
+                return;
+            }
+
+            XWikiDocument document = (XWikiDocument) source;
+            String wiki = document.getDocumentReference().getWikiReference().getName();
+
+            Set<String> classNames = new LinkedHashSet<String>();
+            // The document can be a class, whose objects are affected by its modification.
+            classNames.add(localSerializer.serialize(document.getDocumentReference()));
+            addClassNames(document, classNames);
+            addClassNames(document.getOriginalDocument(), classNames);
+            for (String className : classNames) {
+                AtomicLong version = versions.get(wiki + SEPARATOR + className);
+                if (version != null) {
+                    version.incrementAndGet();
+                }
+            }
+
+            getVersion(wiki).incrementAndGet();
+        }
+    }
+
+    /**
+     * xwiki.properties file configurations.
+     */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /**
+     * Used to create the cache.
+     */
+    @Inject
+    private CacheManager cacheManager;
+
+    /**
+     * Used to register as event listener to invalidate the cache.
+     */
+    @Inject
+    private ObservationManager observationManager;
+
+    /**
+     * Used to serialize class references the way they appear in the queries.
+     */
+    @Inject
+    @Named("local")
+    private EntityReferenceSerializer<String> localSerializer;
+
+    /**
+     * The query results.
+     */
+    private Cache<CachedResults> cache;
+
+    /**
+     * The versions of the classes, indexed by wiki and class name, and of the wikis, indexed by wiki.
+     */
+    private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<String, AtomicLong>();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration();
+        cacheConfiguration.setConfigurationId(NAME);
+        LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+        lru.setMaxEntries(this.configuration.getProperty(PROPNAME_SIZE, PROPVALUE_SIZE));
+        cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+
+        try {
+            this.cache = this.cacheManager.createNewCache(cacheConfiguration);
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to initialize database list query cache", e);
+        }
+
+        this.observationManager.addListener(new Listener());
+    }
+
+    @Override
+    public List<Object> search(String query, XWikiContext context) throws XWikiException
+    {
+        String wiki = context.getDatabase();
+        String key = wiki + SEPARATOR + query;
+
+        CachedResults cachedResults = this.cache.get(key);
+        if (cachedResults != null && isValid(cachedResults)) {
+            return cachedResults.results;
+        }
+
+        // Read the versions before executing the query so that a modification made meanwhile invalidates the results.
+        String[] versionKeys = getVersionKeys(wiki, query);
+        long[] currentVersions = new long[versionKeys.length];
+        for (int i = 0; i < versionKeys.length; i++) {
+            currentVersions[i] = getVersion(versionKeys[i]).get();
+        }
+
+        List<Object> results = Collections.unmodifiableList(new ArrayList<Object>(context.getWiki().<Object> search(
+            query, context)));
+        this.cache.set(key, new CachedResults(results, versionKeys, currentVersions));
+
+        return results;
+    }
+
+    @Override
+    public void removeAll()
+    {
+        this.cache.removeAll();
+    }
+
+    /**
+     * @param wiki the wiki where the query is executed
+     * @param query the query
+     * @return the keys of the versions the results of the query depend on
+     */
+    private String[] getVersionKeys(String wiki, String query)
+    {
+        List<String> keys = new ArrayList<String>();
+        Matcher matcher = CLASSNAME_PATTERN.matcher(query);
+        int count = 0;
+        while (matcher.find()) {
+            keys.add(wiki + SEPARATOR + matcher.group(1));
+            count++;
+        }
+
+        // If the query doesn't constrain the classes, or constrains them in a way we can't parse, it can depend on
+        // any document.
+        int constraints = query.split(CLASSNAME, -1).length - 1;
+        if (count == 0 || count < constraints) {
+            keys.add(wiki);
+        }
+
+        return keys.toArray(new String[keys.size()]);
+    }
+
+    /**
+     * @param cachedResults cached query results
+     * @return {@code true} if nothing the results depend on has been modified since the query was executed
+     */
+    private boolean isValid(CachedResults cachedResults)
+    {
+        for (int i = 0; i < cachedResults.versionKeys.length; i++) {
+            if (getVersion(cachedResults.versionKeys[i]).get() != cachedResults.versions[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Makes obsolete all the entries of a wiki whose documents have been replaced without document events.
+     * 
+     * @param wiki the wiki
+     */
+    private void invalidateWiki(String wiki)
+    {
+        String prefix = wiki + SEPARATOR;
+        for (Map.Entry<String, AtomicLong> entry : this.versions.entrySet()) {
+            if (entry.getKey().equals(wiki) || entry.getKey().startsWith(prefix)) {
+                entry.getValue().incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @param key the version key
+     * @return the version, created if needed
+     */
+    private AtomicLong getVersion(String key)
+    {
+        AtomicLong version = this.versions.get(key);
+        if (version == null) {
+            this.versions.putIfAbsent(key, new AtomicLong());
+            version = this.versions.get(key);
+        }
+
+        return version;
+    }
+
+    /**
+     * @param document a modified document, possibly {@code null}
+     * @param classNames where to add the names of the classes of the document objects
+     */
+    private void addClassNames(XWikiDocument document, Set<String> classNames)
+    {
+        if (document != null) {
+            for (DocumentReference classReference : document.getXObjects().keySet()) {
+                classNames.add(this.localSerializer.serialize(classReference));
+            }
+        }
+    }
+}
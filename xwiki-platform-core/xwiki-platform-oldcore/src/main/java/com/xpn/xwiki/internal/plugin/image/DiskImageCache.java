@@ -0,0 +1,305 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.plugin.image;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores generated images (e.g. thumbnails) as files in a directory, so that they don't use any memory, can be sent
+ * directly from the file and are kept across restarts. The total size of the stored files is limited, the least
+ * recently used files being removed first. Concurrent requests for the same image generate it only once.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class DiskImageCache
+{
+    /**
+     * Generates the content of an image which is missing from the cache.
+     */
+    public interface Generator
+    {
+        /**
+         * @param out where to write the image; nothing should be written if there is no image to generate, in which
+         *            case an empty file is stored
+         * @throws Exception if generating the image fails
+         */
+        void generate(OutputStream out) throws Exception;
+    }
+
+    /**
+     * Logging helper object.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskImageCache.class);
+
+    /**
+     * The extension of the files holding an image being generated.
+     */
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    /**
+     * The files are not touched when accessed more often than this (in milliseconds), to avoid writing to the disk on
+     * each access.
+     */
+    private static final long TOUCH_INTERVAL = 60000L;
+
+    /**
+     * The directory where the images are stored.
+     */
+    private final File directory;
+
+    /**
+     * The maximum total size of the stored images, in bytes.
+     */
+    private final long maxSize;
+
+    /**
+     * The current total size of the stored images, in bytes.
+     */
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * The images being generated, indexed by key.
+     */
+    private final ConcurrentMap<String, FutureTask<File>> pending = new ConcurrentHashMap<String, FutureTask<File>>();
+
+    /**
+     * Creates a cache using the images already stored in the given directory.
+     * 
+     * @param directory the directory where the images are stored
+     * @param maxSize the maximum total size of the stored images, in bytes
+     * @throws IOException if the directory cannot be created
+     */
+    public DiskImageCache(File directory, long maxSize) throws IOException
+    {
+        this.directory = directory;
+        this.maxSize = maxSize;
+
+        FileUtils.forceMkdir(directory);
+        for (File file : directory.listFiles()) {
+            if (file.getName().endsWith(TEMPORARY_EXTENSION)) {
+                // Left over by an interrupted generation.
+                file.delete();
+            } else {
+                this.size.addAndGet(file.length());
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Get an image from the cache, generating it if it's missing.
+     * 
+     * @param key the identifier of the image, which must change when anything the image depends on changes
+     * @param generator used to generate the image if it's not in the cache
+     * @return the file holding the image, empty if the generator didn't write anything
+     * @throws Exception if generating the image fails
+     */
+    public File get(final String key, final Generator generator) throws Exception
+    {
+        File file = getFile(key);
+        if (file.exists()) {
+            touch(file);
+
+            return file;
+        }
+
+        FutureTask<File> task = new FutureTask<File>(new Callable<File>()
+        {
+            @Override
+            public File call() throws Exception
+            {
+                return create(key, generator);
+            }
+        });
+        FutureTask<File> existingTask = this.pending.putIfAbsent(key, task);
+        if (existingTask == null) {
+            try {
+                task.run();
+            } finally {
+                this.pending.remove(key, task);
+            }
+            existingTask = task;
+        }
+
+        try {
+            return existingTask.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Remove all the images from the cache.
+     */
+    public synchronized void removeAll()
+    {
+        for (File file : listImages()) {
+            long length = file.length();
+            if (file.delete()) {
+                this.size.addAndGet(-length);
+            }
+        }
+    }
+
+    /**
+     * @return the current total size of the stored images, in bytes
+     */
+    public long getSize()
+    {
+        return this.size.get();
+    }
+
+    /**
+     * @param key the identifier of an image
+     * @return the file holding the image
+     */
+    private File getFile(String key)
+    {
+        return new File(this.directory, DigestUtils.md5Hex(key));
+    }
+
+    /**
+     * Generate an image in a temporary file and move it to its final location once it's complete, so that a partial
+     * image is never served.
+     * 
+     * @param key the identifier of the image
+     * @param generator used to generate the image
+     * @return the file holding the image
+     * @throws Exception if generating the image fails
+     */
+    private File create(String key, Generator generator) throws Exception
+    {
+        File file = getFile(key);
+        if (file.exists()) {
+            // Generated by a request which completed in the meantime.
+            return file;
+        }
+
+        File temporaryFile = File.createTempFile(file.getName(), TEMPORARY_EXTENSION, this.directory);
+        try {
+            OutputStream out = new FileOutputStream(temporaryFile);
+            try {
+                generator.generate(out);
+            } finally {
+                out.close();
+            }
+            if (temporaryFile.renameTo(file)) {
+                this.size.addAndGet(file.length());
+            }
+        } finally {
+            temporaryFile.delete();
+        }
+
+        evict();
+
+        return file;
+    }
+
+    /**
+     * Mark an image as recently used.
+     * 
+     * @param file the file holding the image
+     */
+    private void touch(File file)
+    {
+        long now = System.currentTimeMillis();
+        if (now - file.lastModified() > TOUCH_INTERVAL) {
+            file.setLastModified(now);
+        }
+    }
+
+    /**
+     * @return the files holding the stored images
+     */
+    private File[] listImages()
+    {
+        File[] files = this.directory.listFiles(new FileFilter()
+        {
+            @Override
+            public boolean accept(File file)
+            {
+                return !file.getName().endsWith(TEMPORARY_EXTENSION);
+            }
+        });
+
+        return files != null ? files : new File[0];
+    }
+
+    /**
+     * Remove the least recently used images until the total size is back under 90% of the maximum size.
+     */
+    private synchronized void evict()
+    {
+        if (this.size.get() <= this.maxSize) {
+            return;
+        }
+
+        File[] files = listImages();
+        final long[] lastModified = new long[files.length];
+        Integer[] indexes = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            // Read the dates once, since they can change while sorting.
+            lastModified[i] = files[i].lastModified();
+            indexes[i] = i;
+        }
+        Arrays.sort(indexes, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer index1, Integer index2)
+            {
+                return Long.valueOf(lastModified[index1]).compareTo(lastModified[index2]);
+            }
+        });
+
+        long targetSize = this.maxSize / 10 * 9;
+        for (Integer index : indexes) {
+            if (this.size.get() <= targetSize) {
+                break;
+            }
+            long length = files[index].length();
+            if (files[index].delete()) {
+                this.size.addAndGet(-length);
+            }
+        }
+
+        LOGGER.debug("Image cache [{}] reduced to [{}] bytes", this.directory, this.size.get());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.plugin.image;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.AutoCloseInputStream;
+
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiAttachmentContent;
+
+/**
+ * The content of an image attachment read from a file of the {@link DiskImageCache}. It is never loaded in memory
+ * unless the deprecated {@link #getContent()} is used.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class DiskImageContent extends XWikiAttachmentContent
+{
+    /**
+     * The file holding the image.
+     */
+    private final File file;
+
+    /**
+     * @param file the file holding the image
+     * @param attachment the attachment this content belongs to
+     */
+    public DiskImageContent(File file, XWikiAttachment attachment)
+    {
+        super(attachment);
+        this.file = file;
+    }
+
+    @Override
+    public Object clone()
+    {
+        return new DiskImageContent(this.file, getAttachment());
+    }
+
+    @Override
+    @Deprecated
+    public byte[] getContent()
+    {
+        try {
+            return FileUtils.readFileToByteArray(this.file);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read image from the cache", e);
+        }
+    }
+
+    @Override
+    public InputStream getContentInputStream()
+    {
+        try {
+            return new AutoCloseInputStream(new FileInputStream(this.file));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to get InputStream", e);
+        }
+    }
+
+    @Override
+    public FileChannel getContentChannel() throws IOException
+    {
+        return new FileInputStream(this.file).getChannel();
+    }
+
+    @Override
+    public long getLongSize()
+    {
+        return this.file.length();
+    }
+}
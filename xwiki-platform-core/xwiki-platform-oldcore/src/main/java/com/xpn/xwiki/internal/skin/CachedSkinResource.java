@@ -0,0 +1,122 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.skin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * An evaluated skin resource stored in the {@link SkinResourceCache}, along with its gzip compressed version and the
+ * fingerprint of its content.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class CachedSkinResource
+{
+    /**
+     * The evaluated content.
+     */
+    private final byte[] content;
+
+    /**
+     * The gzip compressed content, {@code null} if compressing does not reduce the size of the content.
+     */
+    private final byte[] compressedContent;
+
+    /**
+     * The fingerprint of the evaluated content.
+     */
+    private final String fingerprint;
+
+    /**
+     * The date of the last modification of the evaluated content.
+     */
+    private final Date lastModified;
+
+    /**
+     * @param content the evaluated content
+     * @param lastModified the date of the last modification of the evaluated content
+     * @throws IOException when failing to compress the content
+     */
+    public CachedSkinResource(byte[] content, Date lastModified) throws IOException
+    {
+        this.content = content;
+        this.lastModified = lastModified;
+        this.fingerprint = DigestUtils.md5Hex(content);
+
+        byte[] compressed = compress(content);
+        this.compressedContent = compressed.length < content.length ? compressed : null;
+    }
+
+    /**
+     * @param data the data to compress
+     * @return the gzip compressed data
+     * @throws IOException when failing to compress the data
+     */
+    private static byte[] compress(byte[] data) throws IOException
+    {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream(data.length / 2);
+        GZIPOutputStream gzip = new GZIPOutputStream(stream);
+        try {
+            gzip.write(data);
+        } finally {
+            gzip.close();
+        }
+
+        return stream.toByteArray();
+    }
+
+    /**
+     * @return the evaluated content
+     */
+    public byte[] getContent()
+    {
+        return this.content;
+    }
+
+    /**
+     * @return the gzip compressed content, {@code null} if compressing does not reduce the size of the content
+     */
+    public byte[] getCompressedContent()
+    {
+        return this.compressedContent;
+    }
+
+    /**
+     * @return the fingerprint of the evaluated content, changing as soon as the content changes
+     */
+    public String getFingerprint()
+    {
+        return this.fingerprint;
+    }
+
+    /**
+     * @return the date of the last modification of the evaluated content
+     */
+    public Date getLastModified()
+    {
+        return this.lastModified;
+    }
+}
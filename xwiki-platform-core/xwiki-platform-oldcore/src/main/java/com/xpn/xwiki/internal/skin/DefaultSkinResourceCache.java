@@ -0,0 +1,300 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.skin;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.internal.event.WikiBulkCopiedEvent;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Default implementation of {@link SkinResourceCache}.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+@Component
+@Singleton
+public class DefaultSkinResourceCache implements SkinResourceCache, Initializable
+{
+    /**
+     * Identifier of the skin resource cache.
+     */
+    private static final String NAME = "core.skinresourcecache";
+
+    /**
+     * Name of the property indicating the size of the cache.
+     */
+    private static final String PROPNAME_SIZE = NAME + ".size";
+
+    /**
+     * The default size of the cache.
+     */
+    private static final int PROPVALUE_SIZE = 500;
+
+    /**
+     * The class of the objects holding the skin properties.
+     */
+    private static final EntityReference SKIN_CLASS = new EntityReference("XWikiSkins", EntityType.DOCUMENT,
+        new EntityReference(XWiki.SYSTEM_SPACE, EntityType.SPACE));
+
+    /**
+     * The class of the objects holding the color theme properties.
+     */
+    private static final EntityReference COLORTHEME_CLASS = new EntityReference("ColorThemeClass",
+        EntityType.DOCUMENT, new EntityReference("ColorThemes", EntityType.SPACE));
+
+    /**
+     * The class of the objects holding the user profile, which can override the skin and the color theme to use.
+     */
+    private static final EntityReference USER_CLASS = new EntityReference("XWikiUsers", EntityType.DOCUMENT,
+        new EntityReference(XWiki.SYSTEM_SPACE, EntityType.SPACE));
+
+    /**
+     * The user preferences the evaluation of the skin resources depends on.
+     */
+    private static final List<String> USER_PREFERENCES = Arrays.asList("skin", "colorTheme");
+
+    /**
+     * The documents holding the preferences, which indicate the skin and the color theme to use.
+     */
+    private static final List<String> PREFERENCES_DOCUMENTS = Arrays.asList("XWikiPreferences", "WebPreferences");
+
+    /**
+     * Event listened by the component.
+     */
+    private static final List<Event> EVENTS = Arrays.<Event> asList(new DocumentCreatedEvent(),
+        new DocumentUpdatedEvent(), new DocumentDeletedEvent(), new WikiBulkCopiedEvent());
+
+    /**
+     * Used to listen to document modification events.
+     * 
+     * @version $Id$
+     */
+    protected class Listener implements EventListener
+    {
+        @Override
+        public String getName()
+        {
+            return NAME;
+        }
+
+        @Override
+        public List<Event> getEvents()
+        {
+            return EVENTS;
+        }
+
+        @Override
+        public void onEvent(Event event, Object source, Object data)
+        {
+            if (event instanceof WikiBulkCopiedEvent) {
+                // The skins and the preferences of the target wiki have been replaced without document events.
+                removeAll();
+
+                return;
+            }
+
+            XWikiDocument document = (XWikiDocument) source;
+
+            if (affectsSkin(document) || affectsSkin(document.getOriginalDocument())
+                || changesUserPreferences(document, document.getOriginalDocument())) {
+                removeAll();
+            }
+        }
+    }
+
+    /**
+     * xwiki.properties file configurations.
+     */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /**
+     * Used to create the cache.
+     */
+    @Inject
+    private CacheManager cacheManager;
+
+    /**
+     * Used to register as event listener to invalidate the cache.
+     */
+    @Inject
+    private ObservationManager observationManager;
+
+    /**
+     * The evaluated resources.
+     */
+    private Cache<CachedSkinResource> cache;
+
+    /**
+     * Incremented each time the cache is cleared. It starts from the startup date so that the resource versions of a
+     * previous run are not reused.
+     */
+    private final AtomicLong generation = new AtomicLong(System.currentTimeMillis());
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration();
+        cacheConfiguration.setConfigurationId(NAME);
+        LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+        lru.setMaxEntries(this.configuration.getProperty(PROPNAME_SIZE, PROPVALUE_SIZE));
+        cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+
+        try {
+            this.cache = this.cacheManager.createNewCache(cacheConfiguration);
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to initialize skin resource cache", e);
+        }
+
+        this.observationManager.addListener(new Listener());
+    }
+
+    /**
+     * @param document the modified document
+     * @return true if the document is a skin, a color theme or a preferences document
+     */
+    private boolean affectsSkin(XWikiDocument document)
+    {
+        return document != null
+            && (PREFERENCES_DOCUMENTS.contains(document.getDocumentReference().getName())
+                || document.getXObject(SKIN_CLASS) != null || document.getXObject(COLORTHEME_CLASS) != null);
+    }
+
+    /**
+     * @param document the modified document
+     * @param originalDocument the document before the modification
+     * @return true if the modification changes the skin or the color theme selected in a user profile
+     */
+    private boolean changesUserPreferences(XWikiDocument document, XWikiDocument originalDocument)
+    {
+        for (String preference : USER_PREFERENCES) {
+            if (!getUserPreference(document, preference).equals(getUserPreference(originalDocument, preference))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param document a user profile document
+     * @param preference the name of the preference
+     * @return the value of the preference in the user profile, or an empty string if it's not set
+     */
+    private String getUserPreference(XWikiDocument document, String preference)
+    {
+        BaseObject user = document != null ? document.getXObject(USER_CLASS) : null;
+
+        return user != null ? user.getStringValue(preference) : "";
+    }
+
+    @Override
+    public CachedSkinResource get(String source, String filename, XWikiContext context)
+    {
+        return this.cache.get(getKey(source, filename, context));
+    }
+
+    @Override
+    public void set(CachedSkinResource resource, String source, String filename, XWikiContext context)
+    {
+        this.cache.set(getKey(source, filename, context), resource);
+    }
+
+    @Override
+    public void removeAll()
+    {
+        this.generation.incrementAndGet();
+        this.cache.removeAll();
+    }
+
+    @Override
+    public String getResourceVersion(String contentVersion)
+    {
+        return contentVersion + '-' + this.generation.get();
+    }
+
+    /**
+     * Generate a key based on the resource and the request elements the evaluation of the resource can depend on.
+     * 
+     * @param source the identifier of the place the resource has been read from
+     * @param filename the name of the resource
+     * @param context the XWiki context
+     * @return the key of the cache entry
+     */
+    private String getKey(String source, String filename, XWikiContext context)
+    {
+        StringBuilder builder = new StringBuilder();
+
+        append(builder, context.getDatabase());
+        append(builder, source);
+        append(builder, filename);
+        append(builder, context.getRequest() != null ? context.getRequest().getQueryString() : null);
+        append(builder, context.getLanguage());
+        append(builder, context.getUser());
+
+        return builder.toString();
+    }
+
+    /**
+     * Append an escaped element to the key.
+     * 
+     * @param builder the key being built
+     * @param element the element to append
+     */
+    private void append(StringBuilder builder, String element)
+    {
+        if (builder.length() > 0) {
+            builder.append(':');
+        }
+        if (element != null) {
+            builder.append(element.replace("\\", "\\\\").replace(":", "\\:"));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.skin;
+
+import org.xwiki.component.annotation.Role;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Cache the result of the evaluation of the skin CSS and JavaScript resources. Since the evaluated content can depend
+ * on the request (query string, language and current user), the entries are indexed by the source of the resource and
+ * these request elements. The whole cache is cleared as soon as a skin, a color theme or the preferences are modified,
+ * or when a user selects another skin or color theme in their profile.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+@Role
+public interface SkinResourceCache
+{
+    /**
+     * @param source the identifier of the place the resource has been read from (skin document property, attachment or
+     *            filesystem path), including anything identifying the version of the raw content
+     * @param filename the name of the resource
+     * @param context the XWiki context
+     * @return the evaluated resource or {@code null} if it's not in the cache
+     */
+    CachedSkinResource get(String source, String filename, XWikiContext context);
+
+    /**
+     * @param resource the evaluated resource
+     * @param source the identifier of the place the resource has been read from (skin document property, attachment or
+     *            filesystem path), including anything identifying the version of the raw content
+     * @param filename the name of the resource
+     * @param context the XWiki context
+     */
+    void set(CachedSkinResource resource, String source, String filename, XWikiContext context);
+
+    /**
+     * Remove all the evaluated resources from the cache.
+     */
+    void removeAll();
+
+    /**
+     * The version of a resource put in its URL, so that clients can keep the resource as long as its URL doesn't
+     * change. Since the evaluated content can change without a change of the raw content, for instance when a color
+     * theme is modified, the version also changes each time the cache is cleared.
+     * 
+     * @param contentVersion the version of the raw content of the resource (skin document or attachment version,
+     *            modification date of the file)
+     * @return the version of the resource
+     */
+    String getResourceVersion(String contentVersion);
+}
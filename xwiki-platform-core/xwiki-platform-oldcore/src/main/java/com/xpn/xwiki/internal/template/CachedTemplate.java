@@ -0,0 +1,80 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.template;
+
+/**
+ * A template content stored in the template cache, along with the information needed to know if it's still valid.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class CachedTemplate
+{
+    /**
+     * The content of the template, {@code null} if the template does not exist.
+     */
+    private final String content;
+
+    /**
+     * The path of the resource the template was read from, {@code null} if it was not read from a resource.
+     */
+    private final String path;
+
+    /**
+     * The date of the last modification of the resource at the time it was read.
+     */
+    private final long lastModified;
+
+    /**
+     * @param content the content of the template, {@code null} if the template does not exist
+     * @param path the path of the resource the template was read from, {@code null} if it was not read from a resource
+     * @param lastModified the date of the last modification of the resource at the time it was read
+     */
+    public CachedTemplate(String content, String path, long lastModified)
+    {
+        this.content = content;
+        this.path = path;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return the content of the template, {@code null} if the template does not exist
+     */
+    public String getContent()
+    {
+        return this.content;
+    }
+
+    /**
+     * @return the path of the resource the template was read from, {@code null} if it was not read from a resource
+     */
+    public String getPath()
+    {
+        return this.path;
+    }
+
+    /**
+     * @return the date of the last modification of the resource at the time it was read
+     */
+    public long getLastModified()
+    {
+        return this.lastModified;
+    }
+}
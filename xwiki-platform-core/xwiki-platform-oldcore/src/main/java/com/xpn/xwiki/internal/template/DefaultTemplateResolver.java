@@ -0,0 +1,272 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.template;
+
+import java.io.IOException;
+import java.net.URI;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.cache.DocumentCache;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Default implementation of {@link TemplateResolver}. Templates found in a skin are cached by skin document and
+ * template name so that the entries are removed as soon as the skin document is created, modified or deleted.
+ * Templates read from the filesystem are cached by path and, if configured, checked for modifications on each access.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+@Component
+@Singleton
+public class DefaultTemplateResolver implements TemplateResolver, Initializable
+{
+    /**
+     * Identifier of the template cache.
+     */
+    private static final String NAME = "core.templatecache";
+
+    /**
+     * Name of the property indicating the size of the caches.
+     */
+    private static final String PROPNAME_SIZE = NAME + ".size";
+
+    /**
+     * The default size of the caches.
+     */
+    private static final int PROPVALUE_SIZE = 1000;
+
+    /**
+     * Name of the property indicating if templates read from the filesystem should be checked for modifications.
+     */
+    private static final String PROPNAME_CHECKMODIFICATIONS = NAME + ".checkModifications";
+
+    /**
+     * The directory containing the skins on the filesystem.
+     */
+    private static final String SKINS_DIRECTORY = "/skins/";
+
+    /**
+     * The encoding of the templates. It's impossible to know the real attachment encoding, but let's assume that they
+     * respect the standard and use UTF-8 (which is required for the files located on the filesystem).
+     */
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Used to log.
+     */
+    @Inject
+    private Logger logger;
+
+    /**
+     * xwiki.properties file configurations.
+     */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /**
+     * Used to resolve the skin document reference the same way {@link XWiki#getDocument(String, XWikiContext)} does.
+     */
+    @Inject
+    @Named("currentmixed")
+    private DocumentReferenceResolver<String> resolver;
+
+    /**
+     * Used to create the cache of the templates read from the filesystem.
+     */
+    @Inject
+    private CacheManager cacheManager;
+
+    /**
+     * The templates found in skins, indexed by skin document and template name.
+     */
+    @Inject
+    private DocumentCache<CachedTemplate> skinCache;
+
+    /**
+     * The templates read from the templates directory, indexed by path.
+     */
+    private Cache<CachedTemplate> fileCache;
+
+    /**
+     * Indicate if templates read from the filesystem should be checked for modifications.
+     */
+    private boolean checkModifications;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.checkModifications = this.configuration.getProperty(PROPNAME_CHECKMODIFICATIONS, Boolean.FALSE);
+
+        try {
+            this.skinCache.create(createCacheConfiguration(NAME));
+            this.fileCache = this.cacheManager.createNewCache(createCacheConfiguration(NAME + ".file"));
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to initialize template cache", e);
+        }
+    }
+
+    /**
+     * @param id the identifier of the cache
+     * @return the configuration of the cache
+     */
+    private CacheConfiguration createCacheConfiguration(String id)
+    {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration();
+        cacheConfiguration.setConfigurationId(id);
+        LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+        lru.setMaxEntries(this.configuration.getProperty(PROPNAME_SIZE, PROPVALUE_SIZE));
+        cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+
+        return cacheConfiguration;
+    }
+
+    @Override
+    public String getSkinTemplate(String template, String skin, XWikiContext context)
+    {
+        DocumentReference skinReference = this.resolver.resolve(skin);
+
+        CachedTemplate cachedTemplate = this.skinCache.get(skinReference, template);
+        if (cachedTemplate == null || isModified(cachedTemplate, context)) {
+            cachedTemplate = resolveSkinTemplate(template, skin, skinReference, context);
+            this.skinCache.set(cachedTemplate, skinReference, template);
+        }
+
+        return cachedTemplate.getContent();
+    }
+
+    @Override
+    public String getTemplate(String path, XWikiContext context) throws IOException
+    {
+        CachedTemplate cachedTemplate = this.fileCache.get(path);
+        if (cachedTemplate == null || isModified(cachedTemplate, context)) {
+            long lastModified = getLastModified(path, context);
+            cachedTemplate = new CachedTemplate(context.getWiki().getResourceContent(path), path, lastModified);
+            this.fileCache.set(path, cachedTemplate);
+        }
+
+        return cachedTemplate.getContent();
+    }
+
+    /**
+     * Look for a template in the skin document (object property then attachment) and then in the skin directory.
+     * 
+     * @param template the name of the template
+     * @param skin the name of the skin
+     * @param skinReference the reference of the skin document
+     * @param context the XWiki context
+     * @return the template found, with a {@code null} content if the skin does not provide the template
+     */
+    private CachedTemplate resolveSkinTemplate(String template, String skin, DocumentReference skinReference,
+        XWikiContext context)
+    {
+        try {
+            XWikiDocument doc = context.getWiki().getDocument(skinReference, context);
+            if (!doc.isNew()) {
+                // Try the object property
+                BaseObject object =
+                    doc.getXObject(new DocumentReference(skinReference.getWikiReference().getName(),
+                        XWiki.SYSTEM_SPACE, "XWikiSkins"));
+                if (object != null) {
+                    String content = object.getStringValue(template);
+                    if (StringUtils.isNotBlank(content)) {
+                        return new CachedTemplate(content, null, 0);
+                    }
+                }
+                // Try a document attachment
+                XWikiAttachment attachment = doc.getAttachment(template);
+                if (attachment != null) {
+                    String content = IOUtils.toString(attachment.getContentInputStream(context), ENCODING);
+                    if (StringUtils.isNotBlank(content)) {
+                        return new CachedTemplate(content, null, 0);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            this.logger.debug("Failed to read template [{}] from skin document [{}]", template, skinReference, e);
+        }
+
+        // Try a file located in the directory with the same name.
+        String path = URI.create(SKINS_DIRECTORY + skin + "/" + template).normalize().toString();
+        // We must make sure the file is taken from the skins directory, otherwise people might
+        // try to read things from WEB-INF.
+        // This is a safe assumption, as templates found under /templates/ are treated
+        // separately, and there is no need to have templates in another place.
+        if (!path.startsWith(SKINS_DIRECTORY)) {
+            this.logger.warn("Illegal access, tried to use file [{}] as a template. Possible break-in attempt!", path);
+
+            return new CachedTemplate(null, null, 0);
+        }
+
+        long lastModified = getLastModified(path, context);
+        String content;
+        try {
+            content = context.getWiki().getResourceContent(path);
+        } catch (Exception e) {
+            content = null;
+        }
+
+        return new CachedTemplate(content, path, lastModified);
+    }
+
+    /**
+     * @param cachedTemplate the cached template
+     * @param context the XWiki context
+     * @return true if the cached template has been read from a resource which was modified since then
+     */
+    private boolean isModified(CachedTemplate cachedTemplate, XWikiContext context)
+    {
+        return this.checkModifications && cachedTemplate.getPath() != null
+            && cachedTemplate.getLastModified() != getLastModified(cachedTemplate.getPath(), context);
+    }
+
+    /**
+     * @param path the path of the resource
+     * @param context the XWiki context
+     * @return the date of the last modification of the resource, only computed when modifications are checked
+     */
+    private long getLastModified(String path, XWikiContext context)
+    {
+        return this.checkModifications ? context.getWiki().getResourceLastModificationDate(path).getTime() : 0;
+    }
+}
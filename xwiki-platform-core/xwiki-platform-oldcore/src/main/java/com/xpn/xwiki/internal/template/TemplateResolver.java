@@ -0,0 +1,59 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.template;
+
+import java.io.IOException;
+
+import org.xwiki.component.annotation.Role;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Find the content of the templates used to render the skin. Which source provides a template (skin document object
+ * property, skin document attachment, skin directory or templates directory) and the content found there are cached
+ * until the skin document is modified.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+@Role
+public interface TemplateResolver
+{
+    /**
+     * Get the content of a template from a skin, looking first in the skin document (object property and attachment)
+     * and then in the skin directory.
+     * 
+     * @param template the name of the template
+     * @param skin the name of the skin, which is the name of the skin document or of the skin directory
+     * @param context the XWiki context
+     * @return the content of the template or {@code null} if the skin does not provide any template with this name
+     */
+    String getSkinTemplate(String template, String skin, XWikiContext context);
+
+    /**
+     * Get the content of a template from the templates directory.
+     * 
+     * @param path the path of the template resource, starting with {@code /templates/}
+     * @param context the XWiki context
+     * @return the content of the template
+     * @throws IOException when failing to read the template
+     */
+    String getTemplate(String path, XWikiContext context) throws IOException;
+}
@@ -33,11 +33,13 @@
 
 import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.internal.objects.classes.DBListQueryCache;
 import com.xpn.xwiki.internal.xml.XMLAttributeValueFilter;
 import com.xpn.xwiki.objects.BaseCollection;
 import com.xpn.xwiki.objects.BaseProperty;
 import com.xpn.xwiki.objects.ListProperty;
 import com.xpn.xwiki.objects.meta.PropertyMetaClass;
+import com.xpn.xwiki.web.Utils;
 
 public class DBListClass extends ListClass
 {
@@ -50,16 +52,18 @@ public class DBListClass extends ListClass
 
     protected static final String DEFAULT_QUERY = "select doc.name from XWikiDocument doc where 1 = 0";
 
-    private List<ListItem> cachedDBList;
-
     public DBListClass(String name, String prettyname, PropertyMetaClass wclass)
     {
         super(name, prettyname, wclass);
+
+        // The query results are invalidated when the documents they depend on are modified, so they can be shared by
+        // default. Class authors can turn the cache off for queries depending on anything else.
+        setCache(true);
     }
 
     public DBListClass(PropertyMetaClass wclass)
     {
-        super(XCLASSNAME, "DB List", wclass);
+        this(XCLASSNAME, "DB List", wclass);
     }
 
     public DBListClass()
@@ -97,14 +101,15 @@ public List<ListItem> getDBList(XWikiContext context)
     {
         List<ListItem> list = getCachedDBList(context);
         if (list == null) {
-            XWiki xwiki = context.getWiki();
             String query = getQuery(context);
 
             if (query == null) {
                 list = new ArrayList<ListItem>();
             } else {
                 try {
-                    list = makeList(xwiki.search(query, context));
+                    list =
+                        makeList(isCache() ? getQueryCache().search(query, context) : context.getWiki().search(query,
+                            context));
                 } catch (Exception e) {
                     LOGGER.error("Failed to get the list", e);
                     list = new ArrayList<ListItem>();
@@ -341,29 +346,36 @@ public void setValueField(String valueField)
         setStringValue("valueField", valueField);
     }
 
+    /**
+     * Get the list cached in the current request. When the {@code cache} property is set, the query results are also
+     * cached across requests by the {@link DBListQueryCache}, which invalidates them when the documents they depend on
+     * are modified.
+     * 
+     * @param context the current request context
+     * @return the cached list, or {@code null} if not already cached
+     */
     public List<ListItem> getCachedDBList(XWikiContext context)
     {
-        if (isCache()) {
-            return this.cachedDBList;
-        } else {
-            return (List<ListItem>) context.get(context.getDatabase() + ":" + getFieldFullName());
-        }
+        return (List<ListItem>) context.get(context.getDatabase() + ":" + getFieldFullName());
     }
 
+    /**
+     * Store the list in the current request.
+     * 
+     * @param cachedDBList the list to cache
+     * @param context the current request context
+     */
     public void setCachedDBList(List<ListItem> cachedDBList, XWikiContext context)
     {
-        if (isCache()) {
-            this.cachedDBList = cachedDBList;
-        } else {
-            context.put(context.getDatabase() + ":" + getFieldFullName(), cachedDBList);
-        }
+        context.put(context.getDatabase() + ":" + getFieldFullName(), cachedDBList);
     }
 
-    @Override
-    public void flushCache()
+    /**
+     * @return the cache of the query results, shared by all the database list properties
+     */
+    protected DBListQueryCache getQueryCache()
     {
-        this.cachedDBList = null;
-        super.flushCache();
+        return Utils.getComponent(DBListQueryCache.class);
     }
 
     // return first or second column from user query
@@ -454,6 +466,7 @@ public String getValue(String val, String sql, XWikiContext context)
         XWiki xwiki = context.getWiki();
         String res = "";
         try {
+            // Not cached: there is a query for each value, which would evict the shared lists from the cache.
             list = xwiki.search(newsql, context).toArray();
             if (list.length > 0) {
                 res = list[0].toString();
@@ -47,9 +47,6 @@ public class DBTreeListClass extends DBListClass
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DBTreeListClass.class);
 
-    /** In-memory cache of the ordered tree values, to be used in case it is supposed to be cached. */
-    private List<ListItem> cachedDBTreeList;
-
     public DBTreeListClass(PropertyMetaClass wclass)
     {
         super(XCLASSNAME, "DB Tree List", wclass);
@@ -78,15 +75,9 @@ public void setParentField(String parentField)
      */
     protected List<ListItem> getCachedDBTreeList(XWikiContext context)
     {
-        if (isCache()) {
-            // If the property is supposed to be cached long term ({@link #isCache()}), then the list is cached in
-            // memory in the current object
-            return this.cachedDBTreeList;
-        } else {
-            // Otherwise, to avoid re-computing the tree in case it is requested several times during the same request,
-            // it is cached in the request context.
-            return (List<ListItem>) context.get(context.getDatabase() + ":" + getFieldFullName() + "-tree");
-        }
+        // To avoid re-computing the tree in case it is requested several times during the same request, it is cached
+        // in the request context. The query results it is built from are cached across requests.
+        return (List<ListItem>) context.get(context.getDatabase() + ":" + getFieldFullName() + "-tree");
     }
 
     /**
@@ -97,15 +88,7 @@ protected List<ListItem> getCachedDBTreeList(XWikiContext context)
      */
     protected void setCachedDBTreeList(List<ListItem> cachedDBTreeList, XWikiContext context)
     {
-        if (isCache()) {
-            // If the property is supposed to be cached long term ({@link #isCache()}), then the list is cached in
-            // memory in the current object
-            this.cachedDBTreeList = cachedDBTreeList;
-        } else {
-            // Otherwise, to avoid re-computing the tree in case it is requested several times during the same request,
-            // it is cached in the request context.
-            context.put(context.getDatabase() + ":" + getFieldFullName() + "-tree", cachedDBTreeList);
-        }
+        context.put(context.getDatabase() + ":" + getFieldFullName() + "-tree", cachedDBTreeList);
     }
 
     public Map<String, List<ListItem>> getTreeMap(XWikiContext context)
@@ -25,6 +25,7 @@
 import info.informatica.doc.dom4j.XHTMLDocumentFactory;
 import info.informatica.doc.xml.dtd.DefaultEntityResolver;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -33,19 +34,32 @@
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Semaphore;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
@@ -75,6 +89,7 @@
 import org.w3c.dom.ls.LSSerializer;
 import org.w3c.tidy.Tidy;
 import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.context.Execution;
 import org.xwiki.environment.Environment;
@@ -116,6 +131,29 @@ public class PdfExportImpl implements PdfExport
     /** Tidy configuration. */
     private static final Properties TIDY_CONFIGURATION;
 
+    /** The name of the configuration parameter holding the maximum number of exports processed at the same time. */
+    private static final String MAX_CONCURRENT_EXPORTS_PARAM = "xwiki.export.pdf.maxConcurrent";
+
+    /** The maximum number of compiled XSLT kept in memory. */
+    private static final int TEMPLATES_CACHE_CAPACITY = 16;
+
+    /**
+     * Compiled XSLT, indexed by the content of the stylesheet. Stylesheets coming from a PDFTemplate are evaluated with
+     * Velocity so their content is the only reliable key; a modified PDFTemplate simply produces a new entry, and the
+     * least recently used entries are dropped.
+     */
+    private static final Map<ByteBuffer, Templates> TEMPLATES_CACHE =
+        Collections.synchronizedMap(new LinkedHashMap<ByteBuffer, Templates>(TEMPLATES_CACHE_CAPACITY, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Templates> eldest)
+            {
+                return size() > TEMPLATES_CACHE_CAPACITY;
+            }
+        });
+
     /** Document name resolver. */
     private static DocumentReferenceResolver<String> referenceResolver = Utils.getComponent(
         DocumentReferenceResolver.TYPE_STRING, "currentmixed");
@@ -136,9 +174,18 @@ public class PdfExportImpl implements PdfExport
     /** DOM Serializer factory. */
     private static DOMImplementationLS lsImpl;
 
-    /** XSLT transformer factory. */
+    /**
+     * SAX parser factory, used to feed the documents to the XSLT transformations. Factories are not thread safe, so
+     * all the accesses are synchronized on it.
+     */
+    private static SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+
+    /** XSLT transformer factory. Factories are not thread safe, so all the accesses are synchronized on it. */
     private static TransformerFactory transformerFactory = TransformerFactory.newInstance();
 
+    /** Limits the number of exports processed at the same time, since each of them holds large documents in memory. */
+    private static Semaphore exportPermits;
+
     /** The Apache FOP instance used for XSL-FO processing. */
     private static FopFactory fopFactory;
 
@@ -157,6 +204,8 @@ public class PdfExportImpl implements PdfExport
         // ----------------------------------------------------------------------
         dbFactory.setNamespaceAware(true);
         dbFactory.setValidating(false);
+        saxParserFactory.setNamespaceAware(true);
+        saxParserFactory.setValidating(false);
 
         try {
             lsImpl = (DOMImplementationLS) DOMImplementationRegistry.newInstance().getDOMImplementation("LS 3.0");
@@ -283,7 +332,37 @@ public void export(XWikiDocument doc, OutputStream out, ExportType type, XWikiCo
     @Override
     public void exportHtml(String html, OutputStream out, ExportType type, XWikiContext context) throws XWikiException
     {
-        exportXHTML(applyCSS(convertToStrictXHtml(html), context), out, type, context);
+        Semaphore permits = getExportPermits(context);
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw createException(e, type, XWikiException.ERROR_XWIKI_EXPORT_PDF_FOP_FAILED);
+        }
+
+        try {
+            exportXHTML(applyCSS(convertToStrictXHtml(html), context), out, type, context);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @param context the current request context, used to read the configuration
+     * @return the permits limiting the number of exports processed at the same time
+     */
+    private static synchronized Semaphore getExportPermits(XWikiContext context)
+    {
+        if (exportPermits == null) {
+            long maxConcurrentExports = Runtime.getRuntime().availableProcessors();
+            if (context != null && context.getWiki() != null) {
+                maxConcurrentExports =
+                    context.getWiki().ParamAsLong(MAX_CONCURRENT_EXPORTS_PARAM, maxConcurrentExports);
+            }
+            exportPermits = new Semaphore((int) Math.max(1, maxConcurrentExports), true);
+        }
+
+        return exportPermits;
     }
 
     /**
@@ -375,19 +454,47 @@ private void cleanIDs(org.w3c.dom.Element e, List<String> seenIDs)
     protected void exportXHTML(String xhtml, OutputStream out, ExportType type, XWikiContext context)
         throws XWikiException
     {
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Final XHTML for export: " + xhtml);
+        boolean chainable;
+        synchronized (transformerFactory) {
+            chainable = transformerFactory.getFeature(SAXTransformerFactory.FEATURE);
         }
 
-        // XSL Transformation to XML-FO
-        String xmlfo = convertXHtmlToXMLFO(xhtml, context);
+        if (LOGGER.isDebugEnabled() || !chainable) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Final XHTML for export: " + xhtml);
+            }
 
-        // Debug output
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("XSL-FO source: " + xmlfo);
-        }
+            // XSL Transformation to XML-FO, kept in memory to be able to log it or when the transformations can't be
+            // chained
+            String xmlfo = convertXHtmlToXMLFO(xhtml, context);
+
+            // Debug output
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("XSL-FO source: " + xmlfo);
+            }
+
+            renderXSLFO(xmlfo, out, type);
+        } else {
+            // Stream the XHTML through the XSL transformations and into FOP, without building the intermediate
+            // documents
+            List<Templates> templates;
+            try {
+                templates = Arrays.asList(getTemplates(getXhtml2FopXslt(context)),
+                    getTemplates(getFopCleanupXslt(context)));
+            } catch (Exception e) {
+                throw new XWikiException(XWikiException.MODULE_XWIKI_EXPORT,
+                    XWikiException.ERROR_XWIKI_EXPORT_XSL_FAILED, "XSL Transformation Failed", e);
+            }
 
-        renderXSLFO(xmlfo, out, type);
+            Source source;
+            try {
+                source = createSource(xhtml);
+            } catch (Exception e) {
+                throw createException(e, type, XWikiException.ERROR_XWIKI_EXPORT_PDF_FOP_FAILED);
+            }
+
+            renderXSLFO(source, templates, out, type);
+        }
     }
 
     /**
@@ -420,6 +527,22 @@ private String convertXHtmlToXMLFO(String xhtml, XWikiContext context) throws XW
      * @throws XWikiException if the conversion fails for any reason
      */
     private void renderXSLFO(String xmlfo, OutputStream out, ExportType type) throws XWikiException
+    {
+        renderXSLFO(new StreamSource(new StringReader(xmlfo)), Collections.<Templates> emptyList(), out, type);
+    }
+
+    /**
+     * Convert a document into PDF, applying the passed XSL transformations to obtain the XSL-FO document. Each
+     * transformation streams its output to the next one, and the last one streams the generated FO to FOP.
+     * 
+     * @param source the source document to render
+     * @param templates the XSL transformations to apply, in order; when empty the source must be an XSL-FO document
+     * @param out where to write the resulting document
+     * @param type the type of the output: PDF or RTF
+     * @throws XWikiException if the conversion fails for any reason
+     */
+    private void renderXSLFO(Source source, List<Templates> templates, OutputStream out, ExportType type)
+        throws XWikiException
     {
         try {
             FOUserAgent foUserAgent = fopFactory.newFOUserAgent();
@@ -427,15 +550,24 @@ private void renderXSLFO(String xmlfo, OutputStream out, ExportType type) throws
             // Construct fop with desired output format
             Fop fop = fopFactory.newFop(type.getMimeType(), foUserAgent, out);
 
-            // Identity transformer
-            Transformer transformer = transformerFactory.newTransformer();
-
-            // Setup input stream
-            Source source = new StreamSource(new StringReader(xmlfo));
-
             // Resulting SAX events (the generated FO) must be piped through to FOP
             Result res = new SAXResult(fop.getDefaultHandler());
 
+            // Chain the transformations starting from the last one, so that each one writes into the next one
+            Transformer transformer;
+            synchronized (transformerFactory) {
+                for (int i = templates.size() - 1; i > 0; i--) {
+                    TransformerHandler handler =
+                        ((SAXTransformerFactory) transformerFactory).newTransformerHandler(templates.get(i));
+                    handler.setResult(res);
+                    res = new SAXResult(handler);
+                }
+
+                // Identity transformer when there's no transformation to apply
+                transformer =
+                    templates.isEmpty() ? transformerFactory.newTransformer() : templates.get(0).newTransformer();
+            }
+
             // Start XSLT transformation and FOP processing
             transformer.transform(source, res);
 
@@ -470,12 +602,8 @@ protected String applyXSLT(String xml, InputStream xslt) throws XWikiException
         StringWriter output = new StringWriter(xml.length());
 
         try {
-            DocumentBuilder docBuilder = dbFactory.newDocumentBuilder();
-            docBuilder.setEntityResolver(Utils.getComponent(EntityResolver.class));
-            Document xsltDocument = docBuilder.parse(new InputSource(xslt));
-            Document xmlDocument = docBuilder.parse(new InputSource(new StringReader(xml)));
-            Transformer transformer = transformerFactory.newTransformer(new DOMSource(xsltDocument));
-            transformer.transform(new DOMSource(xmlDocument), new StreamResult(output));
+            Transformer transformer = getTemplates(xslt).newTransformer();
+            transformer.transform(createSource(xml), new StreamResult(output));
         } catch (Exception e) {
             throw new XWikiException(XWikiException.MODULE_XWIKI_EXPORT, XWikiException.ERROR_XWIKI_EXPORT_XSL_FAILED,
                 "XSL Transformation Failed", e);
@@ -484,6 +612,66 @@ protected String applyXSLT(String xml, InputStream xslt) throws XWikiException
         return output.toString();
     }
 
+    /**
+     * Get the compiled version of an XSLT, compiling it only if the same stylesheet wasn't already compiled.
+     * 
+     * @param xslt the XSLT to compile
+     * @return the compiled XSLT, which can be shared by several transformations
+     * @throws Exception if the XSLT can't be read or compiled
+     */
+    private Templates getTemplates(InputStream xslt) throws Exception
+    {
+        byte[] content;
+        try {
+            content = IOUtils.toByteArray(xslt);
+        } finally {
+            IOUtils.closeQuietly(xslt);
+        }
+
+        ByteBuffer key = ByteBuffer.wrap(content);
+        Templates templates = TEMPLATES_CACHE.get(key);
+        if (templates == null) {
+            DocumentBuilder docBuilder = dbFactory.newDocumentBuilder();
+            docBuilder.setEntityResolver(Utils.getComponent(EntityResolver.class));
+            Document xsltDocument = docBuilder.parse(new InputSource(new ByteArrayInputStream(content)));
+            templates = newTemplates(new DOMSource(xsltDocument));
+            TEMPLATES_CACHE.put(key, templates);
+        }
+
+        return templates;
+    }
+
+    /**
+     * @param xslt the XSLT to compile
+     * @return the compiled XSLT
+     * @throws TransformerConfigurationException if the XSLT can't be compiled
+     */
+    private Templates newTemplates(Source xslt) throws TransformerConfigurationException
+    {
+        synchronized (transformerFactory) {
+            return transformerFactory.newTemplates(xslt);
+        }
+    }
+
+    /**
+     * Create the source of an XSL transformation from an XML document, parsed while it is transformed.
+     * 
+     * @param xml the XML document
+     * @return the source to transform
+     * @throws Exception if the XML parser can't be created
+     */
+    private Source createSource(String xml) throws Exception
+    {
+        SAXParser parser;
+        synchronized (saxParserFactory) {
+            parser = saxParserFactory.newSAXParser();
+        }
+        XMLReader reader = parser.getXMLReader();
+        reader.setEntityResolver(Utils.getComponent(EntityResolver.class));
+
+        return new SAXSource(reader, new InputSource(new StringReader(xml)));
+    }
+
     /**
      * Apply CSS styling to an XHTML document. The style to apply is taken from:
      * <ol>
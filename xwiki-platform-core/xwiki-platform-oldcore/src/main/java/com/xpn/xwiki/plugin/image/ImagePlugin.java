@@ -21,26 +21,24 @@
 
 import java.awt.Image;
 import java.awt.image.RenderedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.util.Arrays;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xwiki.cache.Cache;
-import org.xwiki.cache.CacheException;
-import org.xwiki.cache.config.CacheConfiguration;
-import org.xwiki.cache.eviction.LRUEvictionConfiguration;
 import org.xwiki.environment.Environment;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.api.Api;
 import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiAttachmentContent;
+import com.xpn.xwiki.internal.plugin.image.DiskImageCache;
+import com.xpn.xwiki.internal.plugin.image.DiskImageContent;
 import com.xpn.xwiki.plugin.XWikiDefaultPlugin;
 import com.xpn.xwiki.plugin.XWikiPluginInterface;
 import com.xpn.xwiki.web.Utils;
@@ -65,14 +63,15 @@ public class ImagePlugin extends XWikiDefaultPlugin
     private static final String PLUGIN_NAME = "image";
 
     /**
-     * Cache for already served images.
+     * Cache for already served images, stored on disk.
      */
-    private Cache<XWikiAttachment> imageCache;
+    private DiskImageCache imageCache;
 
     /**
-     * The size of the cache. This parameter can be configured using the key {@code xwiki.plugin.image.cache.capacity}.
+     * The maximum size of the cache, in megabytes. This parameter can be configured using the key
+     * {@code xwiki.plugin.image.cache.diskSize}.
      */
-    private int capacity = 50;
+    private long diskSize = 100;
 
     /**
      * Default JPEG image quality.
@@ -142,38 +141,22 @@ public void init(XWikiContext context)
     private void initCache(XWikiContext context)
     {
         if (this.imageCache == null) {
-            CacheConfiguration configuration = new CacheConfiguration();
-
-            configuration.setConfigurationId("xwiki.plugin.image");
-
-            // Set folder to store cache.
-            File tempDir = this.environment.getTemporaryDirectory();
-            File imgTempDir = new File(tempDir, configuration.getConfigurationId());
-            try {
-                imgTempDir.mkdirs();
-            } catch (Exception ex) {
-                LOG.warn("Cannot create temporary files.", ex);
-            }
-            configuration.put("cache.path", imgTempDir.getAbsolutePath());
-            // Set cache constraints.
-            LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
-            configuration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
-
-            String capacityParam = context.getWiki().Param("xwiki.plugin.image.cache.capacity");
-            if (!StringUtils.isBlank(capacityParam) && StringUtils.isNumeric(capacityParam.trim())) {
+            String diskSizeParam = context.getWiki().Param("xwiki.plugin.image.cache.diskSize");
+            if (!StringUtils.isBlank(diskSizeParam) && StringUtils.isNumeric(diskSizeParam.trim())) {
                 try {
-                    this.capacity = Integer.parseInt(capacityParam.trim());
+                    this.diskSize = Long.parseLong(diskSizeParam.trim());
                 } catch (NumberFormatException e) {
                     LOG.warn(String.format(
-                        "Failed to parse xwiki.plugin.image.cache.capacity configuration parameter. "
-                            + "Using %s as the cache capacity.", this.capacity), e);
+                        "Failed to parse xwiki.plugin.image.cache.diskSize configuration parameter. "
+                            + "Using %s as the cache size.", this.diskSize), e);
                 }
             }
-            lru.setMaxEntries(this.capacity);
 
+            // Store the images in the permanent directory so that they are kept across restarts.
+            File directory = new File(this.environment.getPermanentDirectory(), "cache/image");
             try {
-                this.imageCache = context.getWiki().getLocalCacheFactory().newCache(configuration);
-            } catch (CacheException e) {
+                this.imageCache = new DiskImageCache(directory, this.diskSize * 1024 * 1024);
+            } catch (IOException e) {
                 LOG.error("Error initializing the image cache.", e);
             }
         }
@@ -183,7 +166,7 @@ private void initCache(XWikiContext context)
     public void flushCache()
     {
         if (this.imageCache != null) {
-            this.imageCache.dispose();
+            this.imageCache.removeAll();
         }
         this.imageCache = null;
     }
@@ -289,21 +272,75 @@ private XWikiAttachment downloadImage(XWikiAttachment image, int width, int heig
      * @return the transformed image
      * @throws Exception if transforming the image fails
      */
-    private XWikiAttachment downloadImageFromCache(XWikiAttachment image, int width, int height,
-        boolean keepAspectRatio, float quality, XWikiContext context) throws Exception
+    private XWikiAttachment downloadImageFromCache(final XWikiAttachment image, final int width, final int height,
+        final boolean keepAspectRatio, final float quality, final XWikiContext context) throws Exception
     {
+        // The cache is kept across restarts and shared by all the wikis so use the full attachment reference, taken
+        // from the image document since the image can belong to another wiki than the current one. The attachment
+        // version can be reused when a document is deleted and recreated, so the date and size identify the content.
         String key =
-            String.format("%s;%s;%s;%s;%s;%s", image.getId(), image.getVersion(), width, height, keepAspectRatio,
-                quality);
+            String.format("%s;%s;%s;%s;%s;%s;%s;%s;%s", image.getDoc() != null ? image.getDoc().getPrefixedFullName()
+                : context.getDatabase(), image.getFilename(), image.getVersion(),
+                image.getDate() != null ? image.getDate().getTime() : "", image.getFilesize(), width, height,
+                keepAspectRatio, quality);
+
+        File file = this.imageCache.get(key, new DiskImageCache.Generator()
+        {
+            @Override
+            public void generate(OutputStream out) throws Exception
+            {
+                shrinkImage(image, width, height, keepAspectRatio, quality, out, context);
+            }
+        });
 
-        XWikiAttachment thumbnail = this.imageCache.get(key);
-        if (thumbnail == null) {
-            thumbnail = shrinkImage(image, width, height, keepAspectRatio, quality, context);
-            this.imageCache.set(key, thumbnail);
+        // An empty file means that the image doesn't need to be transformed.
+        if (file.length() == 0) {
+            return image;
         }
+
+        XWikiAttachment thumbnail = (XWikiAttachment) image.clone();
+        thumbnail.setAttachment_content(new DiskImageContent(file, thumbnail));
+        thumbnail.setFilesize((int) file.length());
+
         return thumbnail;
     }
 
+    /**
+     * Reduces the size (i.e. the number of bytes) of an image by scaling its width and height and by reducing its
+     * compression quality. The resulting image is kept in memory or in a temporary file.
+     * 
+     * @param attachment the image to be shrunk
+     * @param requestedWidth the desired image width
+     * @param requestedHeight the desired image height
+     * @param keepAspectRatio {@code true} to preserve the image aspect ratio
+     * @param requestedQuality the desired compression quality
+     * @param context the XWiki context
+     * @return the modified image attachment, or the given attachment if it doesn't need to be modified
+     * @throws Exception if shrinking the image fails
+     * @see #shrinkImage(XWikiAttachment, int, int, boolean, float, OutputStream, XWikiContext)
+     */
+    private XWikiAttachment shrinkImage(XWikiAttachment attachment, int requestedWidth, int requestedHeight,
+        boolean keepAspectRatio, float requestedQuality, XWikiContext context) throws Exception
+    {
+        XWikiAttachment thumbnail = (XWikiAttachment) attachment.clone();
+        XWikiAttachmentContent content = new XWikiAttachmentContent(thumbnail);
+
+        OutputStream out = content.getContentOutputStream();
+        boolean shrunk;
+        try {
+            shrunk = shrinkImage(attachment, requestedWidth, requestedHeight, keepAspectRatio, requestedQuality, out,
+                context);
+        } finally {
+            out.close();
+        }
+        // The thumbnail is never saved, make sure the document it belongs to is not marked as modified.
+        content.setContentDirty(false);
+        thumbnail.setAttachment_content(content);
+        thumbnail.setFilesize(content.getSize());
+
+        return shrunk ? thumbnail : attachment;
+    }
+
     /**
      * Reduces the size (i.e. the number of bytes) of an image by scaling its width and height and by reducing its
      * compression quality. This helps decreasing the time needed to download the image attachment.
@@ -317,12 +354,14 @@ private XWikiAttachment downloadImageFromCache(XWikiAttachment image, int width,
      *            properly specified (in this case the image will be resized to best fit the rectangle with the
      *            requested width and height), {@code false} otherwise
      * @param requestedQuality the desired compression quality
+     * @param out where to write the shrunk image
      * @param context the XWiki context
-     * @return the modified image attachment
+     * @return {@code true} if the shrunk image has been written, {@code false} if the image doesn't need to be
+     *         modified, in which case nothing is written
      * @throws Exception if shrinking the image fails
      */
-    private XWikiAttachment shrinkImage(XWikiAttachment attachment, int requestedWidth, int requestedHeight,
-        boolean keepAspectRatio, float requestedQuality, XWikiContext context) throws Exception
+    private boolean shrinkImage(XWikiAttachment attachment, int requestedWidth, int requestedHeight,
+        boolean keepAspectRatio, float requestedQuality, OutputStream out, XWikiContext context) throws Exception
     {
         Image image = this.imageProcessor.readImage(attachment.getContentInputStream(context));
 
@@ -336,7 +375,7 @@ private XWikiAttachment shrinkImage(XWikiAttachment attachment, int requestedWid
         if (quality < 0) {
             // If no scaling is needed and the quality parameter is not specified, return the original image.
             if (dimensions[0] == currentWidth && dimensions[1] == currentHeight) {
-                return attachment;
+                return false;
             }
             quality = this.defaultQuality;
         }
@@ -344,16 +383,9 @@ private XWikiAttachment shrinkImage(XWikiAttachment attachment, int requestedWid
         // Scale the image to the new dimensions.
         RenderedImage shrunkImage = this.imageProcessor.scaleImage(image, dimensions[0], dimensions[1]);
 
-        // Create an image attachment for the shrunk image.
-        XWikiAttachment thumbnail = (XWikiAttachment) attachment.clone();
-        thumbnail.loadContent(context);
-
-        this.imageProcessor.writeImage(shrunkImage,
-                                       attachment.getMimeType(context),
-                                       quality,
-                                       thumbnail.getAttachment_content().getContentOutputStream());
+        this.imageProcessor.writeImage(shrunkImage, attachment.getMimeType(context), quality, out);
 
-        return thumbnail;
+        return true;
     }
 
     /**
@@ -124,6 +124,12 @@
 
     private List<DocumentFilter> documentFilters = new ArrayList<DocumentFilter>();
 
+    /**
+     * The XAR file the documents are read from, one at a time, when installing the package. {@code null} when the
+     * documents of the package are kept in memory.
+     */
+    private File packageFile;
+
     public String getName()
     {
         return this.name;
@@ -457,6 +463,55 @@ public String Import(byte file[], XWikiContext context) throws IOException, XWik
      * @since 2.3M2
      */
     public String Import(InputStream file, XWikiContext context) throws IOException, XWikiException
+    {
+        this.packageFile = null;
+
+        readPackage(file, true, context);
+
+        return "";
+    }
+
+    /**
+     * Load this package from a XAR file without keeping its documents in memory. Only the package definition and a
+     * light description of each document (name, language and class definition) are kept, the documents themselves are
+     * read again from the file, one at a time, when the package is installed using {@link #install(XWikiContext)}. The
+     * memory needed to import the package thus does not depend on the size of the package.
+     * <p>
+     * The file must not be modified or deleted until the package is installed.
+     * 
+     * @param file the zipped package file
+     * @param context current XWikiContext
+     * @return an empty string, useless.
+     * @throws IOException while reading the ZipFile
+     * @throws XWikiException when package content is broken
+     * @since 4.4M1
+     */
+    public String Import(File file, XWikiContext context) throws IOException, XWikiException
+    {
+        InputStream is = new FileInputStream(file);
+        try {
+            readPackage(is, false, context);
+        } finally {
+            is.close();
+        }
+
+        this.packageFile = file;
+
+        return "";
+    }
+
+    /**
+     * Read the package definition and the documents of a zipped package.
+     * 
+     * @param file an InputStream of a zipped package file
+     * @param keepDocuments if true the documents are kept in memory, otherwise only a light description of each
+     *            document is kept and the documents will have to be read again from the package at install time
+     * @param context current XWikiContext
+     * @throws IOException while reading the ZipFile
+     * @throws XWikiException when package content is broken
+     */
+    private void readPackage(InputStream file, boolean keepDocuments, XWikiContext context) throws IOException,
+        XWikiException
     {
         ZipArchiveInputStream zis;
         ArchiveEntry entry;
@@ -471,7 +526,7 @@ public String Import(InputStream file, XWikiContext context) throws IOException,
              * package.xml file we put it aside to so that we only include documents which are in the file.
              */
             while ((entry = zis.getNextEntry()) != null) {
-                if (entry.isDirectory() || (entry.getName().indexOf("META-INF") != -1)) {
+                if (!isDocumentEntry(entry)) {
                     // The entry is either a directory or is something inside of the META-INF dir.
                     // (we use that directory to put meta data such as LICENSE/NOTICE files.)
                     continue;
@@ -479,26 +534,9 @@ public String Import(InputStream file, XWikiContext context) throws IOException,
                     // The entry is the manifest (package.xml). Read this differently.
                     description = fromXml(new CloseShieldInputStream(zis));
                 } else {
-                    XWikiDocument doc = null;
-                    try {
-                        doc = readFromXML(new CloseShieldInputStream(zis));
-                    } catch (Throwable ex) {
-                        LOGGER.warn("Failed to parse document [" + entry.getName()
-                            + "] from XML during import, thus it will not be installed. " + "The error was: "
-                            + ex.getMessage());
-                        // It will be listed in the "failed documents" section after the import.
-                        addToErrors(entry.getName().replaceAll("/", "."), context);
-
-                        continue;
-                    }
-
-                    // Run all of the registered DocumentFilters on this document and
-                    // if no filters throw exceptions, add it to the list to import.
-                    try {
-                        this.filter(doc, context);
-                        docsToLoad.add(doc);
-                    } catch (ExcludeDocumentException e) {
-                        LOGGER.info("Skip the document '" + doc.getDocumentReference() + "'");
+                    XWikiDocument doc = readDocument(zis, entry, true, context);
+                    if (doc != null) {
+                        docsToLoad.add(keepDocuments ? doc : createDescriptionDocument(doc));
                     }
                 }
             }
@@ -526,8 +564,75 @@ public String Import(InputStream file, XWikiContext context) throws IOException,
         } catch (DocumentException e) {
             throw new PackageException(XWikiException.ERROR_XWIKI_UNKNOWN, "Error when reading the XML");
         }
+    }
 
-        return "";
+    /**
+     * @param entry a zip entry of the package
+     * @return true if the entry is a document or the package definition, false if it's a directory or some meta data
+     */
+    private boolean isDocumentEntry(ArchiveEntry entry)
+    {
+        return !entry.isDirectory() && entry.getName().indexOf("META-INF") == -1;
+    }
+
+    /**
+     * Parse the document stored in the current entry of the package and run all of the registered
+     * {@link DocumentFilter}s on it.
+     * 
+     * @param zis the package stream, positioned at the beginning of the entry to read
+     * @param entry the entry to read
+     * @param reportErrors if true, a document failing to be parsed is added to the list of errors
+     * @param context current XWikiContext
+     * @return the parsed document, or null if it could not be parsed or if it has been excluded by a filter
+     */
+    private XWikiDocument readDocument(ZipArchiveInputStream zis, ArchiveEntry entry, boolean reportErrors,
+        XWikiContext context)
+    {
+        XWikiDocument doc;
+        try {
+            doc = readFromXML(new CloseShieldInputStream(zis));
+        } catch (Throwable ex) {
+            if (reportErrors) {
+                LOGGER.warn("Failed to parse document [" + entry.getName()
+                    + "] from XML during import, thus it will not be installed. " + "The error was: "
+                    + ex.getMessage());
+                // It will be listed in the "failed documents" section after the import.
+                addToErrors(entry.getName().replaceAll("/", "."), context);
+            }
+
+            return null;
+        }
+
+        // Run all of the registered DocumentFilters on this document and
+        // if no filters throw exceptions, add it to the list to import.
+        try {
+            this.filter(doc, context);
+        } catch (ExcludeDocumentException e) {
+            LOGGER.info("Skip the document '" + doc.getDocumentReference() + "'");
+
+            return null;
+        }
+
+        return doc;
+    }
+
+    /**
+     * Create the light description of a document kept in memory when the documents of the package are read from a file
+     * at install time. It only contains the document reference, its language and its class definition, which is
+     * needed to install classes before the documents using them and to inject custom mappings.
+     * 
+     * @param doc the document read from the package
+     * @return the light description of the document
+     */
+    private XWikiDocument createDescriptionDocument(XWikiDocument doc)
+    {
+        XWikiDocument descriptionDocument = new XWikiDocument(doc.getDocumentReference());
+        descriptionDocument.setLanguage(doc.getLanguage());
+        descriptionDocument.setDefaultLanguage(doc.getDefaultLanguage());
+        descriptionDocument.setTranslation(doc.getTranslation());
+        descriptionDocument.setXClass(doc.getXClass());
+
+        return descriptionDocument;
     }
 
     private boolean documentExistInPackageFile(String docName, String language, Document xml)
@@ -650,19 +755,23 @@ public int install(XWikiContext context) throws XWikiException
         om.notify(new XARImportingEvent(), null, context);
 
         try {
-            // Start by installing all documents having a class definition so that their
-            // definitions are available when installing documents using them.
-            for (DocumentInfo classFile : this.classFiles) {
-                if (installDocument(classFile, isAdmin, backup, context) == DocumentInfo.INSTALL_ERROR) {
-                    status = DocumentInfo.INSTALL_ERROR;
+            if (this.packageFile != null) {
+                status = installDocuments(this.packageFile, isAdmin, backup, context);
+            } else {
+                // Start by installing all documents having a class definition so that their
+                // definitions are available when installing documents using them.
+                for (DocumentInfo classFile : this.classFiles) {
+                    if (installDocument(classFile, isAdmin, backup, context) == DocumentInfo.INSTALL_ERROR) {
+                        status = DocumentInfo.INSTALL_ERROR;
+                    }
                 }
-            }
 
-            // Install the remaining documents (without class definitions).
-            for (DocumentInfo docInfo : this.files) {
-                if (!this.classFiles.contains(docInfo)) {
-                    if (installDocument(docInfo, isAdmin, backup, context) == DocumentInfo.INSTALL_ERROR) {
-                        status = DocumentInfo.INSTALL_ERROR;
+                // Install the remaining documents (without class definitions).
+                for (DocumentInfo docInfo : this.files) {
+                    if (!this.classFiles.contains(docInfo)) {
+                        if (installDocument(docInfo, isAdmin, backup, context) == DocumentInfo.INSTALL_ERROR) {
+                            status = DocumentInfo.INSTALL_ERROR;
+                        }
                     }
                 }
             }
@@ -679,6 +788,92 @@ public int install(XWikiContext context) throws XWikiException
         return status;
     }
 
+    /**
+     * Install the documents of the package by reading them from the package file, one at a time. The file is read twice:
+     * once to install the documents having a class definition, so that their definitions are available when installing
+     * documents using them, and once to install the remaining documents.
+     * 
+     * @param file the package file
+     * @param isAdmin true if the current user is admin
+     * @param backup true if the package should be installed as a backup pack
+     * @param context current XWikiContext
+     * @return {@link DocumentInfo#INSTALL_ERROR} if a document failed to be installed, {@link DocumentInfo#INSTALL_OK}
+     *         otherwise
+     * @throws XWikiException when failing to read the package file
+     */
+    private int installDocuments(File file, boolean isAdmin, boolean backup, XWikiContext context)
+        throws XWikiException
+    {
+        Map<String, DocumentInfo> documents = new HashMap<String, DocumentInfo>();
+        for (DocumentInfo docInfo : this.files) {
+            documents.put(docInfo.getFullName() + ':' + docInfo.getLanguage(), docInfo);
+        }
+
+        int status = installDocuments(file, documents, true, isAdmin, backup, context);
+        if (installDocuments(file, documents, false, isAdmin, backup, context) == DocumentInfo.INSTALL_ERROR) {
+            status = DocumentInfo.INSTALL_ERROR;
+        }
+
+        return status;
+    }
+
+    /**
+     * Read the package file and install the documents it contains which are part of this package.
+     * 
+     * @param file the package file
+     * @param documents the documents of this package, indexed by full name and language
+     * @param classes true to install only the documents having a class definition, false to install only the other
+     *            documents
+     * @param isAdmin true if the current user is admin
+     * @param backup true if the package should be installed as a backup pack
+     * @param context current XWikiContext
+     * @return {@link DocumentInfo#INSTALL_ERROR} if a document failed to be installed, {@link DocumentInfo#INSTALL_OK}
+     *         otherwise
+     * @throws XWikiException when failing to read the package file
+     */
+    private int installDocuments(File file, Map<String, DocumentInfo> documents, boolean classes, boolean isAdmin,
+        boolean backup, XWikiContext context) throws XWikiException
+    {
+        int status = DocumentInfo.INSTALL_OK;
+
+        try {
+            ZipArchiveInputStream zis =
+                new ZipArchiveInputStream(new FileInputStream(file), XAR_FILENAME_ENCODING, false);
+            try {
+                ArchiveEntry entry;
+                while ((entry = zis.getNextEntry()) != null) {
+                    if (!isDocumentEntry(entry) || entry.getName().equals(DefaultPackageFileName)) {
+                        continue;
+                    }
+
+                    // Errors have already been reported when the package was imported
+                    XWikiDocument doc = readDocument(zis, entry, false, context);
+                    DocumentInfo docInfo =
+                        doc != null ? documents.get(doc.getFullName() + ':' + doc.getLanguage()) : null;
+                    if (docInfo != null && this.classFiles.contains(docInfo) == classes) {
+                        XWikiDocument descriptionDocument = docInfo.getDoc();
+                        docInfo.setDoc(doc);
+                        try {
+                            if (installDocument(docInfo, isAdmin, backup, context) == DocumentInfo.INSTALL_ERROR) {
+                                status = DocumentInfo.INSTALL_ERROR;
+                            }
+                        } finally {
+                            // Don't keep the installed document in memory
+                            docInfo.setDoc(descriptionDocument);
+                        }
+                    }
+                }
+            } finally {
+                zis.close();
+            }
+        } catch (IOException e) {
+            throw new PackageException(PackageException.ERROR_PACKAGE_UNKNOWN, "Failed to read package file ["
+                + file + "]", e);
+        }
+
+        return status;
+    }
+
     private void registerExtension(XWikiContext context)
     {
         // Register the package as extension if it's one
@@ -0,0 +1,505 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.mapping.Collection;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.Table;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiAttachmentArchive;
+import com.xpn.xwiki.doc.XWikiAttachmentContent;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.doc.XWikiLink;
+import com.xpn.xwiki.doc.rcs.XWikiRCSNodeContent;
+import com.xpn.xwiki.doc.rcs.XWikiRCSNodeInfo;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore.HibernateCallback;
+import com.xpn.xwiki.web.Utils;
+
+/**
+ * Copy all the documents of a wiki into another wiki directly in the database, table by table and in batches of rows,
+ * instead of loading and saving each document.
+ * <p>
+ * Documents, objects, properties and attachments identifiers only depend on the local reference of the document so the
+ * rows of the source wiki can be inserted as is in the target wiki. The copied tables are the ones mapped to the
+ * document entities in the Hibernate configuration, including the custom mapped classes. Without history, each copied
+ * document gets a new history made of a single version 1.1 while each attachment keeps its history and gets a new
+ * version, exactly like a document by document copy.
+ * <p>
+ * No event is sent for the copied documents: it's the caller responsibility to notify the copy of the wiki.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class HibernateWikiCopier
+{
+    /**
+     * The name of the configuration property containing the number of entries copied in each transaction.
+     */
+    public static final String BATCH_SIZE_PROPERTY = "xwiki.store.copy.batchSize";
+
+    /**
+     * The default number of entries copied in each transaction.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HibernateWikiCopier.class);
+
+    /**
+     * The entities holding the current state of the documents. The history of the attachments is part of it since a
+     * document by document copy keeps it.
+     */
+    private static final Set<String> DOCUMENT_ENTITIES = new HashSet<String>(Arrays.asList(
+        XWikiDocument.class.getName(), XWikiLink.class.getName(), XWikiAttachment.class.getName(),
+        XWikiAttachmentContent.class.getName(), XWikiAttachmentArchive.class.getName(), BaseObject.class.getName(),
+        BaseProperty.class.getName()));
+
+    /**
+     * The entities holding the history of the documents.
+     */
+    private static final Set<String> HISTORY_ENTITIES = new HashSet<String>(Arrays.asList(
+        XWikiRCSNodeInfo.class.getName(), XWikiRCSNodeContent.class.getName()));
+
+    private static final String FROM_KEY = "fromKey";
+
+    private static final String TO_KEY = "toKey";
+
+    private static final String SEPARATOR = ", ";
+
+    /**
+     * The version of the copied documents when the history is not copied.
+     */
+    private static final String FIRST_VERSION = "1.1";
+
+    /**
+     * The store where to copy the rows.
+     */
+    private final XWikiHibernateStore store;
+
+    /**
+     * Used to serialize the reference of the source document in the comment of the copied document.
+     */
+    private final EntityReferenceSerializer<String> defaultEntityReferenceSerializer = Utils
+        .getComponent(EntityReferenceSerializer.TYPE_STRING);
+
+    /**
+     * @param store the store where to copy the rows
+     */
+    public HibernateWikiCopier(XWikiHibernateStore store)
+    {
+        this.store = store;
+    }
+
+    /**
+     * Get the tables containing the documents in the provided mapping. Parent tables are listed before the tables
+     * referencing them so the rows can be inserted in this order and deleted in the reverse order.
+     * 
+     * @param configuration the Hibernate configuration containing the mapping
+     * @param withHistory true if the tables containing the history of the documents should be included
+     * @return the tables to copy
+     */
+    public static List<Table> getDocumentTables(Configuration configuration, boolean withHistory)
+    {
+        Map<String, Table> tables = new LinkedHashMap<String, Table>();
+
+        for (Iterator< ? > it = configuration.getClassMappings(); it.hasNext();) {
+            PersistentClass persistentClass = (PersistentClass) it.next();
+            if (isDocumentEntity(persistentClass, withHistory)) {
+                addTables(persistentClass, tables);
+            }
+        }
+
+        // Collection tables reference the tables of their owners
+        for (Iterator< ? > it = configuration.getCollectionMappings(); it.hasNext();) {
+            Collection collection = (Collection) it.next();
+            if (!collection.isOneToMany() && isDocumentEntity(collection.getOwner(), withHistory)) {
+                addTable(collection.getCollectionTable(), tables);
+            }
+        }
+
+        return new ArrayList<Table>(tables.values());
+    }
+
+    /**
+     * @param persistentClass the mapped entity
+     * @param withHistory true if the entities containing the history of the documents are accepted
+     * @return true if the entity is part of the documents
+     */
+    private static boolean isDocumentEntity(PersistentClass persistentClass, boolean withHistory)
+    {
+        String className = persistentClass.getRootClass().getClassName();
+
+        // Custom mapped classes are only declared with an entity name and contain object properties
+        if (className == null) {
+            return true;
+        }
+
+        return DOCUMENT_ENTITIES.contains(className) || (withHistory && HISTORY_ENTITIES.contains(className));
+    }
+
+    /**
+     * Add the table of the provided entity, after the tables of its super classes.
+     * 
+     * @param persistentClass the mapped entity
+     * @param tables the tables found so far, indexed by name
+     */
+    private static void addTables(PersistentClass persistentClass, Map<String, Table> tables)
+    {
+        if (persistentClass.getSuperclass() != null) {
+            addTables(persistentClass.getSuperclass(), tables);
+        }
+
+        addTable(persistentClass.getTable(), tables);
+    }
+
+    /**
+     * @param table the table to add if not already there (several entities can be mapped on the same table)
+     * @param tables the tables found so far, indexed by name
+     */
+    private static void addTable(Table table, Map<String, Table> tables)
+    {
+        if (!tables.containsKey(table.getName())) {
+            tables.put(table.getName(), table);
+        }
+    }
+
+    /**
+     * @param wiki the wiki to check
+     * @param context the XWiki context
+     * @return true if the wiki does not contain any document
+     * @throws XWikiException when failing to count the documents
+     */
+    public boolean isEmpty(String wiki, XWikiContext context) throws XWikiException
+    {
+        return countDocuments(wiki, context) == 0;
+    }
+
+    /**
+     * Copy all the documents of a wiki to another wiki. The target wiki has to be empty, unless {@code clean} is true.
+     * 
+     * @param sourceWiki the wiki from where to copy the documents
+     * @param targetWiki the wiki where to copy the documents
+     * @param withHistory true if the history of the documents should be copied too, false to start a new history for
+     *            each copied document
+     * @param clean true if all the documents of the target wiki should be removed before the copy
+     * @param context the XWiki context
+     * @return the number of copied documents
+     * @throws XWikiException when failing to copy the wiki
+     */
+    public int copyWiki(String sourceWiki, String targetWiki, boolean withHistory, boolean clean, XWikiContext context)
+        throws XWikiException
+    {
+        Configuration configuration = this.store.getConfiguration();
+        Dialect dialect = Dialect.getDialect(configuration.getProperties());
+        int batchSize = (int) context.getWiki().ParamAsLong(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE);
+
+        String sourceSchema = getEscapedSchema(sourceWiki, context);
+        String targetSchema = getEscapedSchema(targetWiki, context);
+
+        if (clean) {
+            List<Table> tables = getDocumentTables(configuration, true);
+            Collections.reverse(tables);
+            for (Table table : tables) {
+                deleteRows(targetSchema + '.' + table.getQuotedName(dialect), targetWiki, context);
+            }
+        }
+
+        for (Table table : getDocumentTables(configuration, withHistory)) {
+            copyRows(table, dialect, sourceSchema, targetSchema, batchSize, targetWiki, context);
+        }
+
+        if (!withHistory) {
+            resetHistory(sourceWiki, targetWiki, batchSize, context);
+        }
+
+        return countDocuments(targetWiki, context);
+    }
+
+    /**
+     * @param wiki the wiki
+     * @param context the XWiki context
+     * @return the escaped name of the database schema of the wiki
+     */
+    private String getEscapedSchema(String wiki, XWikiContext context)
+    {
+        return this.store.escapeSchema(this.store.getSchemaFromWikiName(wiki, context), context);
+    }
+
+    /**
+     * Execute the callback in its own transaction, on the provided wiki.
+     * 
+     * @param wiki the wiki on which to execute the callback
+     * @param context the XWiki context
+     * @param callback the callback to execute
+     * @return the result of the callback
+     * @throws XWikiException when failing to execute the callback
+     */
+    private <T> T executeWrite(String wiki, XWikiContext context, HibernateCallback<T> callback)
+        throws XWikiException
+    {
+        String database = context.getDatabase();
+        try {
+            context.setDatabase(wiki);
+
+            return this.store.executeWrite(context, callback);
+        } finally {
+            context.setDatabase(database);
+        }
+    }
+
+    /**
+     * @param wiki the wiki where to count the documents
+     * @param context the XWiki context
+     * @return the number of documents in the wiki, not counting the translations
+     * @throws XWikiException when failing to count the documents
+     */
+    private int countDocuments(String wiki, XWikiContext context) throws XWikiException
+    {
+        String database = context.getDatabase();
+        try {
+            context.setDatabase(wiki);
+
+            return this.store.executeRead(context, new HibernateCallback<Integer>()
+            {
+                @Override
+                public Integer doInHibernate(Session session) throws HibernateException
+                {
+                    return ((Number) session.createQuery(
+                        "select count(distinct doc.fullName) from XWikiDocument as doc").uniqueResult()).intValue();
+                }
+            });
+        } finally {
+            context.setDatabase(database);
+        }
+    }
+
+    /**
+     * @param qualifiedTableName the schema qualified name of the table to empty
+     * @param wiki the wiki containing the table
+     * @param context the XWiki context
+     * @throws XWikiException when failing to delete the rows
+     */
+    private void deleteRows(final String qualifiedTableName, String wiki, XWikiContext context) throws XWikiException
+    {
+        int rows = executeWrite(wiki, context, new HibernateCallback<Integer>()
+        {
+            @Override
+            public Integer doInHibernate(Session session) throws HibernateException
+            {
+                return session.createSQLQuery("delete from " + qualifiedTableName).executeUpdate();
+            }
+        });
+
+        LOGGER.debug("Deleted [{}] rows from [{}]", rows, qualifiedTableName);
+    }
+
+    /**
+     * Copy the rows of a table from the source schema to the target schema. When the table has a primary key the rows
+     * are copied in batches of distinct values of the first column of the key, each batch in its own transaction.
+     * 
+     * @param table the table to copy
+     * @param dialect the dialect of the database
+     * @param sourceSchema the escaped name of the source schema
+     * @param targetSchema the escaped name of the target schema
+     * @param batchSize the maximum number of key values copied in each transaction
+     * @param targetWiki the target wiki
+     * @param context the XWiki context
+     * @throws XWikiException when failing to copy the rows
+     */
+    private void copyRows(Table table, Dialect dialect, String sourceSchema, String targetSchema, final int batchSize,
+        String targetWiki, XWikiContext context) throws XWikiException
+    {
+        String tableName = table.getQuotedName(dialect);
+        String sourceTable = sourceSchema + '.' + tableName;
+
+        StringBuilder columns = new StringBuilder();
+        for (Iterator< ? > it = table.getColumnIterator(); it.hasNext();) {
+            if (columns.length() > 0) {
+                columns.append(SEPARATOR);
+            }
+            columns.append(((Column) it.next()).getQuotedName(dialect));
+        }
+
+        final String insert =
+            "insert into " + targetSchema + '.' + tableName + " (" + columns + ") select " + columns + " from "
+                + sourceTable;
+
+        long rows = 0;
+        if (!table.hasPrimaryKey()) {
+            rows = executeWrite(targetWiki, context, new HibernateCallback<Integer>()
+            {
+                @Override
+                public Integer doInHibernate(Session session) throws HibernateException
+                {
+                    return session.createSQLQuery(insert).executeUpdate();
+                }
+            });
+        } else {
+            final String key = table.getPrimaryKey().getColumn(0).getQuotedName(dialect);
+            final String keys = "select distinct " + key + " from " + sourceTable;
+
+            Object[] batch = new Object[] {null, 0};
+            do {
+                final Object fromKey = batch[0];
+                batch = executeWrite(targetWiki, context, new HibernateCallback<Object[]>()
+                {
+                    @Override
+                    public Object[] doInHibernate(Session session) throws HibernateException
+                    {
+                        String range = fromKey != null ? " where " + key + " > :" + FROM_KEY : "";
+
+                        Query keyQuery = session.createSQLQuery(keys + range + " order by " + key);
+                        if (fromKey != null) {
+                            keyQuery.setParameter(FROM_KEY, fromKey);
+                        }
+                        List< ? > keyValues = keyQuery.setMaxResults(batchSize).list();
+                        if (keyValues.isEmpty()) {
+                            return new Object[] {null, 0};
+                        }
+
+                        Object toKey = keyValues.get(keyValues.size() - 1);
+                        Query insertQuery =
+                            session.createSQLQuery(insert + (fromKey != null ? range + " and " : " where ") + key
+                                + " <= :" + TO_KEY);
+                        if (fromKey != null) {
+                            insertQuery.setParameter(FROM_KEY, fromKey);
+                        }
+                        insertQuery.setParameter(TO_KEY, toKey);
+
+                        return new Object[] {toKey, insertQuery.executeUpdate()};
+                    }
+                });
+                rows += (Integer) batch[1];
+            } while (batch[0] != null);
+        }
+
+        LOGGER.info("Copied [{}] rows from [{}] to [{}]", new Object[] {rows, sourceTable, targetSchema});
+    }
+
+    /**
+     * Start a new history for each copied document, like a document by document copy does: the documents get the
+     * version 1.1 and a comment indicating where they have been copied from, and a new version is added to the history
+     * of their attachments.
+     * 
+     * @param sourceWiki the wiki from where the documents have been copied
+     * @param targetWiki the wiki where the documents have been copied
+     * @param batchSize the number of documents to process in each transaction
+     * @param context the XWiki context
+     * @throws XWikiException when failing to reset the history of a document
+     */
+    private void resetHistory(final String sourceWiki, final String targetWiki, final int batchSize,
+        final XWikiContext context) throws XWikiException
+    {
+        Long lastId = null;
+        do {
+            final Long fromId = lastId;
+            lastId = executeWrite(targetWiki, context, new HibernateCallback<Long>()
+            {
+                @Override
+                public Long doInHibernate(Session session) throws HibernateException, XWikiException
+                {
+                    Query query =
+                        session.createQuery("select doc.id, doc.space, doc.name, doc.language from XWikiDocument as doc"
+                            + (fromId != null ? " where doc.id > :fromId" : "") + " order by doc.id");
+                    if (fromId != null) {
+                        query.setLong("fromId", fromId);
+                    }
+                    @SuppressWarnings("unchecked")
+                    List<Object[]> documents = query.setMaxResults(batchSize).list();
+
+                    for (Object[] document : documents) {
+                        resetHistory((Long) document[0], (String) document[1], (String) document[2],
+                            (String) document[3], sourceWiki, targetWiki, session, context);
+                    }
+
+                    return documents.isEmpty() ? null : (Long) documents.get(documents.size() - 1)[0];
+                }
+            });
+        } while (lastId != null);
+    }
+
+    /**
+     * Start a new history for a copied document and add a new version to its attachments.
+     * 
+     * @param id the identifier of the document
+     * @param space the space of the document
+     * @param name the name of the document
+     * @param language the language of the document
+     * @param sourceWiki the wiki from where the document has been copied
+     * @param targetWiki the wiki where the document has been copied
+     * @param session the current session
+     * @param context the XWiki context
+     * @throws XWikiException when failing to reset the history of the document
+     */
+    private void resetHistory(long id, String space, String name, String language, String sourceWiki,
+        String targetWiki, Session session, XWikiContext context) throws XWikiException
+    {
+        DocumentReference sourceReference = new DocumentReference(sourceWiki, space, name);
+        String comment = "Copied from " + this.defaultEntityReferenceSerializer.serialize(sourceReference);
+
+        session.createQuery("update XWikiDocument set version = :version, comment = :comment where id = :id")
+            .setString("version", FIRST_VERSION).setString("comment", comment).setLong("id", id).executeUpdate();
+
+        XWikiDocument document = new XWikiDocument(new DocumentReference(targetWiki, space, name));
+        document.setLanguage(language);
+        document = this.store.loadXWikiDoc(document, context);
+
+        context.getWiki().getVersioningStore().resetRCSArchive(document, false, context);
+
+        for (XWikiAttachment attachment : document.getAttachmentList()) {
+            // Saving the copied attachment increments its version and adds it to its copied history
+            attachment.loadContent(context);
+            attachment.updateContentArchive(context);
+            context.getWiki().getAttachmentVersioningStore()
+                .saveArchive(attachment.getAttachment_archive(), context, false);
+            session.createQuery("update XWikiAttachment set version = :version, date = :date where id = :id")
+                .setString("version", attachment.getVersion()).setTimestamp("date", attachment.getDate())
+                .setLong("id", attachment.getId()).executeUpdate();
+        }
+
+        // Don't keep the loaded documents in the session of the batch
+        session.flush();
+        session.clear();
+    }
+}
@@ -29,6 +29,8 @@
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryExecutor;
+import org.xwiki.query.QueryResultIterator;
+import org.xwiki.query.StreamingQueryExecutor;
 
 /**
  * The default QueryExecutor, this uses The HqlQueryExecutor since XWikiHibernateStore is the default store. Wrapping
@@ -39,16 +41,22 @@
  */
 @Component
 @Singleton
-public class DefaultQueryExecutor implements QueryExecutor
+public class DefaultQueryExecutor implements StreamingQueryExecutor
 {
     /** The Hibernate HQL query executor. */
     @Inject
     @Named("hql")
-    private QueryExecutor executor;
+    private StreamingQueryExecutor executor;
 
     @Override
     public <T> List<T> execute(final Query query) throws QueryException
     {
         return this.executor.execute(query);
     }
+
+    @Override
+    public <T> QueryResultIterator<T> iterate(Query query) throws QueryException
+    {
+        return this.executor.iterate(query);
+    }
 }
@@ -27,7 +27,10 @@
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.Transaction;
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.Initializable;
@@ -35,15 +38,17 @@
 import org.xwiki.context.Execution;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
-import org.xwiki.query.QueryExecutor;
+import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryResultIterator;
+import org.xwiki.query.StreamingQueryExecutor;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.store.DatabaseProduct;
 import com.xpn.xwiki.store.XWikiHibernateBaseStore.HibernateCallback;
 import com.xpn.xwiki.store.XWikiHibernateStore;
 import com.xpn.xwiki.store.hibernate.HibernateSessionFactory;
 import com.xpn.xwiki.util.Util;
-import org.xwiki.query.QueryFilter;
 
 /**
  * QueryExecutor implementation for Hibernate Store.
@@ -54,8 +59,14 @@
 @Component
 @Named("hql")
 @Singleton
-public class HqlQueryExecutor implements QueryExecutor, Initializable
+public class HqlQueryExecutor implements StreamingQueryExecutor, Initializable
 {
+    /**
+     * Number of rows fetched at once and read between two clears of the session when iterating over query results,
+     * if the query doesn't specify a fetch size.
+     */
+    private static final int DEFAULT_FETCH_SIZE = 100;
+
     /**
      * Session factory needed for register named queries mapping.
      */
@@ -118,6 +129,73 @@ public List<T> doInHibernate(Session session)
         }
     }
 
+    @Override
+    public <T> QueryResultIterator<T> iterate(Query query) throws QueryException
+    {
+        XWikiContext context = getContext();
+        XWikiHibernateStore store = getStore();
+        String oldDatabase = context.getDatabase();
+
+        // The results are read in a session of their own, which stays open until the iterator is closed. The session
+        // of the context is put aside meanwhile so that the work done while iterating keeps using it.
+        Session originalSession = store.getSession(context);
+        Transaction originalTransaction = store.getTransaction(context);
+        store.setSession(null, context);
+        store.setTransaction(null, context);
+
+        Session session = null;
+        Transaction transaction = null;
+        try {
+            if (query.getWiki() != null) {
+                context.setDatabase(query.getWiki());
+            }
+            store.checkHibernate(context);
+            store.beginTransaction(context);
+            session = store.getSession(context);
+            transaction = store.getTransaction(context);
+
+            org.hibernate.Query hquery = createHibernateQuery(session, query);
+            populateParameters(hquery, query);
+            // The session is never committed, there's no need to keep track of the state of the entities.
+            hquery.setReadOnly(true);
+            hquery.setFetchSize(getStreamingFetchSize(query, store));
+            ScrollableResults results = hquery.scroll(ScrollMode.FORWARD_ONLY);
+
+            int clearInterval = (query.getFetchSize() > 0) ? query.getFetchSize() : DEFAULT_FETCH_SIZE;
+
+            return new HqlQueryResultIterator<T>(results, session, transaction, query.getFilters(), clearInterval);
+        } catch (Exception e) {
+            if (session != null) {
+                HqlQueryResultIterator.release(session, transaction);
+            }
+            throw new QueryException("Exception while iterating over query results", query, e);
+        } finally {
+            store.setSession(originalSession, context);
+            store.setTransaction(originalTransaction, context);
+            context.setDatabase(oldDatabase);
+        }
+    }
+
+    /**
+     * @param query the query to iterate over
+     * @param store the store the query is run against
+     * @return the JDBC fetch size to use to stream the results of the query
+     */
+    private int getStreamingFetchSize(Query query, XWikiHibernateStore store)
+    {
+        if (query.getFetchSize() > 0) {
+            return query.getFetchSize();
+        }
+
+        // The MySQL driver loads the whole result set in memory unless the fetch size is Integer.MIN_VALUE, which makes
+        // it stream the rows one by one.
+        if (DatabaseProduct.MYSQL.equals(store.getDatabaseProductName())) {
+            return Integer.MIN_VALUE;
+        }
+
+        return DEFAULT_FETCH_SIZE;
+    }
+
     /**
      * Append the required select clause to HQL short query statements. Short statements are the only way for users
      * without programming rights to perform queries. Such statements can be for example:
@@ -190,6 +268,12 @@ protected void populateParameters(org.hibernate.Query hquery, Query query)
         if (query.getLimit() > 0) {
             hquery.setMaxResults(query.getLimit());
         }
+        if (query.getFetchSize() > 0) {
+            hquery.setFetchSize(query.getFetchSize());
+        }
+        if (query.isReadOnly()) {
+            hquery.setReadOnly(true);
+        }
         for (Entry<String, Object> e : query.getNamedParameters().entrySet()) {
             hquery.setParameter(e.getKey(), e.getValue());
         }
@@ -0,0 +1,214 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.store.hibernate.query;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.hibernate.HibernateException;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryResultIterator;
+
+/**
+ * Iterates over the scrollable results of a Hibernate query. The query is run in a session of its own, which is
+ * cleared regularly so that the entities already read can be garbage collected, and which is closed (without committing
+ * anything) when the iterator is closed or when all the results have been read.
+ *
+ * @param <T> the type of the results
+ * @version $Id$
+ * @since 4.4M1
+ */
+class HqlQueryResultIterator<T> implements QueryResultIterator<T>
+{
+    /**
+     * Used to log errors while releasing the session.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(HqlQueryResultIterator.class);
+
+    /**
+     * The results of the query.
+     */
+    private final ScrollableResults results;
+
+    /**
+     * The session the query is run in.
+     */
+    private final Session session;
+
+    /**
+     * The transaction the query is run in.
+     */
+    private final Transaction transaction;
+
+    /**
+     * The filters to apply to each result.
+     */
+    private final List<QueryFilter> filters;
+
+    /**
+     * Number of rows after which the session is cleared.
+     */
+    private final int clearInterval;
+
+    /**
+     * Number of rows read so far.
+     */
+    private int readRows;
+
+    /**
+     * The filtered values of the last row read, which have not been returned yet.
+     */
+    private Iterator<T> pending = Collections.<T>emptyList().iterator();
+
+    /**
+     * Whether the session has been released.
+     */
+    private boolean closed;
+
+    /**
+     * @param results the results of the query
+     * @param session the session the query is run in, owned by this iterator
+     * @param transaction the transaction the query is run in, owned by this iterator
+     * @param filters the filters to apply to each result
+     * @param clearInterval number of rows after which the session is cleared
+     */
+    HqlQueryResultIterator(ScrollableResults results, Session session, Transaction transaction,
+        List<QueryFilter> filters, int clearInterval)
+    {
+        this.results = results;
+        this.session = session;
+        this.transaction = transaction;
+        this.filters = filters;
+        this.clearInterval = clearInterval;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while (!this.pending.hasNext()) {
+            if (this.closed || !readRow()) {
+                close();
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public T next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return this.pending.next();
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException("Query results can't be removed");
+    }
+
+    @Override
+    public void close()
+    {
+        if (!this.closed) {
+            this.closed = true;
+            try {
+                this.results.close();
+            } catch (HibernateException e) {
+                LOGGER.warn("Failed to close the query results", e);
+            }
+            release(this.session, this.transaction);
+        }
+    }
+
+    /**
+     * @return the session the query is run in, exposed for tests
+     */
+    Session getSession()
+    {
+        return this.session;
+    }
+
+    /**
+     * Read the next row of the results and apply the query filters to it.
+     *
+     * @return false if there are no more rows
+     */
+    @SuppressWarnings("unchecked")
+    private boolean readRow()
+    {
+        // Detach the entities read so far, the session would keep them all in memory otherwise.
+        if (this.clearInterval > 0 && this.readRows > 0 && this.readRows % this.clearInterval == 0) {
+            this.session.clear();
+        }
+
+        if (!this.results.next()) {
+            return false;
+        }
+        this.readRows++;
+
+        // Return the same values as Query#list(): the selected field itself when there's only one.
+        Object[] row = this.results.get();
+        List values = Collections.singletonList((row.length == 1) ? row[0] : row);
+        if (this.filters != null) {
+            for (QueryFilter filter : this.filters) {
+                values = filter.filterResults(values);
+            }
+        }
+        this.pending = values.iterator();
+
+        return true;
+    }
+
+    /**
+     * Roll back the transaction of a session used to read query results, and close the session.
+     *
+     * @param session the session to close
+     * @param transaction the transaction to roll back
+     */
+    static void release(Session session, Transaction transaction)
+    {
+        try {
+            if (transaction != null) {
+                transaction.rollback();
+            }
+        } catch (HibernateException e) {
+            LOGGER.warn("Failed to roll back the query transaction", e);
+        } finally {
+            try {
+                session.close();
+            } catch (HibernateException e) {
+                LOGGER.warn("Failed to close the query session", e);
+            }
+        }
+    }
+}
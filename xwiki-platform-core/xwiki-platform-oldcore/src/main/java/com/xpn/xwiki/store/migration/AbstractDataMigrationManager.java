@@ -23,7 +23,6 @@
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -31,6 +30,12 @@
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 
@@ -168,7 +173,7 @@ public boolean tryLock()
     /**
      * A cache of wiki database version.
      */
-    private final Map<String, XWikiDBVersion> versionCache = new HashMap<String, XWikiDBVersion>();
+    private final Map<String, XWikiDBVersion> versionCache = new ConcurrentHashMap<String, XWikiDBVersion>();
 
     /**
      * The final database version when the migration process finishes.
@@ -356,10 +361,13 @@ public synchronized void initNewDB() throws DataMigrationException {
     protected abstract void setDBVersionToDatabase(XWikiDBVersion version) throws DataMigrationException;
 
     /**
+     * Not synchronized on the manager since it is called by the threads migrating databases in parallel while the
+     * thread which started them holds the manager lock.
+     *
      * @param version to set
      * @throws DataMigrationException if any error
      */
-    protected final synchronized void setDBVersion(XWikiDBVersion version) throws DataMigrationException
+    protected final void setDBVersion(XWikiDBVersion version) throws DataMigrationException
     {
         String wikiName = getXWikiContext().getDatabase();
         setDBVersionToDatabase(version);
@@ -466,16 +474,14 @@ protected synchronized void startMigrations() throws DataMigrationException
 
             int errorCount = 0;
             try {
-                for (String database : getDatabasesToMigrate()) {
-                    // Set up the context so that it points to the virtual wiki corresponding to the
-                    // database.
-                    context.setDatabase(database);
-                    context.setOriginalDatabase(database);
-                    try {
-                        startMigrationsForDatabase();
-                    } catch (DataMigrationException e) {
-                        errorCount++;
-                    }
+                List<String> databases = new ArrayList<String>(getDatabasesToMigrate());
+                int threads = Integer.parseInt(getXWikiConfig().getProperty("xwiki.store.migration.threads", "1"));
+                if (threads > 1 && databases.size() > 2) {
+                    // The main database is migrated first, the other ones are independent from each other.
+                    errorCount += startMigrationsForDatabases(databases.subList(0, 1));
+                    errorCount += startMigrationsForDatabases(databases.subList(1, databases.size()), threads);
+                } else {
+                    errorCount += startMigrationsForDatabases(databases);
                 }
                 if (errorCount > 0) {
                     String message = String.format(
@@ -499,6 +505,111 @@ protected synchronized void startMigrations() throws DataMigrationException
         }
     }
 
+    /**
+     * Migrate some databases one after the other.
+     *
+     * @param databases the names of the databases to migrate
+     * @return the number of databases which failed to be migrated
+     */
+    private int startMigrationsForDatabases(Collection<String> databases)
+    {
+        XWikiContext context = getXWikiContext();
+
+        int errorCount = 0;
+        for (String database : databases) {
+            // Set up the context so that it points to the virtual wiki corresponding to the
+            // database.
+            context.setDatabase(database);
+            context.setOriginalDatabase(database);
+            try {
+                startMigrationsForDatabase();
+            } catch (DataMigrationException e) {
+                errorCount++;
+            }
+        }
+
+        return errorCount;
+    }
+
+    /**
+     * Migrate some databases in parallel. Each database is migrated in its own thread, with its own copy of the
+     * current context.
+     *
+     * @param databases the names of the databases to migrate
+     * @param threads the maximum number of databases to migrate at the same time
+     * @return the number of databases which failed to be migrated
+     */
+    private int startMigrationsForDatabases(Collection<String> databases, int threads)
+    {
+        final XWikiContext context = getXWikiContext();
+
+        logger.info("Migrating [{}] databases using [{}] threads", databases.size(), threads);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        try {
+            for (final String database : databases) {
+                results.add(executor.submit(new Callable<Boolean>()
+                {
+                    @Override
+                    public Boolean call()
+                    {
+                        return startMigrationsForDatabase(context, database);
+                    }
+                }));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        int errorCount = 0;
+        for (Future<Boolean> result : results) {
+            try {
+                if (!result.get()) {
+                    errorCount++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                errorCount++;
+            } catch (ExecutionException e) {
+                logger.error("Unexpected error while migrating a database", e.getCause());
+                errorCount++;
+            }
+        }
+
+        return errorCount;
+    }
+
+    /**
+     * Migrate a database from a new thread.
+     *
+     * @param parentContext the context of the thread which started the migrations
+     * @param database the name of the database to migrate
+     * @return true if the database has been migrated successfully
+     */
+    private boolean startMigrationsForDatabase(XWikiContext parentContext, String database)
+    {
+        XWikiContext context = parentContext.clone();
+        context.setDatabase(database);
+        context.setOriginalDatabase(database);
+        ExecutionContext executionContext = new ExecutionContext();
+        context.declareInExecutionContext(executionContext);
+        this.execution.setContext(executionContext);
+
+        // The stores check the database each time they switch to it, which must not start the migrations again.
+        lock.lock();
+        try {
+            startMigrationsForDatabase();
+
+            return true;
+        } catch (DataMigrationException e) {
+            return false;
+        } finally {
+            lock.unlock();
+            this.execution.removeContext();
+        }
+    }
+
     /**
      * Returns the names of the databases that should be migrated.
      * This is controlled through the "xwiki.store.migration.databases" configuration property in xwiki.cfg.
@@ -633,7 +744,15 @@ protected void startMigrations(Collection<XWikiMigration> migrations) throws Dat
                     migration.dataMigration.getName(), migration.dataMigration.getVersion(), database);
             }
 
-            migration.dataMigration.migrate();
+            if (migration.dataMigration instanceof ChunkedDataMigration) {
+                migration.dataMigration.migrate();
+            } else {
+                // Other data migrations may keep some state while migrating, they can't run on several databases at
+                // the same time.
+                synchronized (migration.dataMigration) {
+                    migration.dataMigration.migrate();
+                }
+            }
 
             if (migration.dataMigration.getVersion().compareTo(curversion) > 0) {
                 curversion = migration.dataMigration.getVersion();
@@ -0,0 +1,92 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.store.migration;
+
+/**
+ * This entity stores the progress of a {@link ChunkedDataMigration} in the database, so that an interrupted migration
+ * can resume after the last chunk it has committed.
+ *
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class DataMigrationProgress
+{
+    /** Name of the data migration. */
+    private String name;
+
+    /** Key of the last migrated item. */
+    private long lastKey;
+
+    /** Number of items migrated so far. */
+    private long count;
+
+    /** Default constructor. It is need for Hibernate. */
+    public DataMigrationProgress()
+    {
+    }
+
+    /**
+     * @param name name of the data migration
+     * @param lastKey key of the last migrated item
+     * @param count number of items migrated so far
+     */
+    public DataMigrationProgress(String name, long lastKey, long count)
+    {
+        this.name = name;
+        this.lastKey = lastKey;
+        this.count = count;
+    }
+
+    /** @return name of the data migration */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /** @param name name of the data migration */
+    protected void setName(String name)
+    {
+        this.name = name;
+    }
+
+    /** @return key of the last migrated item */
+    public long getLastKey()
+    {
+        return this.lastKey;
+    }
+
+    /** @param lastKey key of the last migrated item */
+    protected void setLastKey(long lastKey)
+    {
+        this.lastKey = lastKey;
+    }
+
+    /** @return number of items migrated so far */
+    public long getCount()
+    {
+        return this.count;
+    }
+
+    /** @param count number of items migrated so far */
+    protected void setCount(long count)
+    {
+        this.count = count;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.store.migration.hibernate;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore.HibernateCallback;
+import com.xpn.xwiki.store.migration.ChunkedDataMigration;
+import com.xpn.xwiki.store.migration.DataMigrationException;
+import com.xpn.xwiki.store.migration.DataMigrationProgress;
+
+/**
+ * Template for data migrations of the hibernate store which go through a lot of items. The items are identified by
+ * increasing keys and are migrated in chunks (see the {@code xwiki.store.migration.chunkSize} configuration), each
+ * chunk being committed in its own transaction together with the progress of the migration. An interrupted migration
+ * resumes after the last committed chunk, and the progress is regularly logged with an estimation of the remaining
+ * time.
+ * <p>
+ * The same instance may migrate several databases at the same time, so implementations should not keep any state in
+ * their fields.
+ *
+ * @version $Id$
+ * @since 4.4M1
+ */
+public abstract class AbstractChunkedHibernateDataMigration extends AbstractHibernateDataMigration implements
+    ChunkedDataMigration
+{
+    /**
+     * Default number of items migrated in each transaction.
+     */
+    private static final long DEFAULT_CHUNK_SIZE = 100;
+
+    /**
+     * Minimum delay between two progress reports, in milliseconds.
+     */
+    private static final long REPORT_INTERVAL = 30000L;
+
+    /**
+     * Logger.
+     */
+    @Inject
+    protected Logger logger;
+
+    /**
+     * @param session the session to use
+     * @return the total number of items to migrate, used to estimate the remaining time
+     * @throws XWikiException if the items can't be counted
+     */
+    protected abstract long countItems(Session session) throws XWikiException;
+
+    /**
+     * @param session the session to use
+     * @param lastKey the key of the last migrated item, {@code null} to get the first items
+     * @param size the maximum number of keys to return
+     * @return the keys of the items following the given key, in increasing order
+     * @throws XWikiException if the keys can't be retrieved
+     */
+    protected abstract List<Long> getNextKeys(Session session, Long lastKey, int size) throws XWikiException;
+
+    /**
+     * Migrate a chunk of items. This is called in the transaction which stores the progress of the migration, and the
+     * store methods called here participate in this transaction.
+     *
+     * @param session the session to use
+     * @param keys the keys of the items to migrate
+     * @throws XWikiException if the items can't be migrated
+     */
+    protected abstract void migrateItems(Session session, List<Long> keys) throws XWikiException;
+
+    /**
+     * @return the number of items migrated in each transaction
+     */
+    protected int getChunkSize()
+    {
+        return (int) getXWikiContext().getWiki().ParamAsLong("xwiki.store.migration.chunkSize", DEFAULT_CHUNK_SIZE);
+    }
+
+    @Override
+    protected void hibernateMigrate() throws DataMigrationException, XWikiException
+    {
+        XWikiContext context = getXWikiContext();
+        XWikiHibernateBaseStore store = getStore();
+        final String name = getName();
+        final int chunkSize = getChunkSize();
+
+        DataMigrationProgress progress =
+            store.executeRead(context, new HibernateCallback<DataMigrationProgress>()
+            {
+                @Override
+                public DataMigrationProgress doInHibernate(Session session) throws HibernateException
+                {
+                    return (DataMigrationProgress) session.get(DataMigrationProgress.class, name);
+                }
+            });
+        long total = store.executeRead(context, new HibernateCallback<Long>()
+        {
+            @Override
+            public Long doInHibernate(Session session) throws XWikiException
+            {
+                return countItems(session);
+            }
+        });
+
+        Long lastKey = null;
+        long count = 0;
+        if (progress != null) {
+            lastKey = progress.getLastKey();
+            count = progress.getCount();
+            this.logger.info("Resuming data migration [{}] on database [{}] after [{}] migrated items",
+                new Object[] {name, context.getDatabase(), count});
+        }
+
+        long startCount = count;
+        long startTime = System.currentTimeMillis();
+        long reportTime = startTime;
+        while (true) {
+            final Long previousKey = lastKey;
+            final List<Long> keys = store.executeRead(context, new HibernateCallback<List<Long>>()
+            {
+                @Override
+                public List<Long> doInHibernate(Session session) throws XWikiException
+                {
+                    return getNextKeys(session, previousKey, chunkSize);
+                }
+            });
+            if (keys.isEmpty()) {
+                break;
+            }
+
+            lastKey = keys.get(keys.size() - 1);
+            count += keys.size();
+            final DataMigrationProgress chunkProgress = new DataMigrationProgress(name, lastKey, count);
+            store.executeWrite(context, new HibernateCallback<Object>()
+            {
+                @Override
+                public Object doInHibernate(Session session) throws XWikiException
+                {
+                    migrateItems(session, keys);
+                    session.saveOrUpdate(chunkProgress);
+
+                    return null;
+                }
+            });
+
+            long now = System.currentTimeMillis();
+            if (now - reportTime >= REPORT_INTERVAL) {
+                reportTime = now;
+                reportProgress(count, total, (count - startCount) * 1.0 / (now - startTime));
+            }
+        }
+
+        store.executeWrite(context, new HibernateCallback<Object>()
+        {
+            @Override
+            public Object doInHibernate(Session session) throws HibernateException
+            {
+                session.createQuery("delete from " + DataMigrationProgress.class.getName() + " where name = :name")
+                    .setString("name", name).executeUpdate();
+
+                return null;
+            }
+        });
+
+        this.logger.info("Data migration [{}] migrated [{}] items on database [{}] in [{}]", new Object[] {name,
+            count - startCount, context.getDatabase(),
+            DurationFormatUtils.formatDurationWords(System.currentTimeMillis() - startTime, true, true)});
+    }
+
+    /**
+     * Log the progress of the migration.
+     *
+     * @param count the number of items migrated so far
+     * @param total the total number of items to migrate
+     * @param rate the number of items migrated per millisecond during this execution
+     */
+    private void reportProgress(long count, long total, double rate)
+    {
+        String remainingTime = "unknown";
+        if (rate > 0 && total > count) {
+            remainingTime = DurationFormatUtils.formatDurationWords((long) ((total - count) / rate), true, true);
+        }
+
+        this.logger.info("Data migration [{}] on database [{}]: [{}] of about [{}] items migrated, [{}] remaining",
+            new Object[] {getName(), getXWikiContext().getDatabase(), count, total, remainingTime});
+    }
+}
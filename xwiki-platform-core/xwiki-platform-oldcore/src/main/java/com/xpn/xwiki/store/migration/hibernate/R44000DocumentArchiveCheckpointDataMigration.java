@@ -0,0 +1,118 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.store.migration.hibernate;
+
+import java.util.List;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocumentArchive;
+import com.xpn.xwiki.doc.rcs.XWikiRCSNodeInfo;
+import com.xpn.xwiki.store.XWikiVersioningStoreInterface;
+import com.xpn.xwiki.store.migration.XWikiDBVersion;
+
+/**
+ * Migration storing periodic full versions in the existing document histories, so that loading any version requires
+ * to apply a bounded number of patches (see the {@code xwiki.store.rcs.nodesPerFull} configuration). Each
+ * chunk of document histories is checkpointed and saved in its own transaction.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+@Component
+@Named("R44000DocumentArchiveCheckpoint")
+@Singleton
+public class R44000DocumentArchiveCheckpointDataMigration extends AbstractChunkedHibernateDataMigration
+{
+    @Override
+    public String getDescription()
+    {
+        return "Store periodic full versions in document histories";
+    }
+
+    @Override
+    public XWikiDBVersion getVersion()
+    {
+        return new XWikiDBVersion(44000);
+    }
+
+    /**
+     * @return version store system for execute store-specific actions.
+     * @throws XWikiException if the store could not be reached
+     */
+    private XWikiVersioningStoreInterface getVersioningStore() throws XWikiException
+    {
+        try {
+            return componentManager.getInstance(XWikiVersioningStoreInterface.class, "hibernate");
+        } catch (ComponentLookupException e) {
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_MIGRATION,
+                String.format("Unable to reach the versioning store for database %s", getXWikiContext().getDatabase()),
+                e);
+        }
+    }
+
+    @Override
+    protected long countItems(Session session)
+    {
+        return ((Number) session.createQuery(
+            "select count(distinct nodeInfo.id.docId) from " + XWikiRCSNodeInfo.class.getName() + " as nodeInfo")
+            .uniqueResult()).longValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected List<Long> getNextKeys(Session session, Long lastKey, int size)
+    {
+        String statement = "select distinct nodeInfo.id.docId from " + XWikiRCSNodeInfo.class.getName()
+            + " as nodeInfo";
+        if (lastKey != null) {
+            statement += " where nodeInfo.id.docId > :lastKey";
+        }
+        Query query = session.createQuery(statement + " order by nodeInfo.id.docId").setMaxResults(size);
+        if (lastKey != null) {
+            query.setLong("lastKey", lastKey);
+        }
+
+        return query.list();
+    }
+
+    @Override
+    protected void migrateItems(Session session, List<Long> docIds) throws XWikiException
+    {
+        XWikiContext context = getXWikiContext();
+        XWikiVersioningStoreInterface versioningStore = getVersioningStore();
+        for (Long docId : docIds) {
+            XWikiDocumentArchive archive = new XWikiDocumentArchive(docId);
+            versioningStore.loadXWikiDocArchive(archive, true, context);
+            if (archive.checkpoint(context)) {
+                versioningStore.saveXWikiDocArchive(archive, true, context);
+            }
+        }
+    }
+}
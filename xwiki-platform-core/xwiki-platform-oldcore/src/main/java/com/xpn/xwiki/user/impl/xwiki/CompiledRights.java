@@ -0,0 +1,212 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.user.impl.xwiki;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.classes.GroupsClass;
+
+/**
+ * The rights objects of a given class found in a document, compiled into lookup tables so that a right can be checked
+ * without parsing the objects again.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+class CompiledRights
+{
+    /**
+     * The separator used in the table keys.
+     */
+    private static final char KEY_SEP = ':';
+
+    /**
+     * The document instance the rights have been compiled from.
+     */
+    private final Reference<XWikiDocument> document;
+
+    /**
+     * The reference of the document the rights have been compiled from.
+     */
+    private final DocumentReference documentReference;
+
+    /**
+     * True if the document the rights have been compiled from exists in the database.
+     */
+    private final boolean documentExisting;
+
+    /**
+     * The parent space set in the preferences of the document, used when the document holds the preferences of a
+     * space.
+     */
+    private final String parentSpace;
+
+    /**
+     * The allow/deny and level couples for which at least one right object exists.
+     */
+    private final Set<String> levels = new HashSet<String>();
+
+    /**
+     * The users and groups listed for each field, allow/deny and level.
+     */
+    private final Map<String, Set<String>> names = new HashMap<String, Set<String>>();
+
+    /**
+     * @param doc the document containing the rights objects
+     * @param className the class of the rights objects
+     */
+    CompiledRights(XWikiDocument doc, String className)
+    {
+        this.document = new WeakReference<XWikiDocument>(doc);
+        this.documentReference = doc.getDocumentReference();
+        this.documentExisting = !doc.isNew();
+        this.parentSpace = doc.getStringValue("XWiki.XWikiPreferences", "parent");
+
+        List<BaseObject> objects = doc.getObjects(className);
+        if (objects != null) {
+            for (BaseObject object : objects) {
+                if (object != null) {
+                    add(object);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param object the rights object to add to the tables
+     */
+    private void add(BaseObject object)
+    {
+        boolean allow = object.getIntValue("allow") == 1;
+        String[] objectLevels = StringUtils.split(object.getStringValue("levels"), " ,|");
+
+        if (objectLevels != null && objectLevels.length > 0) {
+            Set<String> users = getNames(object.getStringValue("users"));
+            Set<String> groups = getNames(object.getStringValue("groups"));
+
+            for (String level : objectLevels) {
+                this.levels.add(getKey(allow, level));
+                addNames("users", allow, level, users);
+                addNames("groups", allow, level, groups);
+            }
+        }
+    }
+
+    /**
+     * @param value the value of a users or groups field
+     * @return the names listed in the field, with the default XWiki space added when no space is specified
+     */
+    private Set<String> getNames(String value)
+    {
+        Set<String> result = new HashSet<String>();
+
+        for (String name : GroupsClass.getListFromString(value)) {
+            result.add(name.indexOf('.') == -1 ? "XWiki." + name : name);
+        }
+
+        return result;
+    }
+
+    private void addNames(String fieldName, boolean allow, String level, Set<String> fieldNames)
+    {
+        if (!fieldNames.isEmpty()) {
+            String key = fieldName + KEY_SEP + getKey(allow, level);
+            Set<String> levelNames = this.names.get(key);
+            if (levelNames == null) {
+                levelNames = new HashSet<String>();
+                this.names.put(key, levelNames);
+            }
+            levelNames.addAll(fieldNames);
+        }
+    }
+
+    private String getKey(boolean allow, String level)
+    {
+        return (allow ? "1" : "0") + KEY_SEP + level;
+    }
+
+    /**
+     * @param doc a document
+     * @return true if the rights have been compiled from the passed document instance
+     */
+    boolean isCompiledFrom(XWikiDocument doc)
+    {
+        return this.document.get() == doc;
+    }
+
+    /**
+     * @return the reference of the document the rights have been compiled from
+     */
+    DocumentReference getDocumentReference()
+    {
+        return this.documentReference;
+    }
+
+    /**
+     * @return true if the document the rights have been compiled from exists in the database
+     */
+    boolean isDocumentExisting()
+    {
+        return this.documentExisting;
+    }
+
+    /**
+     * @return the parent space set in the preferences of the document, empty if there is none
+     */
+    String getParentSpace()
+    {
+        return this.parentSpace;
+    }
+
+    /**
+     * @param level the access level
+     * @param allow true for allow rights, false for deny rights
+     * @return true if at least one right object has been found for the passed level
+     */
+    boolean hasRight(String level, boolean allow)
+    {
+        return this.levels.contains(getKey(allow, level));
+    }
+
+    /**
+     * @param fieldName the field containing the names, either {@code users} or {@code groups}
+     * @param level the access level
+     * @param allow true for allow rights, false for deny rights
+     * @return the names of the users or groups the right has been set for
+     */
+    Set<String> getNames(String fieldName, String level, boolean allow)
+    {
+        Set<String> levelNames = this.names.get(fieldName + KEY_SEP + getKey(allow, level));
+
+        return levelNames != null ? levelNames : Collections.<String> emptySet();
+    }
+}
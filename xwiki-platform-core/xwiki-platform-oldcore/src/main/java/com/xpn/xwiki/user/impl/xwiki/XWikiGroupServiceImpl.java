@@ -21,11 +21,16 @@
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
 import org.xwiki.bridge.event.DocumentCreatedEvent;
@@ -35,6 +40,8 @@
 import org.xwiki.cache.CacheException;
 import org.xwiki.cache.CacheManager;
 import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.event.CacheEntryEvent;
+import org.xwiki.cache.event.CacheEntryListener;
 import org.xwiki.cache.eviction.LRUEvictionConfiguration;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
@@ -126,8 +133,30 @@ public class XWikiGroupServiceImpl implements XWikiGroupService, EventListener
         }
     };
 
+    /**
+     * String between the context wiki and the member in the cache keys.
+     */
+    private static final String KEY_SEP = "/";
+
     protected Cache<Collection<DocumentReference>> memberGroupsCache;
 
+    /**
+     * The keys of the cache entries containing a given group, used to invalidate only the members of a modified group.
+     */
+    private final ConcurrentMap<DocumentReference, Set<String>> groupMembersIndex =
+        new ConcurrentHashMap<DocumentReference, Set<String>>();
+
+    /**
+     * The keys of the cache entries indexed by the lower cased name of the member (without wiki and space), used to
+     * find the entries of the members added to a group whatever the way the member is referenced in the group.
+     */
+    private final ConcurrentMap<String, Set<String>> memberNameIndex = new ConcurrentHashMap<String, Set<String>>();
+
+    /**
+     * Incremented each time cache entries are invalidated so that groups read before the invalidation are not cached.
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
     /**
      * Used to convert a string into a proper Document Reference.
      */
@@ -172,7 +201,32 @@ public synchronized void initCache(int iCapacity, XWikiContext context) throws X
             lru.setMaxEntries(iCapacity);
             configuration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
 
-            this.memberGroupsCache = Utils.getComponent(CacheManager.class).createNewCache(configuration);
+            Cache<Collection<DocumentReference>> cache =
+                Utils.getComponent(CacheManager.class).createNewCache(configuration);
+            cache.addCacheEntryListener(new CacheEntryListener<Collection<DocumentReference>>()
+            {
+                @Override
+                public void cacheEntryAdded(CacheEntryEvent<Collection<DocumentReference>> event)
+                {
+                    // Indexed when the entry is set
+                }
+
+                @Override
+                public void cacheEntryRemoved(CacheEntryEvent<Collection<DocumentReference>> event)
+                {
+                    unindex(event.getEntry().getKey(), event.getEntry().getValue());
+                }
+
+                @Override
+                public void cacheEntryModified(CacheEntryEvent<Collection<DocumentReference>> event)
+                {
+                    // Indexed when the entry is set
+                }
+            });
+
+            this.groupMembersIndex.clear();
+            this.memberNameIndex.clear();
+            this.memberGroupsCache = cache;
         } catch (CacheException e) {
             throw new XWikiException(XWikiException.MODULE_XWIKI_CACHE, XWikiException.ERROR_CACHE_INITIALIZING,
                 "Failed to initialize cache", e);
@@ -183,10 +237,161 @@ public synchronized void initCache(int iCapacity, XWikiContext context) throws X
     public void flushCache()
     {
         if (this.memberGroupsCache != null) {
+            this.invalidations.incrementAndGet();
+            // Entries set after the indexes are cleared are removed just after
+            this.groupMembersIndex.clear();
+            this.memberNameIndex.clear();
             this.memberGroupsCache.removeAll();
         }
     }
 
+    /**
+     * @return a number incremented each time cached group memberships are invalidated or modified, letting the callers
+     *         which keep data computed from the groups of the members know when it may be outdated
+     * @since 4.4M1
+     */
+    public long getInvalidationCount()
+    {
+        return this.invalidations.get();
+    }
+
+    /**
+     * Remove from the cache the entries which may be impacted by a modification of a group: the members whose cached
+     * groups contain the group and the members added to the group. Since only the direct groups of a member are cached,
+     * the groups containing the modified group, directly or through nesting, do not need to be invalidated.
+     * 
+     * @param groupReference the reference of the modified group
+     * @param addedMembers the members added to the group, as stored in the group objects
+     */
+    private void invalidateGroup(DocumentReference groupReference, Collection<String> addedMembers)
+    {
+        this.invalidations.incrementAndGet();
+
+        Set<String> keys = this.groupMembersIndex.get(groupReference);
+        if (keys != null) {
+            for (String key : keys) {
+                this.memberGroupsCache.remove(key);
+            }
+        }
+
+        // The groups of a member are searched in the wiki of the context
+        String prefix = groupReference.getWikiReference().getName() + KEY_SEP;
+        for (String member : addedMembers) {
+            keys = this.memberNameIndex.get(getMemberName(member));
+            if (keys != null) {
+                for (String key : keys) {
+                    if (key.startsWith(prefix)) {
+                        this.memberGroupsCache.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Put the groups of a member in the cache and index them.
+     * 
+     * @param key the cache key
+     * @param groupReferences the groups of the member
+     */
+    private void cacheGroups(String key, Collection<DocumentReference> groupReferences)
+    {
+        index(this.memberNameIndex, getMemberName(StringUtils.substringAfter(key, KEY_SEP)), key);
+        for (DocumentReference groupReference : groupReferences) {
+            index(this.groupMembersIndex, groupReference, key);
+        }
+
+        this.memberGroupsCache.set(key, groupReferences);
+    }
+
+    /**
+     * @param <K> the type of the index keys
+     * @param index the index to update
+     * @param indexKey the index key
+     * @param key the cache key to associate to the index key
+     */
+    private static <K> void index(ConcurrentMap<K, Set<String>> index, K indexKey, String key)
+    {
+        Set<String> keys = index.get(indexKey);
+        if (keys == null) {
+            keys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            Set<String> existingKeys = index.putIfAbsent(indexKey, keys);
+            if (existingKeys != null) {
+                keys = existingKeys;
+            }
+        }
+        keys.add(key);
+    }
+
+    /**
+     * Remove a cache entry from the indexes.
+     * 
+     * @param key the key of the removed cache entry
+     * @param groupReferences the groups of the removed entry
+     */
+    private void unindex(String key, Collection<DocumentReference> groupReferences)
+    {
+        if (key == null || this.memberGroupsCache.get(key) != null) {
+            // The entry has been cached again in the meantime
+            return;
+        }
+
+        Set<String> keys = this.memberNameIndex.get(getMemberName(StringUtils.substringAfter(key, KEY_SEP)));
+        if (keys != null) {
+            keys.remove(key);
+        }
+        if (groupReferences != null) {
+            for (DocumentReference groupReference : groupReferences) {
+                keys = this.groupMembersIndex.get(groupReference);
+                if (keys != null) {
+                    keys.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param member a member as stored in a group object or a serialized member reference
+     * @return the lower cased name of the member, without wiki and space
+     */
+    private String getMemberName(String member)
+    {
+        String name = StringUtils.substringAfter(member, WIKI_FULLNAME_SEP);
+        if (name.length() == 0) {
+            name = member;
+        }
+        int index = name.lastIndexOf(SAME_NAME_SEP);
+        if (index != -1) {
+            name = name.substring(index + 1);
+        }
+
+        return name.trim().toLowerCase();
+    }
+
+    /**
+     * @param document a document
+     * @return the members of the group objects of the document, or null if the document is not a group
+     */
+    private Set<String> getGroupMembers(XWikiDocument document)
+    {
+        Vector<BaseObject> groupObjects = document != null ? document.getObjects(CLASS_XWIKIGROUPS) : null;
+        if (groupObjects == null || groupObjects.isEmpty()) {
+            return null;
+        }
+
+        Set<String> members = new HashSet<String>();
+        for (BaseObject groupObject : groupObjects) {
+            if (groupObject != null) {
+                String member = groupObject.getStringValue(FIELD_XWIKIGROUPS_MEMBER);
+                if (StringUtils.isNotEmpty(member)) {
+                    members.add(member);
+                }
+            }
+        }
+
+        return members;
+    }
+
     /**
      * Check whether the configuration specifies that every user is implicitly in XWikiAllGroup. Configured by the
      * {@code xwiki.authentication.group.allgroupimplicit} parameter in {@code xwiki.cfg}.
@@ -213,7 +418,7 @@ public void addUserToGroup(String username, String database, String group, XWiki
         throws XWikiException
     {
         String shortname = Util.getName(username);
-        String key = database + "/" + database + ":" + shortname;
+        String key = database + KEY_SEP + database + ":" + shortname;
 
         if (this.memberGroupsCache == null) {
             initCache(context);
@@ -223,10 +428,14 @@ public void addUserToGroup(String username, String database, String group, XWiki
 
         if (list == null) {
             list = new ArrayList<DocumentReference>();
-            this.memberGroupsCache.set(key, list);
+            cacheGroups(key, list);
         }
 
-        list.add(this.currentMixedDocumentReferenceResolver.resolve(group, new WikiReference(database)));
+        DocumentReference groupReference =
+            this.currentMixedDocumentReferenceResolver.resolve(group, new WikiReference(database));
+        index(this.groupMembersIndex, groupReference, key);
+        list.add(groupReference);
+        this.invalidations.incrementAndGet();
     }
 
     /**
@@ -400,9 +609,16 @@ public void onEvent(Event event, Object source, Object data)
         XWikiDocument document = (XWikiDocument) source;
         XWikiDocument oldDocument = document.getOriginalDocument();
 
-        // if there is any chance some group changed, flush the group cache
-        if (document.getObject(CLASS_XWIKIGROUPS) != null || oldDocument.getObject(CLASS_XWIKIGROUPS) != null) {
-            flushCache();
+        // if there is any chance some group changed, invalidate the members of the group
+        Set<String> members = getGroupMembers(document);
+        Set<String> oldMembers = getGroupMembers(oldDocument);
+        if ((members != null || oldMembers != null) && this.memberGroupsCache != null) {
+            if (members == null) {
+                members = Collections.emptySet();
+            } else if (oldMembers != null) {
+                members.removeAll(oldMembers);
+            }
+            invalidateGroup(document.getDocumentReference(), members);
         }
     }
 
@@ -716,7 +932,7 @@ public Collection<DocumentReference> getAllGroupsReferencesForMember(DocumentRef
 
         String prefixedFullName = this.entityReferenceSerializer.serialize(memberReference);
 
-        String key = context.getDatabase() + "/" + prefixedFullName;
+        String key = context.getDatabase() + KEY_SEP + prefixedFullName;
         synchronized (key) {
             if (this.memberGroupsCache == null) {
                 initCache(context);
@@ -730,6 +946,8 @@ public Collection<DocumentReference> getAllGroupsReferencesForMember(DocumentRef
             }
 
             if (groupReferences == null) {
+                long invalidationsBefore = this.invalidations.get();
+
                 List<String> groupNames;
                 try {
                     Query query;
@@ -779,8 +997,9 @@ public Collection<DocumentReference> getAllGroupsReferencesForMember(DocumentRef
                     }
                 }
 
-                if (supportCache) {
-                    this.memberGroupsCache.set(key, groupReferences);
+                // Don't cache groups which may have been modified while being read
+                if (supportCache && invalidationsBefore == this.invalidations.get()) {
+                    cacheGroups(key, groupReferences);
                 }
             }
         }
@@ -27,13 +27,17 @@
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Vector;
+import java.util.Set;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.util.DefaultParameterizedType;
 import org.xwiki.model.EntityType;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
@@ -43,8 +47,7 @@
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
-import com.xpn.xwiki.objects.BaseObject;
-import com.xpn.xwiki.objects.classes.GroupsClass;
+import com.xpn.xwiki.internal.cache.DocumentCache;
 import com.xpn.xwiki.user.api.XWikiGroupService;
 import com.xpn.xwiki.user.api.XWikiRightNotFoundException;
 import com.xpn.xwiki.user.api.XWikiRightService;
@@ -68,6 +71,47 @@ public class XWikiRightServiceImpl implements XWikiRightService
 
     private static Map<String, String> actionMap;
 
+    /**
+     * The maximum number of compiled rights objects lists to keep in the cache.
+     */
+    private static final int RIGHTS_CACHE_CAPACITY = 1000;
+
+    /**
+     * The class of the rights objects set on a document.
+     */
+    private static final String RIGHTS_CLASS = "XWiki.XWikiRights";
+
+    /**
+     * The class of the rights objects set in the preferences of a wiki or a space.
+     */
+    private static final String GLOBAL_RIGHTS_CLASS = "XWiki.XWikiGlobalRights";
+
+    /**
+     * The groups of a member, directly or through other groups.
+     */
+    private static class ExpandedGroups
+    {
+        /**
+         * The number of membership invalidations done by the group service when the groups have been expanded.
+         */
+        private final long invalidations;
+
+        /**
+         * The names of the groups.
+         */
+        private final Collection<String> names;
+
+        /**
+         * @param invalidations the number of membership invalidations done by the group service
+         * @param names the names of the groups
+         */
+        ExpandedGroups(long invalidations, Collection<String> names)
+        {
+            this.invalidations = invalidations;
+            this.names = Collections.unmodifiableCollection(names);
+        }
+    }
+
     /**
      * Used to convert a string into a proper Document Reference.
      */
@@ -80,6 +124,26 @@ public class XWikiRightServiceImpl implements XWikiRightService
     private EntityReferenceSerializer<String> entityReferenceSerializer = Utils
         .getComponent(EntityReferenceSerializer.TYPE_STRING);
 
+    /**
+     * The compiled rights of the documents, invalidated when the documents are modified.
+     */
+    private DocumentCache<CompiledRights> rightsCache;
+
+    /**
+     * True if the compiled rights cache could not be created.
+     */
+    private boolean rightsCacheFailed;
+
+    /**
+     * The expanded groups of the members, indexed by wiki of the rights, context wiki and member.
+     */
+    private Cache<ExpandedGroups> groupsCache;
+
+    /**
+     * True if the expanded groups cache could not be created.
+     */
+    private boolean groupsCacheFailed;
+
     protected void logAllow(String username, String page, String action, String info)
     {
         LOGGER.debug("Access has been granted for ([{}], [{}], [{}]): [{}]", username, page, action, info);
@@ -316,113 +380,284 @@ public boolean checkRight(String userOrGroupName, XWikiDocument doc, String acce
             throw new XWikiRightNotFoundException();
         }
 
-        String className = global ? "XWiki.XWikiGlobalRights" : "XWiki.XWikiRights";
-        String fieldName = user ? "users" : "groups";
-        boolean found = false;
+        return checkRight(userOrGroupName, getCompiledRights(doc, global ? GLOBAL_RIGHTS_CLASS : RIGHTS_CLASS),
+            accessLevel, user, allow, global, context);
+    }
+
+    /**
+     * Check the right from the compiled rights objects of a document.
+     * 
+     * @param userOrGroupName the name of the user or group
+     * @param rights the compiled rights objects of the document
+     * @param accessLevel the access level to check
+     * @param user true if the name is the one of a user, false for a group
+     * @param allow true to check the allow rights, false for the deny rights
+     * @param global true if the rights are global rights
+     * @param context the XWiki context
+     * @return true if the user or group, or one of its groups, matches a right
+     * @throws XWikiRightNotFoundException if no right object exists for the level
+     */
+    private boolean checkRight(String userOrGroupName, CompiledRights rights, String accessLevel, boolean user,
+        boolean allow, boolean global, XWikiContext context) throws XWikiRightNotFoundException
+    {
+        DocumentReference documentReference = rights.getDocumentReference();
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Checking right: [{}], [{}], [{}], [{}], [{}], [{}]", userOrGroupName, documentReference,
+                accessLevel, user, allow, global);
+        }
+
+        if (!rights.hasRight(accessLevel, allow)) {
+            // Neither the user nor any of its groups can match a right which does not exist
+            throw new XWikiRightNotFoundException();
+        }
 
-        // Here entity is either a user or a group
+        String documentWiki = documentReference.getWikiReference().getName();
         DocumentReference userOrGroupDocumentReference =
             this.currentMixedDocumentReferenceResolver.resolve(userOrGroupName);
-        String prefixedFullName = this.entityReferenceSerializer.serialize(userOrGroupDocumentReference);
-        String shortname = userOrGroupName;
-        int i0 = userOrGroupName.indexOf(":");
-        if (i0 != -1) {
-            shortname = userOrGroupName.substring(i0 + 1);
+
+        if (matchRight(rights.getNames(user ? "users" : "groups", accessLevel, allow), userOrGroupName,
+            userOrGroupDocumentReference, documentWiki, context)) {
+            LOGGER.debug("Found matching right for [{}]", userOrGroupName);
+            return true;
         }
 
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Checking right: [{}], [{}], [{}], [{}], [{}], [{}]", userOrGroupName, doc.getFullName(),
-                accessLevel, user, allow, global);
+        Set<String> groupNames = rights.getNames("groups", accessLevel, allow);
+        if (!groupNames.isEmpty()) {
+            LOGGER.debug("Searching for matching rights at group level");
+
+            for (String group : getAllMemberGroups(documentWiki, userOrGroupDocumentReference, context)) {
+                try {
+                    DocumentReference groupReference = this.currentMixedDocumentReferenceResolver.resolve(group);
+                    if (matchRight(groupNames, group, groupReference, documentWiki, context)) {
+                        LOGGER.debug("Found matching right for group [{}]", group);
+                        return true;
+                    }
+                } catch (Exception e) {
+                    LOGGER.error("Failed to check right [{}] for group [{}] on document [{}]", accessLevel, group,
+                        documentReference, e);
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Check if the passed user or group is part of the passed names of a right. In the case where the wiki of the
+     * document and the wiki of the user are the same then the short name can be used, otherwise the fully qualified
+     * name is required.
+     * 
+     * @param names the users or groups names the right has been set for
+     * @param userOrGroupName the name of the user or group
+     * @param userOrGroupDocumentReference the reference of the user or group
+     * @param documentWiki the wiki of the document containing the right
+     * @param context the XWiki context
+     * @return true if the user or group is part of the names
+     */
+    private boolean matchRight(Set<String> names, String userOrGroupName,
+        DocumentReference userOrGroupDocumentReference, String documentWiki, XWikiContext context)
+    {
+        if (names.isEmpty()) {
+            return false;
         }
 
-        Vector<BaseObject> vobj = doc.getObjects(className);
-        if (vobj != null) {
-            if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("Checking objects [{}]", vobj.size());
+        if (documentWiki.equals(userOrGroupDocumentReference.getWikiReference().getName())) {
+            String shortname = userOrGroupName.substring(userOrGroupName.indexOf(':') + 1);
+            if (names.contains(shortname)) {
+                return true;
             }
 
-            for (int i = 0; i < vobj.size(); i++) {
-                LOGGER.debug("Checking object [{}]", i);
+            // We should also allow to skip "XWiki." from the usernames and group lists
+            if (names.contains(shortname.substring(shortname.indexOf('.') + 1))) {
+                return true;
+            }
+        }
 
-                BaseObject bobj = vobj.get(i);
+        return context.getDatabase() != null && names.contains(userOrGroupName);
+    }
 
-                if (bobj == null) {
-                    LOGGER.debug("Bypass object [{}]", i);
-                    continue;
-                }
+    /**
+     * Get the rights objects of the passed document compiled into lookup tables. The compiled rights of documents
+     * which have been loaded or saved and not modified since are kept in a cache until the document is modified.
+     * 
+     * @param doc the document containing the rights objects
+     * @param className the class of the rights objects
+     * @return the compiled rights
+     */
+    private CompiledRights getCompiledRights(XWikiDocument doc, String className)
+    {
+        DocumentCache<CompiledRights> cache = getRightsCache();
 
-                String users = bobj.getStringValue(fieldName);
-                String levels = bobj.getStringValue("levels");
-                boolean allowdeny = (bobj.getIntValue("allow") == 1);
+        // Documents which are not in the state they have been stored in can be freely modified so we can't trust the
+        // cache for them
+        if (cache == null || doc.isNew() || doc.isMetaDataDirty()) {
+            return new CompiledRights(doc, className);
+        }
 
-                if (allowdeny == allow) {
-                    LOGGER.debug("Checking match: [{}] in [{}]", accessLevel, levels);
+        CompiledRights rights = cache.get(doc.getDocumentReference(), className);
+        if (rights == null || !rights.isCompiledFrom(doc)) {
+            rights = new CompiledRights(doc, className);
+            cache.set(rights, doc.getDocumentReference(), className);
+        }
 
-                    String[] levelsarray = StringUtils.split(levels, " ,|");
-                    if (ArrayUtils.contains(levelsarray, accessLevel)) {
-                        LOGGER.debug("Found a right for [{}]", allow);
-                        found = true;
+        return rights;
+    }
 
-                        LOGGER.debug("Checking match: [{}] in [{}]", userOrGroupName, users);
+    /**
+     * Get the compiled global rights of the preferences of the current wiki or of one of its spaces. Unlike
+     * {@link #getCompiledRights(XWikiDocument, String)} the cached rights are returned without loading the document,
+     * since they are removed from the cache as soon as the document is modified.
+     * 
+     * @param space the space of the preferences, {@code null} for the preferences of the wiki
+     * @param context the XWiki context
+     * @return the compiled global rights of the preferences document
+     * @throws XWikiException if the preferences document cannot be loaded
+     */
+    private CompiledRights getPreferencesRights(String space, XWikiContext context) throws XWikiException
+    {
+        DocumentReference preferencesReference =
+            space != null ? new DocumentReference(context.getDatabase(), space, "WebPreferences")
+                : new DocumentReference(context.getDatabase(), "XWiki", "XWikiPreferences");
+
+        DocumentCache<CompiledRights> cache = getRightsCache();
+        CompiledRights rights = cache != null ? cache.get(preferencesReference, GLOBAL_RIGHTS_CLASS) : null;
+        if (rights == null) {
+            XWikiDocument preferences =
+                space != null ? context.getWiki().getDocument(space, "WebPreferences", context) : context.getWiki()
+                    .getDocument("XWiki.XWikiPreferences", context);
+            rights = getCompiledRights(preferences, GLOBAL_RIGHTS_CLASS);
+        }
 
-                        String[] userarray = GroupsClass.getListFromString(users).toArray(new String[0]);
+        return rights;
+    }
 
-                        for (int ii = 0; ii < userarray.length; ii++) {
-                            String value = userarray[ii];
-                            if (value.indexOf(".") == -1) {
-                                userarray[ii] = "XWiki." + value;
-                            }
-                        }
+    /**
+     * @return the cache of compiled rights, {@code null} if it could not be created
+     */
+    private synchronized DocumentCache<CompiledRights> getRightsCache()
+    {
+        if (this.rightsCache == null && !this.rightsCacheFailed) {
+            try {
+                DocumentCache<CompiledRights> cache =
+                    Utils.getComponent(new DefaultParameterizedType(null, DocumentCache.class, CompiledRights.class));
 
-                        if (LOGGER.isDebugEnabled()) {
-                            LOGGER.debug("Checking match: [{}] in [{}]", userOrGroupName,
-                                StringUtils.join(userarray, ","));
-                        }
+                CacheConfiguration cacheConfiguration = new CacheConfiguration();
+                cacheConfiguration.setConfigurationId("xwiki.rights.compiled");
+                LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+                lru.setMaxEntries(RIGHTS_CACHE_CAPACITY);
+                cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+                cache.create(cacheConfiguration);
 
-                        // In the case where the document database and the user database is the same
-                        // then we allow the usage of the short name, otherwise the fully qualified
-                        // name is requested
-                        if (doc.getWikiName().equals(userOrGroupDocumentReference.getWikiReference().getName())) {
-                            if (ArrayUtils.contains(userarray, shortname)) {
-                                LOGGER.debug("Found matching right in [{}] for [{}]", users, shortname);
-                                return true;
-                            }
+                this.rightsCache = cache;
+            } catch (Exception e) {
+                LOGGER.warn("Failed to create the compiled rights cache, rights objects will be parsed for each check",
+                    e);
+                this.rightsCacheFailed = true;
+            }
+        }
 
-                            // We should also allow to skip "XWiki." from the usernames and group
-                            // lists
-                            String veryshortname = shortname.substring(shortname.indexOf(".") + 1);
-                            if (ArrayUtils.contains(userarray, veryshortname)) {
-                                LOGGER.debug("Found matching right in [{}] for [{}]", users, shortname);
-                                return true;
-                            }
-                        }
+        return this.rightsCache;
+    }
 
-                        if ((context.getDatabase() != null) && (ArrayUtils.contains(userarray, userOrGroupName))) {
-                            LOGGER.debug("Found matching right in [{}] for [{}]", users, userOrGroupName);
-                            return true;
-                        }
+    /**
+     * Get the groups of a user or group, directly or through other groups. The result is kept in a cache until the
+     * group service invalidates any group membership.
+     * 
+     * @param documentWiki the wiki of the document containing the rights
+     * @param userOrGroupDocumentReference the reference of the user or group
+     * @param context the XWiki context
+     * @return the names of all the groups of the user or group
+     */
+    private Collection<String> getAllMemberGroups(String documentWiki,
+        DocumentReference userOrGroupDocumentReference, XWikiContext context)
+    {
+        String prefixedFullName = this.entityReferenceSerializer.serialize(userOrGroupDocumentReference);
 
-                        LOGGER.debug("Failed match: [{}] in [{}]", userOrGroupName, users);
-                    }
-                } else {
-                    LOGGER.debug("Bypass object [{}] because wrong allow/deny", i);
+        XWikiGroupService groupService;
+        try {
+            groupService = context.getWiki().getGroupService(context);
+        } catch (XWikiException e) {
+            LOGGER.error("Failed to get the group service", e);
+            return Collections.emptyList();
+        }
+
+        // The groups of the member wiki are only searched when the context wiki is not the member wiki
+        String key = documentWiki + '/' + context.getDatabase() + '/' + prefixedFullName;
+        long invalidations = -1;
+        Cache<ExpandedGroups> cache = null;
+        if (groupService instanceof XWikiGroupServiceImpl) {
+            invalidations = ((XWikiGroupServiceImpl) groupService).getInvalidationCount();
+            cache = getGroupsCache();
+            ExpandedGroups groups = cache != null ? cache.get(key) : null;
+            if (groups != null && groups.invalidations == invalidations) {
+                return groups.names;
+            }
+        }
+
+        // Go through the groups of the user or group, and through the groups of these groups
+        Set<String> checkedGroups = new HashSet<String>();
+        checkedGroups.add(prefixedFullName);
+        List<String> groups = new ArrayList<String>();
+        try {
+            groups.addAll(getMemberGroups(documentWiki, prefixedFullName, userOrGroupDocumentReference, context));
+        } catch (XWikiException e) {
+            LOGGER.error("Failed to get the groups of [{}]", prefixedFullName, e);
+        }
+        for (int i = 0; i < groups.size(); ++i) {
+            String group = groups.get(i);
+            if (checkedGroups.add(group)) {
+                try {
+                    DocumentReference groupReference = this.currentMixedDocumentReferenceResolver.resolve(group);
+                    String groupFullName = this.entityReferenceSerializer.serialize(groupReference);
+                    groups.addAll(getMemberGroups(documentWiki, groupFullName, groupReference, context));
+                } catch (Exception e) {
+                    LOGGER.error("Failed to get the groups of group [{}]", group, e);
                 }
+            } else {
+                groups.remove(i--);
             }
         }
 
-        LOGGER.debug("Searching for matching rights at group level");
+        // Don't cache groups read while a membership was being invalidated
+        if (cache != null && invalidations == ((XWikiGroupServiceImpl) groupService).getInvalidationCount()) {
+            cache.set(key, new ExpandedGroups(invalidations, groups));
+        }
 
-        // Didn't found right at this level.. Let's go to group level
-        Map<String, Collection<String>> grouplistcache = (Map<String, Collection<String>>) context.get("grouplist");
-        if (grouplistcache == null) {
-            grouplistcache = new HashMap<String, Collection<String>>();
-            context.put("grouplist", grouplistcache);
+        return groups;
+    }
+
+    /**
+     * @return the cache of the expanded groups of the members, {@code null} if it could not be created
+     */
+    private synchronized Cache<ExpandedGroups> getGroupsCache()
+    {
+        if (this.groupsCache == null && !this.groupsCacheFailed) {
+            try {
+                CacheConfiguration cacheConfiguration = new CacheConfiguration();
+                cacheConfiguration.setConfigurationId("xwiki.rights.groups");
+                LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+                lru.setMaxEntries(RIGHTS_CACHE_CAPACITY);
+                cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+
+                this.groupsCache =
+                    Utils.getComponent(CacheManager.class).createNewCache(cacheConfiguration);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to create the expanded groups cache, groups will be expanded for each check", e);
+                this.groupsCacheFailed = true;
+            }
         }
 
+        return this.groupsCache;
+    }
+
+    private Collection<String> getMemberGroups(String documentWiki, String prefixedFullName,
+        DocumentReference userOrGroupDocumentReference, XWikiContext context) throws XWikiException
+    {
         Collection<String> grouplist = new HashSet<String>();
 
         // Get member groups from document's wiki
-        addMemberGroups(doc.getWikiName(), prefixedFullName, userOrGroupDocumentReference, grouplist, context);
+        addMemberGroups(documentWiki, prefixedFullName, userOrGroupDocumentReference, grouplist, context);
 
         // Get member groups from member's wiki
         if (context.getWiki().isVirtualMode()
@@ -431,32 +666,7 @@ public boolean checkRight(String userOrGroupName, XWikiDocument doc, String acce
                 userOrGroupDocumentReference, grouplist, context);
         }
 
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Searching for matching rights for [{}] groups: [{}]", grouplist.size(), grouplist);
-        }
-
-        for (String group : grouplist) {
-            try {
-                // We need to construct the full group name to make sure the groups are
-                // handled separately
-                boolean result = checkRight(group, doc, accessLevel, false, allow, global, context);
-                if (result) {
-                    return true;
-                }
-            } catch (XWikiRightNotFoundException e) {
-            } catch (Exception e) {
-                LOGGER.error("Failed to check right [{}] for group [{}] on document [¶}]", accessLevel, group,
-                    doc.getPrefixedFullName(), e);
-            }
-        }
-
-        LOGGER.debug("Finished searching for rights for [{}]: [{}]", userOrGroupName, found);
-
-        if (found) {
-            return false;
-        } else {
-            throw new XWikiRightNotFoundException();
-        }
+        return grouplist;
     }
 
     private void addMemberGroups(String wiki, String prefixedFullName, DocumentReference userOrGroupDocumentReference,
@@ -584,12 +794,12 @@ public boolean hasAccessLevel(String accessLevel, String userOrGroupName, String
                 }
             }
 
-            XWikiDocument entityWikiPreferences = context.getWiki().getDocument("XWiki.XWikiPreferences", context);
+            CompiledRights wikiRights = getPreferencesRights(null, context);
 
             // Verify XWiki register right
             if (accessLevel.equals("register")) {
                 try {
-                    allow = checkRight(userOrGroupName, entityWikiPreferences, "register", user, true, true, context);
+                    allow = checkRight(userOrGroupName, wikiRights, "register", user, true, true, context);
                     if (allow) {
                         logAllow(userOrGroupName, entityReference, accessLevel, "register level");
 
@@ -602,7 +812,7 @@ public boolean hasAccessLevel(String accessLevel, String userOrGroupName, String
                 } catch (XWikiRightNotFoundException e) {
                     try {
                         deny =
-                            checkRight(userOrGroupName, entityWikiPreferences, "register", user, false, true, context);
+                            checkRight(userOrGroupName, wikiRights, "register", user, false, true, context);
                         if (deny) {
                             return false;
                         }
@@ -617,7 +827,7 @@ public boolean hasAccessLevel(String accessLevel, String userOrGroupName, String
 
             int maxRecursiveSpaceChecks = context.getWiki().getMaxRecursiveSpaceChecks(context);
             boolean isSuperUser =
-                isSuperUser(accessLevel, userOrGroupName, entityReference, user, entityWikiPreferences,
+                isSuperUser(accessLevel, userOrGroupName, entityReference, user, wikiRights,
                     maxRecursiveSpaceChecks, context);
             if (isSuperUser) {
                 logAllow(userOrGroupName, entityReference, accessLevel, "admin level");
@@ -665,11 +875,11 @@ public boolean hasAccessLevel(String accessLevel, String userOrGroupName, String
                 recursiveSpaceChecks++;
                 // add to list of spaces already checked
                 spacesChecked.add(space);
-                XWikiDocument webdoc = context.getWiki().getDocument(space, "WebPreferences", context);
-                if (!webdoc.isNew()) {
+                CompiledRights webRights = getPreferencesRights(space, context);
+                if (webRights.isDocumentExisting()) {
                     if (hasDenyRights()) {
                         try {
-                            deny = checkRight(userOrGroupName, webdoc, accessLevel, user, false, true, context);
+                            deny = checkRight(userOrGroupName, webRights, accessLevel, user, false, true, context);
                             deny_found = true;
                             if (deny) {
                                 logDeny(userOrGroupName, entityReference, accessLevel, "web level");
@@ -684,7 +894,7 @@ public boolean hasAccessLevel(String accessLevel, String userOrGroupName, String
                     // then we cannot check the web rights anymore
                     if (!allow_found) {
                         try {
-                            allow = checkRight(userOrGroupName, webdoc, accessLevel, user, true, true, context);
+                            allow = checkRight(userOrGroupName, webRights, accessLevel, user, true, true, context);
                             allow_found = true;
                             if (allow) {
                                 logAllow(userOrGroupName, entityReference, accessLevel, "web level");
@@ -696,7 +906,7 @@ public boolean hasAccessLevel(String accessLevel, String userOrGroupName, String
                     }
 
                     // find the parent web to check rights on it
-                    space = webdoc.getStringValue("XWiki.XWikiPreferences", "parent");
+                    space = webRights.getParentSpace();
                     if ((space == null) || (space.trim().equals("")) || spacesChecked.contains(space)) {
                         // no parent space or space already checked (recursive loop). let's finish
                         // the loop
@@ -712,7 +922,7 @@ public boolean hasAccessLevel(String accessLevel, String userOrGroupName, String
             // through the XWiki.XWikiPreferences Global Rights
             if (hasDenyRights()) {
                 try {
-                    deny = checkRight(userOrGroupName, entityWikiPreferences, accessLevel, user, false, true, context);
+                    deny = checkRight(userOrGroupName, wikiRights, accessLevel, user, false, true, context);
                     deny_found = true;
                     if (deny) {
                         logDeny(userOrGroupName, entityReference, accessLevel, "xwiki level");
@@ -727,7 +937,7 @@ public boolean hasAccessLevel(String accessLevel, String userOrGroupName, String
             // then we cannot check the web rights anymore
             if (!allow_found) {
                 try {
-                    allow = checkRight(userOrGroupName, entityWikiPreferences, accessLevel, user, true, true, context);
+                    allow = checkRight(userOrGroupName, wikiRights, accessLevel, user, true, true, context);
                     allow_found = true;
                     if (allow) {
                         logAllow(userOrGroupName, entityReference, accessLevel, "xwiki level");
@@ -812,10 +1022,10 @@ private boolean isSuperAdminOrProgramming(String name, String resourceKey, Strin
         try {
             // The master user and programming rights are checked in the main wiki
             context.setDatabase(context.getMainXWiki());
-            XWikiDocument xwikimasterdoc = context.getWiki().getDocument("XWiki.XWikiPreferences", context);
+            CompiledRights masterRights = getPreferencesRights(null, context);
             // Verify XWiki Master super user
             try {
-                allow = checkRight(name, xwikimasterdoc, "admin", true, true, true, context);
+                allow = checkRight(name, masterRights, "admin", true, true, true, context);
                 if (allow) {
                     logAllow(name, resourceKey, accessLevel, "master admin level");
                     return true;
@@ -831,7 +1041,7 @@ private boolean isSuperAdminOrProgramming(String name, String resourceKey, Strin
                 }
 
                 try {
-                    allow = checkRight(name, xwikimasterdoc, "programming", user, true, true, context);
+                    allow = checkRight(name, masterRights, "programming", user, true, true, context);
                     if (allow) {
                         logAllow(name, resourceKey, accessLevel, "programming level");
 
@@ -857,13 +1067,13 @@ private boolean isSuperAdminOrProgramming(String name, String resourceKey, Strin
     }
 
     private boolean isSuperUser(String accessLevel, String name, String resourceKey, boolean user,
-        XWikiDocument xwikidoc, int maxRecursiveSpaceChecks, XWikiContext context) throws XWikiException
+        CompiledRights wikiRights, int maxRecursiveSpaceChecks, XWikiContext context) throws XWikiException
     {
         boolean allow;
 
         // Verify XWiki super user
         try {
-            allow = checkRight(name, xwikidoc, "admin", user, true, true, context);
+            allow = checkRight(name, wikiRights, "admin", user, true, true, context);
             if (allow) {
                 logAllow(name, resourceKey, accessLevel, "admin level");
 
@@ -884,10 +1094,10 @@ private boolean isSuperUser(String accessLevel, String name, String resourceKey,
             recursiveSpaceChecks++;
             // add to list of spaces already checked
             spacesChecked.add(space);
-            XWikiDocument webdoc = context.getWiki().getDocument(space, "WebPreferences", context);
-            if (!webdoc.isNew()) {
+            CompiledRights webRights = getPreferencesRights(space, context);
+            if (webRights.isDocumentExisting()) {
                 try {
-                    allow = checkRight(name, webdoc, "admin", user, true, true, context);
+                    allow = checkRight(name, webRights, "admin", user, true, true, context);
                     if (allow) {
                         logAllow(name, resourceKey, accessLevel, "web admin level");
                         return true;
@@ -896,7 +1106,7 @@ private boolean isSuperUser(String accessLevel, String name, String resourceKey,
                 }
 
                 // find the parent web to check rights on it
-                space = webdoc.getStringValue("XWiki.XWikiPreferences", "parent");
+                space = webRights.getParentSpace();
                 if ((space == null) || (space.trim().equals("")) || spacesChecked.contains(space)) {
                     // no parent space or space already checked (recursive loop). let's finish the
                     // loop
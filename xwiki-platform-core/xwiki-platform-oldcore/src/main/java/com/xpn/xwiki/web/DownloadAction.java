@@ -21,6 +21,9 @@
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.IllegalCharsetNameException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -56,6 +59,12 @@ public class DownloadAction extends XWikiAction
     /** The name of the HTTP Header that signals a byte-range request. */
     private static final String RANGE_HEADER_NAME = "Range";
 
+    /** The name of the HTTP Header that makes a byte-range request conditional. */
+    private static final String IF_RANGE_HEADER_NAME = "If-Range";
+
+    /** The name of the HTTP Header holding the entity tags known by the client. */
+    private static final String IF_NONE_MATCH_HEADER_NAME = "If-None-Match";
+
     /** The format of a valid range header. */
     private static final Pattern RANGE_HEADER_PATTERN = Pattern.compile("bytes=([0-9]+)?-([0-9]+)?");
 
@@ -100,15 +109,15 @@ public String render(XWikiContext context) throws XWikiException
                 "Attachment content {0} not found", null, args);
         }
 
-        long lastModifiedOnClient = request.getDateHeader("If-Modified-Since");
-        long lastModifiedOnServer = attachment.getDate().getTime();
-        if (lastModifiedOnClient != -1 && lastModifiedOnClient >= lastModifiedOnServer) {
+        if (isNotModified(attachment, request)) {
             response.setStatus(XWikiResponse.SC_NOT_MODIFIED);
+            // A 304 response must repeat the validator the client is expected to send on its next request
+            response.setHeader("ETag", getETag(attachment));
             return null;
         }
 
         // Sending the content of the attachment
-        if (request.getHeader(RANGE_HEADER_NAME) != null) {
+        if (request.getHeader(RANGE_HEADER_NAME) != null && isRangeApplicable(attachment, request)) {
             try {
                 if (sendPartialContent(attachment, request, response, context)) {
                     return null;
@@ -187,9 +196,6 @@ private static void writeByteRange(final XWikiAttachment attachment, Long start,
         throws XWikiException, IOException
     {
         if (start >= 0 && start < attachment.getContentSize(context)) {
-            InputStream data = attachment.getContentInputStream(context);
-            data = new BoundedInputStream(data, end + 1);
-            data.skip(start);
             setCommonHeaders(attachment, request, response, context);
             response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
             if ((end - start + 1L) < Integer.MAX_VALUE) {
@@ -197,7 +203,7 @@ private static void writeByteRange(final XWikiAttachment attachment, Long start,
             }
             response.setHeader("Content-Range", "bytes " + start + "-" + end + SEPARATOR
                 + attachment.getContentSize(context));
-            IOUtils.copyLarge(data, response.getOutputStream());
+            writeContent(attachment, start, end - start + 1, response, context);
         } else {
             response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
         }
@@ -220,23 +226,143 @@ private static void sendContent(final XWikiAttachment attachment,
         final XWikiContext context)
         throws XWikiException
     {
-        InputStream stream = null;
         try {
             setCommonHeaders(attachment, request, response, context);
             response.setContentLength(attachment.getContentSize(context));
-            stream = attachment.getContentInputStream(context);
-            IOUtils.copy(stream, response.getOutputStream());
+            writeContent(attachment, 0, attachment.getContentSize(context), response, context);
         } catch (IOException e) {
             throw new XWikiException(XWikiException.MODULE_XWIKI_APP,
                 XWikiException.ERROR_XWIKI_APP_SEND_RESPONSE_EXCEPTION,
                 "Exception while sending response", e);
-        } finally {
-            if (stream != null) {
+        }
+    }
+
+    /**
+     * Write a part of the attachment content to the response. When the content is stored in a file, it is transfered
+     * directly from the file channel, otherwise it is copied from the attachment content stream.
+     * 
+     * @param attachment the attachment to get content from
+     * @param start the first byte to write
+     * @param length the number of bytes to write
+     * @param response the response to write to
+     * @param context the current request context
+     * @throws XWikiException if the attachment content cannot be retrieved
+     * @throws IOException if the response cannot be written
+     */
+    private static void writeContent(final XWikiAttachment attachment, long start, long length,
+        final XWikiResponse response,
+        final XWikiContext context)
+        throws XWikiException, IOException
+    {
+        FileChannel channel = getContentChannel(attachment);
+        if (channel != null) {
+            try {
+                WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+                long position = start;
+                long end = start + length;
+                while (position < end) {
+                    long transfered = channel.transferTo(position, end - position, out);
+                    if (transfered <= 0) {
+                        // The file is shorter than expected
+                        break;
+                    }
+                    position += transfered;
+                }
+            } finally {
+                IOUtils.closeQuietly(channel);
+            }
+        } else {
+            InputStream stream = attachment.getContentInputStream(context);
+            try {
+                IOUtils.skipFully(stream, start);
+                IOUtils.copyLarge(new BoundedInputStream(stream, length), response.getOutputStream());
+            } finally {
                 IOUtils.closeQuietly(stream);
             }
         }
     }
 
+    /**
+     * @param attachment the attachment to get content from
+     * @return a channel to read the attachment content from, or {@code null} if the content is not stored in a file
+     */
+    private static FileChannel getContentChannel(final XWikiAttachment attachment)
+    {
+        if (attachment.getAttachment_content() == null) {
+            // Let the content stream load the content
+            return null;
+        }
+
+        try {
+            return attachment.getAttachment_content().getContentChannel();
+        } catch (IOException e) {
+            // Fall back on the content stream
+            return null;
+        }
+    }
+
+    /**
+     * Check the conditional request headers against the downloaded attachment. Following the HTTP specification, the
+     * {@code If-Modified-Since} header is ignored when an {@code If-None-Match} header is present.
+     * 
+     * @param attachment the downloaded attachment
+     * @param request the current client request
+     * @return {@code true} if the client already has the current version of the attachment
+     */
+    private static boolean isNotModified(final XWikiAttachment attachment, final XWikiRequest request)
+    {
+        String ifNoneMatch = request.getHeader(IF_NONE_MATCH_HEADER_NAME);
+        if (ifNoneMatch != null) {
+            String etag = getETag(attachment);
+            for (String clientETag : StringUtils.split(ifNoneMatch, ',')) {
+                clientETag = clientETag.trim();
+                if ("*".equals(clientETag) || etag.equals(StringUtils.removeStart(clientETag, "W/"))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long lastModifiedOnClient = request.getDateHeader("If-Modified-Since");
+        long lastModifiedOnServer = attachment.getDate().getTime();
+        return lastModifiedOnClient != -1 && lastModifiedOnClient >= lastModifiedOnServer;
+    }
+
+    /**
+     * Check the {@code If-Range} header, which makes a range request apply only if the client's copy of the
+     * attachment is still the current one.
+     * 
+     * @param attachment the downloaded attachment
+     * @param request the current client request
+     * @return {@code true} if the requested range can be sent, {@code false} if the full content should be sent
+     */
+    private static boolean isRangeApplicable(final XWikiAttachment attachment, final XWikiRequest request)
+    {
+        String ifRange = request.getHeader(IF_RANGE_HEADER_NAME);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Ranges must only be combined using strong entity tags
+            return getETag(attachment).equals(ifRange);
+        }
+
+        long lastModifiedOnClient = request.getDateHeader(IF_RANGE_HEADER_NAME);
+        return lastModifiedOnClient != -1 && lastModifiedOnClient >= attachment.getDate().getTime();
+    }
+
+    /**
+     * Compute the entity tag of the attachment. It identifies the attachment version, and the date is included so that
+     * an attachment deleted and created again does not get the entity tag of the previous one.
+     * 
+     * @param attachment the downloaded attachment
+     * @return the quoted entity tag of the attachment
+     */
+    private static String getETag(final XWikiAttachment attachment)
+    {
+        return "\"" + attachment.getVersion() + '-' + attachment.getDate().getTime() + "\"";
+    }
+
     /**
      * Get the filename of the attachment from the path and the action.
      * 
@@ -297,6 +423,7 @@ private static void setCommonHeaders(final XWikiAttachment attachment,
         response.addHeader("Content-disposition", dispType + "; filename*=utf-8''" + ofilename);
 
         response.setDateHeader("Last-Modified", attachment.getDate().getTime());
+        response.setHeader("ETag", getETag(attachment));
         // Advertise that downloads can be resumed
         response.setHeader("Accept-Ranges", "bytes");
     }
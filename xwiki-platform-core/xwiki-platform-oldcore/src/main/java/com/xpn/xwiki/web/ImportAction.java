@@ -19,9 +19,17 @@
  */
 package com.xpn.xwiki.web;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.xwiki.environment.Environment;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
@@ -29,6 +37,7 @@
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.plugin.packaging.DocumentInfo;
 import com.xpn.xwiki.plugin.packaging.DocumentInfoAPI;
+import com.xpn.xwiki.plugin.packaging.Package;
 import com.xpn.xwiki.plugin.packaging.PackageAPI;
 import com.xpn.xwiki.util.Util;
 
@@ -42,6 +51,8 @@ public class ImportAction extends XWikiAction
     @Override
     public String render(XWikiContext context) throws XWikiException
     {
+        File packageFile = null;
+
         try {
             XWikiRequest request = context.getRequest();
             XWikiResponse response = context.getResponse();
@@ -59,15 +70,18 @@ public String render(XWikiContext context) throws XWikiException
                 return "admin";
             }
 
-            PackageAPI importer = ((PackageAPI) context.getWiki().getPluginApi("package", context));
+            // The package is read from a temporary copy of the attachment so that its documents don't have to be kept
+            // in memory until they are installed
+            Package pack = new Package();
+            PackageAPI importer = new PackageAPI(pack, context);
 
             if ("getPackageInfos".equals(action)) {
                 // List the documents present in the selected archive
                 String encoding = context.getWiki().getEncoding();
                 response.setContentType("text/xml");
                 response.setCharacterEncoding(encoding);
-                XWikiAttachment packFile = doc.getAttachment(name);
-                importer.Import(packFile.getContentInputStream(context));
+                packageFile = createPackageFile(doc.getAttachment(name), context);
+                pack.Import(packageFile, context);
                 String xml = importer.toXml();
                 byte[] result = xml.getBytes(encoding);
                 response.setContentLength(result.length);
@@ -75,8 +89,8 @@ public String render(XWikiContext context) throws XWikiException
                 return null;
             } else if ("import".equals(action)) {
                 // Do the actual import
-                XWikiAttachment packFile = doc.getAttachment(name);
-                importer.Import(packFile.getContentInputStream(context));
+                packageFile = createPackageFile(doc.getAttachment(name), context);
+                pack.Import(packageFile, context);
                 String all = request.get("all");
                 if (!"1".equals(all)) {
                     if (pages != null) {
@@ -143,7 +157,39 @@ public String render(XWikiContext context) throws XWikiException
         } catch (Exception e) {
             throw new XWikiException(XWikiException.MODULE_XWIKI_APP, XWikiException.ERROR_XWIKI_APP_EXPORT,
                 "Exception while importing", e);
+        } finally {
+            FileUtils.deleteQuietly(packageFile);
         }
         return null;
     }
+
+    /**
+     * Copy the content of the package attachment to a temporary file.
+     * 
+     * @param packFile the attachment holding the package
+     * @param context the XWiki context
+     * @return the temporary file
+     * @throws XWikiException when failing to read the attachment content
+     * @throws IOException when failing to write the temporary file
+     */
+    private File createPackageFile(XWikiAttachment packFile, XWikiContext context) throws XWikiException,
+        IOException
+    {
+        Environment environment = Utils.getComponent(Environment.class);
+        File file = File.createTempFile("import", ".xar", environment.getTemporaryDirectory());
+
+        InputStream is = packFile.getContentInputStream(context);
+        try {
+            OutputStream os = new FileOutputStream(file);
+            try {
+                IOUtils.copy(is, os);
+            } finally {
+                os.close();
+            }
+        } finally {
+            is.close();
+        }
+
+        return file;
+    }
 }
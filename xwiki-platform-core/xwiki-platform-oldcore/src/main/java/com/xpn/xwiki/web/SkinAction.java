@@ -19,9 +19,9 @@
  */
 package com.xpn.xwiki.web;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
-import java.util.Arrays;
 import java.util.Date;
 
 import org.apache.commons.io.IOUtils;
@@ -34,6 +34,8 @@
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiAttachment;
 import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.skin.CachedSkinResource;
+import com.xpn.xwiki.internal.skin.SkinResourceCache;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.util.Util;
 
@@ -45,7 +47,11 @@
  * skins,
  * </p>
  * <p>
- * This action indicates that the results should be publicly cacheable for 30 days.
+ * The URLs generated by {@link XWiki#getSkinFile(String, XWikiContext)} hold the version of the file, in which case
+ * this action indicates that the results can be publicly cached for one year. Otherwise the clients have to revalidate
+ * the results each time they use them. The evaluated CSS and JavaScript files are cached on the server, sent compressed
+ * to the clients supporting it and identified by an ETag computed from their content, so that clients can revalidate
+ * them cheaply.
  * </p>
  * 
  * @version $Id$
@@ -53,6 +59,13 @@
  */
 public class SkinAction extends XWikiAction
 {
+    /**
+     * The query string parameter holding the version of the requested file.
+     * 
+     * @since 4.4M1
+     */
+    public static final String VERSION_PARAMETER = "v";
+
     /** Logging helper. */
     private static final Logger LOGGER = LoggerFactory.getLogger(SkinAction.class);
 
@@ -68,6 +81,15 @@ public class SkinAction extends XWikiAction
     /** The encoding to use when reading text resources from the filesystem and when sending css/javascript responses. */
     private static final String ENCODING = "UTF-8";
 
+    /** The compression applied to the evaluated CSS and JavaScript files, when supported by the client. */
+    private static final String GZIP = "gzip";
+
+    /** How long, in seconds, the clients can keep a file requested with its current version: one year. */
+    private static final long VERSIONED_MAX_AGE = 365 * 24 * 3600L;
+
+    /** The cache of the evaluated CSS and JavaScript files. */
+    private SkinResourceCache skinResourceCache;
+
     @Override
     public String render(XWikiContext context) throws XWikiException
     {
@@ -235,30 +257,34 @@ private boolean renderFileFromFilesystem(String path, XWikiContext context) thro
         LOGGER.debug("Rendering filesystem file from path [{}]", path);
         XWikiResponse response = context.getResponse();
         try {
-            byte[] data;
-            data = context.getWiki().getResourceContentAsBytes(path);
-            if (data != null && data.length > 0) {
-                String filename = path.substring(path.lastIndexOf("/") + 1, path.length());
-                String mimetype = context.getEngineContext().getMimeType(filename.toLowerCase());
-                Date modified = null;
-                if (isCssMimeType(mimetype) || isJavascriptMimeType(mimetype)) {
-                    // Always force UTF-8, as this is the assumed encoding for text files.
-                    String rawContent = new String(data, ENCODING);
-                    byte[] newdata = context.getWiki().parseContent(rawContent, context).getBytes(ENCODING);
-                    // If the content contained velocity code, then it should not be cached
-                    if (Arrays.equals(newdata, data)) {
-                        modified = context.getWiki().getResourceLastModificationDate(path);
+            String filename = path.substring(path.lastIndexOf("/") + 1, path.length());
+            String mimetype = context.getEngineContext().getMimeType(filename.toLowerCase());
+            boolean evaluated = isCssMimeType(mimetype) || isJavascriptMimeType(mimetype);
+            String version = getFilesystemVersion(path, context);
+            boolean versioned = isCurrentVersion(version, context);
+            // Files packed inside the war cannot be modified: their path identifies them.
+            String source = version != null ? path + '@' + version : path;
+            CachedSkinResource resource = evaluated ? getSkinResourceCache().get(source, filename, context) : null;
+            byte[] data = null;
+            if (resource == null) {
+                data = context.getWiki().getResourceContentAsBytes(path);
+            }
+            if (resource != null || (data != null && data.length > 0)) {
+                try {
+                    if (evaluated) {
+                        if (resource == null) {
+                            resource =
+                                evaluate(source, filename, data,
+                                    context.getWiki().getResourceLastModificationDate(path), context);
+                        }
+                        sendEvaluatedContent(resource, mimetype, versioned, context);
                     } else {
-                        modified = new Date();
-                        data = newdata;
+                        Date lastModified = context.getWiki().getResourceLastModificationDate(path);
+                        if (!sendNotModified(lastModified, versioned, context)) {
+                            setupHeaders(response, mimetype, lastModified, data.length, versioned);
+                            response.getOutputStream().write(data);
+                        }
                     }
-                    response.setCharacterEncoding(ENCODING);
-                } else {
-                    modified = context.getWiki().getResourceLastModificationDate(path);
-                }
-                setupHeaders(response, mimetype, modified, data.length);
-                try {
-                    response.getOutputStream().write(data);
                 } catch (IOException e) {
                     throw new XWikiException(XWikiException.MODULE_XWIKI_APP,
                         XWikiException.ERROR_XWIKI_APP_SEND_RESPONSE_EXCEPTION, "Exception while sending response", e);
@@ -271,6 +297,34 @@ private boolean renderFileFromFilesystem(String path, XWikiContext context) thro
         return false;
     }
 
+    /**
+     * @param path Path of a file from the webapp.
+     * @param context The current {@link XWikiContext request context}.
+     * @return The version of the file, which changes when the file is modified, or {@code null} if the file is not on
+     *         the filesystem (packed inside the war).
+     * @since 4.4M1
+     */
+    public static String getFilesystemVersion(String path, XWikiContext context)
+    {
+        String realPath = context.getEngineContext() != null ? context.getEngineContext().getRealPath(path) : null;
+
+        return realPath != null ? String.valueOf(new File(realPath).lastModified()) : null;
+    }
+
+    /**
+     * @param contentVersion The version of the raw content of the requested file, {@code null} if unknown.
+     * @param context The current {@link XWikiContext request context}.
+     * @return {@code true} if the file has been requested with its current version, in which case the URL changes as
+     *         soon as the file changes.
+     */
+    private boolean isCurrentVersion(String contentVersion, XWikiContext context)
+    {
+        String version = context.getRequest().getParameter(VERSION_PARAMETER);
+
+        return version != null && contentVersion != null
+            && version.equals(getSkinResourceCache().getResourceVersion(contentVersion));
+    }
+
     /**
      * Tries to serve the content of an XWikiSkins object field as a skin file.
      * 
@@ -295,15 +349,23 @@ public boolean renderFileFromObjectField(String filename, XWikiDocument doc, XWi
             XWiki xwiki = context.getWiki();
             XWikiResponse response = context.getResponse();
             String mimetype = xwiki.getEngineContext().getMimeType(filename.toLowerCase());
-            // Since object fields are read as unicode strings, the result does not depend on the wiki encoding. Force
-            // the output to UTF-8.
-            response.setCharacterEncoding(ENCODING);
+            // The document version identifies the raw content.
+            boolean versioned = isCurrentVersion(doc.getVersion(), context);
             if (isCssMimeType(mimetype) || isJavascriptMimeType(mimetype)) {
-                content = context.getWiki().parseContent(content, context);
+                String source = doc.getPrefixedFullName() + '@' + doc.getVersion();
+                CachedSkinResource resource = getSkinResourceCache().get(source, filename, context);
+                if (resource == null) {
+                    resource = evaluate(source, filename, content.getBytes(ENCODING), doc.getDate(), context);
+                }
+                sendEvaluatedContent(resource, mimetype, versioned, context);
+            } else if (!sendNotModified(doc.getDate(), versioned, context)) {
+                // Since object fields are read as unicode strings, the result does not depend on the wiki encoding.
+                // Force the output to UTF-8.
+                response.setCharacterEncoding(ENCODING);
+                byte[] data = content.getBytes(ENCODING);
+                setupHeaders(response, mimetype, doc.getDate(), data.length, versioned);
+                response.getOutputStream().write(data);
             }
-            byte[] data = content.getBytes(ENCODING);
-            setupHeaders(response, mimetype, doc.getDate(), data.length);
-            response.getOutputStream().write(data);
             return true;
         } else {
             LOGGER.debug("Object field not found or empty");
@@ -330,15 +392,18 @@ public boolean renderFileFromAttachment(String filename, XWikiDocument doc, XWik
             XWiki xwiki = context.getWiki();
             XWikiResponse response = context.getResponse();
             String mimetype = xwiki.getEngineContext().getMimeType(filename.toLowerCase());
+            // The attachment version identifies the raw content.
+            boolean versioned = isCurrentVersion(attachment.getVersion(), context);
             if (isCssMimeType(mimetype) || isJavascriptMimeType(mimetype)) {
-                byte[] data = attachment.getContent(context);
-                // Always force UTF-8, as this is the assumed encoding for text files.
-                data = context.getWiki().parseContent(new String(data, ENCODING), context).getBytes(ENCODING);
-                response.setCharacterEncoding(ENCODING);
-                setupHeaders(response, mimetype, attachment.getDate(), data.length);
-                response.getOutputStream().write(data);
-            } else {
-                setupHeaders(response, mimetype, attachment.getDate(), attachment.getContentSize(context));
+                String source = doc.getPrefixedFullName() + '/' + filename + '@' + attachment.getVersion();
+                CachedSkinResource resource = getSkinResourceCache().get(source, filename, context);
+                if (resource == null) {
+                    resource =
+                        evaluate(source, filename, attachment.getContent(context), attachment.getDate(), context);
+                }
+                sendEvaluatedContent(resource, mimetype, versioned, context);
+            } else if (!sendNotModified(attachment.getDate(), versioned, context)) {
+                setupHeaders(response, mimetype, attachment.getDate(), attachment.getContentSize(context), versioned);
                 IOUtils.copy(attachment.getContentInputStream(context), response.getOutputStream());
             }
             return true;
@@ -348,6 +413,126 @@ public boolean renderFileFromAttachment(String filename, XWikiDocument doc, XWik
         return false;
     }
 
+    /**
+     * Evaluates the Velocity code of a CSS or JavaScript file and stores the result in the skin resource cache.
+     * 
+     * @param source The identifier of the place the file has been read from, used to index the cache.
+     * @param filename The name of the file.
+     * @param data The raw content of the file.
+     * @param lastModified The date of the last change of the raw content.
+     * @param context The current {@link XWikiContext request context}.
+     * @return The evaluated file.
+     * @throws IOException If the evaluated content cannot be compressed.
+     */
+    private CachedSkinResource evaluate(String source, String filename, byte[] data, Date lastModified,
+        XWikiContext context) throws IOException
+    {
+        // Always force UTF-8, as this is the assumed encoding for text files.
+        String rawContent = new String(data, ENCODING);
+        String content = context.getWiki().parseContent(rawContent, context);
+        // If the content contained velocity code, then it changed when it was evaluated.
+        CachedSkinResource resource =
+            new CachedSkinResource(content.getBytes(ENCODING), content.equals(rawContent) ? lastModified : new Date());
+        getSkinResourceCache().set(resource, source, filename, context);
+
+        return resource;
+    }
+
+    /**
+     * Sends an evaluated CSS or JavaScript file, compressed if the client supports it, or only the "304 Not Modified"
+     * status if the client already has the same content.
+     * 
+     * @param resource The evaluated file.
+     * @param mimetype The mimetype of the file.
+     * @param versioned Whether the file has been requested with its current version.
+     * @param context The current {@link XWikiContext request context}.
+     * @throws IOException If the response cannot be sent.
+     */
+    private void sendEvaluatedContent(CachedSkinResource resource, String mimetype, boolean versioned,
+        XWikiContext context) throws IOException
+    {
+        XWikiRequest request = context.getRequest();
+        XWikiResponse response = context.getResponse();
+
+        byte[] data = resource.getContent();
+        String etag = resource.getFingerprint();
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (resource.getCompressedContent() != null && acceptEncoding != null && acceptEncoding.contains(GZIP)) {
+            data = resource.getCompressedContent();
+            // Each representation of the resource must have its own entity tag.
+            etag += '-' + GZIP;
+            response.setHeader("Content-Encoding", GZIP);
+        }
+        etag = '"' + etag + '"';
+
+        response.setHeader("ETag", etag);
+        response.setHeader("Vary", "Accept-Encoding");
+        if (matchesETag(request.getHeader("If-None-Match"), etag)) {
+            setupCacheHeaders(response, resource.getLastModified(), versioned);
+            response.setStatus(XWikiResponse.SC_NOT_MODIFIED);
+        } else {
+            response.setCharacterEncoding(ENCODING);
+            setupHeaders(response, mimetype, resource.getLastModified(), data.length, versioned);
+            response.getOutputStream().write(data);
+        }
+    }
+
+    /**
+     * Sends only the "304 Not Modified" status if the client already has the current content of a file which is not
+     * evaluated, according to its modification date.
+     * 
+     * @param lastChanged The date of the last change of the file.
+     * @param versioned Whether the file has been requested with its current version.
+     * @param context The current {@link XWikiContext request context}.
+     * @return <tt>true</tt> if the status has been sent, in which case the content must not be sent.
+     */
+    private boolean sendNotModified(Date lastChanged, boolean versioned, XWikiContext context)
+    {
+        long lastModifiedOnClient = context.getRequest().getDateHeader("If-Modified-Since");
+        // HTTP dates don't have a milliseconds part.
+        if (lastModifiedOnClient != -1 && lastModifiedOnClient >= lastChanged.getTime() / 1000 * 1000) {
+            setupCacheHeaders(context.getResponse(), lastChanged, versioned);
+            context.getResponse().setStatus(XWikiResponse.SC_NOT_MODIFIED);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks the {@code If-None-Match} request header against the entity tag of the content to send.
+     * 
+     * @param ifNoneMatch The value of the {@code If-None-Match} request header.
+     * @param etag The entity tag of the content to send.
+     * @return <tt>true</tt> if the client already has the content.
+     */
+    private boolean matchesETag(String ifNoneMatch, String etag)
+    {
+        if (ifNoneMatch != null) {
+            for (String value : StringUtils.split(ifNoneMatch, ',')) {
+                String trimmed = value.trim();
+                if ("*".equals(trimmed) || etag.equals(StringUtils.removeStart(trimmed, "W/"))) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return The cache of the evaluated CSS and JavaScript files.
+     */
+    private SkinResourceCache getSkinResourceCache()
+    {
+        if (this.skinResourceCache == null) {
+            this.skinResourceCache = Utils.getComponent(SkinResourceCache.class);
+        }
+
+        return this.skinResourceCache;
+    }
+
     /**
      * Checks if a mimetype indicates a javascript file.
      * 
@@ -383,16 +568,47 @@ public boolean isCssMimeType(String mimetype)
      * @param length The length of the content (in bytes). Used in the "Content-Length" header.
      */
     protected void setupHeaders(XWikiResponse response, String mimetype, Date lastChanged, int length)
+    {
+        setupHeaders(response, mimetype, lastChanged, length, false);
+    }
+
+    /**
+     * Sets several headers to properly identify the response.
+     * 
+     * @param response The servlet response object, where the headers should be set.
+     * @param mimetype The mimetype of the file. Used in the "Content-Type" header.
+     * @param lastChanged The date of the last change of the file. Used in the "Last-Modified" header.
+     * @param length The length of the content (in bytes). Used in the "Content-Length" header.
+     * @param versioned Whether the file has been requested with its current version.
+     */
+    private void setupHeaders(XWikiResponse response, String mimetype, Date lastChanged, int length,
+        boolean versioned)
     {
         if (!StringUtils.isBlank(mimetype)) {
             response.setContentType(mimetype);
         } else {
             response.setContentType("application/octet-stream");
         }
-        response.setDateHeader("Last-Modified", lastChanged.getTime());
-        // Cache for one month (30 days)
-        response.setHeader("Cache-Control", "public");
-        response.setDateHeader("Expires", (new Date()).getTime() + 30 * 24 * 3600 * 1000L);
+        setupCacheHeaders(response, lastChanged, versioned);
         response.setContentLength(length);
     }
+
+    /**
+     * Sets the headers indicating how long the response can be cached.
+     * 
+     * @param response The servlet response object, where the headers should be set.
+     * @param lastChanged The date of the last change of the file. Used in the "Last-Modified" header.
+     * @param versioned Whether the file has been requested with its current version.
+     */
+    private void setupCacheHeaders(XWikiResponse response, Date lastChanged, boolean versioned)
+    {
+        response.setDateHeader("Last-Modified", lastChanged.getTime());
+        if (versioned) {
+            // The URL changes as soon as the file changes
+            response.setHeader("Cache-Control", "public, max-age=" + VERSIONED_MAX_AGE);
+        } else {
+            // The clients have to revalidate their copy, using the ETag or the modification date
+            response.setHeader("Cache-Control", "public, no-cache");
+        }
+    }
 }
@@ -53,6 +53,10 @@
  * <p/>
  * For example if the URL is {@code http://localhost:8080/xwiki/bin/temp/Main/WebHome/test/test.png} then the resource
  * will be fetched from {@code TMPDIR/temp/test/xwiki/Main/WebHome/test.png}.
+ * <p/>
+ * The clients can keep the resources and revalidate them using their modification date. Since the resources are
+ * protected by the view right of their document, they are never stored by shared caches. The chart images named after
+ * the digest of the chart data never change so the clients can use them without revalidating them.
  * 
  * @version $Id$
  * @since 2.4M1
@@ -64,6 +68,22 @@ public class TempResourceAction extends XWikiAction
      */
     public static final Pattern URI_PATTERN = Pattern.compile(".*?/temp/([^/]*+)/([^/]*+)/([^/]*+)/(.*+)");
 
+    /**
+     * The temporary resources which never change for a given URL: the chart images named after the digest of the chart
+     * data, matched against the module and file path parts of the URL.
+     */
+    private static final Pattern IMMUTABLE_RESOURCE_PATTERN = Pattern.compile("chart/[0-9a-f]{40}\\.png");
+
+    /**
+     * How long, in seconds, the clients can use an immutable resource without revalidating it: one year.
+     */
+    private static final int IMMUTABLE_MAX_AGE = 365 * 24 * 3600;
+
+    /**
+     * The name of the HTTP header controlling how the response is cached.
+     */
+    private static final String CACHE_CONTROL = "Cache-Control";
+
     /**
      * The URL encoding.
      */
@@ -98,6 +118,18 @@ public String render(XWikiContext context) throws XWikiException
                 "Invalid temporary resource URL");
         }
 
+        if (isImmutable(uri)) {
+            response.setHeader(CACHE_CONTROL, "private, max-age=" + IMMUTABLE_MAX_AGE);
+        } else {
+            response.setHeader(CACHE_CONTROL, "private");
+        }
+
+        // Let the clients revalidate their copy of the resource, using the modification date of the file.
+        if (isNotModified(tempFile, request)) {
+            response.setStatus(XWikiResponse.SC_NOT_MODIFIED);
+            return null;
+        }
+
         // Write temporary file into response.
         response.setDateHeader("Last-Modified", tempFile.lastModified());
         String contentType = MimeTypes.OCTET_STREAM;
@@ -119,6 +151,34 @@ public String render(XWikiContext context) throws XWikiException
         return null;
     }
 
+    /**
+     * Check the {@code If-Modified-Since} request header against the modification date of the temporary file.
+     * 
+     * @param tempFile the requested temporary file
+     * @param request the current client request
+     * @return {@code true} if the client already has the current version of the temporary file
+     */
+    private boolean isNotModified(File tempFile, XWikiRequest request)
+    {
+        long lastModifiedOnClient = request.getDateHeader("If-Modified-Since");
+        // HTTP dates don't have a milliseconds part.
+        long lastModifiedOnServer = tempFile.lastModified() / 1000 * 1000;
+        return lastModifiedOnClient != -1 && lastModifiedOnClient >= lastModifiedOnServer;
+    }
+
+    /**
+     * @param uri request URI
+     * @return {@code true} if the requested temporary resource never changes, as decided by the server for the
+     *         resources of known modules and never by the client
+     */
+    protected boolean isImmutable(String uri)
+    {
+        Matcher matcher = URI_PATTERN.matcher(uri);
+
+        return matcher.find()
+            && IMMUTABLE_RESOURCE_PATTERN.matcher(matcher.group(3) + '/' + matcher.group(4)).matches();
+    }
+
     /**
      * Returns the temporary file corresponding to the specified URI.
      * 
@@ -24,6 +24,7 @@
 import java.io.OutputStream;
 
 import com.xpn.xwiki.test.AbstractBridgedComponentTestCase;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.junit.Assert;
@@ -101,6 +102,53 @@ public void testSetContentViaOutputStream() throws Exception
         Assert.assertTrue(xac.isContentDirty());
     }
 
+    /**
+     * Stream a large content through the attachment and make sure its size and digest are known without reading the
+     * content back, and that the content can be read several times.
+     */
+    @Test
+    public void testStreamLargeContent() throws Exception
+    {
+        int attachLength = 32 * 1024 * 1024;
+        int seed = (int) System.currentTimeMillis();
+        final XWikiAttachment attach = new XWikiAttachment();
+        attach.setContent(new RandomInputStream(attachLength, seed));
+
+        final XWikiAttachmentContent xac = attach.getAttachment_content();
+        Assert.assertEquals(attachLength, xac.getLongSize());
+        Assert.assertEquals(attachLength, attach.getFilesize());
+        Assert.assertEquals(DigestUtils.md5Hex(new RandomInputStream(attachLength, seed)), xac.getDigest());
+        for (int i = 0; i < 2; i++) {
+            Assert.assertTrue(IOUtils.contentEquals(new RandomInputStream(attachLength, seed),
+                xac.getContentInputStream()));
+        }
+    }
+
+    @Test
+    public void testSetContentWithLength() throws Exception
+    {
+        int seed = (int) System.currentTimeMillis();
+        final XWikiAttachment attach = new XWikiAttachment();
+        attach.setContent(new RandomInputStream(100, seed), 20);
+
+        Assert.assertEquals(20, attach.getAttachment_content().getSize());
+        Assert.assertTrue(IOUtils.contentEquals(new RandomInputStream(20, seed),
+            attach.getAttachment_content().getContentInputStream()));
+    }
+
+    @Test
+    public void testDigestOfContentSetViaOutputStream() throws Exception
+    {
+        int attachLength = 20000;
+        int seed = (int) System.currentTimeMillis();
+        final XWikiAttachmentContent xac = new XWikiAttachmentContent(new XWikiAttachment());
+        final OutputStream os = xac.getContentOutputStream();
+        IOUtils.copy(new RandomInputStream(attachLength, seed), os);
+        os.close();
+
+        Assert.assertEquals(DigestUtils.md5Hex(new RandomInputStream(attachLength, seed)), xac.getDigest());
+    }
+
     /** An InputStream which will return a stream of random bytes of length given in the constructor. */
     private static class RandomInputStream extends InputStream
     {
@@ -43,6 +43,8 @@ public class XWikiDocumentArchiveTest extends AbstractBridgedXWikiComponentTestC
 
     private Mock mockXWiki;
 
+    private XWikiConfig config;
+
     @Override
     protected void setUp() throws Exception
     {
@@ -50,7 +52,8 @@ protected void setUp() throws Exception
 
         this.mockXWiki = mock(XWiki.class);
         this.mockXWiki.stubs().method("getEncoding").will(returnValue("iso-8859-1"));
-        this.mockXWiki.stubs().method("getConfig").will(returnValue(new XWikiConfig()));
+        this.config = new XWikiConfig();
+        this.mockXWiki.stubs().method("getConfig").will(returnValue(this.config));
 
         this.context = new XWikiContext();
         this.context.setWiki((XWiki) this.mockXWiki.proxy());
@@ -326,6 +329,41 @@ public void testVerifyDiffAndFullRevisionAlgorithm() throws Exception
         assertFalse(archive.getNode(new Version(6, 1)).isDiff());
     }
 
+    public void testCheckpoint() throws Exception
+    {
+        XWikiDocument doc = new XWikiDocument(new DocumentReference("Test", "Test", "Test"));
+        XWikiDocumentArchive archive = new XWikiDocumentArchive(doc.getId());
+        doc.setDocumentArchive(archive);
+        String author = "XWiki.some author";
+
+        // Only keep the latest revision as a full revision
+        this.config.setProperty("xwiki.store.rcs.nodesPerFull", "0");
+        for (int i = 1; i <= 7; i++) {
+            addRevisionToHistory(archive, doc, "content " + i + ".1", author, i + ".1");
+        }
+        for (int i = 1; i <= 6; i++) {
+            assertTrue(archive.getNode(new Version(i, 1)).isDiff());
+        }
+        assertFalse(archive.checkpoint(context));
+
+        this.config.setProperty("xwiki.store.rcs.nodesPerFull", "3");
+        archive.getUpdatedNodeContents().clear();
+        assertTrue(archive.checkpoint(context));
+        assertFalse(archive.getNode(new Version(7, 1)).isDiff());
+        assertTrue(archive.getNode(new Version(6, 1)).isDiff());
+        assertTrue(archive.getNode(new Version(5, 1)).isDiff());
+        assertFalse(archive.getNode(new Version(4, 1)).isDiff());
+        assertTrue(archive.getNode(new Version(3, 1)).isDiff());
+        assertTrue(archive.getNode(new Version(2, 1)).isDiff());
+        assertFalse(archive.getNode(new Version(1, 1)).isDiff());
+        assertEquals(2, archive.getUpdatedNodeContents().size());
+        assertFalse(archive.checkpoint(context));
+
+        for (int i = 1; i <= 7; i++) {
+            assertEquals("content " + i + ".1", archive.loadDocument(new Version(i, 1), context).getContent());
+        }
+    }
+
     private void addRevisionToHistory(XWikiDocumentArchive archive, XWikiDocument document, String content,
         String author, String comment) throws XWikiException
     {
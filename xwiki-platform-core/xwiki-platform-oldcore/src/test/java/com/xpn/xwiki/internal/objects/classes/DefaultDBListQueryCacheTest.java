@@ -0,0 +1,296 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.objects.classes;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.event.CacheEntryListener;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.test.AbstractMockingComponentTestCase;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.annotation.MockingRequirement;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.WikiBulkCopiedEvent;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.web.Utils;
+
+/**
+ * Unit tests for {@link DefaultDBListQueryCache}.
+ * 
+ * @version $Id$
+ */
+@AllComponents
+@MockingRequirement(DefaultDBListQueryCache.class)
+public class DefaultDBListQueryCacheTest extends AbstractMockingComponentTestCase
+{
+    private static final String USERS_QUERY =
+        "select distinct doc.fullName from XWikiDocument as doc, BaseObject as obj"
+            + " where doc.fullName=obj.name and obj.className='XWiki.XWikiUsers'";
+
+    private static final String DOCUMENTS_QUERY = "select distinct doc.creator from XWikiDocument as doc";
+
+    private static final DocumentReference USERS_CLASS = new DocumentReference("wiki", "XWiki", "XWikiUsers");
+
+    private static final DocumentReference TAG_CLASS = new DocumentReference("wiki", "XWiki", "TagClass");
+
+    private static final DocumentReference DOCUMENT = new DocumentReference("wiki", "Main", "Document");
+
+    private DBListQueryCache queryCache;
+
+    private XWiki xwiki;
+
+    private XWikiContext context;
+
+    private EventListener listener;
+
+    @Before
+    public void configure() throws Exception
+    {
+        getMockery().setImposteriser(ClassImposteriser.INSTANCE);
+
+        // The XWiki context looks up its components through Utils.
+        Utils.setComponentManager(getComponentManager());
+
+        final ConfigurationSource configuration = getComponentManager().getInstance(ConfigurationSource.class,
+            "xwikiproperties");
+        final CacheManager cacheManager = getComponentManager().getInstance(CacheManager.class);
+        final ObservationManager observationManager = getComponentManager().getInstance(ObservationManager.class);
+        final EntityReferenceSerializer<String> serializer =
+            getComponentManager().getInstance(EntityReferenceSerializer.TYPE_STRING, "local");
+
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(configuration).getProperty("core.dblistquerycache.size", 1000);
+                will(returnValue(1000));
+
+                oneOf(cacheManager).createNewCache(with(any(CacheConfiguration.class)));
+                will(returnValue(new MapCache<Object>()));
+
+                oneOf(observationManager).addListener(with(any(EventListener.class)));
+                will(new CustomAction("grab the listener")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        listener = (EventListener) invocation.getParameter(0);
+                        return null;
+                    }
+                });
+
+                allowing(serializer).serialize(USERS_CLASS);
+                will(returnValue("XWiki.XWikiUsers"));
+                allowing(serializer).serialize(TAG_CLASS);
+                will(returnValue("XWiki.TagClass"));
+                allowing(serializer).serialize(DOCUMENT);
+                will(returnValue("Main.Document"));
+            }
+        });
+
+        this.queryCache = getComponentManager().getInstance(DBListQueryCache.class);
+
+        this.xwiki = getMockery().mock(XWiki.class);
+        this.context = new XWikiContext();
+        this.context.setDatabase("wiki");
+        this.context.setWiki(this.xwiki);
+    }
+
+    @After
+    public void resetComponentManager()
+    {
+        Utils.setComponentManager(null);
+    }
+
+    /**
+     * Simulates the modification of a document holding an object of the given class.
+     */
+    private void updateDocument(final DocumentReference classReference)
+    {
+        final XWikiDocument document = getMockery().mock(XWikiDocument.class);
+        final Map<DocumentReference, List<BaseObject>> objects = new TreeMap<DocumentReference, List<BaseObject>>();
+        objects.put(classReference, Collections.<BaseObject> emptyList());
+
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(document).getDocumentReference();
+                will(returnValue(DOCUMENT));
+                allowing(document).getXObjects();
+                will(returnValue(objects));
+                allowing(document).getOriginalDocument();
+                will(returnValue(null));
+            }
+        });
+
+        this.listener.onEvent(new DocumentUpdatedEvent(), document, null);
+    }
+
+    @Test
+    public void searchIsCached() throws Exception
+    {
+        getMockery().checking(new Expectations()
+        {
+            {
+                oneOf(xwiki).search(USERS_QUERY, context);
+                will(returnValue(Arrays.asList("XWiki.Admin")));
+            }
+        });
+
+        Assert.assertEquals(Arrays.asList("XWiki.Admin"), this.queryCache.search(USERS_QUERY, this.context));
+        Assert.assertEquals(Arrays.asList("XWiki.Admin"), this.queryCache.search(USERS_QUERY, this.context));
+    }
+
+    @Test
+    public void searchIsInvalidatedByDocumentOfQueriedClass() throws Exception
+    {
+        getMockery().checking(new Expectations()
+        {
+            {
+                oneOf(xwiki).search(USERS_QUERY, context);
+                will(returnValue(Arrays.asList("XWiki.Admin")));
+                oneOf(xwiki).search(USERS_QUERY, context);
+                will(returnValue(Arrays.asList("XWiki.Admin", "XWiki.John")));
+            }
+        });
+
+        Assert.assertEquals(Arrays.asList("XWiki.Admin"), this.queryCache.search(USERS_QUERY, this.context));
+
+        // Modifying a document which doesn't hold a user doesn't affect the query.
+        updateDocument(TAG_CLASS);
+        Assert.assertEquals(Arrays.asList("XWiki.Admin"), this.queryCache.search(USERS_QUERY, this.context));
+
+        updateDocument(USERS_CLASS);
+        Assert.assertEquals(Arrays.asList("XWiki.Admin", "XWiki.John"),
+            this.queryCache.search(USERS_QUERY, this.context));
+    }
+
+    @Test
+    public void searchWithoutClassIsInvalidatedByAnyDocument() throws Exception
+    {
+        getMockery().checking(new Expectations()
+        {
+            {
+                exactly(2).of(xwiki).search(DOCUMENTS_QUERY, context);
+                will(returnValue(Arrays.asList("XWiki.Admin")));
+            }
+        });
+
+        this.queryCache.search(DOCUMENTS_QUERY, this.context);
+        updateDocument(TAG_CLASS);
+        this.queryCache.search(DOCUMENTS_QUERY, this.context);
+    }
+
+    @Test
+    public void searchIsInvalidatedByBulkCopyToItsWiki() throws Exception
+    {
+        getMockery().checking(new Expectations()
+        {
+            {
+                exactly(2).of(xwiki).search(USERS_QUERY, context);
+                will(returnValue(Arrays.asList("XWiki.Admin")));
+                // The same query in the other wiki
+                oneOf(xwiki).search(USERS_QUERY, context);
+                will(returnValue(Arrays.asList("XWiki.John")));
+            }
+        });
+
+        this.queryCache.search(USERS_QUERY, this.context);
+        this.context.setDatabase("other");
+        this.queryCache.search(USERS_QUERY, this.context);
+
+        // The documents of the target wiki have been replaced without document events.
+        this.listener.onEvent(new WikiBulkCopiedEvent("source", "wiki"), "source", null);
+
+        Assert.assertEquals(Arrays.asList("XWiki.John"), this.queryCache.search(USERS_QUERY, this.context));
+        this.context.setDatabase("wiki");
+        Assert.assertEquals(Arrays.asList("XWiki.Admin"), this.queryCache.search(USERS_QUERY, this.context));
+    }
+
+    /**
+     * Simple cache implementation backed by a map.
+     */
+    private static class MapCache<T> implements Cache<T>
+    {
+        private final Map<String, T> map = new HashMap<String, T>();
+
+        @Override
+        public void set(String key, T value)
+        {
+            this.map.put(key, value);
+        }
+
+        @Override
+        public T get(String key)
+        {
+            return this.map.get(key);
+        }
+
+        @Override
+        public void remove(String key)
+        {
+            this.map.remove(key);
+        }
+
+        @Override
+        public void removeAll()
+        {
+            this.map.clear();
+        }
+
+        @Override
+        public void addCacheEntryListener(CacheEntryListener<T> listener)
+        {
+        }
+
+        @Override
+        public void removeCacheEntryListener(CacheEntryListener<T> listener)
+        {
+        }
+
+        @Override
+        public void dispose()
+        {
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.plugin.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link DiskImageCache}.
+ * 
+ * @version $Id$
+ */
+public class DiskImageCacheTest
+{
+    private File directory;
+
+    /**
+     * Generates the given number of bytes and counts its calls.
+     */
+    private static class CountingGenerator implements DiskImageCache.Generator
+    {
+        private final int length;
+
+        private int calls;
+
+        CountingGenerator(int length)
+        {
+            this.length = length;
+        }
+
+        @Override
+        public void generate(OutputStream out) throws Exception
+        {
+            this.calls++;
+            out.write(new byte[this.length]);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.directory = new File(System.getProperty("java.io.tmpdir"), "xwikitests/diskimagecache");
+        FileUtils.deleteDirectory(this.directory);
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        FileUtils.deleteDirectory(this.directory);
+    }
+
+    @Test
+    public void getGeneratesOnlyOnce() throws Exception
+    {
+        DiskImageCache cache = new DiskImageCache(this.directory, 1000);
+        CountingGenerator generator = new CountingGenerator(10);
+
+        File file = cache.get("key", generator);
+        Assert.assertEquals(10, file.length());
+        Assert.assertEquals(file, cache.get("key", generator));
+        Assert.assertEquals(1, generator.calls);
+        Assert.assertEquals(10, cache.getSize());
+    }
+
+    @Test
+    public void getWithoutContent() throws Exception
+    {
+        DiskImageCache cache = new DiskImageCache(this.directory, 1000);
+        CountingGenerator generator = new CountingGenerator(0);
+
+        File file = cache.get("key", generator);
+        Assert.assertTrue(file.exists());
+        Assert.assertEquals(0, file.length());
+        cache.get("key", generator);
+        Assert.assertEquals(1, generator.calls);
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws Exception
+    {
+        DiskImageCache cache = new DiskImageCache(this.directory, 100);
+        long now = System.currentTimeMillis();
+        cache.get("first", new CountingGenerator(40)).setLastModified(now - 20000);
+        cache.get("second", new CountingGenerator(40)).setLastModified(now - 10000);
+
+        File third = cache.get("third", new CountingGenerator(40));
+
+        Assert.assertTrue(third.exists());
+        Assert.assertEquals(80, cache.getSize());
+        CountingGenerator generator = new CountingGenerator(40);
+        cache.get("second", generator);
+        Assert.assertEquals(0, generator.calls);
+        cache.get("first", generator);
+        Assert.assertEquals(1, generator.calls);
+    }
+
+    @Test
+    public void removeAll() throws Exception
+    {
+        DiskImageCache cache = new DiskImageCache(this.directory, 1000);
+        File file = cache.get("key", new CountingGenerator(10));
+
+        cache.removeAll();
+
+        Assert.assertFalse(file.exists());
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void existingImagesAreCounted() throws Exception
+    {
+        new DiskImageCache(this.directory, 1000).get("key", new CountingGenerator(10));
+        FileUtils.touch(new File(this.directory, "leftover.tmp"));
+
+        DiskImageCache cache = new DiskImageCache(this.directory, 1000);
+
+        Assert.assertEquals(10, cache.getSize());
+        Assert.assertFalse(new File(this.directory, "leftover.tmp").exists());
+    }
+}
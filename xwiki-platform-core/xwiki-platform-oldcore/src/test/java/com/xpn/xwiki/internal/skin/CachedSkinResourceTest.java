@@ -0,0 +1,69 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.skin;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CachedSkinResource}.
+ * 
+ * @version $Id$
+ */
+public class CachedSkinResourceTest
+{
+    @Test
+    public void compressedContent() throws IOException
+    {
+        byte[] content = StringUtils.repeat(".class { color: red; }\n", 100).getBytes("UTF-8");
+        CachedSkinResource resource = new CachedSkinResource(content, new Date());
+
+        Assert.assertNotNull(resource.getCompressedContent());
+        Assert.assertTrue(resource.getCompressedContent().length < content.length);
+        Assert.assertArrayEquals(content,
+            IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(resource.getCompressedContent()))));
+    }
+
+    @Test
+    public void noCompressedContentWhenLarger() throws IOException
+    {
+        CachedSkinResource resource = new CachedSkinResource("a".getBytes("UTF-8"), new Date());
+
+        Assert.assertNull(resource.getCompressedContent());
+    }
+
+    @Test
+    public void fingerprint() throws IOException
+    {
+        Date date = new Date();
+        String fingerprint = new CachedSkinResource("a { }".getBytes("UTF-8"), date).getFingerprint();
+
+        Assert.assertEquals(fingerprint, new CachedSkinResource("a { }".getBytes("UTF-8"), date).getFingerprint());
+        Assert.assertFalse(fingerprint.equals(new CachedSkinResource("b { }".getBytes("UTF-8"), date)
+            .getFingerprint()));
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.skin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+
+import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.event.CacheEntryListener;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.test.AbstractMockingComponentTestCase;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.annotation.MockingRequirement;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.web.SkinAction;
+import com.xpn.xwiki.web.Utils;
+import com.xpn.xwiki.web.XWikiEngineContext;
+import com.xpn.xwiki.web.XWikiRequest;
+import com.xpn.xwiki.web.XWikiResponse;
+
+/**
+ * Unit tests for {@link DefaultSkinResourceCache}, through the {@link SkinAction} which uses it.
+ * 
+ * @version $Id$
+ */
+@AllComponents
+@MockingRequirement(DefaultSkinResourceCache.class)
+public class DefaultSkinResourceCacheTest extends AbstractMockingComponentTestCase
+{
+    private static final String FILENAME = "style.css";
+
+    private static final String RAW_CONTENT = "#set($color = 'red')\nbody { color: $color; }";
+
+    private static final EntityReference USER_CLASS = new EntityReference("XWikiUsers", EntityType.DOCUMENT,
+        new EntityReference("XWiki", EntityType.SPACE));
+
+    private static final EntityReference SKIN_CLASS = new EntityReference("XWikiSkins", EntityType.DOCUMENT,
+        new EntityReference("XWiki", EntityType.SPACE));
+
+    private SkinAction action = new SkinAction();
+
+    private XWiki xwiki;
+
+    private XWikiContext context;
+
+    private XWikiDocument skin;
+
+    private SkinResourceCache cache;
+
+    private EventListener listener;
+
+    private int updates;
+
+    /** The value of the version parameter of the request. */
+    private String requestedVersion;
+
+    /** The last value of the Cache-Control response header. */
+    private String cacheControl;
+
+    @Before
+    public void configure() throws Exception
+    {
+        getMockery().setImposteriser(ClassImposteriser.INSTANCE);
+
+        // The skin action and the XWiki context look up their components through Utils.
+        Utils.setComponentManager(getComponentManager());
+
+        final ConfigurationSource configuration = getComponentManager().getInstance(ConfigurationSource.class,
+            "xwikiproperties");
+        final CacheManager cacheManager = getComponentManager().getInstance(CacheManager.class);
+        final ObservationManager observationManager = getComponentManager().getInstance(ObservationManager.class);
+
+        this.xwiki = getMockery().mock(XWiki.class);
+        final XWikiEngineContext engineContext = getMockery().mock(XWikiEngineContext.class);
+        final XWikiRequest request = getMockery().mock(XWikiRequest.class);
+        final XWikiResponse response = getMockery().mock(XWikiResponse.class);
+        final ServletOutputStream output = new ServletOutputStream()
+        {
+            private final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+            @Override
+            public void write(int b) throws IOException
+            {
+                this.stream.write(b);
+            }
+        };
+
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(configuration).getProperty("core.skinresourcecache.size", 500);
+                will(returnValue(500));
+
+                oneOf(cacheManager).createNewCache(with(any(CacheConfiguration.class)));
+                will(returnValue(new MapCache<CachedSkinResource>()));
+
+                oneOf(observationManager).addListener(with(any(EventListener.class)));
+                will(new CustomAction("grab the listener")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        listener = (EventListener) invocation.getParameter(0);
+                        return null;
+                    }
+                });
+
+                allowing(xwiki).getEngineContext();
+                will(returnValue(engineContext));
+                allowing(engineContext).getMimeType(FILENAME);
+                will(returnValue("text/css"));
+
+                allowing(request).getQueryString();
+                will(returnValue(null));
+                allowing(request).getHeader(with(any(String.class)));
+                will(returnValue(null));
+                allowing(request).getParameter(SkinAction.VERSION_PARAMETER);
+                will(new CustomAction("return the requested version")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        return requestedVersion;
+                    }
+                });
+
+                allowing(response).getOutputStream();
+                will(returnValue(output));
+                allowing(response).setHeader(with(equal("Cache-Control")), with(any(String.class)));
+                will(new CustomAction("grab the Cache-Control header")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        cacheControl = (String) invocation.getParameter(1);
+                        return null;
+                    }
+                });
+                ignoring(response);
+            }
+        });
+
+        this.context = new XWikiContext();
+        this.context.setDatabase("xwiki");
+        this.context.setWiki(this.xwiki);
+        this.context.setRequest(request);
+        this.context.setResponse(response);
+
+        this.skin = mockSkin("1.1");
+
+        // Initialize the cache and register its listener.
+        this.cache = getComponentManager().getInstance(SkinResourceCache.class);
+    }
+
+    @After
+    public void resetComponentManager()
+    {
+        Utils.setComponentManager(null);
+    }
+
+    /**
+     * @param version the version of the skin document
+     * @return a skin document holding a CSS file
+     */
+    private XWikiDocument mockSkin(final String version)
+    {
+        final XWikiDocument document = getMockery().mock(XWikiDocument.class, "skin " + version);
+        final BaseObject object = getMockery().mock(BaseObject.class, "skin object " + version);
+
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(document).getObject("XWiki.XWikiSkins");
+                will(returnValue(object));
+                allowing(object).getStringValue(FILENAME);
+                will(returnValue(RAW_CONTENT));
+                allowing(document).getPrefixedFullName();
+                will(returnValue("xwiki:XWiki.DefaultSkin"));
+                allowing(document).getVersion();
+                will(returnValue(version));
+                allowing(document).getDate();
+                will(returnValue(new Date()));
+            }
+        });
+
+        return document;
+    }
+
+    /**
+     * Expect the given number of evaluations of the skin file.
+     */
+    private void expectEvaluations(final int count) throws Exception
+    {
+        getMockery().checking(new Expectations()
+        {
+            {
+                exactly(count).of(xwiki).parseContent(RAW_CONTENT, context);
+                will(returnValue("body { color: red; }"));
+            }
+        });
+    }
+
+    /**
+     * Simulates the modification of a document.
+     * 
+     * @param name the name of the document
+     * @param objects the objects of the document, indexed by their class
+     * @param originalObjects the objects of the document before the modification, indexed by their class
+     */
+    private void updateDocument(final String name, final Map<EntityReference, BaseObject> objects,
+        final Map<EntityReference, BaseObject> originalObjects)
+    {
+        this.updates++;
+        final XWikiDocument document = mockDocument(name, objects, "new " + name + this.updates);
+        final XWikiDocument originalDocument = mockDocument(name, originalObjects, "original " + name + this.updates);
+
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(document).getOriginalDocument();
+                will(returnValue(originalDocument));
+            }
+        });
+
+        this.listener.onEvent(new DocumentUpdatedEvent(), document, this.context);
+    }
+
+    private XWikiDocument mockDocument(final String name, final Map<EntityReference, BaseObject> objects,
+        String mockName)
+    {
+        final XWikiDocument document = getMockery().mock(XWikiDocument.class, mockName);
+
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(document).getDocumentReference();
+                will(returnValue(new DocumentReference("xwiki", "XWiki", name)));
+                for (Map.Entry<EntityReference, BaseObject> entry : objects.entrySet()) {
+                    allowing(document).getXObject(entry.getKey());
+                    will(returnValue(entry.getValue()));
+                }
+                allowing(document).getXObject(with(any(EntityReference.class)));
+                will(returnValue(null));
+            }
+        });
+
+        return document;
+    }
+
+    /**
+     * @param skinName the skin selected in the user profile
+     * @param mockName the name of the mock
+     * @return the objects of a user profile document
+     */
+    private Map<EntityReference, BaseObject> userProfile(final String skinName, String mockName)
+    {
+        final BaseObject user = getMockery().mock(BaseObject.class, mockName);
+
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(user).getStringValue("skin");
+                will(returnValue(skinName));
+                allowing(user).getStringValue("colorTheme");
+                will(returnValue(""));
+            }
+        });
+
+        Map<EntityReference, BaseObject> objects = new HashMap<EntityReference, BaseObject>();
+        objects.put(USER_CLASS, user);
+
+        return objects;
+    }
+
+    @Test
+    public void evaluatedResourceIsCached() throws Exception
+    {
+        expectEvaluations(1);
+
+        Assert.assertTrue(this.action.renderFileFromObjectField(FILENAME, this.skin, this.context));
+        Assert.assertTrue(this.action.renderFileFromObjectField(FILENAME, this.skin, this.context));
+    }
+
+    @Test
+    public void newVersionOfTheSkinIsEvaluated() throws Exception
+    {
+        expectEvaluations(2);
+
+        Assert.assertTrue(this.action.renderFileFromObjectField(FILENAME, this.skin, this.context));
+        Assert.assertTrue(this.action.renderFileFromObjectField(FILENAME, mockSkin("1.2"), this.context));
+    }
+
+    @Test
+    public void cacheIsInvalidatedBySkinModification() throws Exception
+    {
+        expectEvaluations(2);
+
+        Assert.assertTrue(this.action.renderFileFromObjectField(FILENAME, this.skin, this.context));
+
+        // Modifying a document which doesn't affect the skin keeps the evaluated resources.
+        updateDocument("Document", new HashMap<EntityReference, BaseObject>(),
+            new HashMap<EntityReference, BaseObject>());
+        Assert.assertTrue(this.action.renderFileFromObjectField(FILENAME, this.skin, this.context));
+
+        Map<EntityReference, BaseObject> skinObjects = new HashMap<EntityReference, BaseObject>();
+        skinObjects.put(SKIN_CLASS, getMockery().mock(BaseObject.class, "other skin object"));
+        updateDocument("OtherSkin", skinObjects, skinObjects);
+        Assert.assertTrue(this.action.renderFileFromObjectField(FILENAME, this.skin, this.context));
+    }
+
+    @Test
+    public void cacheIsInvalidatedByUserSkinChange() throws Exception
+    {
+        expectEvaluations(2);
+
+        Assert.assertTrue(this.action.renderFileFromObjectField(FILENAME, this.skin, this.context));
+
+        // Modifying a user profile without changing its skin preferences keeps the evaluated resources.
+        updateDocument("Admin", userProfile("", "unchanged user"), userProfile("", "original unchanged user"));
+        Assert.assertTrue(this.action.renderFileFromObjectField(FILENAME, this.skin, this.context));
+
+        updateDocument("Admin", userProfile("XWiki.OtherSkin", "user"), userProfile("", "original user"));
+        Assert.assertTrue(this.action.renderFileFromObjectField(FILENAME, this.skin, this.context));
+    }
+
+    @Test
+    public void currentVersionIsCachedForLong() throws Exception
+    {
+        expectEvaluations(1);
+
+        this.requestedVersion = this.cache.getResourceVersion("1.1");
+        Assert.assertTrue(this.action.renderFileFromObjectField(FILENAME, this.skin, this.context));
+        Assert.assertEquals("public, max-age=31536000", this.cacheControl);
+    }
+
+    @Test
+    public void unversionedOrOutdatedRequestIsRevalidated() throws Exception
+    {
+        expectEvaluations(1);
+
+        Assert.assertTrue(this.action.renderFileFromObjectField(FILENAME, this.skin, this.context));
+        Assert.assertEquals("public, no-cache", this.cacheControl);
+
+        this.requestedVersion = this.cache.getResourceVersion("1.0");
+        Assert.assertTrue(this.action.renderFileFromObjectField(FILENAME, this.skin, this.context));
+        Assert.assertEquals("public, no-cache", this.cacheControl);
+    }
+
+    @Test
+    public void resourceVersionChangesWhenCacheIsInvalidated() throws Exception
+    {
+        String version = this.cache.getResourceVersion("1.1");
+        Assert.assertEquals(version, this.cache.getResourceVersion("1.1"));
+
+        // The evaluated content may change even if the raw content doesn't, e.g. when the color theme is modified.
+        this.cache.removeAll();
+        Assert.assertFalse(version.equals(this.cache.getResourceVersion("1.1")));
+    }
+
+    /**
+     * Simple cache implementation backed by a map.
+     */
+    private static class MapCache<T> implements Cache<T>
+    {
+        private final Map<String, T> map = new HashMap<String, T>();
+
+        @Override
+        public void set(String key, T value)
+        {
+            this.map.put(key, value);
+        }
+
+        @Override
+        public T get(String key)
+        {
+            return this.map.get(key);
+        }
+
+        @Override
+        public void remove(String key)
+        {
+            this.map.remove(key);
+        }
+
+        @Override
+        public void removeAll()
+        {
+            this.map.clear();
+        }
+
+        @Override
+        public void addCacheEntryListener(CacheEntryListener<T> listener)
+        {
+        }
+
+        @Override
+        public void removeCacheEntryListener(CacheEntryListener<T> listener)
+        {
+        }
+
+        @Override
+        public void dispose()
+        {
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package com.xpn.xwiki.objects.classes;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.jmock.Mock;
@@ -41,6 +42,8 @@
  */
 public class DBListClassTest extends AbstractBridgedXWikiComponentTestCase
 {
+    private Mock mockXWikiStore;
+
     @Override
     protected void setUp() throws Exception
     {
@@ -50,10 +53,10 @@ protected void setUp() throws Exception
 
         XWiki xwiki = new XWiki();
 
-        Mock mockXWikiStore =
+        this.mockXWikiStore =
             mock(XWikiHibernateStore.class, new Class[] {XWiki.class, XWikiContext.class}, new Object[] {xwiki,
             getContext()});
-        xwiki.setStore((XWikiStoreInterface) mockXWikiStore.proxy());
+        xwiki.setStore((XWikiStoreInterface) this.mockXWikiStore.proxy());
 
         Mock mockXWikiRenderingEngine = mock(XWikiRenderingEngine.class);
         mockXWikiRenderingEngine.stubs().method("interpretText").will(
@@ -230,6 +233,29 @@ public void testGetQueryWithIdValueAndClassSpecified()
             + " and obj.id=valueprop.id.id and valueprop.id.name='otherProperty'", dblc.getQuery(getContext()));
     }
 
+    public void testCacheIsEnabledByDefault()
+    {
+        assertTrue(new DBListClass().isCache());
+        assertTrue(new DBTreeListClass().isCache());
+    }
+
+    /** Tests that the query is executed for each request when the cache is turned off. */
+    public void testGetDBListWithoutCache()
+    {
+        DBListClass dblc = new DBListClass();
+        dblc.setCache(false);
+        dblc.setSql("select doc.name from XWikiDocument as doc");
+        this.mockXWikiStore.expects(exactly(2)).method("search").will(returnValue(Arrays.asList("A", "B")));
+
+        assertEquals("[A, B]", dblc.getList(getContext()).toString());
+        // The list is kept during the request.
+        assertEquals("[A, B]", dblc.getList(getContext()).toString());
+
+        // The next request executes the query again.
+        getContext().remove(getContext().getDatabase() + ":" + dblc.getFieldFullName());
+        assertEquals("[A, B]", dblc.getList(getContext()).toString());
+    }
+
     /** Tests that {@link DBListClass#getList} returns values sorted according to the property's sort option. */
     public void testGetListIsSorted()
     {
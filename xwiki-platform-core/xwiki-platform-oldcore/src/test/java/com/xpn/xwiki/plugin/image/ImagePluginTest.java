@@ -20,21 +20,20 @@
 package com.xpn.xwiki.plugin.image;
 
 import java.io.ByteArrayInputStream;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
 
 import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiAttachment;
 import com.xpn.xwiki.doc.XWikiAttachmentContent;
+import com.xpn.xwiki.internal.plugin.image.DiskImageContent;
 import com.xpn.xwiki.test.AbstractBridgedXWikiComponentTestCase;
 import com.xpn.xwiki.web.XWikiServletRequest;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.jmock.Mock;
-import org.xwiki.cache.Cache;
-import org.xwiki.cache.CacheFactory;
-import org.xwiki.cache.CacheManager;
-import org.xwiki.cache.event.CacheEntryListener;
+import org.xwiki.environment.Environment;
 
 /**
  * Unit tests for the {@link com.xpn.xwiki.plugin.image.ImagePlugin} class.
@@ -88,21 +87,15 @@ protected void setUp() throws Exception
     {
         super.setUp();
 
+        // Start each test with an empty image cache.
+        File directory = new File(System.getProperty("java.io.tmpdir"), "xwikitests");
+        FileUtils.deleteDirectory(new File(directory, "cache/image"));
+        Mock mockEnvironment = registerMockComponent(Environment.class);
+        mockEnvironment.stubs().method("getTemporaryDirectory").will(returnValue(directory));
+        mockEnvironment.stubs().method("getPermanentDirectory").will(returnValue(directory));
+
         Mock mockXWiki = mock(XWiki.class);
         mockXWiki.stubs().method("Param").will(returnValue("10"));
-        Mock mockCacheFactory = mock(CacheFactory.class);
-        Cache<XWikiAttachment> cache = (new Cache<XWikiAttachment>() {
-            private final Map<String, XWikiAttachment> map = new HashMap<String, XWikiAttachment>();
-            public void set(String key, XWikiAttachment value) { map.put(key, value); }
-            public XWikiAttachment get(String key) { return map.get(key); }
-            public void remove(String key) { }
-            public void removeAll() { }
-            public void addCacheEntryListener(CacheEntryListener<XWikiAttachment> listener) { }
-            public void removeCacheEntryListener(CacheEntryListener<XWikiAttachment> listener) { }
-            public void dispose() { }
-        });
-        mockCacheFactory.expects(once()).method("newCache").will(returnValue(cache));
-        mockXWiki.stubs().method("getLocalCacheFactory").will(returnValue(mockCacheFactory.proxy()));
         getContext().setWiki((XWiki) mockXWiki.proxy());
         this.plugin = new ImagePlugin("image", ImagePlugin.class.getName(), getContext());
     }
@@ -135,9 +128,31 @@ public XWikiAttachment clone() {
         // Make sure the attachment is scaled down and uses less space.
         assertTrue(scaled.getFilesize() < attach.getFilesize());
 
-        // Load the scaled attachment again and make sure it's the same object in memory.
+        // The scaled image is read from the disk cache, not kept in memory.
+        assertTrue(scaled.getAttachment_content() instanceof DiskImageContent);
+        assertEquals(scaled.getFilesize(), scaled.getAttachment_content().getSize());
+
+        // Load the scaled attachment again and make sure it's read from the same cached file.
         final XWikiAttachment cached = plugin.downloadAttachment(attach, this.getContext());
-        assertTrue(scaled == cached);
-        assertTrue(scaled.getAttachment_content() == cached.getAttachment_content());
+        assertNotSame(scaled, cached);
+        assertTrue(IOUtils.contentEquals(scaled.getAttachment_content().getContentInputStream(),
+            cached.getAttachment_content().getContentInputStream()));
+    }
+
+    public void testDownloadAttachmentWhichDoesNotNeedScaling() throws Exception
+    {
+        XWikiAttachment attach = (new XWikiAttachment() {
+            public String getMimeType(XWikiContext context) { return "image/png"; }
+        });
+        attach.setContent(new ByteArrayInputStream(testPngImageContent));
+        // The image is smaller than the requested size.
+        XWikiServletRequest req = (new XWikiServletRequest(null) {
+            public String getParameter(String prop) { return "width".equals(prop) ? "1000" : null; }
+        });
+        this.getContext().setRequest(req);
+
+        assertSame(attach, plugin.downloadAttachment(attach, this.getContext()));
+        // The second time the answer comes from the cache.
+        assertSame(attach, plugin.downloadAttachment(attach, this.getContext()));
     }
 }
@@ -20,12 +20,14 @@
 
 package com.xpn.xwiki.plugin.packaging;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.FileUtils;
 import org.jmock.Mock;
 import org.jmock.core.Invocation;
 import org.jmock.core.stub.CustomStub;
@@ -328,6 +330,43 @@ public void testImportDocumentXarCreatedByCommonsCompress() throws Exception
         assertNotSame(foundDocument, foundTranslationDocument);
     }
 
+    /**
+     * Test the import of a package read from a file, without keeping its documents in memory.
+     * 
+     * @throws Exception
+     */
+    public void testImportDocumentFromFile() throws Exception
+    {
+        XWikiDocument doc1 = new XWikiDocument(new DocumentReference("Test", "Test", "DocImportFromFile"));
+        doc1.setDefaultLanguage("en");
+        doc1.setContent("content");
+
+        File file = File.createTempFile("import", ".xar");
+        try {
+            FileUtils.writeByteArrayToFile(file,
+                this.createZipFile(new XWikiDocument[] {doc1}, new String[] {"ISO-8859-1"}));
+
+            // make sure no data is in the packager from the other tests run
+            this.pack = new Package();
+            this.pack.Import(file, getContext());
+
+            // only a description of the document is kept in memory
+            assertEquals(1, this.pack.getFiles().size());
+            assertEquals("Test.DocImportFromFile", this.pack.getFiles().get(0).getFullName());
+            assertEquals("", this.pack.getFiles().get(0).getDoc().getContent());
+
+            this.pack.install(getContext());
+        } finally {
+            file.delete();
+        }
+
+        // check if it is there
+        XWikiDocument foundDocument =
+            this.xwiki.getDocument(new DocumentReference("Test", "Test", "DocImportFromFile"), getContext());
+        assertFalse(foundDocument.isNew());
+        assertEquals("content", foundDocument.getContent());
+    }
+
     /**
      * Test the import with document overwrite.
      * 
@@ -0,0 +1,355 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.WikiCopiedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+import org.xwiki.rendering.syntax.Syntax;
+
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.WikiBulkCopiedEvent;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.objects.classes.BaseClass;
+import com.xpn.xwiki.test.AbstractHibernateStoreTestCase;
+
+/**
+ * Validate that copying a wiki with {@link HibernateWikiCopier} gives the same result as a document by document copy,
+ * on an in-memory database.
+ *
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class HibernateWikiCopierStoreTest extends AbstractHibernateStoreTestCase
+{
+    private static final String SOURCE_WIKI = "source";
+
+    private static final String BULK_WIKI = "bulkcopy";
+
+    private static final String DOCUMENT_WIKI = "documentcopy";
+
+    private static final String SPACE = "Space";
+
+    private static final String OTHER_SPACE = "Other";
+
+    private static final String AUTHOR = "XWiki.Author";
+
+    private static final String FILE_NAME = "file.txt";
+
+    private static final String CLASS_NAME = "TestClass";
+
+    /**
+     * The documents of the source wiki, as space and name.
+     */
+    private final List<String[]> documents = new ArrayList<String[]>();
+
+    /**
+     * The wikis where a document has been created, one entry per document.
+     */
+    private final List<String> createdDocumentWikis = new ArrayList<String>();
+
+    /**
+     * The wiki copies which have been notified.
+     */
+    private final List<WikiCopiedEvent> wikiCopiedEvents = new ArrayList<WikiCopiedEvent>();
+
+    @Override
+    @Before
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        getContext().setUser(AUTHOR);
+
+        createWiki(SOURCE_WIKI);
+        createWiki(BULK_WIKI);
+        createWiki(DOCUMENT_WIKI);
+
+        fillSourceWiki();
+
+        getComponentManager().<ObservationManager> getInstance(ObservationManager.class).addListener(
+            new EventListener()
+            {
+                @Override
+                public String getName()
+                {
+                    return "wikicopiertest";
+                }
+
+                @Override
+                public List<Event> getEvents()
+                {
+                    return Arrays.<Event> asList(new DocumentCreatedEvent(), new WikiCopiedEvent());
+                }
+
+                @Override
+                public void onEvent(Event event, Object source, Object data)
+                {
+                    if (event instanceof WikiCopiedEvent) {
+                        wikiCopiedEvents.add((WikiCopiedEvent) event);
+                    } else {
+                        createdDocumentWikis.add(((XWikiDocument) source).getDocumentReference().getWikiReference()
+                            .getName());
+                    }
+                }
+            });
+    }
+
+    /**
+     * Create documents with two versions, objects and an attachment with two versions in two spaces of the source
+     * wiki.
+     */
+    private void fillSourceWiki() throws XWikiException
+    {
+        String database = getContext().getDatabase();
+        try {
+            getContext().setDatabase(SOURCE_WIKI);
+
+            DocumentReference classReference = new DocumentReference(SOURCE_WIKI, SPACE, CLASS_NAME);
+            XWikiDocument classDocument = new XWikiDocument(classReference);
+            BaseClass xclass = classDocument.getXClass();
+            xclass.addTextField("text", "Text", 30);
+            xclass.addNumberField("number", "Number", 10, "integer");
+            xclass.addTextAreaField("area", "Area", 40, 5);
+            save(classDocument, "Class");
+
+            for (String space : Arrays.asList(SPACE, OTHER_SPACE)) {
+                for (int i = 0; i < 3; ++i) {
+                    DocumentReference reference = new DocumentReference(SOURCE_WIKI, space, "Page" + i);
+
+                    XWikiDocument document = new XWikiDocument(reference);
+                    document.setSyntax(Syntax.XWIKI_2_0);
+                    document.setTitle("Page " + i);
+                    document.setContent("First version of " + reference);
+                    BaseObject object = document.newXObject(classReference, getContext());
+                    object.setStringValue("text", "text " + i);
+                    object.setIntValue("number", i);
+                    object.setLargeStringValue("area", "area of " + reference);
+                    document.addAttachment(FILE_NAME, ("First content of " + reference).getBytes(), getContext());
+                    save(document, "First version");
+
+                    document = getXWiki().getDocument(reference, getContext());
+                    document.setContent("Second version of " + reference);
+                    document.getXObject(classReference).setIntValue("number", i + 10);
+                    document.addAttachment(FILE_NAME, ("Second content of " + reference).getBytes(), getContext());
+                    save(document, "Second version");
+
+                    this.documents.add(new String[] {space, reference.getName()});
+                }
+            }
+            this.documents.add(new String[] {SPACE, CLASS_NAME});
+        } finally {
+            getContext().setDatabase(database);
+        }
+    }
+
+    private void save(XWikiDocument document, String comment) throws XWikiException
+    {
+        document.setAuthor(AUTHOR);
+        document.setContentAuthor(AUTHOR);
+        if (document.isNew()) {
+            document.setCreator(AUTHOR);
+        }
+        getXWiki().saveDocument(document, comment, getContext());
+    }
+
+    private int copyWiki(String targetWiki, boolean bulk, boolean history, boolean clean) throws XWikiException
+    {
+        getXWiki().getConfig().setProperty("xwiki.store.copy.bulk", bulk ? "1" : "0");
+        getXWiki().getConfig().setProperty("xwiki.store.copy.history", history ? "1" : "0");
+
+        return getXWiki().copyWiki(SOURCE_WIKI, targetWiki, null, clean, getContext());
+    }
+
+    /**
+     * Describe what a copy should preserve of a document: its content, metadata, objects, attachments and history.
+     * Dates are left out since the document by document copy sets new attachment dates.
+     */
+    private Map<String, Object> describe(String wiki, String space, String name) throws XWikiException
+    {
+        String database = getContext().getDatabase();
+        try {
+            getContext().setDatabase(wiki);
+
+            XWikiDocument document = getXWiki().getDocument(new DocumentReference(wiki, space, name), getContext());
+
+            Map<String, Object> description = new LinkedHashMap<String, Object>();
+            description.put("new", document.isNew());
+            description.put("title", document.getTitle());
+            description.put("content", document.getContent());
+            description.put("syntax", document.getSyntax());
+            description.put("version", document.getVersion());
+            description.put("comment", document.getComment());
+            description.put("author", document.getAuthor());
+            description.put("creator", document.getCreator());
+            description.put("class", document.getXClass().getFieldList().size());
+
+            List<String> versions = new ArrayList<String>();
+            for (Object version : getXWiki().getVersioningStore().getXWikiDocVersions(document, getContext())) {
+                versions.add(version.toString());
+            }
+            description.put("versions", versions);
+
+            List<Map<String, Object>> objects = new ArrayList<Map<String, Object>>();
+            for (List<BaseObject> classObjects : document.getXObjects().values()) {
+                for (BaseObject object : classObjects) {
+                    if (object != null) {
+                        Map<String, Object> properties = new TreeMap<String, Object>();
+                        properties.put("#class", object.getClassName());
+                        properties.put("#number", object.getNumber());
+                        for (String property : object.getPropertyList()) {
+                            properties.put(property, ((BaseProperty) object.safeget(property)).getValue());
+                        }
+                        objects.add(properties);
+                    }
+                }
+            }
+            description.put("objects", objects);
+
+            for (XWikiAttachment attachment : document.getAttachmentList()) {
+                Map<String, Object> attachmentDescription = new LinkedHashMap<String, Object>();
+                attachmentDescription.put("version", attachment.getVersion());
+                attachmentDescription.put("size", attachment.getFilesize());
+                attachmentDescription.put("author", attachment.getAuthor());
+                attachmentDescription.put("content", new String(attachment.getContent(getContext())));
+                List<String> attachmentVersions = new ArrayList<String>();
+                for (Object version : attachment.getVersionList()) {
+                    attachmentVersions.add(version.toString());
+                }
+                attachmentDescription.put("versions", attachmentVersions);
+                attachmentDescription.put("revision", new String(attachment
+                    .getAttachmentRevision(attachment.getVersion(), getContext()).getContent(getContext())));
+                description.put(attachment.getFilename(), attachmentDescription);
+            }
+
+            return description;
+        } finally {
+            getContext().setDatabase(database);
+        }
+    }
+
+    @Test
+    public void testBulkCopyMatchesDocumentByDocumentCopy() throws XWikiException
+    {
+        int copied = copyWiki(DOCUMENT_WIKI, false, false, false);
+        Assert.assertTrue(copied >= this.documents.size());
+        Assert.assertEquals(copied, copyWiki(BULK_WIKI, true, false, false));
+
+        // Only the document by document copy sends an event for each document
+        Assert.assertEquals(Collections.nCopies(copied, DOCUMENT_WIKI), this.createdDocumentWikis);
+        Assert.assertFalse(this.createdDocumentWikis.contains(BULK_WIKI));
+        Assert.assertEquals(2, this.wikiCopiedEvents.size());
+        Assert.assertFalse(this.wikiCopiedEvents.get(0) instanceof WikiBulkCopiedEvent);
+        Assert.assertTrue(this.wikiCopiedEvents.get(1) instanceof WikiBulkCopiedEvent);
+        Assert.assertEquals(BULK_WIKI, this.wikiCopiedEvents.get(1).getTargetWikiId());
+
+        for (String[] document : this.documents) {
+            Map<String, Object> expected = describe(DOCUMENT_WIKI, document[0], document[1]);
+            Assert.assertEquals(expected, describe(BULK_WIKI, document[0], document[1]));
+
+            // Each copy starts a new history
+            Assert.assertEquals(false, expected.get("new"));
+            Assert.assertEquals("1.1", expected.get("version"));
+            Assert.assertEquals(Arrays.asList("1.1"), expected.get("versions"));
+            Assert.assertEquals("Copied from " + SOURCE_WIKI + ':' + document[0] + '.' + document[1],
+                expected.get("comment"));
+        }
+
+        // The history of the attachments is kept and the copy adds a version
+        @SuppressWarnings("unchecked")
+        Map<String, Object> attachment = (Map<String, Object>) describe(BULK_WIKI, SPACE, "Page0").get(FILE_NAME);
+        Assert.assertEquals("1.3", attachment.get("version"));
+        Assert.assertEquals(Arrays.asList("1.1", "1.2", "1.3"), attachment.get("versions"));
+        Assert.assertEquals("Second content of source:Space.Page0", attachment.get("content"));
+    }
+
+    @Test
+    public void testBulkCopyWithHistory() throws XWikiException
+    {
+        Assert.assertTrue(copyWiki(BULK_WIKI, true, true, false) >= this.documents.size());
+
+        for (String[] document : this.documents) {
+            Assert.assertEquals(describe(SOURCE_WIKI, document[0], document[1]),
+                describe(BULK_WIKI, document[0], document[1]));
+        }
+        Assert.assertEquals(Arrays.asList("1.1", "2.1"), describe(BULK_WIKI, SPACE, "Page0").get("versions"));
+    }
+
+    @Test
+    public void testBulkCopyCleansTargetWiki() throws XWikiException
+    {
+        int copied = copyWiki(DOCUMENT_WIKI, false, false, false);
+
+        String database = getContext().getDatabase();
+        try {
+            getContext().setDatabase(BULK_WIKI);
+            XWikiDocument existing = new XWikiDocument(new DocumentReference(BULK_WIKI, SPACE, "Existing"));
+            existing.setContent("Existing");
+            existing.addAttachment(FILE_NAME, "Existing".getBytes(), getContext());
+            save(existing, "Existing");
+            XWikiDocument overwritten = new XWikiDocument(new DocumentReference(BULK_WIKI, SPACE, "Page0"));
+            overwritten.setContent("Overwritten");
+            save(overwritten, "Overwritten");
+        } finally {
+            getContext().setDatabase(database);
+        }
+
+        Assert.assertEquals(copied, copyWiki(BULK_WIKI, true, false, true));
+
+        Assert.assertEquals(true, describe(BULK_WIKI, SPACE, "Existing").get("new"));
+        for (String[] document : this.documents) {
+            Assert.assertEquals(describe(DOCUMENT_WIKI, document[0], document[1]),
+                describe(BULK_WIKI, document[0], document[1]));
+        }
+    }
+
+    @Test
+    public void testCopySpaceBetweenWikisMatchesBulkCopy() throws XWikiException
+    {
+        copyWiki(BULK_WIKI, true, false, false);
+        getXWiki().copySpaceBetweenWikis(OTHER_SPACE, SOURCE_WIKI, DOCUMENT_WIKI, null, getContext());
+
+        for (String[] document : this.documents) {
+            Map<String, Object> copied = describe(DOCUMENT_WIKI, document[0], document[1]);
+            if (OTHER_SPACE.equals(document[0])) {
+                Assert.assertEquals(copied, describe(BULK_WIKI, document[0], document[1]));
+            } else {
+                Assert.assertEquals(true, copied.get("new"));
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.hibernate.cfg.Configuration;
+import org.hibernate.mapping.Table;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link HibernateWikiCopier}.
+ * 
+ * @version $Id$
+ */
+public class HibernateWikiCopierTest
+{
+    /**
+     * The tables written when saving a document with objects of every property type, attachments and links, in other
+     * words the tables filled by a document by document copy, the history of the document excepted.
+     */
+    private static final List<String> DOCUMENT_TABLES = Arrays.asList("xwikidoc", "xwikilinks", "xwikiattachment",
+        "xwikiattachment_content", "xwikiattachment_archive", "xwikiproperties", "xwikiintegers", "xwikilongs",
+        "xwikifloats", "xwikidoubles", "xwikistrings", "xwikidates", "xwikilargestrings", "xwikilists",
+        "xwikilistitems", "xwikiobjects", "xwikipreferences", "xwikicomments", "xwikiusers");
+
+    /**
+     * The tables containing the history of the documents.
+     */
+    private static final List<String> HISTORY_TABLES = Arrays.asList("xwikircs");
+
+    private static Configuration configuration;
+
+    @BeforeClass
+    public static void setUpConfiguration()
+    {
+        configuration = new Configuration().addResource("xwiki.hbm.xml");
+        configuration.buildMappings();
+    }
+
+    private static List<String> getDocumentTableNames(boolean withHistory)
+    {
+        List<String> names = new ArrayList<String>();
+        for (Table table : HibernateWikiCopier.getDocumentTables(configuration, withHistory)) {
+            names.add(table.getName());
+        }
+
+        return names;
+    }
+
+    @Test
+    public void testTablesWithoutHistory()
+    {
+        List<String> names = getDocumentTableNames(false);
+
+        Assert.assertEquals(new HashSet<String>(DOCUMENT_TABLES), new HashSet<String>(names));
+    }
+
+    @Test
+    public void testTablesWithHistory()
+    {
+        Set<String> expected = new HashSet<String>(DOCUMENT_TABLES);
+        expected.addAll(HISTORY_TABLES);
+
+        Assert.assertEquals(expected, new HashSet<String>(getDocumentTableNames(true)));
+    }
+
+    @Test
+    public void testTablesAreListedOnce()
+    {
+        List<String> names = getDocumentTableNames(true);
+
+        Assert.assertEquals(new HashSet<String>(names).size(), names.size());
+    }
+
+    @Test
+    public void testParentTablesFirst()
+    {
+        List<String> names = getDocumentTableNames(true);
+
+        for (String subclassTable : Arrays.asList("xwikiintegers", "xwikilongs", "xwikifloats", "xwikidoubles",
+            "xwikistrings", "xwikidates", "xwikilargestrings", "xwikilists")) {
+            Assert.assertTrue(names.indexOf("xwikiproperties") < names.indexOf(subclassTable));
+        }
+        Assert.assertTrue(names.indexOf("xwikilists") < names.indexOf("xwikilistitems"));
+    }
+
+    @Test
+    public void testOtherTablesAreNotCopied()
+    {
+        Set<String> names = new HashSet<String>(getDocumentTableNames(true));
+
+        // Every other mapped table (statistics, locks, recycle bins, database version...) is not part of the documents
+        for (Iterator< ? > it = configuration.getTableMappings(); it.hasNext();) {
+            String name = ((Table) it.next()).getName();
+            if (!DOCUMENT_TABLES.contains(name) && !HISTORY_TABLES.contains(name)) {
+                Assert.assertFalse("Table [" + name + "] should not be copied", names.contains(name));
+            }
+        }
+        Assert.assertFalse(names.contains("xwikidbversion"));
+        Assert.assertFalse(names.contains("xwikilock"));
+        Assert.assertFalse(names.contains("xwikistatsdoc"));
+        Assert.assertFalse(names.contains("xwikirecyclebin"));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.store.hibernate.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryExecutor;
+import org.xwiki.query.internal.DefaultQuery;
+
+import com.xpn.xwiki.doc.XWikiLock;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore.HibernateCallback;
+import com.xpn.xwiki.test.AbstractHibernateStoreTestCase;
+
+/**
+ * Validate {@link HqlQueryExecutor#iterate(Query)} on an in-memory database.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class HqlQueryExecutorStoreTest extends AbstractHibernateStoreTestCase
+{
+    private static final int ROW_COUNT = 250;
+
+    private static final int FETCH_SIZE = 100;
+
+    private HqlQueryExecutor executor;
+
+    @Override
+    @Before
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        this.executor = getComponentManager().getInstance(QueryExecutor.class, "hql");
+
+        getHibernateStore().executeWrite(getContext(), new HibernateCallback<Object>()
+        {
+            @Override
+            public Object doInHibernate(Session session) throws HibernateException
+            {
+                for (int i = 0; i < ROW_COUNT; ++i) {
+                    session.save(new XWikiLock(i, "user" + i));
+                }
+
+                return null;
+            }
+        });
+    }
+
+    private HqlQueryResultIterator<XWikiLock> iterateOverLocks() throws Exception
+    {
+        Query query = new DefaultQuery("select xlock from XWikiLock as xlock order by xlock.docId", Query.HQL,
+            this.executor);
+        query.setFetchSize(FETCH_SIZE);
+
+        return (HqlQueryResultIterator<XWikiLock>) this.executor.<XWikiLock> iterate(query);
+    }
+
+    @Test
+    public void iterateClearsAndReleasesTheSession() throws Exception
+    {
+        Session contextSession = getHibernateStore().getSession(getContext());
+
+        HqlQueryResultIterator<XWikiLock> iterator = iterateOverLocks();
+        Session session = iterator.getSession();
+
+        // The results are read in a session of their own
+        Assert.assertNotSame(contextSession, session);
+        Assert.assertSame(contextSession, getHibernateStore().getSession(getContext()));
+
+        List<XWikiLock> locks = new ArrayList<XWikiLock>();
+        while (iterator.hasNext()) {
+            XWikiLock lock = iterator.next();
+            Assert.assertEquals(locks.size(), lock.getDocId());
+            locks.add(lock);
+
+            // Only the entities read since the last clear are kept by the session
+            Assert.assertTrue(session.contains(lock));
+            int lastClear = (locks.size() - 1) / FETCH_SIZE * FETCH_SIZE;
+            if (lastClear > 0) {
+                Assert.assertFalse(session.contains(locks.get(lastClear - 1)));
+                Assert.assertFalse(session.contains(locks.get(0)));
+            }
+        }
+        Assert.assertEquals(ROW_COUNT, locks.size());
+
+        // The session is released once all the results have been read
+        Assert.assertFalse(session.isOpen());
+        Assert.assertSame(contextSession, getHibernateStore().getSession(getContext()));
+    }
+
+    @Test
+    public void closeReleasesTheSession() throws Exception
+    {
+        HqlQueryResultIterator<XWikiLock> iterator = iterateOverLocks();
+
+        Assert.assertEquals(0, iterator.next().getDocId());
+        iterator.close();
+
+        Assert.assertFalse(iterator.getSession().isOpen());
+        Assert.assertFalse(iterator.hasNext());
+    }
+}
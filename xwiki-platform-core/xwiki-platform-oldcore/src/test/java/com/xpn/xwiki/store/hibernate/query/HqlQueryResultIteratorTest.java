@@ -0,0 +1,170 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.store.hibernate.query;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.query.QueryFilter;
+
+/**
+ * Tests for {@link HqlQueryResultIterator}.
+ *
+ * @version $Id$
+ */
+public class HqlQueryResultIteratorTest
+{
+    /**
+     * Generates the rows of the mocked results and records the other calls made to the mocked Hibernate objects.
+     */
+    private static class Recorder implements InvocationHandler
+    {
+        private final List<String> calls = new ArrayList<String>();
+
+        private final int rowCount;
+
+        private final int columnCount;
+
+        private int row;
+
+        Recorder(int rowCount, int columnCount)
+        {
+            this.rowCount = rowCount;
+            this.columnCount = columnCount;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            String name = method.getName();
+            if ("next".equals(name)) {
+                return ++this.row <= this.rowCount;
+            } else if ("get".equals(name)) {
+                // Generate the rows on the fly so that only the iterator could keep them in memory.
+                Object[] values = new Object[this.columnCount];
+                for (int i = 0; i < this.columnCount; i++) {
+                    values[i] = "Space.Page" + this.row + "." + i;
+                }
+                return values;
+            }
+            this.calls.add(name);
+
+            return null;
+        }
+
+        int count(String name)
+        {
+            return Collections.frequency(this.calls, name);
+        }
+    }
+
+    private int clears;
+
+    private Recorder recorder;
+
+    private <T> HqlQueryResultIterator<T> createIterator(int rowCount, int columnCount, List<QueryFilter> filters,
+        int clearInterval)
+    {
+        this.recorder = new Recorder(rowCount, columnCount);
+        InvocationHandler sessionHandler = new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                if ("clear".equals(method.getName())) {
+                    clears++;
+
+                    return null;
+                }
+
+                return recorder.invoke(proxy, method, args);
+            }
+        };
+
+        ClassLoader classLoader = getClass().getClassLoader();
+        ScrollableResults results =
+            (ScrollableResults) Proxy.newProxyInstance(classLoader, new Class< ? >[] {ScrollableResults.class},
+                this.recorder);
+        Session session =
+            (Session) Proxy.newProxyInstance(classLoader, new Class< ? >[] {Session.class}, sessionHandler);
+        Transaction transaction =
+            (Transaction) Proxy.newProxyInstance(classLoader, new Class< ? >[] {Transaction.class}, this.recorder);
+
+        return new HqlQueryResultIterator<T>(results, session, transaction, filters, clearInterval);
+    }
+
+    @Test
+    public void iterateOverSeveralColumnsWithFilters()
+    {
+        QueryFilter firstColumnFilter = new QueryFilter()
+        {
+            @Override
+            public String filterStatement(String statement, String language)
+            {
+                return statement;
+            }
+
+            @Override
+            public List filterResults(List results)
+            {
+                List<Object> filteredResults = new ArrayList<Object>();
+                for (Object result : results) {
+                    filteredResults.add(((Object[]) result)[0]);
+                }
+
+                return filteredResults;
+            }
+        };
+        HqlQueryResultIterator<String> iterator =
+            createIterator(3, 2, Collections.singletonList(firstColumnFilter), 100);
+
+        List<String> values = new ArrayList<String>();
+        while (iterator.hasNext()) {
+            values.add(iterator.next());
+        }
+
+        Assert.assertEquals(Arrays.asList("Space.Page1.0", "Space.Page2.0", "Space.Page3.0"), values);
+        Assert.assertEquals(0, this.clears);
+    }
+
+    @Test
+    public void closeBeforeTheEnd()
+    {
+        HqlQueryResultIterator<Object[]> iterator = createIterator(10, 2, null, 100);
+
+        Assert.assertArrayEquals(new Object[] {"Space.Page1.0", "Space.Page1.1"}, iterator.next());
+        iterator.close();
+        iterator.close();
+
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertEquals(1, this.recorder.count("rollback"));
+        Assert.assertEquals(2, this.recorder.count("close"));
+    }
+}
@@ -20,8 +20,17 @@
 package com.xpn.xwiki.store.migration;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -113,6 +122,166 @@ protected void updateSchema(Collection<XWikiMigration> migrations)
         }
     }
 
+    /** migration manager migrating several databases, which records how its migrations are executed */
+    @Component
+    @Named("TestParallelMigration")
+    @Singleton
+    public static class TestParallelDataMigrationManager extends AbstractDataMigrationManager
+    {
+        private static final String MAIN_DATABASE = "xwiki";
+
+        /** versions of the migrated databases */
+        final Map<String, XWikiDBVersion> versions = new ConcurrentHashMap<String, XWikiDBVersion>();
+
+        /** databases migrated by the chunked migration, in the order they have been migrated */
+        final List<String> chunkedDatabases = Collections.synchronizedList(new ArrayList<String>());
+
+        /** databases migrated by the other migration */
+        final Set<String> otherDatabases = Collections.synchronizedSet(new HashSet<String>());
+
+        /** databases on which the chunked migration fails */
+        final Set<String> failingDatabases = new HashSet<String>();
+
+        /** number of databases the other migration is migrating at the same time */
+        final AtomicInteger running = new AtomicInteger();
+
+        /** number of times the other migration has been started while it was already running */
+        final AtomicInteger overlaps = new AtomicInteger();
+
+        /** barrier the chunked migration waits for on the virtual databases, null to not wait */
+        CyclicBarrier barrier;
+
+        private abstract class AbstractTestMigration implements DataMigration
+        {
+            private final int version;
+
+            AbstractTestMigration(int version)
+            {
+                this.version = version;
+            }
+
+            @Override
+            public String getName()
+            {
+                return getClass().getSimpleName();
+            }
+
+            @Override
+            public String getDescription()
+            {
+                return getName();
+            }
+
+            @Override
+            public XWikiDBVersion getVersion()
+            {
+                return new XWikiDBVersion(this.version);
+            }
+
+            @Override
+            public boolean shouldExecute(XWikiDBVersion startupVersion)
+            {
+                return true;
+            }
+
+            @Override
+            public void migrate() throws DataMigrationException
+            {
+                migrate(getXWikiContext().getDatabase());
+            }
+
+            protected abstract void migrate(String database) throws DataMigrationException;
+        }
+
+        private class OtherMigration extends AbstractTestMigration
+        {
+            OtherMigration()
+            {
+                super(100);
+            }
+
+            @Override
+            protected void migrate(String database)
+            {
+                if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                }
+                otherDatabases.add(database);
+            }
+        }
+
+        private class ChunkedMigration extends AbstractTestMigration implements ChunkedDataMigration
+        {
+            ChunkedMigration()
+            {
+                super(200);
+            }
+
+            @Override
+            protected void migrate(String database) throws DataMigrationException
+            {
+                if (failingDatabases.contains(database)) {
+                    throw new DataMigrationException("Failed to migrate " + database);
+                }
+                if (barrier != null && !MAIN_DATABASE.equals(database)) {
+                    try {
+                        barrier.await(10, TimeUnit.SECONDS);
+                    } catch (Exception e) {
+                        throw new DataMigrationException("The databases are not migrated in parallel", e);
+                    }
+                }
+                chunkedDatabases.add(database);
+            }
+        }
+
+        @Override
+        protected List<DataMigration> getAllMigrations()
+        {
+            return Arrays.<DataMigration>asList(new ChunkedMigration(), new OtherMigration());
+        }
+
+        @Override
+        protected boolean isVirtualMode()
+        {
+            return true;
+        }
+
+        @Override
+        protected String getMainXWiki()
+        {
+            return MAIN_DATABASE;
+        }
+
+        @Override
+        protected List<String> getVirtualWikisDatabaseNames()
+        {
+            return Arrays.asList("wiki1", "wiki2", "wiki3");
+        }
+
+        @Override
+        protected void initializeEmptyDB()
+        {
+        }
+
+        @Override
+        protected void setDBVersionToDatabase(XWikiDBVersion version)
+        {
+            this.versions.put(getXWikiContext().getDatabase(), version);
+        }
+
+        @Override
+        protected void updateSchema(Collection<XWikiMigration> migrations)
+        {
+        }
+    }
+
     private void registerComponent(Class<?> klass) throws Exception
     {
         ComponentAnnotationLoader loader = new ComponentAnnotationLoader();
@@ -132,6 +301,7 @@ protected void setUp() throws Exception
         getContext().getWiki().setConfig(config);
 
         registerComponent(TestDataMigrationManager.class);
+        registerComponent(TestParallelDataMigrationManager.class);
     }
 
     /** test migration if there are no data version */
@@ -214,4 +384,54 @@ public void testMigrationForce() throws Exception
             567,
             ((AbstractDataMigrationManager.XWikiMigration) neededMigration.toArray()[0]).dataMigration.getVersion().getVersion());
     }
+
+    /** test that the virtual databases are migrated in parallel once the main one has been migrated */
+    public void testParallelMigration() throws Exception
+    {
+        XWikiConfig config = getContext().getWiki().getConfig();
+        config.setProperty("xwiki.store.migration.version", "1");
+        config.setProperty("xwiki.store.migration.threads", "3");
+
+        TestParallelDataMigrationManager mm = (TestParallelDataMigrationManager) getComponentManager().getInstance(
+            DataMigrationManager.class, "TestParallelMigration");
+        // The chunked migration only passes the barrier if it runs on the 3 virtual databases at the same time
+        mm.barrier = new CyclicBarrier(3);
+        mm.startMigrations();
+
+        assertEquals(4, mm.chunkedDatabases.size());
+        assertEquals("xwiki", mm.chunkedDatabases.get(0));
+        assertEquals(new HashSet<String>(Arrays.asList("xwiki", "wiki1", "wiki2", "wiki3")), mm.otherDatabases);
+        for (String database : Arrays.asList("xwiki", "wiki1", "wiki2", "wiki3")) {
+            assertEquals(200, mm.versions.get(database).getVersion());
+        }
+        // Migrations which are not chunked are never executed on several databases at the same time
+        assertEquals(0, mm.overlaps.get());
+        // The context of the calling thread is left untouched
+        assertEquals("xwiki", getContext().getDatabase());
+    }
+
+    /** test that the databases which fail to be migrated in parallel are counted */
+    public void testParallelMigrationErrors() throws Exception
+    {
+        XWikiConfig config = getContext().getWiki().getConfig();
+        config.setProperty("xwiki.store.migration.version", "1");
+        config.setProperty("xwiki.store.migration.threads", "2");
+
+        TestParallelDataMigrationManager mm = (TestParallelDataMigrationManager) getComponentManager().getInstance(
+            DataMigrationManager.class, "TestParallelMigration");
+        mm.failingDatabases.add("wiki1");
+        mm.failingDatabases.add("wiki3");
+        try {
+            mm.startMigrations();
+            fail("The migration should have failed");
+        } catch (DataMigrationException e) {
+            assertEquals("2 database migration(s) failed, it is not safe to continue!", e.getMessage());
+        }
+
+        assertEquals(200, mm.versions.get("xwiki").getVersion());
+        assertEquals(200, mm.versions.get("wiki2").getVersion());
+        // The failing databases stay at the version of the last successful migration
+        assertEquals(100, mm.versions.get("wiki1").getVersion());
+        assertEquals(100, mm.versions.get("wiki3").getVersion());
+    }
 }
@@ -0,0 +1,249 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.store.migration.hibernate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Named;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.annotation.ComponentAnnotationLoader;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiLock;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore.HibernateCallback;
+import com.xpn.xwiki.store.migration.DataMigrationException;
+import com.xpn.xwiki.store.migration.DataMigrationProgress;
+import com.xpn.xwiki.store.migration.XWikiDBVersion;
+import com.xpn.xwiki.test.AbstractHibernateStoreTestCase;
+
+/**
+ * Validate {@link AbstractChunkedHibernateDataMigration} on an in-memory database.
+ *
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class AbstractChunkedHibernateDataMigrationTest extends AbstractHibernateStoreTestCase
+{
+    private static final String MIGRATION_NAME = "TestChunkedMigration";
+
+    private static final String MIGRATED = "migrated";
+
+    /** The keys of the migrated items, in increasing order and with negative values, like document ids. */
+    private static final List<Long> KEYS = Arrays.asList(-9000000000L, -700L, -42L, -1L, 0L, 1L, 3L, 58L,
+        9000000000L);
+
+    /**
+     * Migrates the locks of the test, marking them with their new user name. The migration of a given chunk can be
+     * made to fail.
+     */
+    @Component
+    @Named(MIGRATION_NAME)
+    public static class TestChunkedMigration extends AbstractChunkedHibernateDataMigration
+    {
+        /** The keys given to each call of {@link #migrateItems(Session, List)}. */
+        final List<List<Long>> chunks = new ArrayList<List<Long>>();
+
+        /** The index of the chunk which fails to be migrated, -1 for none. */
+        int failingChunk = -1;
+
+        @Override
+        public String getDescription()
+        {
+            return "Test chunked migration";
+        }
+
+        @Override
+        public XWikiDBVersion getVersion()
+        {
+            return new XWikiDBVersion(1);
+        }
+
+        @Override
+        protected long countItems(Session session)
+        {
+            return ((Number) session.createQuery("select count(*) from XWikiLock").uniqueResult()).longValue();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected List<Long> getNextKeys(Session session, Long lastKey, int size)
+        {
+            Query query;
+            if (lastKey == null) {
+                query = session.createQuery("select xlock.docId from XWikiLock as xlock order by xlock.docId");
+            } else {
+                query = session.createQuery(
+                    "select xlock.docId from XWikiLock as xlock where xlock.docId > :lastKey order by xlock.docId");
+                query.setLong("lastKey", lastKey);
+            }
+
+            return query.setMaxResults(size).list();
+        }
+
+        @Override
+        protected void migrateItems(Session session, List<Long> keys) throws XWikiException
+        {
+            session.createQuery("update XWikiLock set userName = :user where docId in (:keys)")
+                .setString("user", MIGRATED).setParameterList("keys", keys).executeUpdate();
+
+            if (this.chunks.size() == this.failingChunk) {
+                this.failingChunk = -1;
+                throw new XWikiException(XWikiException.MODULE_XWIKI_STORE, XWikiException.ERROR_XWIKI_UNKNOWN,
+                    "Failed to migrate " + keys);
+            }
+
+            this.chunks.add(keys);
+        }
+    }
+
+    private TestChunkedMigration migration;
+
+    @Override
+    @Before
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        getXWiki().getConfig().setProperty("xwiki.store.migration.chunkSize", "2");
+
+        ComponentAnnotationLoader loader = new ComponentAnnotationLoader();
+        for (ComponentDescriptor< ? > descriptor : loader.getComponentsDescriptors(TestChunkedMigration.class)) {
+            getComponentManager().registerComponent(descriptor);
+        }
+        this.migration =
+            (TestChunkedMigration) getComponentManager().getInstance(HibernateDataMigration.class, MIGRATION_NAME);
+
+        getHibernateStore().executeWrite(getContext(), new HibernateCallback<Object>()
+        {
+            @Override
+            public Object doInHibernate(Session session) throws HibernateException
+            {
+                // Saved in a different order than the migration order
+                for (int i = KEYS.size() - 1; i >= 0; --i) {
+                    session.save(new XWikiLock(KEYS.get(i), "user"));
+                }
+
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testMigrateInChunks() throws Exception
+    {
+        this.migration.migrate();
+
+        // Keyset paging goes through the negative keys before the positive ones, without skipping any of them
+        Assert.assertEquals(
+            Arrays.asList(KEYS.subList(0, 2), KEYS.subList(2, 4), KEYS.subList(4, 6), KEYS.subList(6, 8),
+                KEYS.subList(8, 9)), this.migration.chunks);
+        Assert.assertEquals(KEYS, getLocks(MIGRATED));
+
+        // The progress is removed at the end of the migration
+        Assert.assertNull(getProgress());
+    }
+
+    @Test
+    public void testResumeAfterFailedChunk() throws Exception
+    {
+        this.migration.failingChunk = 2;
+        try {
+            this.migration.migrate();
+            Assert.fail("The migration should have failed");
+        } catch (DataMigrationException expected) {
+            // The third chunk fails
+        }
+
+        // The failed chunk is rolled back while the previous ones are committed with the progress
+        Assert.assertEquals(KEYS.subList(0, 4), getLocks(MIGRATED));
+        DataMigrationProgress progress = getProgress();
+        Assert.assertNotNull(progress);
+        Assert.assertEquals(KEYS.get(3).longValue(), progress.getLastKey());
+        Assert.assertEquals(4, progress.getCount());
+
+        this.migration.chunks.clear();
+        this.migration.migrate();
+
+        // The migration resumes after the last committed chunk
+        Assert.assertEquals(Arrays.asList(KEYS.subList(4, 6), KEYS.subList(6, 8), KEYS.subList(8, 9)),
+            this.migration.chunks);
+        Assert.assertEquals(KEYS, getLocks(MIGRATED));
+        Assert.assertNull(getProgress());
+    }
+
+    @Test
+    public void testResumeFromStoredProgress() throws Exception
+    {
+        getHibernateStore().executeWrite(getContext(), new HibernateCallback<Object>()
+        {
+            @Override
+            public Object doInHibernate(Session session) throws HibernateException
+            {
+                session.save(new DataMigrationProgress(MIGRATION_NAME, KEYS.get(2), 3));
+
+                return null;
+            }
+        });
+
+        this.migration.migrate();
+
+        Assert.assertEquals(Arrays.asList(KEYS.subList(3, 5), KEYS.subList(5, 7), KEYS.subList(7, 9)),
+            this.migration.chunks);
+        Assert.assertEquals(KEYS.subList(3, 9), getLocks(MIGRATED));
+        Assert.assertNull(getProgress());
+    }
+
+    private DataMigrationProgress getProgress() throws XWikiException
+    {
+        return getHibernateStore().executeRead(getContext(), new HibernateCallback<DataMigrationProgress>()
+        {
+            @Override
+            public DataMigrationProgress doInHibernate(Session session) throws HibernateException
+            {
+                return (DataMigrationProgress) session.get(DataMigrationProgress.class, MIGRATION_NAME);
+            }
+        });
+    }
+
+    private List<Long> getLocks(final String userName) throws XWikiException
+    {
+        return getHibernateStore().executeRead(getContext(), new HibernateCallback<List<Long>>()
+        {
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<Long> doInHibernate(Session session) throws HibernateException
+            {
+                return session.createQuery(
+                    "select xlock.docId from XWikiLock as xlock where xlock.userName = :user order by xlock.docId")
+                    .setString("user", userName).list();
+            }
+        });
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.test;
+
+import org.jmock.Expectations;
+import org.junit.After;
+import org.junit.Before;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiConfig;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xpn.xwiki.store.migration.DataMigrationManager;
+
+/**
+ * Same as {@link AbstractBridgedComponentTestCase} but with a real {@link XWiki} running on top of the Hibernate
+ * stores. The database is an in-memory HSQLDB instance (see {@code hibernate.test.cfg.xml}) which is dropped at the
+ * end of each test.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+public abstract class AbstractHibernateStoreTestCase extends AbstractBridgedComponentTestCase
+{
+    private XWiki xwiki;
+
+    @Override
+    @Before
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        // The tests start from an empty schema, there is nothing to migrate.
+        final DataMigrationManager mockDataMigrationManager =
+            registerMockComponent(DataMigrationManager.class, "hibernate");
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(mockDataMigrationManager).checkDatabase();
+            }
+        });
+
+        XWikiConfig config = new XWikiConfig();
+        config.setProperty("xwiki.store.hibernate.path", "hibernate.test.cfg.xml");
+        config.setProperty("xwiki.store.cache", "0");
+        config.setProperty("xwiki.virtual", "1");
+        // Ensure that no Velocity Templates are going to be used when executing Velocity.
+        config.setProperty("xwiki.render.velocity.macrolist", "");
+
+        this.xwiki = new XWiki(config, getContext())
+        {
+            // The preferences can't be loaded before the schema is created
+            @Override
+            public String getXWikiPreference(String prefname, String defaultValue, XWikiContext context)
+            {
+                if (prefname.equals("plugins") || prefname.startsWith("macros_")) {
+                    return defaultValue;
+                } else {
+                    return super.getXWikiPreference(prefname, defaultValue, context);
+                }
+            }
+        };
+        getContext().setWiki(this.xwiki);
+
+        getHibernateStore().updateSchema(getContext(), true);
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception
+    {
+        // Closing the last connection drops the in-memory database
+        getHibernateStore().shutdownHibernate(getContext());
+
+        super.tearDown();
+    }
+
+    public XWiki getXWiki()
+    {
+        return this.xwiki;
+    }
+
+    public XWikiHibernateStore getHibernateStore()
+    {
+        return this.xwiki.getHibernateStore();
+    }
+
+    /**
+     * Create the schema of a new wiki, next to the main one.
+     * 
+     * @param wikiName the name of the wiki to create
+     * @throws XWikiException if the schema cannot be created
+     */
+    protected void createWiki(String wikiName) throws XWikiException
+    {
+        getHibernateStore().createWiki(wikiName, getContext());
+
+        String database = getContext().getDatabase();
+        try {
+            getContext().setDatabase(wikiName);
+            getHibernateStore().updateSchema(getContext(), true);
+        } finally {
+            getContext().setDatabase(database);
+        }
+    }
+}
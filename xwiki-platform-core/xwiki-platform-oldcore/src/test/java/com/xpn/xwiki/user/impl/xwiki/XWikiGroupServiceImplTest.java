@@ -19,18 +19,29 @@
  */
 package com.xpn.xwiki.user.impl.xwiki;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.jmock.Mock;
 import org.jmock.core.Invocation;
 import org.jmock.core.stub.CustomStub;
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
 
 import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.store.XWikiStoreInterface;
 import com.xpn.xwiki.test.AbstractBridgedXWikiComponentTestCase;
 
 public class XWikiGroupServiceImplTest extends AbstractBridgedXWikiComponentTestCase
@@ -46,6 +57,16 @@ public class XWikiGroupServiceImplTest extends AbstractBridgedXWikiComponentTest
     private XWikiDocument group;
     private BaseObject groupObject;
 
+    /**
+     * The direct groups of the members as stored in the database, indexed by wiki and then by prefixed member name.
+     */
+    private Map<String, Map<String, List<String>>> groups = new HashMap<String, Map<String, List<String>>>();
+
+    /**
+     * The number of executed group queries.
+     */
+    private int queries;
+
     @Override
     protected void setUp() throws Exception
     {
@@ -97,6 +118,101 @@ public Object invoke(Invocation invocation) throws Throwable
             returnValue(this.group));
         this.mockXWiki.stubs().method("getDocument").with(eq(this.group.getFullName()), ANYTHING).will(
             returnValue(this.group));
+
+        this.mockXWiki.stubs().method("Param").will(returnValue(null));
+        this.mockXWiki.stubs().method("ParamAsLong").will(returnValue(0L));
+
+        final Map<String, Object> bindings = new HashMap<String, Object>();
+        final Mock mockQuery = mock(Query.class);
+        mockQuery.stubs().method("bindValue").will(new CustomStub("Implements Query.bindValue")
+        {
+            @Override
+            public Object invoke(Invocation invocation) throws Throwable
+            {
+                bindings.put((String) invocation.parameterValues.get(0), invocation.parameterValues.get(1));
+                return mockQuery.proxy();
+            }
+        });
+        mockQuery.stubs().method("setOffset").will(returnValue(mockQuery.proxy()));
+        mockQuery.stubs().method("setLimit").will(returnValue(mockQuery.proxy()));
+        mockQuery.stubs().method("execute").will(new CustomStub("Implements Query.execute")
+        {
+            @Override
+            public Object invoke(Invocation invocation) throws Throwable
+            {
+                queries++;
+                String member = (String) bindings.get("username");
+                if (member == null) {
+                    member = (String) bindings.get("prefixedmembername");
+                }
+                List<String> memberGroups = getDatabase(getContext().getDatabase()).get(member);
+                return memberGroups != null ? new ArrayList<String>(memberGroups) : Collections.emptyList();
+            }
+        });
+
+        Mock mockQueryManager = mock(QueryManager.class);
+        mockQueryManager.stubs().method("getNamedQuery").will(new CustomStub("Implements QueryManager.getNamedQuery")
+        {
+            @Override
+            public Object invoke(Invocation invocation) throws Throwable
+            {
+                bindings.clear();
+                return mockQuery.proxy();
+            }
+        });
+
+        Mock mockStore = mock(XWikiStoreInterface.class);
+        mockStore.stubs().method("getQueryManager").will(returnValue(mockQueryManager.proxy()));
+        this.mockXWiki.stubs().method("getStore").will(returnValue(mockStore.proxy()));
+    }
+
+    private Map<String, List<String>> getDatabase(String wiki)
+    {
+        Map<String, List<String>> database = this.groups.get(wiki);
+        if (database == null) {
+            database = new HashMap<String, List<String>>();
+            this.groups.put(wiki, database);
+        }
+
+        return database;
+    }
+
+    private XWikiDocument createGroupDocument(DocumentReference groupReference, String... members)
+    {
+        XWikiDocument groupDocument = new XWikiDocument(groupReference);
+        for (String member : members) {
+            BaseObject memberObject = new BaseObject();
+            memberObject.setClassName("XWiki.XWikiGroups");
+            memberObject.setStringValue("member", member);
+            groupDocument.addXObject(memberObject);
+        }
+
+        return groupDocument;
+    }
+
+    private void updateGroup(DocumentReference groupReference, String[] oldMembers, String... newMembers)
+    {
+        XWikiDocument groupDocument = createGroupDocument(groupReference, newMembers);
+        groupDocument.setOriginalDocument(createGroupDocument(groupReference, oldMembers));
+
+        this.groupService.onEvent(oldMembers.length == 0 ? new DocumentCreatedEvent(groupReference)
+            : new DocumentUpdatedEvent(groupReference), groupDocument, getContext());
+    }
+
+    private Set<DocumentReference> getAllGroups(DocumentReference memberReference) throws XWikiException
+    {
+        Set<DocumentReference> allGroups = new HashSet<DocumentReference>();
+        List<DocumentReference> members = new ArrayList<DocumentReference>(Arrays.asList(memberReference));
+        for (int i = 0; i < members.size(); i++) {
+            for (DocumentReference groupReference : this.groupService.getAllGroupsReferencesForMember(
+                members.get(i), 0, 0, getContext())) {
+                if (allGroups.add(groupReference)) {
+                    members.add(groupReference);
+                }
+            }
+        }
+
+        return allGroups;
     }
 
     public void testListMemberForGroup() throws XWikiException
@@ -109,4 +225,77 @@ public void testListMemberForGroup() throws XWikiException
         assertEquals(new HashSet<String>(Arrays.asList(this.userWithSpaces.getFullName())), new HashSet<String>(this.groupService
             .listMemberForGroup(this.group.getFullName(), getContext())));
     }
+
+    public void testNestedGroupsAfterGroupUpdate() throws XWikiException
+    {
+        DocumentReference user2 = new DocumentReference("wiki", "XWiki", "user2");
+        DocumentReference groupA = new DocumentReference("wiki", "XWiki", "groupA");
+        DocumentReference groupB = new DocumentReference("wiki", "XWiki", "groupB");
+        DocumentReference groupC = new DocumentReference("wiki", "XWiki", "groupC");
+
+        getDatabase("wiki").put("wiki:XWiki.user", Arrays.asList("XWiki.groupA"));
+        getDatabase("wiki").put("wiki:XWiki.groupA", Arrays.asList("XWiki.groupB"));
+        getDatabase("wiki").put("wiki:XWiki.user2", Arrays.asList("XWiki.groupB"));
+
+        assertEquals(new HashSet<DocumentReference>(Arrays.asList(groupA, groupB)),
+            getAllGroups(this.user.getDocumentReference()));
+        assertEquals(new HashSet<DocumentReference>(Arrays.asList(groupB)), getAllGroups(user2));
+        assertEquals(4, this.queries);
+
+        // Move the user from groupA to groupC
+        getDatabase("wiki").put("wiki:XWiki.user", Arrays.asList("XWiki.groupC"));
+        updateGroup(groupA, new String[] {"XWiki.user"});
+        updateGroup(groupC, new String[0], "user");
+
+        assertEquals(new HashSet<DocumentReference>(Arrays.asList(groupC)),
+            getAllGroups(this.user.getDocumentReference()));
+        assertEquals(new HashSet<DocumentReference>(Arrays.asList(groupB)), getAllGroups(user2));
+        // Only the user and the new group have been queried again
+        assertEquals(6, this.queries);
+
+        // Nest groupC in groupA
+        getDatabase("wiki").put("wiki:XWiki.groupC", Arrays.asList("XWiki.groupA"));
+        updateGroup(groupA, new String[0], "wiki:XWiki.groupC");
+
+        assertEquals(new HashSet<DocumentReference>(Arrays.asList(groupA, groupB, groupC)),
+            getAllGroups(this.user.getDocumentReference()));
+        assertEquals(7, this.queries);
+    }
+
+    public void testGroupsInOtherWiki() throws XWikiException
+    {
+        DocumentReference userReference = this.user.getDocumentReference();
+        DocumentReference groupA = new DocumentReference("wiki", "XWiki", "groupA");
+        DocumentReference otherGroup = new DocumentReference("otherwiki", "XWiki", "othergroup");
+        DocumentReference otherGroup2 = new DocumentReference("otherwiki", "XWiki", "othergroup2");
+
+        getDatabase("wiki").put("wiki:XWiki.user", Arrays.asList("XWiki.groupA"));
+        getDatabase("otherwiki").put("wiki:XWiki.user", Arrays.asList("XWiki.othergroup"));
+
+        assertEquals(new HashSet<DocumentReference>(Arrays.asList(groupA)), getAllGroups(userReference));
+        getContext().setDatabase("otherwiki");
+        assertEquals(new HashSet<DocumentReference>(Arrays.asList(otherGroup)), getAllGroups(userReference));
+        assertEquals(4, this.queries);
+
+        // Add the user to another group of the other wiki
+        getDatabase("otherwiki").put("wiki:XWiki.user", Arrays.asList("XWiki.othergroup", "XWiki.othergroup2"));
+        updateGroup(otherGroup2, new String[0], "wiki:XWiki.user");
+
+        assertEquals(new HashSet<DocumentReference>(Arrays.asList(otherGroup, otherGroup2)),
+            getAllGroups(userReference));
+        getContext().setDatabase("wiki");
+        assertEquals(new HashSet<DocumentReference>(Arrays.asList(groupA)), getAllGroups(userReference));
+        // The groups of the user in the main wiki are still cached
+        assertEquals(6, this.queries);
+
+        // Remove the user from the group of the main wiki
+        getDatabase("wiki").remove("wiki:XWiki.user");
+        updateGroup(groupA, new String[] {"XWiki.user"});
+
+        assertEquals(Collections.<DocumentReference>emptySet(), getAllGroups(userReference));
+        getContext().setDatabase("otherwiki");
+        assertEquals(new HashSet<DocumentReference>(Arrays.asList(otherGroup, otherGroup2)),
+            getAllGroups(userReference));
+        assertEquals(7, this.queries);
+    }
 }
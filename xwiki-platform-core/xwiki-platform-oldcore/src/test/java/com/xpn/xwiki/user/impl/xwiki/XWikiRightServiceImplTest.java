@@ -19,14 +19,25 @@
  */
 package com.xpn.xwiki.user.impl.xwiki;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
 
 import org.jmock.Mock;
 import org.jmock.core.Invocation;
 import org.jmock.core.stub.CustomStub;
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
 
 import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
@@ -34,6 +45,7 @@
 import com.xpn.xwiki.api.Document;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.classes.GroupsClass;
 import com.xpn.xwiki.test.AbstractBridgedXWikiComponentTestCase;
 import com.xpn.xwiki.user.api.XWikiGroupService;
 import com.xpn.xwiki.user.api.XWikiRightNotFoundException;
@@ -58,11 +70,18 @@ public class XWikiRightServiceImplTest extends AbstractBridgedXWikiComponentTest
 
     private XWikiDocument group2;
 
+    private DocumentReferenceResolver<String> currentMixedResolver;
+
+    private EntityReferenceSerializer<String> serializer;
+
     @Override
     protected void setUp() throws Exception
     {
         super.setUp();
         this.rightService = new XWikiRightServiceImpl();
+        this.currentMixedResolver =
+            getComponentManager().getInstance(DocumentReferenceResolver.TYPE_STRING, "currentmixed");
+        this.serializer = getComponentManager().getInstance(EntityReferenceSerializer.TYPE_STRING);
 
         this.mockGroupService = mock(XWikiGroupService.class, new Class[] {}, new Object[] {});
 
@@ -389,6 +408,7 @@ public void testProgrammingRightsWhenNoContextDocumentIsSet()
         Mock mockGlobalRightObj = mock(BaseObject.class, new Class[] {}, new Object[] {});
         mockGlobalRightObj.stubs().method("getStringValue").with(eq("levels")).will(returnValue("programming"));
         mockGlobalRightObj.stubs().method("getStringValue").with(eq("users")).will(returnValue("XWiki.Programmer"));
+        mockGlobalRightObj.stubs().method("getStringValue").with(eq("groups")).will(returnValue(""));
         mockGlobalRightObj.stubs().method("getIntValue").with(eq("allow")).will(returnValue(1));
         mockGlobalRightObj.stubs().method("setNumber");
         mockGlobalRightObj.stubs().method("setDocumentReference");
@@ -802,5 +822,182 @@ public Object invoke(Invocation invocation) throws Throwable
 
     }
 
+    private void addRightObject(XWikiDocument doc, String className, String levels, String users, String groups,
+        boolean allow)
+    {
+        BaseObject rightsObject = new BaseObject();
+        rightsObject.setClassName(className);
+        rightsObject.setStringValue("levels", levels);
+        rightsObject.setStringValue("users", users);
+        rightsObject.setStringValue("groups", groups);
+        rightsObject.setIntValue("allow", allow ? 1 : 0);
+        doc.addXObject(rightsObject);
+    }
+
+    private String checkRight(boolean compiled, String name, XWikiDocument doc, String level, boolean user,
+        boolean allow, boolean global) throws XWikiException
+    {
+        try {
+            return String.valueOf(compiled ? this.rightService.checkRight(name, doc, level, user, allow, global,
+                getContext()) : checkRightFromObjects(name, doc, level, user, allow, global));
+        } catch (XWikiRightNotFoundException e) {
+            return "not found";
+        }
+    }
+
+    /**
+     * Check the right by going through the rights objects of the document and recursively through the groups of the
+     * user or group, the way rights were checked before they were compiled into lookup tables.
+     */
+    private boolean checkRightFromObjects(String userOrGroupName, XWikiDocument doc, String accessLevel,
+        boolean user, boolean allow, boolean global) throws XWikiRightNotFoundException, XWikiException
+    {
+        if (!global && ("admin".equals(accessLevel))) {
+            throw new XWikiRightNotFoundException();
+        }
+
+        String className = global ? "XWiki.XWikiGlobalRights" : "XWiki.XWikiRights";
+        String fieldName = user ? "users" : "groups";
+        boolean found = false;
+
+        DocumentReference userOrGroupDocumentReference = this.currentMixedResolver.resolve(userOrGroupName);
+        String shortname = userOrGroupName.substring(userOrGroupName.indexOf(':') + 1);
+
+        List<BaseObject> objects = doc.getObjects(className);
+        if (objects != null) {
+            for (BaseObject object : objects) {
+                if (object == null || (object.getIntValue("allow") == 1) != allow
+                    || !ArrayUtils.contains(StringUtils.split(object.getStringValue("levels"), " ,|"), accessLevel)) {
+                    continue;
+                }
+
+                found = true;
+
+                List<String> names = new ArrayList<String>();
+                for (String value : GroupsClass.getListFromString(object.getStringValue(fieldName))) {
+                    names.add(value.indexOf('.') == -1 ? "XWiki." + value : value);
+                }
+
+                if (doc.getWikiName().equals(userOrGroupDocumentReference.getWikiReference().getName())
+                    && (names.contains(shortname) || names.contains(shortname.substring(shortname.indexOf('.') + 1)))) {
+                    return true;
+                }
+
+                if (getContext().getDatabase() != null && names.contains(userOrGroupName)) {
+                    return true;
+                }
+            }
+        }
+
+        Set<String> groups = new HashSet<String>();
+        groups.addAll(getGroups(doc.getWikiName(), userOrGroupDocumentReference));
+        String memberWiki = userOrGroupDocumentReference.getWikiReference().getName();
+        if (!getContext().getDatabase().equalsIgnoreCase(memberWiki)) {
+            groups.addAll(getGroups(memberWiki, userOrGroupDocumentReference));
+        }
+
+        for (String group : groups) {
+            try {
+                if (checkRightFromObjects(group, doc, accessLevel, false, allow, global)) {
+                    return true;
+                }
+            } catch (XWikiRightNotFoundException e) {
+                // Try the next group
+            }
+        }
+
+        if (found) {
+            return false;
+        } else {
+            throw new XWikiRightNotFoundException();
+        }
+    }
+
+    private Collection<String> getGroups(String wiki, DocumentReference memberReference) throws XWikiException
+    {
+        Collection<String> groups = new ArrayList<String>();
+
+        String currentWiki = getContext().getDatabase();
+        try {
+            getContext().setDatabase(wiki);
+            for (DocumentReference groupReference : getContext().getWiki().getGroupService(getContext())
+                .getAllGroupsReferencesForMember(memberReference, 0, 0, getContext())) {
+                groups.add(this.serializer.serialize(groupReference));
+            }
+        } finally {
+            getContext().setDatabase(currentWiki);
+        }
+
+        return groups;
+    }
+
+    /**
+     * Make sure the compiled rights give the same results as going through the rights objects.
+     */
+    public void testCheckRightGivesSameResultsAsObjects() throws XWikiException
+    {
+        List<XWikiDocument> documents = new ArrayList<XWikiDocument>();
+        for (String wiki : Arrays.asList("wiki", "wiki2")) {
+            XWikiDocument doc = new XWikiDocument(new DocumentReference(wiki, "XWiki", "XWikiPreferences"));
+            addRightObject(doc, "XWiki.XWikiGlobalRights", "view", "user", "", true);
+            addRightObject(doc, "XWiki.XWikiGlobalRights", "edit", "", "wiki:XWiki.group", false);
+            addRightObject(doc, "XWiki.XWikiGlobalRights", "comment,edit", "", "group", true);
+            addRightObject(doc, "XWiki.XWikiGlobalRights", "delete", "wiki2:XWiki.other", "", true);
+            addRightObject(doc, "XWiki.XWikiGlobalRights", "view|register", "", "wiki2:XWiki.group2", true);
+            addRightObject(doc, "XWiki.XWikiGlobalRights", "admin", "XWiki.user,XWiki.other", "", true);
+            addRightObject(doc, "XWiki.XWikiRights", "view edit", "wiki:XWiki.user", "", true);
+            addRightObject(doc, "XWiki.XWikiRights", "delete", "", "XWiki.group", false);
+            addRightObject(doc, "XWiki.XWikiRights", "comment", "XWiki.XWikiGuest", "group2", false);
+            addRightObject(doc, "XWiki.XWikiRights", "register", "", "", true);
+            documents.add(doc);
+        }
+
+        List<String> names =
+            Arrays.asList(this.user.getPrefixedFullName(), this.group.getPrefixedFullName(),
+                this.group2.getPrefixedFullName());
+
+        for (String database : Arrays.asList("wiki", "wiki2")) {
+            getContext().setDatabase(database);
+            for (XWikiDocument doc : documents) {
+                for (String name : names) {
+                    for (String level : this.rightService.listAllLevels(getContext())) {
+                        for (boolean user : new boolean[] {true, false}) {
+                            for (boolean allow : new boolean[] {true, false}) {
+                                for (boolean global : new boolean[] {true, false}) {
+                                    assertEquals("Wrong right for [" + name + "], [" + level + "] on ["
+                                        + doc.getPrefixedFullName() + "] (user: " + user + ", allow: " + allow
+                                        + ", global: " + global + ") from wiki [" + database + "]",
+                                        checkRight(false, name, doc, level, user, allow, global),
+                                        checkRight(true, name, doc, level, user, allow, global));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Make sure the compiled rights of a document are not reused for another instance of the document.
+     */
+    public void testCheckRightWithReloadedDocument() throws XWikiException
+    {
+        XWikiDocument preferences = new XWikiDocument(new DocumentReference("wiki", "XWiki", "XWikiPreferences"));
+        addRightObject(preferences, "XWiki.XWikiGlobalRights", "view", this.user.getPrefixedFullName(), "", true);
+        preferences.setNew(false);
+        preferences.setMetaDataDirty(false);
 
+        assertTrue(this.rightService.checkRight(this.user.getPrefixedFullName(), preferences, "view", true, true, true,
+            getContext()));
+
+        XWikiDocument reloadedPreferences =
+            new XWikiDocument(new DocumentReference("wiki", "XWiki", "XWikiPreferences"));
+        addRightObject(reloadedPreferences, "XWiki.XWikiGlobalRights", "view", "", "", true);
+        reloadedPreferences.setNew(false);
+        reloadedPreferences.setMetaDataDirty(false);
+
+        assertFalse(this.rightService.checkRight(this.user.getPrefixedFullName(), reloadedPreferences, "view", true,
+            true, true, getContext()));
+    }
 }
@@ -0,0 +1,211 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.jmock.Expectations;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.test.AbstractHibernateStoreTestCase;
+
+/**
+ * Validate {@link DownloadAction} with attachment content loaded by the Hibernate attachment store, which spools large
+ * attachments to a temporary file and lets the action transfer them from the file channel.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class DownloadActionStoreTest extends AbstractHibernateStoreTestCase
+{
+    /** Larger than the size up to which the attachment content is kept in memory. */
+    private static final int CONTENT_SIZE = 25000;
+
+    private static final String FILE_NAME = "file.bin";
+
+    private static final String URI = "/xwiki/bin/download/Space/Page/file.bin";
+
+    private final DownloadAction action = new DownloadAction();
+
+    private final byte[] content = new byte[CONTENT_SIZE];
+
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    private XWikiRequest request;
+
+    private XWikiResponse response;
+
+    private Date date;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        for (int i = 0; i < this.content.length; ++i) {
+            this.content[i] = (byte) i;
+        }
+
+        this.request = getMockery().mock(XWikiRequest.class);
+        getContext().setRequest(this.request);
+        this.response = getMockery().mock(XWikiResponse.class);
+        getContext().setResponse(this.response);
+        final XWikiEngineContext engineContext = getMockery().mock(XWikiEngineContext.class);
+        getContext().setEngineContext(engineContext);
+
+        final ServletOutputStream out = new ServletOutputStream()
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                DownloadActionStoreTest.this.written.write(b);
+            }
+        };
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(engineContext).getMimeType(FILE_NAME);
+                will(returnValue("application/octet-stream"));
+                allowing(DownloadActionStoreTest.this.request).getRequestURI();
+                will(returnValue(URI));
+                allowing(DownloadActionStoreTest.this.request).getParameter(with(any(String.class)));
+                will(returnValue(null));
+                allowing(DownloadActionStoreTest.this.request).getDateHeader("If-Modified-Since");
+                will(returnValue(-1L));
+                allowing(DownloadActionStoreTest.this.response).getOutputStream();
+                will(returnValue(out));
+                ignoring(DownloadActionStoreTest.this.response).setContentType(with(any(String.class)));
+                ignoring(DownloadActionStoreTest.this.response).setCharacterEncoding(with(any(String.class)));
+                ignoring(DownloadActionStoreTest.this.response).addHeader(with(any(String.class)),
+                    with(any(String.class)));
+                ignoring(DownloadActionStoreTest.this.response).setDateHeader(with(any(String.class)),
+                    with(any(long.class)));
+                ignoring(DownloadActionStoreTest.this.response).setHeader(with(any(String.class)),
+                    with(any(String.class)));
+            }
+        });
+
+        // Store the attachment, then load the document the way a request would
+        this.date = new Date(1350000000000L);
+        XWikiDocument document = new XWikiDocument(new DocumentReference("xwiki", "Space", "Page"));
+        XWikiAttachment attachment = new XWikiAttachment(document, FILE_NAME);
+        attachment.setContent(new ByteArrayInputStream(this.content));
+        attachment.setDate(this.date);
+        document.getAttachmentList().add(attachment);
+        attachment.updateContentArchive(getContext());
+        getXWiki().getAttachmentStore().saveAttachmentContent(attachment, false, getContext(), true);
+
+        XWikiDocument loadedDocument = new XWikiDocument(document.getDocumentReference());
+        XWikiAttachment loadedAttachment = new XWikiAttachment(loadedDocument, FILE_NAME);
+        loadedAttachment.setDate(this.date);
+        loadedDocument.getAttachmentList().add(loadedAttachment);
+        getXWiki().getAttachmentStore().loadAttachmentContent(loadedAttachment, getContext(), true);
+        getContext().setDoc(loadedDocument);
+    }
+
+    @Test
+    public void testContentIsSpooledToFile() throws IOException
+    {
+        FileChannel channel =
+            getContext().getDoc().getAttachment(FILE_NAME).getAttachment_content().getContentChannel();
+        Assert.assertNotNull("The stored content should be read from a file", channel);
+        try {
+            Assert.assertEquals(CONTENT_SIZE, channel.size());
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void testNormalDownload() throws XWikiException
+    {
+        setRequestHeaders(null, null);
+        getMockery().checking(new Expectations()
+        {
+            {
+                one(DownloadActionStoreTest.this.response).setContentLength(CONTENT_SIZE);
+            }
+        });
+
+        Assert.assertNull(this.action.render(getContext()));
+        Assert.assertTrue(Arrays.equals(this.content, this.written.toByteArray()));
+    }
+
+    @Test
+    public void testRangeDownload() throws XWikiException
+    {
+        setRequestHeaders("bytes=12000-12999", null);
+        getMockery().checking(new Expectations()
+        {
+            {
+                one(DownloadActionStoreTest.this.response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                one(DownloadActionStoreTest.this.response).setContentLength(1000);
+            }
+        });
+
+        Assert.assertNull(this.action.render(getContext()));
+        Assert.assertTrue(Arrays.equals(ArrayUtils.subarray(this.content, 12000, 13000),
+            this.written.toByteArray()));
+    }
+
+    @Test
+    public void testIfNoneMatchSame() throws XWikiException
+    {
+        setRequestHeaders(null, "\"1.1-" + this.date.getTime() + "\"");
+        getMockery().checking(new Expectations()
+        {
+            {
+                one(DownloadActionStoreTest.this.response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            }
+        });
+
+        Assert.assertNull(this.action.render(getContext()));
+        Assert.assertEquals(0, this.written.size());
+    }
+
+    private void setRequestHeaders(final String range, final String noneMatch)
+    {
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(DownloadActionStoreTest.this.request).getHeader("Range");
+                will(returnValue(range));
+                allowing(DownloadActionStoreTest.this.request).getHeader("If-None-Match");
+                will(returnValue(noneMatch));
+                allowing(DownloadActionStoreTest.this.request).getHeader("If-Range");
+                will(returnValue(null));
+            }
+        });
+    }
+}
@@ -155,6 +155,7 @@ public void testIfModifiedSinceSame() throws XWikiException, IOException
         {
             {
                 allowing(DownloadActionTest.this.response).setStatus(with(HttpServletResponse.SC_NOT_MODIFIED));
+                one(DownloadActionTest.this.response).setHeader(with("ETag"), with("\"1.1-" + d.getTime() + "\""));
             }
         });
         Assert.assertNull(this.action.render(getContext()));
@@ -170,6 +171,7 @@ public void testIfModifiedSinceAfter() throws XWikiException, IOException
         {
             {
                 allowing(DownloadActionTest.this.response).setStatus(with(HttpServletResponse.SC_NOT_MODIFIED));
+                one(DownloadActionTest.this.response).setHeader(with("ETag"), with("\"1.1-" + d.getTime() + "\""));
             }
         });
         Assert.assertNull(this.action.render(getContext()));
@@ -619,6 +621,65 @@ public void testEmptyRange() throws XWikiException, IOException
         Assert.assertNull(this.action.render(getContext()));
     }
 
+    @Test
+    public void testIfNoneMatchSame() throws XWikiException, IOException
+    {
+        final Date d = new Date();
+        createAttachment(d, DEFAULT_FILE_NAME);
+        setRequestExpectations(DEFAULT_URI, null, null, null, -1l, "\"0.9-1\", \"1.1-" + d.getTime() + "\"", null);
+        getMockery().checking(new Expectations()
+        {
+            {
+                one(DownloadActionTest.this.response).setStatus(with(HttpServletResponse.SC_NOT_MODIFIED));
+                one(DownloadActionTest.this.response).setHeader(with("ETag"), with("\"1.1-" + d.getTime() + "\""));
+            }
+        });
+        Assert.assertNull(this.action.render(getContext()));
+    }
+
+    @Test
+    public void testIfNoneMatchDifferent() throws XWikiException, IOException
+    {
+        // The entity tag takes precedence over the modification date
+        final Date d = new Date();
+        createAttachment(d, DEFAULT_FILE_NAME);
+        setRequestExpectations(DEFAULT_URI, null, null, null, d.getTime() + 1000l, "\"1.1-1\"", null);
+        setResponseExpectations(d.getTime(), this.fileContent.length);
+        setOutputExpectations(0, this.fileContent.length);
+        Assert.assertNull(this.action.render(getContext()));
+    }
+
+    @Test
+    public void testIfRangeSame() throws XWikiException, IOException
+    {
+        final Date d = new Date();
+        createAttachment(d, DEFAULT_FILE_NAME);
+        setRequestExpectations(DEFAULT_URI, null, null, "bytes=3-5", -1l, null, "\"1.1-" + d.getTime() + "\"");
+        setResponseExpectations(d.getTime(), 3);
+        setOutputExpectations(3, 6);
+        getMockery().checking(new Expectations()
+        {
+            {
+                one(DownloadActionTest.this.response).setStatus(with(HttpServletResponse.SC_PARTIAL_CONTENT));
+                one(DownloadActionTest.this.response).setHeader(with("Content-Range"),
+                    with("bytes 3-5/" + DownloadActionTest.this.fileContent.length));
+            }
+        });
+        Assert.assertNull(this.action.render(getContext()));
+    }
+
+    @Test
+    public void testIfRangeDifferent() throws XWikiException, IOException
+    {
+        // The attachment changed since the client got the first bytes, so the whole file is sent
+        final Date d = new Date();
+        createAttachment(d, DEFAULT_FILE_NAME);
+        setRequestExpectations(DEFAULT_URI, null, null, "bytes=3-5", -1l, null, "\"1.1-1\"");
+        setResponseExpectations(d.getTime(), this.fileContent.length);
+        setOutputExpectations(0, this.fileContent.length);
+        Assert.assertNull(this.action.render(getContext()));
+    }
+
     private void createAttachment(Date d, String name) throws IOException
     {
         XWikiAttachment filetxt = new XWikiAttachment(this.document, name);
@@ -630,6 +691,12 @@ private void createAttachment(Date d, String name) throws IOException
     private void setRequestExpectations(final String uri, final String id, final String forceDownload,
         final String range,
         final long modifiedSince)
+    {
+        setRequestExpectations(uri, id, forceDownload, range, modifiedSince, null, null);
+    }
+
+    private void setRequestExpectations(final String uri, final String id, final String forceDownload,
+        final String range, final long modifiedSince, final String noneMatch, final String ifRange)
     {
         getMockery().checking(new Expectations()
         {
@@ -644,6 +711,10 @@ private void setRequestExpectations(final String uri, final String id, final Str
                 will(returnValue(forceDownload));
                 allowing(DownloadActionTest.this.request).getHeader(with("Range"));
                 will(returnValue(range));
+                allowing(DownloadActionTest.this.request).getHeader(with("If-None-Match"));
+                will(returnValue(noneMatch));
+                allowing(DownloadActionTest.this.request).getHeader(with("If-Range"));
+                will(returnValue(ifRange));
             }
         });
     }
@@ -663,6 +734,7 @@ private void setResponseExpectations(final long modified, final int length, fina
                 one(DownloadActionTest.this.response).setHeader(with("Accept-Ranges"), with("bytes"));
                 one(DownloadActionTest.this.response).addHeader(with("Content-disposition"), with(disposition));
                 one(DownloadActionTest.this.response).setDateHeader(with("Last-Modified"), with(modified));
+                one(DownloadActionTest.this.response).setHeader(with("ETag"), with("\"1.1-" + modified + "\""));
                 one(DownloadActionTest.this.response).setContentLength(with(length));
             }
         });
@@ -157,4 +157,20 @@ public void testGetTemporaryFileForOverEncodedURL() throws Exception
         Assert.assertNotNull(action.getTemporaryFile(
             "/xwiki/bin/temp/Sp%2Aace/Pa%2Dge/officeviewer/presentation.odp/presentation-slide0.jpg", getContext()));
     }
+
+    /**
+     * Only the chart images named after the digest of the chart data are immutable.
+     */
+    @Test
+    public void testIsImmutable() throws Exception
+    {
+        String digest = "0123456789abcdef0123456789abcdef01234567";
+        Assert.assertTrue(action.isImmutable("/xwiki/bin/temp/space/page/chart/" + digest + ".png"));
+
+        // Charts whose data can't be serialized are named after the hash code of the macro parameters
+        Assert.assertFalse(action.isImmutable("/xwiki/bin/temp/space/page/chart/123456.png"));
+        Assert.assertFalse(action.isImmutable("/xwiki/bin/temp/space/page/module/" + digest + ".png"));
+        Assert.assertFalse(action.isImmutable("/xwiki/bin/temp/space/page/chart/" + digest + ".png/other.png"));
+        Assert.assertFalse(action.isImmutable("/xwiki/bin/temp/Space/Page/module/file.txt"));
+    }
 }
@@ -151,10 +151,52 @@
      */
     int getOffset();
 
+    /**
+     * @param fetchSize number of rows to fetch from the storage at once when reading the results, 0 to use the default
+     *            of the storage.
+     * @return this query.
+     * @since 4.4M1
+     */
+    Query setFetchSize(int fetchSize);
+
+    /**
+     * @return number of rows to fetch from the storage at once when reading the results.
+     * @see #setFetchSize(int)
+     * @since 4.4M1
+     */
+    int getFetchSize();
+
+    /**
+     * @param readOnly true to indicate that the entities returned by the query won't be modified, which allows the
+     *            storage to avoid keeping track of their state.
+     * @return this query.
+     * @since 4.4M1
+     */
+    Query setReadOnly(boolean readOnly);
+
+    /**
+     * @return true if the entities returned by the query won't be modified.
+     * @see #setReadOnly(boolean)
+     * @since 4.4M1
+     */
+    boolean isReadOnly();
+
     /**
      * @param <T> expected type of elements in the result list.
      * @return result list of the query. If several fields are selected then T=Object[].
      * @throws QueryException if something goes wrong.
      */
     <T> List<T> execute() throws QueryException;
+
+    /**
+     * Execute the query and read its results while they are iterated, so that queries returning a lot of results can
+     * be processed without loading them all in memory. The returned iterator must be closed once used. When the
+     * storage of the query language is not able to stream results, the iterator is backed by the result list.
+     *
+     * @param <T> expected type of elements in the result iterator.
+     * @return iterator over the results of the query. If several fields are selected then T=Object[].
+     * @throws QueryException if something goes wrong.
+     * @since 4.4M1
+     */
+    <T> QueryResultIterator<T> iterate() throws QueryException;
 }
@@ -0,0 +1,42 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.query;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Iterator over the results of a query which are read from the storage while iterating, instead of being all loaded
+ * in memory. The iterator holds storage resources (like a database connection) until it is closed, so it must always
+ * be closed, even if not all the results have been read.
+ *
+ * @param <T> the type of the results. If several fields are selected then T=Object[].
+ * @version $Id$
+ * @since 4.4M1
+ * @see Query#iterate()
+ */
+public interface QueryResultIterator<T> extends Iterator<T>, Closeable
+{
+    /**
+     * Release the storage resources held by this iterator. Calling this method more than once has no effect.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,42 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.query;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * {@link QueryExecutor} able to read the results of a query while they are iterated, instead of loading them all in
+ * memory.
+ *
+ * @version $Id$
+ * @since 4.4M1
+ */
+@Role
+public interface StreamingQueryExecutor extends QueryExecutor
+{
+    /**
+     * @param <T> expected type of elements in the result iterator
+     * @param query query to execute
+     * @return iterator over the results of the query, which must be closed once used
+     * @throws QueryException if something goes wrong
+     * @see Query#iterate()
+     */
+    <T> QueryResultIterator<T> iterate(Query query) throws QueryException;
+}
@@ -30,6 +30,7 @@
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryExecutor;
 import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryResultIterator;
 
 /**
  * Stores all information needed for execute a query.
@@ -84,6 +85,16 @@ public class DefaultQuery implements Query
      */
     private int offset;
 
+    /**
+     * field for {@link Query#setFetchSize(int)}.
+     */
+    private int fetchSize;
+
+    /**
+     * field for {@link Query#setReadOnly(boolean)}.
+     */
+    private boolean readOnly;
+
     /**
      * field for {@link #getFilters()}.
      */
@@ -212,6 +223,32 @@ public Query setOffset(int offset)
         return this;
     }
 
+    @Override
+    public int getFetchSize()
+    {
+        return fetchSize;
+    }
+
+    @Override
+    public Query setFetchSize(int fetchSize)
+    {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    @Override
+    public boolean isReadOnly()
+    {
+        return readOnly;
+    }
+
+    @Override
+    public Query setReadOnly(boolean readOnly)
+    {
+        this.readOnly = readOnly;
+        return this;
+    }
+
     @Override
     public Map<String, Object> getNamedParameters()
     {
@@ -248,6 +285,12 @@ public <T> List<T> execute() throws QueryException
         return getExecuter().execute(this);
     }
 
+    @Override
+    public <T> QueryResultIterator<T> iterate() throws QueryException
+    {
+        return ListQueryResultIterator.iterate(getExecuter(), this);
+    }
+
     /**
      * @return QueryExecutor interface for execute the query.
      */
@@ -33,6 +33,8 @@
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryExecutor;
 import org.xwiki.query.QueryExecutorManager;
+import org.xwiki.query.QueryResultIterator;
+import org.xwiki.query.StreamingQueryExecutor;
 
 /**
  * Default implementation of {@link QueryExecutorManager}.
@@ -44,7 +46,7 @@
 // to users as a valid QueryExecutor component.
 @Component(roles = { QueryExecutorManager.class })
 @Singleton
-public class DefaultQueryExecutorManager implements QueryExecutorManager
+public class DefaultQueryExecutorManager implements QueryExecutorManager, StreamingQueryExecutor
 {
     /**
      * Map from language to its executor.
@@ -61,11 +63,26 @@ public class DefaultQueryExecutorManager implements QueryExecutorManager
 
     @Override
     public <T> List<T> execute(Query query) throws QueryException
+    {
+        return getExecutor(query).execute(query);
+    }
+
+    @Override
+    public <T> QueryResultIterator<T> iterate(Query query) throws QueryException
+    {
+        return ListQueryResultIterator.iterate(getExecutor(query), query);
+    }
+
+    /**
+     * @param query the query to execute
+     * @return the executor for the language of the query
+     */
+    private QueryExecutor getExecutor(Query query)
     {
         if (query.isNamed()) {
-            return this.namedQueryExecutorProvider.get().execute(query);
+            return this.namedQueryExecutorProvider.get();
         } else {
-            return this.executors.get(query.getLanguage()).execute(query);
+            return this.executors.get(query.getLanguage());
         }
     }
 
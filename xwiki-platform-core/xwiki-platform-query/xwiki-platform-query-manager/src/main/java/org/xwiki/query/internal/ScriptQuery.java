@@ -28,6 +28,7 @@
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryFilter;
 import org.xwiki.query.QueryManager;
+import org.xwiki.query.QueryResultIterator;
 
 import java.util.List;
 import java.util.Map;
@@ -230,9 +231,41 @@ public int getOffset()
         return query.getOffset();
     }
 
+    @Override
+    public Query setFetchSize(int fetchSize)
+    {
+        query.setFetchSize(fetchSize);
+        return this;
+    }
+
+    @Override
+    public int getFetchSize()
+    {
+        return query.getFetchSize();
+    }
+
+    @Override
+    public Query setReadOnly(boolean readOnly)
+    {
+        query.setReadOnly(readOnly);
+        return this;
+    }
+
+    @Override
+    public boolean isReadOnly()
+    {
+        return query.isReadOnly();
+    }
+
     @Override
     public <T> List<T> execute() throws QueryException
     {
         return query.execute();
     }
+
+    @Override
+    public <T> QueryResultIterator<T> iterate() throws QueryException
+    {
+        return query.iterate();
+    }
 }
\ No newline at end of file
@@ -35,14 +35,15 @@
 import org.xwiki.model.reference.WikiReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
-import org.xwiki.query.QueryExecutor;
 import org.xwiki.query.QueryFilter;
 import org.xwiki.query.QueryManager;
+import org.xwiki.query.QueryResultIterator;
+import org.xwiki.query.StreamingQueryExecutor;
 
 @Component
 @Named("xwql")
 @Singleton
-public class XWQLQueryExecutor implements QueryExecutor
+public class XWQLQueryExecutor implements StreamingQueryExecutor
 {
     @Inject
     @Named("hql")
@@ -62,6 +63,35 @@ public QueryManager getQueryManager() throws ComponentLookupException
 
     @Override
     public <T> List<T> execute(Query query) throws QueryException
+    {
+        EntityReference currentEntityReference = this.context.getCurrentEntityReference();
+        try {
+            return createNativeQuery(query).execute();
+        } finally {
+            this.context.setCurrentEntityReference(currentEntityReference);
+        }
+    }
+
+    @Override
+    public <T> QueryResultIterator<T> iterate(Query query) throws QueryException
+    {
+        EntityReference currentEntityReference = this.context.getCurrentEntityReference();
+        try {
+            return createNativeQuery(query).iterate();
+        } finally {
+            this.context.setCurrentEntityReference(currentEntityReference);
+        }
+    }
+
+    /**
+     * Translate a XWQL query to the native query language. The current entity reference is changed to the wiki of the
+     * query, it has to be restored by the caller.
+     *
+     * @param query the XWQL query
+     * @return the native query
+     * @throws QueryException if the query can't be translated
+     */
+    private Query createNativeQuery(Query query) throws QueryException
     {
         EntityReference currentEntityReference = this.context.getCurrentEntityReference();
 
@@ -81,6 +111,8 @@ public <T> List<T> execute(Query query) throws QueryException
                     this.translator.getOutputLanguage());
             nativeQuery.setLimit(query.getLimit());
             nativeQuery.setOffset(query.getOffset());
+            nativeQuery.setFetchSize(query.getFetchSize());
+            nativeQuery.setReadOnly(query.isReadOnly());
             nativeQuery.setWiki(query.getWiki());
             if (query.getFilters() != null) {
                 for (QueryFilter filter : query.getFilters()) {
@@ -94,15 +126,13 @@ public <T> List<T> execute(Query query) throws QueryException
                 nativeQuery.bindValue(e.getKey(), e.getValue());
             }
 
-            return nativeQuery.execute();
+            return nativeQuery;
         } catch (Exception e) {
             if (e instanceof QueryException) {
                 throw (QueryException) e;
             }
             throw new QueryException("Exception while translating [" + query.getStatement() + "] XWQL query to the ["
                 + this.translator.getOutputLanguage() + "] language", query, e);
-        } finally {
-            this.context.setCurrentEntityReference(currentEntityReference);
         }
     }
 
@@ -133,6 +133,21 @@ public class DefaultWikiMacro implements WikiMacro, NestedScriptMacroEnabled
      */
     private ComponentManager componentManager;
 
+    /**
+     * Tells when the components used to execute the macro need to be looked up again, looked up on first execution.
+     */
+    private volatile WikiMacroComponentGeneration componentGeneration;
+
+    /**
+     * The components used to execute the macro, looked up on first execution.
+     */
+    private volatile Components components;
+
+    /**
+     * The macro content to use when the macro is called inline, created on first inline execution.
+     */
+    private volatile XDOM inlineContent;
+
     /**
      * Constructs a new {@link DefaultWikiMacro}.
      * 
@@ -173,33 +188,22 @@ public List<Block> execute(WikiMacroParameters parameters, String macroContent,
         macroBinding.put(MACRO_CONTEXT_KEY, context);
         macroBinding.put(MACRO_RESULT_KEY, null);
 
-        // Extension point to add more wiki macro bindings
+        // Execute the macro
+        ObservationManager observation = null;
         try {
-            List<WikiMacroBindingInitializer> bindingInitializers =
-                this.componentManager.getInstanceList(WikiMacroBindingInitializer.class);
+            Components macroComponents = getComponents();
 
-            for (WikiMacroBindingInitializer bindingInitializer : bindingInitializers) {
+            // Extension point to add more wiki macro bindings
+            for (WikiMacroBindingInitializer bindingInitializer : macroComponents.bindingInitializers) {
                 bindingInitializer.initialize(this.macroDocumentReference, parameters, macroContent, context,
                     macroBinding);
             }
-        } catch (ComponentLookupException e) {
-            // TODO: we should probably log something but that should never happen
-        }
 
-        // Execute the macro
-        ObservationManager observation = null;
-        try {
-            observation = this.componentManager.getInstance(ObservationManager.class);
-        } catch (ComponentLookupException e) {
-            // TODO: maybe log something
-        }
-
-        try {
-            Transformation macroTransformation = this.componentManager.getInstance(Transformation.class, MACRO_HINT);
+            observation = macroComponents.observation;
 
             // Place macro context inside xwiki context ($context.macro).
-            Execution execution = this.componentManager.getInstance(Execution.class);
-            Map<String, Object> xwikiContext = (Map<String, Object>) execution.getContext().getProperty("xwikicontext");
+            Map<String, Object> xwikiContext =
+                (Map<String, Object>) macroComponents.execution.getContext().getProperty("xwikicontext");
             xwikiContext.put(MACRO_KEY, macroBinding);
 
             MacroBlock wikiMacroBlock = context.getCurrentMacroBlock();
@@ -221,7 +225,7 @@ public List<Block> execute(WikiMacroParameters parameters, String macroContent,
 
             // Perform internal macro transformations.
             TransformationContext txContext = new TransformationContext(context.getXDOM(), this.syntax);
-            macroTransformation.transform(wikiMacroMarker, txContext);
+            macroComponents.macroTransformation.transform(wikiMacroMarker, txContext);
 
             return extractResult(wikiMacroMarker.getChildren(), macroBinding, context);
         } catch (Exception ex) {
@@ -233,6 +237,28 @@ public List<Block> execute(WikiMacroParameters parameters, String macroContent,
         }
     }
 
+    /**
+     * @return the components used to execute the macro
+     * @throws ComponentLookupException when a mandatory component cannot be found
+     */
+    private Components getComponents() throws ComponentLookupException
+    {
+        WikiMacroComponentGeneration generationComponent = this.componentGeneration;
+        if (generationComponent == null) {
+            generationComponent = this.componentManager.getInstance(WikiMacroComponentGeneration.class);
+            this.componentGeneration = generationComponent;
+        }
+        long generation = generationComponent.getGeneration();
+
+        Components macroComponents = this.components;
+        if (macroComponents == null || macroComponents.generation != generation) {
+            macroComponents = new Components(generation, this.componentManager);
+            this.components = macroComponents;
+        }
+
+        return macroComponents;
+    }
+
     /**
      * Extract result of the wiki macro execution.
      * 
@@ -284,20 +310,33 @@ private void removeTopLevelParagraph(List<Block> blocks)
      */
     private XDOM prepareWikiMacroContent(MacroTransformationContext context)
     {
-        XDOM xdom = this.content.clone();
-
-        // Macro code segment is always parsed into a separate xdom document. Now if this code segment starts with
-        // another macro block, it will always be interpreted as a block macro regardless of the current wiki macro's
-        // context (because as far as the nested macro is concerned, it starts on a new line). This will introduce
-        // unnecessary paragraph elements when the wiki macro is used inline, so we need to force such opening macro
-        // blocks to behave as inline macros if the wiki macro is used inline.
-        if (context.isInline()) {
+        // The resulting blocks become part of the calling document so we always need a fresh copy of the content
+        return context.isInline() ? getInlineContent().clone() : this.content.clone();
+    }
+
+    /**
+     * @return the macro content to use when the macro is called inline
+     */
+    private XDOM getInlineContent()
+    {
+        XDOM xdom = this.inlineContent;
+
+        if (xdom == null) {
+            xdom = this.content.clone();
+
+            // Macro code segment is always parsed into a separate xdom document. Now if this code segment starts with
+            // another macro block, it will always be interpreted as a block macro regardless of the current wiki
+            // macro's context (because as far as the nested macro is concerned, it starts on a new line). This will
+            // introduce unnecessary paragraph elements when the wiki macro is used inline, so we need to force such
+            // opening macro blocks to behave as inline macros if the wiki macro is used inline.
             List<Block> children = xdom.getChildren();
             if (children.size() > 0 && children.get(0) instanceof MacroBlock) {
                 MacroBlock old = (MacroBlock) children.get(0);
                 MacroBlock replacement = new MacroBlock(old.getId(), old.getParameters(), old.getContent(), true);
                 xdom.replaceChild(replacement, old);
             }
+
+            this.inlineContent = xdom;
         }
 
         return xdom;
@@ -383,4 +422,65 @@ public boolean supportsInlineMode()
     {
         return this.supportsInlineMode;
     }
+
+    /**
+     * The components used to execute a wiki macro.
+     */
+    private static final class Components
+    {
+        /**
+         * The {@link WikiMacroComponentGeneration} generation when the components were looked up.
+         */
+        private final long generation;
+
+        /**
+         * The extension points used to add more wiki macro bindings.
+         */
+        private final List<WikiMacroBindingInitializer> bindingInitializers;
+
+        /**
+         * Used to notify the start and the end of the execution, {@code null} if not available.
+         */
+        private final ObservationManager observation;
+
+        /**
+         * Used to execute the macros of the wiki macro content.
+         */
+        private final Transformation macroTransformation;
+
+        /**
+         * Used to access the XWiki context.
+         */
+        private final Execution execution;
+
+        /**
+         * @param generation the current components generation
+         * @param componentManager the component manager used to lookup the components
+         * @throws ComponentLookupException when a mandatory component cannot be found
+         */
+        Components(long generation, ComponentManager componentManager) throws ComponentLookupException
+        {
+            this.generation = generation;
+
+            List<WikiMacroBindingInitializer> initializers;
+            try {
+                initializers = componentManager.getInstanceList(WikiMacroBindingInitializer.class);
+            } catch (ComponentLookupException e) {
+                // TODO: we should probably log something but that should never happen
+                initializers = Collections.emptyList();
+            }
+            this.bindingInitializers = initializers;
+
+            ObservationManager observationManager = null;
+            try {
+                observationManager = componentManager.getInstance(ObservationManager.class);
+            } catch (ComponentLookupException e) {
+                // TODO: maybe log something
+            }
+            this.observation = observationManager;
+
+            this.macroTransformation = componentManager.getInstance(Transformation.class, MACRO_HINT);
+            this.execution = componentManager.getInstance(Execution.class);
+        }
+    }
 }
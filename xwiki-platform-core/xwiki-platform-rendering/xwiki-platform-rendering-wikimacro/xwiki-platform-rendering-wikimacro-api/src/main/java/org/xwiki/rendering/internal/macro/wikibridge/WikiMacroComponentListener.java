@@ -0,0 +1,86 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro.wikibridge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
+import org.xwiki.context.Execution;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+import org.xwiki.rendering.transformation.Transformation;
+
+/**
+ * Makes the wiki macros look up again the components they use when one of them is registered or unregistered.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+@Component
+@Singleton
+@Named("WikiMacroComponentListener")
+public class WikiMacroComponentListener implements EventListener
+{
+    /**
+     * The events observed by this event listener.
+     */
+    private static final List<Event> EVENTS = new ArrayList<Event>(Arrays.<Event> asList(
+        new ComponentDescriptorAddedEvent(WikiMacroBindingInitializer.class),
+        new ComponentDescriptorRemovedEvent(WikiMacroBindingInitializer.class),
+        new ComponentDescriptorAddedEvent(Transformation.class),
+        new ComponentDescriptorRemovedEvent(Transformation.class),
+        new ComponentDescriptorAddedEvent(ObservationManager.class),
+        new ComponentDescriptorRemovedEvent(ObservationManager.class),
+        new ComponentDescriptorAddedEvent(Execution.class),
+        new ComponentDescriptorRemovedEvent(Execution.class)));
+
+    /**
+     * Used to make the wiki macros look up their components again.
+     */
+    @Inject
+    private WikiMacroComponentGeneration componentGeneration;
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return EVENTS;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "WikiMacroComponentListener";
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        this.componentGeneration.flush();
+    }
+}
@@ -170,6 +170,27 @@ public void testExecuteWhenInlineAndWithMacro() throws Exception
         Assert.assertEquals("<p>Hello This is <strong>bold</strong></p>", printer.toString());
     }
 
+    /**
+     * Make sure executing the same wiki macro several times, inline and not inline, in the same page doesn't modify
+     * its content.
+     */
+    @Test
+    public void testExecuteSeveralTimes() throws Exception
+    {
+        registerWikiMacro("wikimacro1", "This is **bold**", Syntax.XWIKI_2_0);
+        registerWikiMacro("wikimacro2", "{{wikimacro1 param1=\"v1\" param2=\"v2\"/}}", Syntax.XWIKI_2_0);
+
+        Converter converter = getComponentManager().getInstance(Converter.class);
+
+        DefaultWikiPrinter printer = new DefaultWikiPrinter();
+        converter.convert(new StringReader("Hello {{wikimacro2 param1=\"1\" param2=\"2\"/}} and "
+            + "{{wikimacro2 param1=\"1\" param2=\"2\"/}}\n\n{{wikimacro2 param1=\"1\" param2=\"2\"/}}\n\n"
+            + "Hello {{wikimacro2 param1=\"1\" param2=\"2\"/}}"), Syntax.XWIKI_2_0, Syntax.XHTML_1_0, printer);
+
+        Assert.assertEquals("<p>Hello This is <strong>bold</strong> and This is <strong>bold</strong></p>"
+            + "<p>This is <strong>bold</strong></p><p>Hello This is <strong>bold</strong></p>", printer.toString());
+    }
+
     /**
      * Check that macro used inside wiki macro are executed as part of the document.
      */
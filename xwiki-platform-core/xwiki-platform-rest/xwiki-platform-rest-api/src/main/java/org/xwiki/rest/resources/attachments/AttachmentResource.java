@@ -19,6 +19,8 @@
  */
 package org.xwiki.rest.resources.attachments;
 
+import java.io.InputStream;
+
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.PUT;
@@ -46,7 +48,7 @@
             @PathParam("spaceName") String spaceName,
             @PathParam("pageName") String pageName,
             @PathParam("attachmentName") String attachmentName,
-            byte[] content
+            InputStream content
     ) throws XWikiRestException;
 
     @DELETE void deleteAttachment(
@@ -0,0 +1,226 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rest.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.core.UriInfo;
+
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.rest.Relations;
+import org.xwiki.rest.model.jaxb.Link;
+import org.xwiki.rest.model.jaxb.LinkCollection;
+import org.xwiki.rest.model.jaxb.ObjectFactory;
+
+import com.xpn.xwiki.XWikiException;
+
+/**
+ * <p>
+ * Retrieves a page of query results by pushing the limit and offset down to the query, reading further batches when
+ * some of the results are rejected by a filter (usually an access right check). This way a page is always filled when
+ * enough accepted results exist and only a bounded number of results are held in memory, whatever the size of the
+ * queried collection.
+ * </p>
+ * <p>
+ * Since the filter is applied after the query, the offset of the next page is the number of raw results consumed so
+ * far and not the number of results returned. It is exposed through {@link #getNextStart()} so that clients can
+ * continue from where the current page stopped, without skipping or repeating results.
+ * </p>
+ * 
+ * @param <T> the type of the query results
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class QueryPager<T>
+{
+    /**
+     * <p>
+     * Decides which query results are part of the page.
+     * </p>
+     * 
+     * @param <T> the type of the query results
+     */
+    public interface Filter<T>
+    {
+        /**
+         * @param result a query result
+         * @return true if the result should be returned
+         * @throws XWikiException if the result cannot be checked
+         */
+        boolean accept(T result) throws XWikiException;
+    }
+
+    /**
+     * <p>
+     * The smallest number of results read at once when some results have been rejected.
+     * </p>
+     */
+    private static final int MIN_BATCH_SIZE = 20;
+
+    /**
+     * <p>
+     * The largest number of results read at once.
+     * </p>
+     */
+    private static final int MAX_BATCH_SIZE = 500;
+
+    /**
+     * <p>
+     * The query to page.
+     * </p>
+     */
+    private final Query query;
+
+    /**
+     * <p>
+     * The number of results in a page, negative for all the results.
+     * </p>
+     */
+    private final int number;
+
+    /**
+     * <p>
+     * The offset of the first query result that hasn't been consumed yet.
+     * </p>
+     */
+    private int offset;
+
+    /**
+     * <p>
+     * Whether the query has no results after {@link #offset}.
+     * </p>
+     */
+    private boolean exhausted;
+
+    /**
+     * @param query the query to page, it must have a stable order
+     * @param start the 0-based offset of the first query result to consider
+     * @param number the number of results in a page, negative for all the results
+     */
+    public QueryPager(Query query, int start, int number)
+    {
+        this.query = query;
+        this.offset = Math.max(start, 0);
+        this.number = number;
+    }
+
+    /**
+     * <p>
+     * Read the next page of results.
+     * </p>
+     * 
+     * @param filter the filter deciding which results are returned, null to return all of them
+     * @return at most {@code number} results accepted by the filter
+     * @throws QueryException if the query fails
+     * @throws XWikiException if the filter fails
+     */
+    public List<T> next(Filter<T> filter) throws QueryException, XWikiException
+    {
+        List<T> page = new ArrayList<T>(this.number > 0 ? this.number : MIN_BATCH_SIZE);
+
+        boolean firstBatch = true;
+        while (!this.exhausted && !isFull(page)) {
+            int batchSize = getBatchSize(page, firstBatch);
+            firstBatch = false;
+            List<T> batch = this.query.setOffset(this.offset).setLimit(batchSize).execute();
+
+            if (batch.size() < batchSize) {
+                this.exhausted = true;
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                if (isFull(page)) {
+                    /* The rest of the batch belongs to the next page. */
+                    this.exhausted = false;
+                    break;
+                }
+
+                this.offset++;
+
+                T result = batch.get(i);
+                if (filter == null || filter.accept(result)) {
+                    page.add(result);
+                }
+            }
+        }
+
+        return page;
+    }
+
+    /**
+     * @return the offset the next page starts at, or -1 if there are no more results
+     */
+    public int getNextStart()
+    {
+        return this.exhausted ? -1 : this.offset;
+    }
+
+    /**
+     * <p>
+     * Add a link to the next page to the given collection, if there is one. The link is the current request URI with
+     * the {@code start} parameter set to {@link #getNextStart()}.
+     * </p>
+     * 
+     * @param collection the collection to add the link to
+     * @param uriInfo information about the current request
+     * @param objectFactory the factory used to create the link
+     */
+    public void addNextLink(LinkCollection collection, UriInfo uriInfo, ObjectFactory objectFactory)
+    {
+        int nextStart = getNextStart();
+        if (nextStart >= 0) {
+            Link nextLink = objectFactory.createLink();
+            nextLink.setHref(uriInfo.getRequestUriBuilder().replaceQueryParam("start", nextStart).build().toString());
+            nextLink.setRel(Relations.NEXT);
+            collection.getLinks().add(nextLink);
+        }
+    }
+
+    /**
+     * @param page the results collected so far
+     * @return true if no more results are needed
+     */
+    private boolean isFull(List<T> page)
+    {
+        return this.number > 0 && page.size() >= this.number;
+    }
+
+    /**
+     * @param page the results collected so far
+     * @param firstBatch whether no batch has been read yet for this page
+     * @return the number of results to read in the next batch
+     */
+    private int getBatchSize(List<T> page, boolean firstBatch)
+    {
+        if (this.number <= 0) {
+            return MAX_BATCH_SIZE;
+        }
+
+        int missing = this.number - page.size();
+        if (firstBatch) {
+            /* Nothing has been rejected yet, assume the whole page will be accepted. */
+            return Math.min(missing, MAX_BATCH_SIZE);
+        }
+
+        return Math.min(Math.max(missing, MIN_BATCH_SIZE), MAX_BATCH_SIZE);
+    }
+}
@@ -19,6 +19,8 @@
  */
 package org.xwiki.rest.internal.resources;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.Calendar;
 import java.util.Formatter;
@@ -36,6 +38,7 @@
 import org.xwiki.rest.XWikiResource;
 import org.xwiki.rest.XWikiRestException;
 import org.xwiki.rest.internal.DomainObjectFactory;
+import org.xwiki.rest.internal.QueryPager;
 import org.xwiki.rest.internal.RangeIterable;
 import org.xwiki.rest.internal.Utils;
 import org.xwiki.rest.model.jaxb.Attachment;
@@ -46,6 +49,7 @@
 
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.api.Document;
+import com.xpn.xwiki.api.XWiki;
 import com.xpn.xwiki.doc.XWikiAttachment;
 import com.xpn.xwiki.doc.XWikiDocument;
 
@@ -82,6 +86,53 @@ public boolean isAlreadyExisting()
         }
     }
 
+    /**
+     * Accepts the attachment query results whose document can be viewed by the current user and whose mime type
+     * matches one of the accepted types.
+     */
+    private class AttachmentFilter implements QueryPager.Filter<Object>
+    {
+        private final String wikiName;
+
+        private final Set<String> acceptedMimeTypes;
+
+        public AttachmentFilter(String wikiName, Set<String> acceptedMimeTypes)
+        {
+            this.wikiName = wikiName;
+            this.acceptedMimeTypes = acceptedMimeTypes;
+        }
+
+        @Override
+        public boolean accept(Object result) throws XWikiException
+        {
+            Object[] fields = (Object[]) result;
+            XWikiAttachment xwikiAttachment = (XWikiAttachment) fields[3];
+
+            /* Check the mime type filter */
+            if (this.acceptedMimeTypes.size() > 0) {
+                String mimeType =
+                        xwikiAttachment.getMimeType(Utils.getXWikiContext(componentManager)).toUpperCase();
+                boolean accepted = false;
+                for (String type : this.acceptedMimeTypes) {
+                    if (mimeType.contains(type)) {
+                        accepted = true;
+                        break;
+                    }
+                }
+
+                if (!accepted) {
+                    return false;
+                }
+            }
+
+            /* Check if the user has the right to see the document holding the attachment */
+            XWiki xwikiApi = Utils.getXWikiApi(componentManager);
+
+            return xwikiApi.hasAccessLevel("view", Utils.getPageId(this.wikiName, (String) fields[0],
+                    (String) fields[1]));
+        }
+    }
+
     /**
      * Retrieves the attachments by filtering them.
      *
@@ -142,29 +193,37 @@ public Attachments getAttachments(String wikiName, String name, String page, Str
                 }
             }
 
-            f.format(")");
+            /* Use a stable order so that the start offset of the next page is meaningful. */
+            f.format(") order by doc.fullName, attachment.filename");
 
             String queryString = f.toString();
 
-            /* Execute the query by filling the parameters */
+            Set<String> acceptedMimeTypes = new HashSet<String>();
+            if (!types.equals("")) {
+                String[] acceptedMimetypesArray = types.split(",");
+                for (String type : acceptedMimetypesArray) {
+                    acceptedMimeTypes.add(type.toUpperCase());
+                }
+            }
+
+            /*
+             * Execute the query by filling the parameters. The mime type and access right filters can reject results,
+             * so the pager reads ahead until the page is filled.
+             */
+            QueryPager<Object> pager;
             List<Object> queryResult = null;
             try {
-                Query query = queryManager.createQuery(queryString, Query.XWQL).setLimit(number).setOffset(start);
+                Query query = queryManager.createQuery(queryString, Query.XWQL);
                 for (String param : filters.keySet()) {
                     query.bindValue(param, String.format("%%%s%%", filters.get(param).toUpperCase()));
                 }
 
-                queryResult = query.execute();
+                pager = new QueryPager<Object>(query, start, number);
+                queryResult = pager.next(new AttachmentFilter(wikiName, acceptedMimeTypes));
             } catch (QueryException e) {
                 throw new XWikiRestException(e);
-            }
-
-            Set<String> acceptedMimeTypes = new HashSet<String>();
-            if (!types.equals("")) {
-                String[] acceptedMimetypesArray = types.split(",");
-                for (String type : acceptedMimetypesArray) {
-                    acceptedMimeTypes.add(type);
-                }
+            } catch (XWikiException e) {
+                throw new XWikiRestException(e);
             }
 
             for (Object object : queryResult) {
@@ -177,75 +236,61 @@ public Attachments getAttachments(String wikiName, String name, String page, Str
 
                 String mimeType = xwikiAttachment.getMimeType(Utils.getXWikiContext(componentManager));
 
-                boolean add = true;
-
-                /* Check the mime type filter */
-                if (acceptedMimeTypes.size() > 0) {
-                    add = false;
-
-                    for (String type : acceptedMimeTypes) {
-                        if (mimeType.toUpperCase().contains(type.toUpperCase())) {
-                            add = true;
-                            break;
-                        }
-                    }
+                /*
+                 * We manufacture attachments in place because we don't have all the data for calling the
+                 * DomainObjectFactory method (doing so would require to retrieve an actual Document)
+                 */
+                Attachment attachment = objectFactory.createAttachment();
+                attachment.setId(String.format("%s@%s", pageId, xwikiAttachment.getFilename()));
+                attachment.setName(xwikiAttachment.getFilename());
+                attachment.setSize(xwikiAttachment.getFilesize());
+                attachment.setMimeType(mimeType);
+                attachment.setAuthor(xwikiAttachment.getAuthor());
+                if (withPrettyNames) {
+                    attachment.setAuthorName(Utils.getAuthorName(xwikiAttachment.getAuthor(), componentManager));
                 }
 
-                if (add) {
-                    /*
-                     * We manufacture attachments in place because we don't have all the data for calling the
-                     * DomainObjectFactory method (doing so would require to retrieve an actual Document)
-                     */
-                    Attachment attachment = objectFactory.createAttachment();
-                    attachment.setId(String.format("%s@%s", pageId, xwikiAttachment.getFilename()));
-                    attachment.setName(xwikiAttachment.getFilename());
-                    attachment.setSize(xwikiAttachment.getFilesize());
-                    attachment.setMimeType(mimeType);
-                    attachment.setAuthor(xwikiAttachment.getAuthor());
-                    if (withPrettyNames) {
-                        attachment.setAuthorName(Utils.getAuthorName(xwikiAttachment.getAuthor(), componentManager));
-                    }
-
-                    Calendar calendar = Calendar.getInstance();
-                    calendar.setTime(xwikiAttachment.getDate());
-                    attachment.setDate(calendar);
-
-                    attachment.setPageId(pageId);
-                    attachment.setPageVersion(pageVersion);
-                    attachment.setVersion(xwikiAttachment.getVersion());
-
-                    URL absoluteUrl =
-                            Utils
-                                    .getXWikiContext(componentManager)
-                                    .getURLFactory()
-                                    .createAttachmentURL(xwikiAttachment.getFilename(), pageSpace, pageName, "download",
-                                            null,
-                                            wikiName, Utils.getXWikiContext(componentManager));
-                    attachment.setXwikiAbsoluteUrl(absoluteUrl.toString());
-                    attachment.setXwikiRelativeUrl(Utils.getXWikiContext(componentManager).getURLFactory()
-                            .getURL(absoluteUrl, Utils.getXWikiContext(componentManager)));
-
-                    String baseUri = uriInfo.getBaseUri().toString();
-
-                    String pageUri =
-                            UriBuilder.fromUri(baseUri).path(PageResource.class).build(wikiName, pageSpace, pageName)
-                                    .toString();
-                    Link pageLink = objectFactory.createLink();
-                    pageLink.setHref(pageUri);
-                    pageLink.setRel(Relations.PAGE);
-                    attachment.getLinks().add(pageLink);
-
-                    String attachmentUri =
-                            UriBuilder.fromUri(baseUri).path(AttachmentResource.class)
-                                    .build(wikiName, pageSpace, pageName, xwikiAttachment.getFilename()).toString();
-                    Link attachmentLink = objectFactory.createLink();
-                    attachmentLink.setHref(attachmentUri);
-                    attachmentLink.setRel(Relations.ATTACHMENT_DATA);
-                    attachment.getLinks().add(attachmentLink);
-
-                    attachments.getAttachments().add(attachment);
-                }
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTime(xwikiAttachment.getDate());
+                attachment.setDate(calendar);
+
+                attachment.setPageId(pageId);
+                attachment.setPageVersion(pageVersion);
+                attachment.setVersion(xwikiAttachment.getVersion());
+
+                URL absoluteUrl =
+                        Utils
+                                .getXWikiContext(componentManager)
+                                .getURLFactory()
+                                .createAttachmentURL(xwikiAttachment.getFilename(), pageSpace, pageName, "download",
+                                        null,
+                                        wikiName, Utils.getXWikiContext(componentManager));
+                attachment.setXwikiAbsoluteUrl(absoluteUrl.toString());
+                attachment.setXwikiRelativeUrl(Utils.getXWikiContext(componentManager).getURLFactory()
+                        .getURL(absoluteUrl, Utils.getXWikiContext(componentManager)));
+
+                String baseUri = uriInfo.getBaseUri().toString();
+
+                String pageUri =
+                        UriBuilder.fromUri(baseUri).path(PageResource.class).build(wikiName, pageSpace, pageName)
+                                .toString();
+                Link pageLink = objectFactory.createLink();
+                pageLink.setHref(pageUri);
+                pageLink.setRel(Relations.PAGE);
+                attachment.getLinks().add(pageLink);
+
+                String attachmentUri =
+                        UriBuilder.fromUri(baseUri).path(AttachmentResource.class)
+                                .build(wikiName, pageSpace, pageName, xwikiAttachment.getFilename()).toString();
+                Link attachmentLink = objectFactory.createLink();
+                attachmentLink.setHref(attachmentUri);
+                attachmentLink.setRel(Relations.ATTACHMENT_DATA);
+                attachment.getLinks().add(attachmentLink);
+
+                attachments.getAttachments().add(attachment);
             }
+
+            pager.addNextLink(attachments, uriInfo, objectFactory);
         } finally {
             Utils.getXWikiContext(componentManager).setDatabase(database);
         }
@@ -285,7 +330,8 @@ protected Attachments getAttachmentsForDocument(Document doc, int start, int num
         return attachments;
     }
 
-    protected AttachmentInfo storeAttachment(Document doc, String attachmentName, byte[] content) throws XWikiException
+    protected AttachmentInfo storeAttachment(Document doc, String attachmentName, InputStream content)
+        throws XWikiException
     {
         boolean alreadyExisting = false;
 
@@ -300,7 +346,12 @@ protected AttachmentInfo storeAttachment(Document doc, String attachmentName, by
             alreadyExisting = true;
         }
 
-        xwikiAttachment.setContent(content);
+        try {
+            xwikiAttachment.setContent(content);
+        } catch (IOException e) {
+            throw new XWikiException(XWikiException.MODULE_XWIKI_APP,
+                XWikiException.ERROR_XWIKI_APP_UPLOAD_FILE_EXCEPTION, "Failed to read attachment content", e);
+        }
         xwikiAttachment.setAuthor(Utils.getXWikiUser(componentManager));
         xwikiAttachment.setFilename(attachmentName);
         xwikiAttachment.setDoc(xwikiDocument);
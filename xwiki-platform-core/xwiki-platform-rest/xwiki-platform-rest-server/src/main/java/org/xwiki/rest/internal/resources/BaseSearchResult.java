@@ -23,6 +23,7 @@
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Formatter;
 import java.util.List;
 
@@ -30,13 +31,18 @@
 import javax.ws.rs.core.UriBuilderException;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.queryParser.QueryParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.rest.Relations;
 import org.xwiki.rest.XWikiResource;
 import org.xwiki.rest.internal.DomainObjectFactory;
+import org.xwiki.rest.internal.QueryPager;
 import org.xwiki.rest.internal.Utils;
 import org.xwiki.rest.model.jaxb.Link;
+import org.xwiki.rest.model.jaxb.LinkCollection;
 import org.xwiki.rest.model.jaxb.SearchResult;
 import org.xwiki.rest.resources.attachments.AttachmentResource;
 import org.xwiki.rest.resources.objects.ObjectResource;
@@ -49,8 +55,10 @@
 import com.xpn.xwiki.api.Document;
 import com.xpn.xwiki.api.XWiki;
 import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.plugin.lucene.IndexFields;
 import com.xpn.xwiki.plugin.lucene.LucenePlugin;
 import com.xpn.xwiki.plugin.lucene.SearchResults;
+import com.xpn.xwiki.plugin.lucene.SubstringTokenizer;
 
 /**
  * @version $Id$
@@ -66,6 +74,16 @@ public class BaseSearchResult extends XWikiResource
     protected static final String QUERY_TEMPLATE_INFO =
             "q={query}(&type={xwql,hql,lucene})(&number={number})(&start={start})(&orderfield={fieldname}(&order={asc|desc}))(&distinct=1)(&prettynames={false|true})(&wikis={wikis})(&classname={classname})";
 
+    /**
+     * The maximum number of hits collected by the Lucene plugin for a search, before checking the access rights.
+     */
+    private static final int MAX_INDEX_HITS = 1000;
+
+    /**
+     * The logger to log.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BaseSearchResult.class);
+
     protected static enum SearchScope
     {
         SPACES,
@@ -82,6 +100,83 @@ public class BaseSearchResult extends XWikiResource
         LUCENE
     }
 
+    /**
+     * Accepts the query results pointing to a document the current user is allowed to view. By default the space and
+     * the name of the document are expected in the second and the third column of the result.
+     */
+    private static class ViewRightFilter implements QueryPager.Filter<Object>
+    {
+        private final XWiki xwikiApi;
+
+        private final String wikiName;
+
+        public ViewRightFilter(XWiki xwikiApi, String wikiName)
+        {
+            this.xwikiApi = xwikiApi;
+            this.wikiName = wikiName;
+        }
+
+        @Override
+        public boolean accept(Object result) throws XWikiException
+        {
+            return this.xwikiApi.hasAccessLevel("view", getPageId(this.wikiName, result));
+        }
+
+        protected String getPageId(String wiki, Object result)
+        {
+            Object[] fields = (Object[]) result;
+
+            return Utils.getPageId(wiki, (String) fields[1], (String) fields[2]);
+        }
+    }
+
+    /**
+     * The pager of the database query that produced the search results, used to link to the next page. It is null
+     * when no query has been paged or when several queries contributed to the results, since a single start offset
+     * can't resume all of them.
+     */
+    private QueryPager<Object> pager;
+
+    /**
+     * The number of database queries that have been paged by this resource.
+     */
+    private int pagedQueries;
+
+    /**
+     * Read a page of results from the given query, reading ahead until the page is filled with results accepted by the
+     * filter.
+     *
+     * @param query the query to page
+     * @param number number of results to be returned
+     * @param start 0-based start offset
+     * @param filter the filter deciding which results are returned
+     * @return the results accepted by the filter
+     */
+    private List<Object> page(Query query, int number, int start, QueryPager.Filter<Object> filter)
+        throws QueryException, XWikiException
+    {
+        QueryPager<Object> queryPager = new QueryPager<Object>(query, start, number);
+        List<Object> results = queryPager.next(filter);
+
+        this.pagedQueries++;
+        this.pager = this.pagedQueries == 1 ? queryPager : null;
+
+        return results;
+    }
+
+    /**
+     * Add a link to the next page of search results, if the results come from a single database query that has more
+     * results. The link carries the offset at which that query should be resumed as its start parameter.
+     *
+     * @param searchResults the search results to add the link to
+     */
+    protected void addNextLink(LinkCollection searchResults)
+    {
+        if (this.pager != null) {
+            this.pager.addNextLink(searchResults, this.uriInfo, this.objectFactory);
+        }
+    }
+
     /**
      * Search for keyword in the given scopes. See {@link SearchScope} for more information.
      *
@@ -147,170 +242,281 @@ protected List<SearchResult> searchPages(List<SearchScope> searchScopes, String
                 return result;
             }
 
-            Formatter f = new Formatter();
-
-            /*
-             * If the order field is already one of the field hard coded in the base query, then do not add it to the
-             * select clause.
-             */
-            String addColumn = "";
-            if (!StringUtils.isBlank(orderField)) {
-                addColumn =
-                        (orderField.equals("") || orderField.equals("fullName") || orderField.equals("name") ||
-                                orderField
-                                        .equals("space")) ? "" : ", doc." + orderField;
+            /* Use the substring index when it can answer the search, instead of scanning all the documents. */
+            List<Object> queryResult =
+                    searchPagesInIndex(searchScopes, keywords, wikiName, space, hasProgrammingRights, number, start,
+                            orderField, order);
+            if (queryResult == null) {
+                queryResult =
+                        searchPagesInDatabase(searchScopes, keywords, wikiName, space, hasProgrammingRights, number,
+                                start, orderField, order);
             }
 
-            if (space != null) {
-                f.format("select distinct doc.fullName, doc.space, doc.name, doc.language");
-                f.format(addColumn);
-                f.format(" from XWikiDocument as doc where doc.space = :space and ( ");
-            } else {
-                f.format("select distinct doc.fullName, doc.space, doc.name, doc.language");
-                f.format(addColumn);
-                f.format(" from XWikiDocument as doc where ( ");
-            }
+            for (Object object : queryResult) {
+                Object[] fields = (Object[]) object;
 
-            /* Look for scopes related to pages */
-            int acceptedScopes = 0;
-            for (int i = 0; i < searchScopes.size(); i++) {
-                SearchScope scope = searchScopes.get(i);
+                String spaceName = (String) fields[1];
+                String pageName = (String) fields[2];
+                String language = (String) fields[3];
 
-                switch (scope) {
-                    case CONTENT:
-                        f.format("upper(doc.content) like :keywords ");
-                        acceptedScopes++;
-                        break;
-                    case NAME:
-                        f.format("upper(doc.fullName) like :keywords ");
-                        acceptedScopes++;
-                        break;
-                    case TITLE:
-                        f.format("upper(doc.title) like :keywords ");
-                        acceptedScopes++;
-                        break;
+                String pageId = Utils.getPageId(wikiName, spaceName, pageName);
+                String pageFullName = Utils.getPageFullName(wikiName, spaceName, pageName);
+
+                Document doc = xwikiApi.getDocument(pageFullName);
+                String title = doc.getDisplayTitle();
+                SearchResult searchResult = objectFactory.createSearchResult();
+                searchResult.setType("page");
+                searchResult.setId(pageId);
+                searchResult.setPageFullName(pageFullName);
+                searchResult.setTitle(title);
+                searchResult.setWiki(wikiName);
+                searchResult.setSpace(spaceName);
+                searchResult.setPageName(pageName);
+                searchResult.setVersion(doc.getVersion());
+                searchResult.setAuthor(doc.getAuthor());
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTime(doc.getDate());
+                searchResult.setModified(calendar);
+
+                if (withPrettyNames) {
+                    searchResult.setAuthorName(Utils.getAuthorName(doc.getAuthor(), componentManager));
                 }
 
-                if (i != searchScopes.size() - 1) {
-                    f.format(" or ");
+                String pageUri = null;
+                try {
+                    if (StringUtils.isBlank(language)) {
+                        pageUri =
+                                UriBuilder
+                                        .fromUri(this.uriInfo.getBaseUri())
+                                        .path(PageResource.class)
+                                        .buildFromEncoded(URLEncoder.encode(wikiName, "UTF-8"),
+                                                URLEncoder.encode(spaceName, "UTF-8"),
+                                                URLEncoder.encode(pageName, "UTF-8"))
+                                        .toString();
+                    } else {
+                        searchResult.setLanguage(language);
+                        pageUri =
+                                UriBuilder
+                                        .fromUri(this.uriInfo.getBaseUri())
+                                        .path(PageTranslationResource.class)
+                                        .buildFromEncoded(URLEncoder.encode(wikiName, "UTF-8"),
+                                                URLEncoder.encode(spaceName, "UTF-8"),
+                                                URLEncoder.encode(pageName, "UTF-8"),
+                                                language).toString();
+                    }
+                } catch (UnsupportedEncodingException ex) {
+                    // This should never happen, UTF-8 is always valid.
                 }
+
+                Link pageLink = new Link();
+                pageLink.setHref(pageUri);
+                pageLink.setRel(Relations.PAGE);
+                searchResult.getLinks().add(pageLink);
+
+                result.add(searchResult);
             }
 
-            /* If we don't find any scope related to pages then return empty results */
-            if (acceptedScopes == 0) {
-                return result;
+            return result;
+        } finally {
+            Utils.getXWikiContext(componentManager).setDatabase(database);
+        }
+    }
+
+    /**
+     * Look for the pages matching the keywords with a database query, which has to scan all the documents.
+     *
+     * @return rows holding the full name, the space, the name and the language of the pages the user can see
+     */
+    private List<Object> searchPagesInDatabase(List<SearchScope> searchScopes, String keywords, String wikiName,
+            String space, boolean hasProgrammingRights, int number, int start, String orderField, String order)
+            throws QueryException, XWikiException
+    {
+        XWiki xwikiApi = Utils.getXWikiApi(componentManager);
+
+        Formatter f = new Formatter();
+
+        /*
+         * If the order field is already one of the field hard coded in the base query, then do not add it to the
+         * select clause.
+         */
+        String addColumn = "";
+        if (!StringUtils.isBlank(orderField)) {
+            addColumn =
+                    (orderField.equals("") || orderField.equals("fullName") || orderField.equals("name") ||
+                            orderField
+                                    .equals("space")) ? "" : ", doc." + orderField;
+        }
+
+        if (space != null) {
+            f.format("select distinct doc.fullName, doc.space, doc.name, doc.language");
+            f.format(addColumn);
+            f.format(" from XWikiDocument as doc where doc.space = :space and ( ");
+        } else {
+            f.format("select distinct doc.fullName, doc.space, doc.name, doc.language");
+            f.format(addColumn);
+            f.format(" from XWikiDocument as doc where ( ");
+        }
+
+        /* Look for scopes related to pages */
+        int acceptedScopes = 0;
+        for (int i = 0; i < searchScopes.size(); i++) {
+            SearchScope scope = searchScopes.get(i);
+
+            switch (scope) {
+                case CONTENT:
+                    f.format("upper(doc.content) like :keywords ");
+                    acceptedScopes++;
+                    break;
+                case NAME:
+                    f.format("upper(doc.fullName) like :keywords ");
+                    acceptedScopes++;
+                    break;
+                case TITLE:
+                    f.format("upper(doc.title) like :keywords ");
+                    acceptedScopes++;
+                    break;
             }
 
-            /* Build the order clause. */
-            String orderClause = null;
-            if (StringUtils.isBlank(orderField)) {
-                orderClause = "doc.fullName asc";
-            } else {
-                /* Check if the order parameter is a valid "asc" or "desc" string, otherwise use "asc" */
-                if ("asc".equals(order) || "desc".equals(order)) {
-                    orderClause = String.format("doc.%s %s", orderField, order);
-                } else {
-                    orderClause = String.format("doc.%s asc", orderField);
-                }
+            if (i != searchScopes.size() - 1) {
+                f.format(" or ");
             }
+        }
 
-            /* Add some filters if the user doesn't have programming rights. */
-            if (hasProgrammingRights) {
-                f.format(") order by %s", orderClause);
+        /* If we don't find any scope related to pages then return empty results */
+        if (acceptedScopes == 0) {
+            return Collections.emptyList();
+        }
+
+        /* Build the order clause. */
+        String orderClause = null;
+        if (StringUtils.isBlank(orderField)) {
+            orderClause = "doc.fullName asc";
+        } else {
+            /* Check if the order parameter is a valid "asc" or "desc" string, otherwise use "asc" */
+            if ("asc".equals(order) || "desc".equals(order)) {
+                orderClause = String.format("doc.%s %s", orderField, order);
             } else {
-                f.format(
-                        ") and doc.space<>'XWiki' and doc.space<>'Admin' and doc.space<>'Panels' and doc.name<>'WebPreferences' order by %s",
-                        orderClause);
+                orderClause = String.format("doc.%s asc", orderField);
             }
+        }
 
-            String query = f.toString();
+        /* Add some filters if the user doesn't have programming rights. */
+        if (hasProgrammingRights) {
+            f.format(") order by %s", orderClause);
+        } else {
+            f.format(
+                    ") and doc.space<>'XWiki' and doc.space<>'Admin' and doc.space<>'Panels' and doc.name<>'WebPreferences' order by %s",
+                    orderClause);
+        }
 
-            List<Object> queryResult = null;
+        String query = f.toString();
 
-            /* This is needed because if the :space placeholder is not in the query, setting it would cause an exception */
-            if (space != null) {
-                queryResult =
-                        queryManager.createQuery(query, Query.XWQL)
-                                .bindValue("keywords", String.format("%%%s%%", keywords.toUpperCase()))
-                                .bindValue("space", space).setLimit(number).setOffset(start).execute();
-            } else {
-                queryResult =
-                        queryManager.createQuery(query, Query.XWQL)
-                                .bindValue("keywords", String.format("%%%s%%", keywords.toUpperCase())).setLimit(number)
-                                .setOffset(start).execute();
-            }
+        Query pagesQuery =
+                queryManager.createQuery(query, Query.XWQL)
+                        .bindValue("keywords", String.format("%%%s%%", keywords.toUpperCase()));
 
-            for (Object object : queryResult) {
-                Object[] fields = (Object[]) object;
+        /* This is needed because if the :space placeholder is not in the query, setting it would cause an exception */
+        if (space != null) {
+            pagesQuery.bindValue("space", space);
+        }
 
-                String spaceName = (String) fields[1];
-                String pageName = (String) fields[2];
-                String language = (String) fields[3];
+        /* Only keep the documents the user has the right to see. */
+        return page(pagesQuery, number, start, new ViewRightFilter(xwikiApi, wikiName));
+    }
 
-                String pageId = Utils.getPageId(wikiName, spaceName, pageName);
-                String pageFullName = Utils.getPageFullName(wikiName, spaceName, pageName);
+    /**
+     * Look for the pages matching the keywords in the substring index maintained by the Lucene plugin. The index
+     * matches the same pages as the {@code like} clauses of the database query, but its cost doesn't depend on the
+     * number of documents. It is used only when it can give the same results as the database query: the substring
+     * index must be enabled and not being rebuilt, the keywords must be long enough and the results must be sorted by
+     * full name.
+     * <p>
+     * The index only answers the first page of a bounded search, when it is also the last one. The {@code start} offset
+     * of the database search counts the pages the user can't see (see {@link QueryPager}) while the index can only skip
+     * visible pages, so the index can't give the offset of the next page: a full page, which needs a link to the next
+     * one, is left to the database. The Lucene plugin also collects a limited number of hits, so a page that can't be
+     * filled from them is left to the database too.
+     *
+     * @return rows holding the full name, the space, the name and the language of the pages the user can see, or
+     *         {@code null} if the index can't be used
+     */
+    private List<Object> searchPagesInIndex(List<SearchScope> searchScopes, String keywords, String wikiName,
+            String space, boolean hasProgrammingRights, int number, int start, String orderField, String order)
+    {
+        boolean sortedByFullName = StringUtils.isBlank(orderField) || "fullName".equals(orderField);
+        boolean firstBoundedPage = start <= 0 && number > 0 && number <= MAX_INDEX_HITS;
+        if (keywords.length() < SubstringTokenizer.GRAM_SIZE || !sortedByFullName || !firstBoundedPage) {
+            return null;
+        }
 
-                /* Check if the user has the right to see the found document */
-                if (xwikiApi.hasAccessLevel("view", pageId)) {
-                    Document doc = xwikiApi.getDocument(pageFullName);
-                    String title = doc.getDisplayTitle();
-                    SearchResult searchResult = objectFactory.createSearchResult();
-                    searchResult.setType("page");
-                    searchResult.setId(pageId);
-                    searchResult.setPageFullName(pageFullName);
-                    searchResult.setTitle(title);
-                    searchResult.setWiki(wikiName);
-                    searchResult.setSpace(spaceName);
-                    searchResult.setPageName(pageName);
-                    searchResult.setVersion(doc.getVersion());
-                    searchResult.setAuthor(doc.getAuthor());
-                    Calendar calendar = Calendar.getInstance();
-                    calendar.setTime(doc.getDate());
-                    searchResult.setModified(calendar);
-
-                    if (withPrettyNames) {
-                        searchResult.setAuthorName(Utils.getAuthorName(doc.getAuthor(), componentManager));
-                    }
+        XWikiContext context = Utils.getXWikiContext(componentManager);
+        LucenePlugin lucene = (LucenePlugin) Utils.getXWiki(componentManager).getPlugin("lucene", context);
+        if (lucene == null || !lucene.isSubstringSearchAvailable(context)) {
+            return null;
+        }
 
-                    String pageUri = null;
-                    try {
-                        if (StringUtils.isBlank(language)) {
-                            pageUri =
-                                    UriBuilder
-                                            .fromUri(this.uriInfo.getBaseUri())
-                                            .path(PageResource.class)
-                                            .buildFromEncoded(URLEncoder.encode(wikiName, "UTF-8"),
-                                                    URLEncoder.encode(spaceName, "UTF-8"),
-                                                    URLEncoder.encode(pageName, "UTF-8"))
-                                            .toString();
-                        } else {
-                            searchResult.setLanguage(language);
-                            pageUri =
-                                    UriBuilder
-                                            .fromUri(this.uriInfo.getBaseUri())
-                                            .path(PageTranslationResource.class)
-                                            .buildFromEncoded(URLEncoder.encode(wikiName, "UTF-8"),
-                                                    URLEncoder.encode(spaceName, "UTF-8"),
-                                                    URLEncoder.encode(pageName, "UTF-8"),
-                                                    language).toString();
-                        }
-                    } catch (UnsupportedEncodingException ex) {
-                        // This should never happen, UTF-8 is always valid.
-                    }
+        List<String> fields = new ArrayList<String>();
+        if (searchScopes.contains(SearchScope.NAME)) {
+            fields.add(IndexFields.SUBSTRING_FULLNAME);
+        }
+        if (searchScopes.contains(SearchScope.TITLE)) {
+            fields.add(IndexFields.SUBSTRING_TITLE);
+        }
+        if (searchScopes.contains(SearchScope.CONTENT)) {
+            fields.add(IndexFields.SUBSTRING_CONTENT);
+        }
 
-                    Link pageLink = new Link();
-                    pageLink.setHref(pageUri);
-                    pageLink.setRel(Relations.PAGE);
-                    searchResult.getLinks().add(pageLink);
+        /* If we don't find any scope related to pages then return empty results */
+        if (fields.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-                    result.add(searchResult);
-                }
+        Formatter f = new Formatter();
+        f.format("+%s +%s:%s", LucenePlugin.buildSubstringQuery(keywords, fields.toArray(new String[fields.size()])),
+                IndexFields.DOCUMENT_TYPE, LucenePlugin.DOCTYPE_WIKIPAGE);
+        if (space != null) {
+            f.format(" +%s:\"%s\"", IndexFields.DOCUMENT_EXACTSPACE, QueryParser.escape(space));
+        }
+
+        /* Add some filters if the user doesn't have programming rights. */
+        if (!hasProgrammingRights) {
+            f.format(" -exactspace:XWiki -exactspace:Admin -exactspace:Panels -name:WebPreferences");
+        }
+
+        String sortField = IndexFields.SORT_FULLNAME;
+        if (!StringUtils.isBlank(orderField) && "desc".equals(order)) {
+            sortField = "-" + sortField;
+        }
+
+        List<com.xpn.xwiki.plugin.lucene.SearchResult> hits;
+        try {
+            /* The search results only include the documents the user has the right to see. */
+            SearchResults searchResults = lucene.getSearchResults(f.toString(), sortField, wikiName, "", context);
+            hits = searchResults.getResults(1, number);
+            if (hits.size() >= number) {
+                /* There may be a next page, which only the database query can link to. */
+                return null;
+            } else if (searchResults.getTotalHitcount() > MAX_INDEX_HITS) {
+                /* Some matching pages have not been collected, the database may fill the page. */
+                return null;
             }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to search the substring index, falling back to the database", e);
 
-            return result;
-        } finally {
-            Utils.getXWikiContext(componentManager).setDatabase(database);
+            return null;
+        }
+
+        /* All the matching pages fit in this page, there's no next page to link to. */
+        this.pagedQueries++;
+        this.pager = null;
+
+        List<Object> rows = new ArrayList<Object>(hits.size());
+        for (com.xpn.xwiki.plugin.lucene.SearchResult hit : hits) {
+            String language = "default".equals(hit.getLanguage()) ? "" : hit.getLanguage();
+            rows.add(new Object[] {hit.getSpace() + "." + hit.getName(), hit.getSpace(), hit.getName(), language});
         }
+
+        return rows;
     }
 
     /**
@@ -350,52 +556,57 @@ protected List<SearchResult> searchSpaces(String keywords, String wikiName, bool
 
             String query = f.toString();
 
-            List<Object> queryResult = null;
-            queryResult =
-                    queryManager.createQuery(query, Query.XWQL)
-                            .bindValue("keywords", String.format("%%%s%%", keywords.toUpperCase())).setLimit(number)
-                            .setOffset(start).execute();
+            Query spacesQuery =
+                    queryManager.createQuery(query, Query.XWQL).bindValue("keywords",
+                            String.format("%%%s%%", keywords.toUpperCase()));
+
+            /* Only keep the spaces whose home the user has the right to see. */
+            List<Object> queryResult = page(spacesQuery, number, start, new ViewRightFilter(xwikiApi, wikiName)
+            {
+                @Override
+                protected String getPageId(String wiki, Object result)
+                {
+                    return Utils.getPageId(wiki, (String) result, "WebHome");
+                }
+            });
 
             for (Object object : queryResult) {
                 String spaceName = (String) object;
                 Document spaceDoc = xwikiApi.getDocument(String.format("%s.WebHome", spaceName));
 
-                /* Check if the user has the right to see the found document */
-                if (xwikiApi.hasAccessLevel("view", spaceDoc.getPrefixedFullName())) {
-                    String title = spaceDoc.getDisplayTitle();
-
-                    SearchResult searchResult = objectFactory.createSearchResult();
-                    searchResult.setType("space");
-                    searchResult.setId(String.format("%s:%s", wikiName, spaceName));
-                    searchResult.setWiki(wikiName);
-                    searchResult.setSpace(spaceName);
-                    searchResult.setTitle(title);
-
-                    /* Add a link to the space information */
-                    Link spaceLink = new Link();
-                    spaceLink.setRel(Relations.SPACE);
-                    String spaceUri =
-                            UriBuilder.fromUri(uriInfo.getBaseUri()).path(SpaceResource.class)
-                                    .build(wikiName, spaceName)
-                                    .toString();
-                    spaceLink.setHref(spaceUri);
-                    searchResult.getLinks().add(spaceLink);
-
-                    /* Add a link to the webhome if it exists */
-                    String webHomePageId = Utils.getPageId(wikiName, spaceName, "WebHome");
-                    if (xwikiApi.exists(webHomePageId) && xwikiApi.hasAccessLevel("view", webHomePageId)) {
-                        String pageUri =
-                                UriBuilder.fromUri(uriInfo.getBaseUri()).path(PageResource.class)
-                                        .build(wikiName, spaceName, "WebHome").toString();
-
-                        Link pageLink = new Link();
-                        pageLink.setHref(pageUri);
-                        pageLink.setRel(Relations.HOME);
-                        searchResult.getLinks().add(pageLink);
-                    }
+                String title = spaceDoc.getDisplayTitle();
+
+                SearchResult searchResult = objectFactory.createSearchResult();
+                searchResult.setType("space");
+                searchResult.setId(String.format("%s:%s", wikiName, spaceName));
+                searchResult.setWiki(wikiName);
+                searchResult.setSpace(spaceName);
+                searchResult.setTitle(title);
+
+                /* Add a link to the space information */
+                Link spaceLink = new Link();
+                spaceLink.setRel(Relations.SPACE);
+                String spaceUri =
+                        UriBuilder.fromUri(uriInfo.getBaseUri()).path(SpaceResource.class)
+                                .build(wikiName, spaceName)
+                                .toString();
+                spaceLink.setHref(spaceUri);
+                searchResult.getLinks().add(spaceLink);
+
+                /* Add a link to the webhome if it exists */
+                String webHomePageId = Utils.getPageId(wikiName, spaceName, "WebHome");
+                if (xwikiApi.exists(webHomePageId) && xwikiApi.hasAccessLevel("view", webHomePageId)) {
+                    String pageUri =
+                            UriBuilder.fromUri(uriInfo.getBaseUri()).path(PageResource.class)
+                                    .build(wikiName, spaceName, "WebHome").toString();
 
-                    result.add(searchResult);
+                    Link pageLink = new Link();
+                    pageLink.setHref(pageUri);
+                    pageLink.setRel(Relations.HOME);
+                    searchResult.getLinks().add(pageLink);
                 }
+
+                result.add(searchResult);
             }
 
             return result;
@@ -428,7 +639,11 @@ protected List<SearchResult> searchObjects(String keywords, String wikiName, Str
         try {
             List<SearchResult> result = new ArrayList<SearchResult>();
 
-            if (keywords == null) {
+            /*
+             * We prevent guest users to access object data in order to avoid leaking important information such as
+             * emails to crawlers.
+             */
+            if (keywords == null || xwikiContext.getUserReference() == null) {
                 return result;
             }
 
@@ -478,21 +693,18 @@ protected List<SearchResult> searchObjects(String keywords, String wikiName, Str
 
             String query = f.toString();
 
-            List<Object> queryResult = null;
+            Query objectsQuery =
+                    queryManager.createQuery(query, Query.XWQL)
+                            .bindValue("keywords", String.format("%%%s%%", keywords.toUpperCase()));
 
             /* This is needed because if the :space placeholder is not in the query, setting it would cause an exception */
             if (space != null) {
-                queryResult =
-                        queryManager.createQuery(query, Query.XWQL)
-                                .bindValue("keywords", String.format("%%%s%%", keywords.toUpperCase()))
-                                .bindValue("space", space).setLimit(number).execute();
-            } else {
-                queryResult =
-                        queryManager.createQuery(query, Query.XWQL)
-                                .bindValue("keywords", String.format("%%%s%%", keywords.toUpperCase())).setLimit(number)
-                                .execute();
+                objectsQuery.bindValue("space", space);
             }
 
+            /* Only keep the objects of the documents the user has the right to see. */
+            List<Object> queryResult = page(objectsQuery, number, start, new ViewRightFilter(xwikiApi, wikiName));
+
             /* Build the result. */
             for (Object object : queryResult) {
                 Object[] fields = (Object[]) object;
@@ -504,54 +716,47 @@ protected List<SearchResult> searchObjects(String keywords, String wikiName, Str
 
                 String id = Utils.getObjectId(wikiName, spaceName, pageName, className, objectNumber);
 
-                String pageId = Utils.getPageId(wikiName, spaceName, pageName);
                 String pageFullName = Utils.getPageFullName(wikiName, spaceName, pageName);
 
-                /*
-                 * Check if the user has the right to see the found document. We also prevent guest users to access
-                 * object data in order to avoid leaking important information such as emails to crawlers.
-                 */
-                if (xwikiApi.hasAccessLevel("view", pageId) && xwikiContext.getUserReference() != null) {
-                    Document doc = xwikiApi.getDocument(pageFullName);
-                    String title = doc.getDisplayTitle();
-                    SearchResult searchResult = objectFactory.createSearchResult();
-                    searchResult.setType("object");
-                    searchResult.setId(id);
-                    searchResult.setPageFullName(pageFullName);
-                    searchResult.setTitle(title);
-                    searchResult.setWiki(wikiName);
-                    searchResult.setSpace(spaceName);
-                    searchResult.setPageName(pageName);
-                    searchResult.setVersion(doc.getVersion());
-                    searchResult.setClassName(className);
-                    searchResult.setObjectNumber(objectNumber);
-                    searchResult.setAuthor(doc.getAuthor());
-                    Calendar calendar = Calendar.getInstance();
-                    calendar.setTime(doc.getDate());
-                    searchResult.setModified(calendar);
-
-                    if (withPrettyNames) {
-                        searchResult.setAuthorName(Utils.getAuthorName(doc.getAuthor(), componentManager));
-                    }
-
-                    String pageUri =
-                            UriBuilder.fromUri(uriInfo.getBaseUri()).path(PageResource.class)
-                                    .build(wikiName, spaceName, pageName).toString();
-                    Link pageLink = new Link();
-                    pageLink.setHref(pageUri);
-                    pageLink.setRel(Relations.PAGE);
-                    searchResult.getLinks().add(pageLink);
-
-                    String objectUri =
-                            UriBuilder.fromUri(uriInfo.getBaseUri()).path(ObjectResource.class)
-                                    .build(wikiName, spaceName, pageName, className, objectNumber).toString();
-                    Link objectLink = new Link();
-                    objectLink.setHref(objectUri);
-                    objectLink.setRel(Relations.OBJECT);
-                    searchResult.getLinks().add(objectLink);
-
-                    result.add(searchResult);
+                Document doc = xwikiApi.getDocument(pageFullName);
+                String title = doc.getDisplayTitle();
+                SearchResult searchResult = objectFactory.createSearchResult();
+                searchResult.setType("object");
+                searchResult.setId(id);
+                searchResult.setPageFullName(pageFullName);
+                searchResult.setTitle(title);
+                searchResult.setWiki(wikiName);
+                searchResult.setSpace(spaceName);
+                searchResult.setPageName(pageName);
+                searchResult.setVersion(doc.getVersion());
+                searchResult.setClassName(className);
+                searchResult.setObjectNumber(objectNumber);
+                searchResult.setAuthor(doc.getAuthor());
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTime(doc.getDate());
+                searchResult.setModified(calendar);
+
+                if (withPrettyNames) {
+                    searchResult.setAuthorName(Utils.getAuthorName(doc.getAuthor(), componentManager));
                 }
+
+                String pageUri =
+                        UriBuilder.fromUri(uriInfo.getBaseUri()).path(PageResource.class)
+                                .build(wikiName, spaceName, pageName).toString();
+                Link pageLink = new Link();
+                pageLink.setHref(pageUri);
+                pageLink.setRel(Relations.PAGE);
+                searchResult.getLinks().add(pageLink);
+
+                String objectUri =
+                        UriBuilder.fromUri(uriInfo.getBaseUri()).path(ObjectResource.class)
+                                .build(wikiName, spaceName, pageName, className, objectNumber).toString();
+                Link objectLink = new Link();
+                objectLink.setHref(objectUri);
+                objectLink.setRel(Relations.OBJECT);
+                searchResult.getLinks().add(objectLink);
+
+                result.add(searchResult);
             }
 
             return result;
@@ -654,9 +859,10 @@ protected List<SearchResult> searchDatabaseQuery(String query, String queryLangu
                                 "where doc.space<>'XWiki' and doc.space<>'Admin' and doc.space<>'Panels' and doc.name<>'WebPreferences' and ");
             }
 
-            List<Object> queryResult = null;
-
-            queryResult = queryManager.createQuery(squery, queryLanguage).setLimit(number).setOffset(start).execute();
+            /* Only keep the documents the user has the right to see. */
+            List<Object> queryResult =
+                    page(queryManager.createQuery(squery, queryLanguage), number, start,
+                            new ViewRightFilter(xwikiApi, wikiName));
 
             /* Build the result. */
             for (Object object : queryResult) {
@@ -669,74 +875,71 @@ protected List<SearchResult> searchDatabaseQuery(String query, String queryLangu
                 String pageId = Utils.getPageId(wikiName, spaceName, pageName);
                 String pageFullName = Utils.getPageFullName(wikiName, spaceName, pageName);
 
-                /* Check if the user has the right to see the found document */
-                if (xwikiApi.hasAccessLevel("view", pageId)) {
-                    Document doc = xwikiApi.getDocument(pageFullName);
-                    String title = doc.getDisplayTitle();
-
-                    SearchResult searchResult = objectFactory.createSearchResult();
-                    searchResult.setType("page");
-                    searchResult.setId(pageId);
-                    searchResult.setPageFullName(pageFullName);
-                    searchResult.setTitle(title);
-                    searchResult.setWiki(wikiName);
-                    searchResult.setSpace(spaceName);
-                    searchResult.setPageName(pageName);
-                    searchResult.setVersion(doc.getVersion());
-                    searchResult.setAuthor(doc.getAuthor());
-                    Calendar calendar = Calendar.getInstance();
-                    calendar.setTime(doc.getDate());
-                    searchResult.setModified(calendar);
-
-                    if (withPrettyNames) {
-                        searchResult.setAuthorName(Utils.getAuthorName(doc.getAuthor(), componentManager));
-                    }
+                Document doc = xwikiApi.getDocument(pageFullName);
+                String title = doc.getDisplayTitle();
+
+                SearchResult searchResult = objectFactory.createSearchResult();
+                searchResult.setType("page");
+                searchResult.setId(pageId);
+                searchResult.setPageFullName(pageFullName);
+                searchResult.setTitle(title);
+                searchResult.setWiki(wikiName);
+                searchResult.setSpace(spaceName);
+                searchResult.setPageName(pageName);
+                searchResult.setVersion(doc.getVersion());
+                searchResult.setAuthor(doc.getAuthor());
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTime(doc.getDate());
+                searchResult.setModified(calendar);
+
+                if (withPrettyNames) {
+                    searchResult.setAuthorName(Utils.getAuthorName(doc.getAuthor(), componentManager));
+                }
 
-                    /*
-                     * Avoid to return object information if the user is not authenticated. This will prevent crawlers
-                     * to retrieve information such as email addresses and passwords from user's profiles.
-                     */
-                    if (className != null && !className.equals("") && xwikiContext.getUserReference() != null) {
-                        BaseObject baseObject = Utils.getBaseObject(doc, className, 0, componentManager);
-                        if (baseObject != null) {
-                            searchResult.setObject(DomainObjectFactory.createObject(objectFactory,
-                                    uriInfo.getBaseUri(), xwikiContext, doc, baseObject, false, xwikiApi, false));
-                        }
+                /*
+                 * Avoid to return object information if the user is not authenticated. This will prevent crawlers
+                 * to retrieve information such as email addresses and passwords from user's profiles.
+                 */
+                if (className != null && !className.equals("") && xwikiContext.getUserReference() != null) {
+                    BaseObject baseObject = Utils.getBaseObject(doc, className, 0, componentManager);
+                    if (baseObject != null) {
+                        searchResult.setObject(DomainObjectFactory.createObject(objectFactory,
+                                uriInfo.getBaseUri(), xwikiContext, doc, baseObject, false, xwikiApi, false));
                     }
+                }
 
-                    String pageUri = null;
-                    try {
-                        if (StringUtils.isBlank(language)) {
-                            pageUri =
-                                    UriBuilder
-                                            .fromUri(this.uriInfo.getBaseUri())
-                                            .path(PageResource.class)
-                                            .buildFromEncoded(URLEncoder.encode(wikiName, "UTF-8"),
-                                                    URLEncoder.encode(spaceName, "UTF-8"),
-                                                    URLEncoder.encode(pageName, "UTF-8"))
-                                            .toString();
-                        } else {
-                            searchResult.setLanguage(language);
-                            pageUri =
-                                    UriBuilder
-                                            .fromUri(this.uriInfo.getBaseUri())
-                                            .path(PageTranslationResource.class)
-                                            .buildFromEncoded(URLEncoder.encode(wikiName, "UTF-8"),
-                                                    URLEncoder.encode(spaceName, "UTF-8"),
-                                                    URLEncoder.encode(pageName, "UTF-8"),
-                                                    language).toString();
-                        }
-                    } catch (UnsupportedEncodingException ex) {
-                        // This should never happen, UTF-8 is always valid.
+                String pageUri = null;
+                try {
+                    if (StringUtils.isBlank(language)) {
+                        pageUri =
+                                UriBuilder
+                                        .fromUri(this.uriInfo.getBaseUri())
+                                        .path(PageResource.class)
+                                        .buildFromEncoded(URLEncoder.encode(wikiName, "UTF-8"),
+                                                URLEncoder.encode(spaceName, "UTF-8"),
+                                                URLEncoder.encode(pageName, "UTF-8"))
+                                        .toString();
+                    } else {
+                        searchResult.setLanguage(language);
+                        pageUri =
+                                UriBuilder
+                                        .fromUri(this.uriInfo.getBaseUri())
+                                        .path(PageTranslationResource.class)
+                                        .buildFromEncoded(URLEncoder.encode(wikiName, "UTF-8"),
+                                                URLEncoder.encode(spaceName, "UTF-8"),
+                                                URLEncoder.encode(pageName, "UTF-8"),
+                                                language).toString();
                     }
+                } catch (UnsupportedEncodingException ex) {
+                    // This should never happen, UTF-8 is always valid.
+                }
 
-                    Link pageLink = new Link();
-                    pageLink.setHref(pageUri);
-                    pageLink.setRel(Relations.PAGE);
-                    searchResult.getLinks().add(pageLink);
+                Link pageLink = new Link();
+                pageLink.setHref(pageUri);
+                pageLink.setRel(Relations.PAGE);
+                searchResult.getLinks().add(pageLink);
 
-                    result.add(searchResult);
-                }
+                result.add(searchResult);
             }
 
             return result;
@@ -19,6 +19,8 @@
  */
 package org.xwiki.rest.internal.resources.attachments;
 
+import java.io.InputStream;
+
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
@@ -53,7 +55,8 @@ public Response getAttachment(String wikiName, String spaceName, String pageName
                 throw new WebApplicationException(Status.NOT_FOUND);
             }
 
-            return Response.ok().type(xwikiAttachment.getMimeType()).entity(xwikiAttachment.getContent()).build();
+            return Response.ok().type(xwikiAttachment.getMimeType()).entity(xwikiAttachment.getContentInputStream())
+                .build();
         } catch (XWikiException e) {
             throw new XWikiRestException(e);
         }
@@ -61,7 +64,7 @@ public Response getAttachment(String wikiName, String spaceName, String pageName
 
     @Override
     public Response putAttachment(String wikiName, String spaceName, String pageName, String attachmentName,
-            byte[] content) throws XWikiRestException
+            InputStream content) throws XWikiRestException
     {
         try {
             DocumentInfo documentInfo = getDocumentInfo(wikiName, spaceName, pageName, null, null, true, true);
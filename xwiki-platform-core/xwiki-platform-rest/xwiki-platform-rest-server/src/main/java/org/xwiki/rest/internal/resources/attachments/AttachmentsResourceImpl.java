@@ -19,7 +19,6 @@
  */
 package org.xwiki.rest.internal.resources.attachments;
 
-import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.Enumeration;
 
@@ -130,24 +129,8 @@ public Response addAttachment(String wikiName, String spaceName, String pageName
                 throw new WebApplicationException(Status.BAD_REQUEST);
             }
 
-            byte[] buffer = new byte[4096];
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            while (true) {
-                int read = inputStream.read(buffer);
-                if (read != 4096) {
-                    if (read != -1) {
-                        baos.write(buffer, 0, read);
-                    }
-
-                    break;
-                } else {
-                    baos.write(buffer);
-                }
-            }
-            baos.flush();
-
-            /* Attach the file */
-            AttachmentInfo attachmentInfo = storeAttachment(doc, attachmentName, baos.toByteArray());
+            /* Attach the file, streaming its content */
+            AttachmentInfo attachmentInfo = storeAttachment(doc, attachmentName, inputStream);
 
             if (attachmentInfo.isAlreadyExisting()) {
                 return Response.status(Status.ACCEPTED).entity(attachmentInfo.getAttachment()).build();
@@ -19,14 +19,15 @@
  */
 package org.xwiki.rest.internal.resources.classes;
 
-import java.util.Collections;
 import java.util.List;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
 import org.xwiki.rest.XWikiResource;
 import org.xwiki.rest.XWikiRestException;
 import org.xwiki.rest.internal.DomainObjectFactory;
-import org.xwiki.rest.internal.RangeIterable;
+import org.xwiki.rest.internal.QueryPager;
 import org.xwiki.rest.internal.Utils;
 import org.xwiki.rest.model.jaxb.Classes;
 import org.xwiki.rest.resources.classes.ClassesResource;
@@ -47,20 +48,27 @@ public Classes getClasses(String wikiName, Integer start, Integer number) throws
         try {
             Utils.getXWikiContext(componentManager).setDatabase(wikiName);
 
-            List<String> classNames = Utils.getXWikiApi(componentManager).getClassList();
-            Collections.sort(classNames);
-
-            RangeIterable<String> ri = new RangeIterable<String>(classNames, start, number);
+            /* Only retrieve the names of the classes in the requested range instead of the whole class list. */
+            Query query =
+                    queryManager.createQuery("select doc.fullName from XWikiDocument as doc where "
+                            + "(doc.xWikiClassXML is not null and doc.xWikiClassXML like '<%') "
+                            + "order by doc.fullName asc", Query.HQL);
+            QueryPager<String> pager = new QueryPager<String>(query, start, number);
+            List<String> classNames = pager.next(null);
 
             Classes classes = objectFactory.createClasses();
 
-            for (String className : ri) {
+            for (String className : classNames) {
                 com.xpn.xwiki.api.Class xwikiClass = Utils.getXWikiApi(componentManager).getClass(className);
                 classes.getClazzs().add(
                         DomainObjectFactory.createClass(objectFactory, uriInfo.getBaseUri(), wikiName, xwikiClass));
             }
 
+            pager.addNextLink(classes, uriInfo, objectFactory);
+
             return classes;
+        } catch (QueryException e) {
+            throw new XWikiRestException(e);
         } catch (XWikiException e) {
             throw new XWikiRestException(e);
         } finally {
@@ -52,6 +52,8 @@ public SearchResults search(String wikiName, String spaceName, String keywords,
                                     Utils.getXWikiContext(componentManager)), number, start, true, orderField, order,
                             withPrettyNames));
 
+            addNextLink(searchResults);
+
             return searchResults;
         } catch (Exception e) {
             throw new XWikiRestException(e);
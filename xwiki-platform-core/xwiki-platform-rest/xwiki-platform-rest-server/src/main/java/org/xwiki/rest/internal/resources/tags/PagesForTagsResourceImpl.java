@@ -19,7 +19,6 @@
  */
 package org.xwiki.rest.internal.resources.tags;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import org.xwiki.component.annotation.Component;
@@ -28,11 +27,12 @@
 import org.xwiki.rest.XWikiResource;
 import org.xwiki.rest.XWikiRestException;
 import org.xwiki.rest.internal.DomainObjectFactory;
-import org.xwiki.rest.internal.RangeIterable;
+import org.xwiki.rest.internal.QueryPager;
 import org.xwiki.rest.internal.Utils;
 import org.xwiki.rest.model.jaxb.Pages;
 import org.xwiki.rest.resources.tags.PagesForTagsResource;
 
+import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.api.Document;
 
 @Component("org.xwiki.rest.internal.resources.tags.PagesForTagsResourceImpl")
@@ -51,21 +51,20 @@ public Pages getTags(String wikiName, String tagNames, Integer start, Integer nu
 
             String[] tagNamesArray = tagNames.split(",");
 
-            List<String> documentNames = new ArrayList<String>();
-            for (String tagName : tagNamesArray) {
-                List<String> documentNamesForTag = getDocumentsWithTag(tagName);
-
-                /* Avoid duplicates */
-                for (String documentName : documentNamesForTag) {
-                    if (!documentNames.contains(documentName)) {
-                        documentNames.add(documentName);
-                    }
+            /* Only keep the documents the user has the right to see. */
+            final String wiki = wikiName;
+            QueryPager<String> pager = new QueryPager<String>(getDocumentsWithTags(tagNamesArray), start, number);
+            List<String> documentNames = pager.next(new QueryPager.Filter<String>()
+            {
+                @Override
+                public boolean accept(String documentName) throws XWikiException
+                {
+                    return Utils.getXWikiApi(componentManager).hasAccessLevel("view",
+                            Utils.getPageId(wiki, documentName));
                 }
-            }
+            });
 
-            RangeIterable<String> ri = new RangeIterable<String>(documentNames, start, number);
-
-            for (String documentName : ri) {
+            for (String documentName : documentNames) {
                 Document doc = Utils.getXWikiApi(componentManager).getDocument(documentName);
                 if (doc != null) {
                     pages.getPageSummaries().add(DomainObjectFactory
@@ -74,6 +73,8 @@ public Pages getTags(String wikiName, String tagNames, Integer start, Integer nu
                 }
             }
 
+            pager.addNextLink(pages, uriInfo, objectFactory);
+
             return pages;
         } catch (Exception e) {
             throw new XWikiRestException(e);
@@ -82,15 +83,32 @@ public Pages getTags(String wikiName, String tagNames, Integer start, Integer nu
         }
     }
 
-    private List<String> getDocumentsWithTag(String tag) throws QueryException
+    /**
+     * @param tags the tags to look for
+     * @return a query returning, without duplicates, the full name of the documents having at least one of the given
+     *         tags
+     */
+    private Query getDocumentsWithTags(String[] tags) throws QueryException
     {
-        String query =
-                "select doc.fullName from XWikiDocument as doc, BaseObject as obj, DBStringListProperty as prop "
-                        + "where obj.name=doc.fullName and obj.className='XWiki.TagClass' and obj.id=prop.id.id "
-                        + "and prop.id.name='tags' and :tag in elements(prop.list) order by doc.name asc";
+        StringBuilder tagsClause = new StringBuilder();
+        for (int i = 0; i < tags.length; i++) {
+            if (i > 0) {
+                tagsClause.append(" or ");
+            }
+            tagsClause.append(":tag").append(i).append(" in elements(prop.list)");
+        }
 
-        List<String> documentsWithTag = queryManager.createQuery(query, Query.HQL).bindValue("tag", tag).execute();
+        String statement =
+                "select distinct doc.fullName from XWikiDocument as doc, BaseObject as obj, "
+                        + "DBStringListProperty as prop where obj.name=doc.fullName and obj.className='XWiki.TagClass' "
+                        + "and obj.id=prop.id.id and prop.id.name='tags' and (" + tagsClause
+                        + ") order by doc.fullName asc";
+
+        Query query = queryManager.createQuery(statement, Query.HQL);
+        for (int i = 0; i < tags.length; i++) {
+            query.bindValue("tag" + i, tags[i]);
+        }
 
-        return documentsWithTag;
+        return query;
     }
 }
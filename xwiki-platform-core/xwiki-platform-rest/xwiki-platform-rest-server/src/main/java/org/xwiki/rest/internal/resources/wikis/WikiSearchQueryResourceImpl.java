@@ -47,6 +47,8 @@ public SearchResults search(String wikiName, String query,
                             Utils.getXWikiContext(componentManager)), orderField, order, distinct, number, start,
                     withPrettyNames, className));
 
+            addNextLink(searchResults);
+
             return searchResults;
         } catch (Exception e) {
             throw new XWikiRestException(e);
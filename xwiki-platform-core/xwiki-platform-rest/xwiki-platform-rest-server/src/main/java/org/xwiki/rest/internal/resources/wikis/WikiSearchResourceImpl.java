@@ -53,6 +53,8 @@ public SearchResults search(String wikiName, String keywords, List<String> searc
                             Utils.getXWikiContext(componentManager)), number, start, true, orderField, order,
                     withPrettyNames));
 
+            addNextLink(searchResults);
+
             return searchResults;
         } catch (Exception e) {
             throw new XWikiRestException(e);
@@ -54,6 +54,9 @@ public class DocumentData extends AbstractDocumentData
     /** The importance of an object property. **/
     private static final float OBJECT_PROPERTY_BOOST = 0.75f;
 
+    /** The importance of the substring fields, which are indexed without norms. **/
+    private static final float SUBSTRING_BOOST = 1f;
+
     /** Reference serializer which removes the wiki prefix. */
     @SuppressWarnings("unchecked")
     private EntityReferenceSerializer<String> localEntityReferenceSerializer = Utils.getComponent(
@@ -135,6 +138,10 @@ public void addDocumentDataToLuceneDocument(Document luceneDoc, XWikiDocument do
     {
         super.addDocumentDataToLuceneDocument(luceneDoc, doc, context);
 
+        if (LucenePlugin.isSubstringIndexEnabled(context)) {
+            addSubstringFields(luceneDoc, doc);
+        }
+
         for (List<BaseObject> objects : doc.getXObjects().values()) {
             for (BaseObject obj : objects) {
                 if (obj != null) {
@@ -150,6 +157,26 @@ public void addDocumentDataToLuceneDocument(Document luceneDoc, XWikiDocument do
         }
     }
 
+    /**
+     * Index the raw values matched by the {@code upper(...) like '%text%'} database queries so that they can be
+     * answered from the index instead, see {@link SubstringAnalyzer}.
+     */
+    private void addSubstringFields(Document luceneDoc, XWikiDocument doc)
+    {
+        addFieldToDocument(IndexFields.SORT_FULLNAME, getDocumentFullName(), Field.Store.NO,
+            Field.Index.NOT_ANALYZED_NO_NORMS, SUBSTRING_BOOST, luceneDoc);
+        addFieldToDocument(IndexFields.SUBSTRING_FULLNAME, getDocumentFullName(), Field.Store.NO,
+            Field.Index.ANALYZED_NO_NORMS, SUBSTRING_BOOST, luceneDoc);
+        if (StringUtils.isNotEmpty(doc.getTitle())) {
+            addFieldToDocument(IndexFields.SUBSTRING_TITLE, doc.getTitle(), Field.Store.NO,
+                Field.Index.ANALYZED_NO_NORMS, SUBSTRING_BOOST, luceneDoc);
+        }
+        if (StringUtils.isNotEmpty(doc.getContent())) {
+            addFieldToDocument(IndexFields.SUBSTRING_CONTENT, doc.getContent(), Field.Store.NO,
+                Field.Index.ANALYZED_NO_NORMS, SUBSTRING_BOOST, luceneDoc);
+        }
+    }
+
     private void indexProperty(Document luceneDoc, BaseObject baseObject, String propertyName, XWikiContext context)
     {
         String fieldFullName = baseObject.getClassName() + "." + propertyName;
@@ -137,6 +137,42 @@
      */
     public static final String KEYWORDS = "kw";
 
+    /**
+     * Prefix of the fields holding the n-grams used for substring searches, see {@link SubstringAnalyzer}.
+     * 
+     * @since 4.4M1
+     */
+    public static final String SUBSTRING_PREFIX = "_substring_";
+
+    /**
+     * Full name of the document (without the wiki), indexed for substring searches.
+     * 
+     * @since 4.4M1
+     */
+    public static final String SUBSTRING_FULLNAME = SUBSTRING_PREFIX + "fullname";
+
+    /**
+     * Raw title of the document, indexed for substring searches.
+     * 
+     * @since 4.4M1
+     */
+    public static final String SUBSTRING_TITLE = SUBSTRING_PREFIX + "title";
+
+    /**
+     * Raw content of the document, indexed for substring searches.
+     * 
+     * @since 4.4M1
+     */
+    public static final String SUBSTRING_CONTENT = SUBSTRING_PREFIX + "content";
+
+    /**
+     * Keyword field holding the full name of the document (without the wiki), used for sorting substring search
+     * results the way database queries do.
+     * 
+     * @since 4.4M1
+     */
+    public static final String SORT_FULLNAME = "_sort_fullname";
+
     /**
      * Format for date storage in the index, and therefore the format which has to be used for date-queries.
      */
@@ -23,7 +23,9 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.index.IndexWriter;
@@ -117,6 +119,17 @@ public class IndexRebuilder extends AbstractXWikiRunnable
      */
     private boolean onlyNew = false;
 
+    /**
+     * Indicate if the whole index is rebuilt with the substring fields, in which case it can answer substring searches
+     * once done.
+     */
+    private boolean substringRebuild = false;
+
+    /**
+     * Wikis to reindex once the rebuild in progress is done.
+     */
+    private final Set<String> pendingWikis = new LinkedHashSet<String>();
+
     private XWikiContext xwikiContext;
 
     @Override
@@ -139,11 +152,39 @@ private XWikiContext getContext()
             .getProperty(XWikiContext.EXECUTIONCONTEXT_KEY);
     }
 
+    /**
+     * @return {@code true} while the index is being rebuilt, in which case it may be incomplete
+     * @since 4.4M1
+     */
+    public boolean isRebuildInProgress()
+    {
+        return this.rebuildInProgress;
+    }
+
     public int startRebuildIndex(XWikiContext context)
     {
         return startIndex(null, "", true, false, context);
     }
 
+    /**
+     * Clear the index of a wiki and index all its documents again. If a rebuild is in progress the wiki is reindexed
+     * once it is done.
+     * 
+     * @param wiki the wiki to reindex
+     * @param context the XWiki context
+     * @since 4.4M1
+     */
+    public synchronized void reindexWiki(String wiki, XWikiContext context)
+    {
+        if (this.rebuildInProgress) {
+            LOGGER.info("Wiki [{}] will be reindexed once the rebuild in progress is done", wiki);
+
+            this.pendingWikis.add(wiki);
+        } else {
+            startIndex(Collections.singletonList(wiki), "", true, false, context);
+        }
+    }
+
     public synchronized int startIndex(Collection<String> wikis, String hqlFilter, boolean clearIndex, boolean onlyNew,
         XWikiContext context)
     {
@@ -171,6 +212,9 @@ public synchronized int startIndex(Collection<String> wikis, String hqlFilter, b
             this.wikis = wikis != null ? new ArrayList<String>(wikis) : null;
             this.hqlFilter = hqlFilter;
             this.onlyNew = onlyNew;
+            this.substringRebuild = wikis == null && clearIndex && StringUtils.isBlank(hqlFilter) && !onlyNew
+                && LucenePlugin.isSubstringIndexEnabled(context);
+            this.xwikiContext = context.clone();
             this.rebuildInProgress = true;
 
             Thread indexRebuilderThread = new Thread(this, "Lucene Index Rebuilder");
@@ -230,16 +274,33 @@ protected void runInternal()
         } catch (Exception e) {
             LOGGER.error("Error in lucene rebuild thread: {}", e.getMessage(), e);
         } finally {
-            this.rebuildInProgress = false;
-
             if (context != null) {
                 context.getWiki().getStore().cleanUp(context);
             }
+
+            finishRebuild(context);
         }
 
         LOGGER.debug("Lucene index rebuild done");
     }
 
+    /**
+     * Mark the rebuild as done and start reindexing the wikis which have been waiting for it.
+     * 
+     * @param context the XWiki context of the rebuild, null if it couldn't be retrieved
+     */
+    private synchronized void finishRebuild(XWikiContext context)
+    {
+        this.rebuildInProgress = false;
+
+        if (!this.pendingWikis.isEmpty() && context != null) {
+            List<String> pending = new ArrayList<String>(this.pendingWikis);
+            this.pendingWikis.clear();
+
+            startIndex(pending, "", true, false, context);
+        }
+    }
+
     /**
      * First empties the index, then fetches all Documents, their translations and their attachments for re-addition to
      * the index.
@@ -272,13 +333,21 @@ private int rebuildIndex(XWikiContext context) throws InterruptedException
         }
 
         // Iterate all found virtual wikis
+        boolean complete = true;
         for (String wikiName : wikiServers) {
             int wikiResult = indexWiki(wikiName, context);
             if (wikiResult > 0) {
                 retval += wikiResult;
+            } else if (wikiResult < 0) {
+                complete = false;
             }
         }
 
+        if (this.substringRebuild && complete) {
+            // All the wiki pages are now queued with the substring fields.
+            this.indexUpdater.setSubstringFields(true);
+        }
+
         return retval;
     }
 
@@ -55,6 +55,7 @@
 import com.xpn.xwiki.internal.event.AttachmentAddedEvent;
 import com.xpn.xwiki.internal.event.AttachmentDeletedEvent;
 import com.xpn.xwiki.internal.event.AttachmentUpdatedEvent;
+import com.xpn.xwiki.internal.event.WikiBulkCopiedEvent;
 import com.xpn.xwiki.util.AbstractXWikiRunnable;
 import com.xpn.xwiki.web.Utils;
 
@@ -70,6 +71,12 @@ public class IndexUpdater extends AbstractXWikiRunnable implements EventListener
 
     private static final String NAME = "lucene";
 
+    /**
+     * The file written in the index directory once all the wiki pages have been indexed with the substring fields. Its
+     * name doesn't look like a Lucene file, so that Lucene leaves it alone.
+     */
+    private static final String SUBSTRING_FIELDS_MARKER = "xwiki-substring-fields";
+
     /**
      * The maximum number of milliseconds we have to wait before this thread is safely closed.
      */
@@ -77,7 +84,7 @@ public class IndexUpdater extends AbstractXWikiRunnable implements EventListener
 
     private static final List<Event> EVENTS = Arrays.<Event> asList(new DocumentUpdatedEvent(),
         new DocumentCreatedEvent(), new DocumentDeletedEvent(), new AttachmentAddedEvent(),
-        new AttachmentDeletedEvent(), new AttachmentUpdatedEvent());
+        new AttachmentDeletedEvent(), new AttachmentUpdatedEvent(), new WikiBulkCopiedEvent());
 
     /**
      * Collecting all the fields for using up in search
@@ -116,6 +123,11 @@ public class IndexUpdater extends AbstractXWikiRunnable implements EventListener
 
     private Analyzer analyzer;
 
+    /**
+     * Whether all the wiki pages have been indexed with the substring fields, cached from the marker file.
+     */
+    private volatile boolean substringFields;
+
     private final XWikiContext xwikiContext;
 
     @Override
@@ -134,6 +146,12 @@ protected void declareProperties(ExecutionContext executionContext)
 
         this.indexingInterval = indexingInterval;
         this.maxQueueSize = maxQueueSize;
+
+        try {
+            this.substringFields = directory.fileExists(SUBSTRING_FIELDS_MARKER);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to check if the index has substring fields: {}", e.getMessage());
+        }
     }
 
     private XWikiContext getContext()
@@ -291,9 +309,9 @@ private void addToIndex(IndexWriter writer, AbstractIndexData data, XWikiContext
         Document luceneDoc = new Document();
         data.addDataToLuceneDocument(luceneDoc, context);
 
-        // collecting all the fields for using up in search
+        // collecting all the fields for using up in search, except the substring ones which need a dedicated syntax
         for (Fieldable field : luceneDoc.getFields()) {
-            if (!fields.contains(field.name())) {
+            if (!field.name().startsWith(IndexFields.SUBSTRING_PREFIX) && !fields.contains(field.name())) {
                 fields.add(field.name());
             }
         }
@@ -321,6 +339,7 @@ public void cleanIndex()
     {
         LOGGER.info("trying to clear index for rebuilding");
 
+        setSubstringFields(false);
         try {
             openWriter(true).close();
         } catch (IOException e) {
@@ -410,6 +429,10 @@ public void onEvent(Event event, Object source, Object data)
                 addAttachment((XWikiDocument) source, ((AbstractAttachmentEvent) event).getName(), context, true);
             } else if (event instanceof WikiDeletedEvent) {
                 addWiki((String) source, true);
+            } else if (event instanceof WikiBulkCopiedEvent) {
+                // Documents copied in bulk are not notified one by one, and the copy may have replaced documents of
+                // the target wiki, so reindex the whole target wiki in one pass
+                this.plugin.reindexWiki(((WikiBulkCopiedEvent) event).getTargetWikiId(), context);
             }
         } catch (Exception e) {
             LOGGER.error("error in notify", e);
@@ -446,4 +469,36 @@ public int getMaxQueueSize()
     {
         return this.maxQueueSize;
     }
+
+    /**
+     * @return {@code true} if all the wiki pages have been indexed with the substring fields, i.e. if a full rebuild
+     *         has been done while they were enabled and they have stayed enabled since then
+     * @since 4.4M1
+     */
+    public boolean hasSubstringFields()
+    {
+        return this.substringFields;
+    }
+
+    /**
+     * Records whether all the wiki pages have been indexed with the substring fields. The record is kept in the index
+     * directory, so that it survives restarts and disappears with the index.
+     * 
+     * @param substringFields {@code true} once a full rebuild with the substring fields has been done, {@code false}
+     *            when the index is cleared or when the pages are indexed without the substring fields
+     * @since 4.4M1
+     */
+    public void setSubstringFields(boolean substringFields)
+    {
+        this.substringFields = substringFields;
+        try {
+            if (substringFields) {
+                this.directory.createOutput(SUBSTRING_FIELDS_MARKER).close();
+            } else if (this.directory.fileExists(SUBSTRING_FIELDS_MARKER)) {
+                this.directory.deleteFile(SUBSTRING_FIELDS_MARKER);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to record whether the index has substring fields: {}", e.getMessage());
+        }
+    }
 }
@@ -97,6 +97,13 @@ public class LucenePlugin extends XWikiDefaultPlugin
 
     public static final String PROP_MAX_QUEUE_SIZE = "xwiki.plugins.lucene.maxQueueSize";
 
+    /**
+     * Whether wiki pages are also indexed for substring searches, see {@link SubstringAnalyzer}.
+     * 
+     * @since 4.4M1
+     */
+    public static final String PROP_SUBSTRING_INDEX = "xwiki.plugins.lucene.substringindex";
+
     private static final String DEFAULT_ANALYZER = "org.apache.lucene.analysis.standard.StandardAnalyzer";
 
     /**
@@ -176,6 +183,19 @@ public int startIndex(Collection<String> wikis, String hqlFilter, boolean clearI
         return this.indexRebuilder.startIndex(wikis, hqlFilter, clearIndex, onlyNew, context);
     }
 
+    /**
+     * Clear the index of a wiki and index all its documents again, once the rebuild in progress is done if there is
+     * one.
+     * 
+     * @param wiki the wiki to reindex
+     * @param context the XWiki context
+     * @since 4.4M1
+     */
+    public void reindexWiki(String wiki, XWikiContext context)
+    {
+        this.indexRebuilder.reindexWiki(wiki, context);
+    }
+
     /**
      * Allows to search special named lucene indexes without having to configure them in <tt>xwiki.cfg</tt>. Slower than
      * {@link #getSearchResults(String, String, String, String, XWikiContext)} since new index searcher instances are
@@ -546,6 +566,15 @@ public void init(IndexUpdater indexUpdater, XWikiContext context)
             LOGGER.warn("Failed to check if index exists: {}", e.getMessage());
         }
 
+        if (!isSubstringIndexEnabled(context)) {
+            // The pages updated from now on are indexed without the substring fields.
+            indexUpdater.setSubstringFields(false);
+        } else if (!needInitialRebuild && !indexUpdater.hasSubstringFields()) {
+            // The index has been built before the substring fields have been enabled.
+            LOGGER.info("Rebuilding the lucene index to add the substring fields");
+            needInitialRebuild = true;
+        }
+
         IndexRebuilder indexRebuilder = new IndexRebuilder(indexUpdater, context);
         if (needInitialRebuild) {
             indexRebuilder.startRebuildIndex(context);
@@ -581,6 +610,10 @@ public void init(IndexUpdater indexUpdater, IndexRebuilder indexRebuilder, XWiki
         specialAnalyzers.put(IndexFields.DOCUMENT_WIKI, preserve);
         specialAnalyzers.put(IndexFields.DOCUMENT_TYPE, preserve);
         specialAnalyzers.put(IndexFields.DOCUMENT_LANGUAGE, preserve);
+        Analyzer substring = new SubstringAnalyzer();
+        specialAnalyzers.put(IndexFields.SUBSTRING_FULLNAME, substring);
+        specialAnalyzers.put(IndexFields.SUBSTRING_TITLE, substring);
+        specialAnalyzers.put(IndexFields.SUBSTRING_CONTENT, substring);
         this.analyzer = new PerFieldAnalyzerWrapper(this.analyzer, specialAnalyzers);
 
         LOGGER.debug("Assigning index updater: {}", indexUpdater);
@@ -746,6 +779,57 @@ public long getLuceneDocCount()
         return this.indexUpdater.getLuceneDocCount();
     }
 
+    /**
+     * Substring searches can be used instead of database {@code like '%text%'} queries only when the wiki pages are
+     * indexed for it, the index has been completely rebuilt since it was enabled and the index isn't being rebuilt.
+     * Note that the index is updated asynchronously so the latest changes may not be visible yet.
+     * 
+     * @param context the XWiki context
+     * @return {@code true} if the index can answer substring searches, see
+     *         {@link #buildSubstringQuery(String, String...)}
+     * @since 4.4M1
+     */
+    public boolean isSubstringSearchAvailable(XWikiContext context)
+    {
+        return isSubstringIndexEnabled(context) && this.indexUpdater != null && this.indexUpdater.hasSubstringFields()
+            && this.indexRebuilder != null && !this.indexRebuilder.isRebuildInProgress();
+    }
+
+    /**
+     * Build a query matching the documents whose given fields contain the given text, ignoring the case. The result is
+     * the same as a {@code upper(field) like '%TEXT%'} database query, provided the text is at least
+     * {@link SubstringTokenizer#GRAM_SIZE} characters long.
+     * 
+     * @param text the text to look for
+     * @param fields the {@link IndexFields#SUBSTRING_PREFIX substring fields} to look into
+     * @return the query, to be combined with other clauses
+     * @since 4.4M1
+     */
+    public static String buildSubstringQuery(String text, String... fields)
+    {
+        String phrase = "\"" + QueryParser.escape(text) + "\"";
+
+        StringBuilder query = new StringBuilder("(");
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                query.append(" OR ");
+            }
+            query.append(fields[i]).append(':').append(phrase);
+        }
+        query.append(')');
+
+        return query.toString();
+    }
+
+    /**
+     * @param context the XWiki context
+     * @return {@code true} if wiki pages are indexed for substring searches
+     */
+    static boolean isSubstringIndexEnabled(XWikiContext context)
+    {
+        return "1".equals(context.getWiki().Param(PROP_SUBSTRING_INDEX, "0"));
+    }
+
     /**
      * Handle a corrupt index by clearing it and rebuilding from scratch.
      */
@@ -0,0 +1,42 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.lucene;
+
+import java.io.Reader;
+
+import org.apache.lucene.analysis.ReusableAnalyzerBase;
+
+/**
+ * Analyzer for the {@link IndexFields#SUBSTRING_PREFIX substring fields}. Texts are indexed as the sequence of their
+ * case insensitive n-grams, see {@link SubstringTokenizer}. Searching a phrase with this analyzer then matches the
+ * documents containing the phrase anywhere in the field, like a {@code upper(field) like '%PHRASE%'} database query but
+ * without scanning all the documents.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class SubstringAnalyzer extends ReusableAnalyzerBase
+{
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName, Reader reader)
+    {
+        return new TokenStreamComponents(new SubstringTokenizer(reader));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.lucene;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+
+/**
+ * Splits the whole input into overlapping, upper cased n-grams of {@link #GRAM_SIZE} characters, each one at the
+ * position following the previous one. Unlike the n-gram tokenizer shipped with Lucene it reads the whole input
+ * instead of its first kilobyte, so that it can be used on document contents.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+public final class SubstringTokenizer extends Tokenizer
+{
+    /**
+     * The length of the generated n-grams, which is also the length of the shortest text that can be searched.
+     */
+    public static final int GRAM_SIZE = 3;
+
+    /**
+     * The size of the buffer used to read the input.
+     */
+    private static final int BUFFER_SIZE = 1024;
+
+    /**
+     * The term of the current n-gram.
+     */
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+
+    /**
+     * The offsets of the current n-gram.
+     */
+    private final OffsetAttribute offsetAttribute = addAttribute(OffsetAttribute.class);
+
+    /**
+     * The upper cased input, read on the first call to {@link #incrementToken()}.
+     */
+    private String text;
+
+    /**
+     * The offset of the next n-gram.
+     */
+    private int position;
+
+    /**
+     * @param input the text to split
+     */
+    public SubstringTokenizer(Reader input)
+    {
+        super(input);
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException
+    {
+        if (this.text == null) {
+            this.text = read();
+        }
+
+        if (this.position + GRAM_SIZE > this.text.length()) {
+            return false;
+        }
+
+        clearAttributes();
+        this.termAttribute.setEmpty().append(this.text, this.position, this.position + GRAM_SIZE);
+        this.offsetAttribute.setOffset(correctOffset(this.position), correctOffset(this.position + GRAM_SIZE));
+        this.position++;
+
+        return true;
+    }
+
+    @Override
+    public void end()
+    {
+        int finalOffset = correctOffset(this.text != null ? this.text.length() : 0);
+        this.offsetAttribute.setOffset(finalOffset, finalOffset);
+    }
+
+    @Override
+    public void reset(Reader reader) throws IOException
+    {
+        super.reset(reader);
+        this.text = null;
+        this.position = 0;
+    }
+
+    /**
+     * @return the whole input, upper cased character by character so that offsets are preserved
+     * @throws IOException if the input cannot be read
+     */
+    private String read() throws IOException
+    {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[BUFFER_SIZE];
+        int length = this.input.read(buffer);
+        while (length != -1) {
+            for (int i = 0; i < length; i++) {
+                builder.append(Character.toUpperCase(buffer[i]));
+            }
+            length = this.input.read(buffer);
+        }
+
+        return builder.toString();
+    }
+}
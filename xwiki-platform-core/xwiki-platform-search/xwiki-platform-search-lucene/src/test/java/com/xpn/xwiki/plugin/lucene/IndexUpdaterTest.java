@@ -21,9 +21,13 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.index.IndexReader;
@@ -41,11 +45,13 @@
 import org.jmock.Mock;
 import org.jmock.core.Invocation;
 import org.jmock.core.stub.CustomStub;
+import org.xwiki.bridge.event.WikiCopiedEvent;
 import org.xwiki.model.reference.DocumentReference;
 
 import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.WikiBulkCopiedEvent;
 import com.xpn.xwiki.store.XWikiStoreInterface;
 import com.xpn.xwiki.test.AbstractBridgedXWikiComponentTestCase;
 
@@ -86,6 +92,39 @@ protected void runInternal()
         }
     }
 
+    /**
+     * Records the indexed wikis and can block the first one until it is released.
+     */
+    private class RecordingIndexRebuilder extends TestIndexRebuilder
+    {
+        final List<String> indexedWikis = Collections.synchronizedList(new ArrayList<String>());
+
+        final Semaphore indexing = new Semaphore(0);
+
+        final Semaphore blocker = new Semaphore(0);
+
+        volatile boolean block;
+
+        RecordingIndexRebuilder(IndexUpdater indexUpdater, XWikiContext context)
+        {
+            super(indexUpdater, context);
+        }
+
+        @Override
+        protected int indexWiki(String wikiName, XWikiContext context) throws InterruptedException
+        {
+            this.indexedWikis.add(wikiName);
+
+            if (this.block) {
+                this.block = false;
+                this.indexing.release();
+                this.blocker.acquire();
+            }
+
+            return super.indexWiki(wikiName, context);
+        }
+    }
+
     private class TestIndexUpdater extends IndexUpdater
     {
         TestIndexUpdater(Directory directory, int indexingInterval, int maxQueueSize, LucenePlugin plugin,
@@ -323,4 +362,118 @@ public void run()
                 MaxFieldLength.LIMITED);
         w.close();
     }
+
+    public void testWikiBulkCopiedEventClearsTargetWikiIndex() throws Exception
+    {
+        Directory directory = openDirectory();
+
+        LucenePlugin plugin = new LucenePlugin("Monkey", "Monkey", getContext());
+        IndexUpdater indexUpdater = new TestIndexUpdater(directory, 100, 1000, plugin, getContext());
+        IndexRebuilder indexRebuilder = new TestIndexRebuilder(indexUpdater, getContext());
+        plugin.init(indexUpdater, indexRebuilder, getContext());
+
+        try {
+            indexUpdater.cleanIndex();
+            indexUpdater.queueDocument(this.loremIpsum.clone(), getContext(), false);
+            for (int i = 0; i < 50 && countLoremIpsum(directory) == 0; i++) {
+                Thread.sleep(100);
+            }
+            assertEquals(1, countLoremIpsum(directory));
+
+            // The copy may have deleted or replaced any document of the target wiki
+            indexUpdater.onEvent(new WikiBulkCopiedEvent("source", "wiki"), null, getContext());
+            this.rebuildDone.acquireUninterruptibly();
+
+            assertEquals(0, countLoremIpsum(directory));
+        } finally {
+            indexUpdater.doExit();
+        }
+    }
+
+    public void testWikiBulkCopiedEventDuringRebuild() throws Exception
+    {
+        Directory directory = openDirectory();
+
+        LucenePlugin plugin = new LucenePlugin("Monkey", "Monkey", getContext());
+        IndexUpdater indexUpdater = new TestIndexUpdater(directory, 100, 1000, plugin, getContext());
+        RecordingIndexRebuilder indexRebuilder = new RecordingIndexRebuilder(indexUpdater, getContext());
+        plugin.init(indexUpdater, indexRebuilder, getContext());
+
+        try {
+            indexRebuilder.block = true;
+            indexRebuilder.startRebuildIndex(getContext());
+            indexRebuilder.indexing.acquireUninterruptibly();
+
+            // The copied wiki is reindexed once the rebuild in progress is done
+            indexUpdater.onEvent(new WikiBulkCopiedEvent("source", "copy"), null, getContext());
+            // Wikis copied document by document are indexed as their documents are created
+            indexUpdater.onEvent(new WikiCopiedEvent("source", "other"), null, getContext());
+
+            indexRebuilder.blocker.release();
+            this.rebuildDone.acquireUninterruptibly(2);
+
+            assertEquals(Arrays.asList("wiki", "copy"), indexRebuilder.indexedWikis);
+            assertFalse(this.rebuildDone.tryAcquire(1, TimeUnit.SECONDS));
+            assertFalse(indexRebuilder.isRebuildInProgress());
+        } finally {
+            indexUpdater.doExit();
+        }
+    }
+
+    public void testSubstringSearchNeedsFullRebuild() throws Exception
+    {
+        this.mockXWiki.stubs().method("Param").with(eq(LucenePlugin.PROP_SUBSTRING_INDEX), ANYTHING)
+            .will(returnValue("1"));
+        Directory directory = openDirectory();
+
+        LucenePlugin plugin = new LucenePlugin("Monkey", "Monkey", getContext());
+        IndexUpdater indexUpdater = new TestIndexUpdater(directory, 100, 1000, plugin, getContext());
+        IndexRebuilder indexRebuilder = new TestIndexRebuilder(indexUpdater, getContext());
+        plugin.init(indexUpdater, indexRebuilder, getContext());
+
+        try {
+            // The index may have been built before the substring fields have been enabled
+            indexUpdater.cleanIndex();
+            assertFalse(plugin.isSubstringSearchAvailable(getContext()));
+
+            indexRebuilder.reindexWiki("wiki", getContext());
+            this.rebuildDone.acquireUninterruptibly();
+            assertFalse(plugin.isSubstringSearchAvailable(getContext()));
+
+            indexRebuilder.startRebuildIndex(getContext());
+            this.rebuildDone.acquireUninterruptibly();
+            assertTrue(plugin.isSubstringSearchAvailable(getContext()));
+
+            // The record survives restarts
+            assertTrue(new TestIndexUpdater(directory, 100, 1000, plugin, getContext()).hasSubstringFields());
+
+            indexUpdater.cleanIndex();
+            assertFalse(plugin.isSubstringSearchAvailable(getContext()));
+            assertFalse(new TestIndexUpdater(directory, 100, 1000, plugin, getContext()).hasSubstringFields());
+        } finally {
+            indexUpdater.doExit();
+        }
+    }
+
+    private Directory openDirectory() throws IOException
+    {
+        File f = new File(INDEXDIR);
+        if (!f.exists()) {
+            f.mkdirs();
+        }
+
+        return FSDirectory.open(f);
+    }
+
+    private int countLoremIpsum(Directory directory) throws IOException
+    {
+        IndexSearcher searcher = new IndexSearcher(directory, true);
+        try {
+            Query q = new TermQuery(new Term(IndexFields.DOCUMENT_ID, "wiki:Lorem.Ipsum.default"));
+
+            return searcher.search(q, null, 10).totalHits;
+        } finally {
+            searcher.close();
+        }
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.lucene;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SubstringAnalyzer}.
+ * 
+ * @version $Id$
+ */
+public class SubstringAnalyzerTest
+{
+    private RAMDirectory directory;
+
+    private SubstringAnalyzer analyzer;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.directory = new RAMDirectory();
+        this.analyzer = new SubstringAnalyzer();
+
+        IndexWriter writer = new IndexWriter(this.directory, new IndexWriterConfig(Version.LUCENE_36, this.analyzer));
+        addDocument(writer, "Main.WebHome", "Welcome to your wiki");
+        addDocument(writer, "Sandbox.TestPage1", "Some content, with punctuation!");
+        addDocument(writer, "Blog.Long", StringUtils.repeat("filler ", 1000) + "needle");
+        writer.close();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        this.directory.close();
+    }
+
+    private void addDocument(IndexWriter writer, String fullName, String content) throws Exception
+    {
+        Document document = new Document();
+        document.add(new Field(IndexFields.SORT_FULLNAME, fullName, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        document.add(new Field(IndexFields.SUBSTRING_FULLNAME, fullName, Field.Store.NO, Field.Index.ANALYZED));
+        document.add(new Field(IndexFields.SUBSTRING_CONTENT, content, Field.Store.NO, Field.Index.ANALYZED));
+        writer.addDocument(document);
+    }
+
+    private int count(String text, String... fields) throws Exception
+    {
+        QueryParser parser = new QueryParser(Version.LUCENE_36, IndexFields.SUBSTRING_CONTENT, this.analyzer);
+        IndexSearcher searcher = new IndexSearcher(IndexReader.open(this.directory));
+        try {
+            return searcher.search(parser.parse(LucenePlugin.buildSubstringQuery(text, fields)), 10).totalHits;
+        } finally {
+            searcher.close();
+        }
+    }
+
+    @Test
+    public void matchesSubstringsIgnoringCase() throws Exception
+    {
+        Assert.assertEquals(1, count("COME TO", IndexFields.SUBSTRING_CONTENT));
+        Assert.assertEquals(1, count("elcome", IndexFields.SUBSTRING_CONTENT));
+        Assert.assertEquals(1, count("ent, with p", IndexFields.SUBSTRING_CONTENT));
+        Assert.assertEquals(0, count("welcome wiki", IndexFields.SUBSTRING_CONTENT));
+    }
+
+    @Test
+    public void matchesSpecialCharacters() throws Exception
+    {
+        Assert.assertEquals(1, count("ion!", IndexFields.SUBSTRING_CONTENT));
+        Assert.assertEquals(1, count("n.webh", IndexFields.SUBSTRING_FULLNAME));
+    }
+
+    @Test
+    public void matchesTheEndOfLongTexts() throws Exception
+    {
+        Assert.assertEquals(1, count("er needle", IndexFields.SUBSTRING_CONTENT));
+    }
+
+    @Test
+    public void matchesAnyOfTheFields() throws Exception
+    {
+        Assert.assertEquals(2, count("ome", IndexFields.SUBSTRING_FULLNAME, IndexFields.SUBSTRING_CONTENT));
+        Assert.assertEquals(1, count("ome", IndexFields.SUBSTRING_FULLNAME));
+    }
+}
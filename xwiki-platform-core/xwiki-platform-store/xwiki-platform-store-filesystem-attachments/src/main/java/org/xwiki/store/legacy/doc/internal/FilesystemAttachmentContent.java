@@ -23,6 +23,7 @@
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 
 import com.xpn.xwiki.doc.XWikiAttachment;
 import com.xpn.xwiki.doc.XWikiAttachmentContent;
@@ -53,8 +54,6 @@ public class FilesystemAttachmentContent extends XWikiAttachmentContent
      */
     public FilesystemAttachmentContent(final File storage, final XWikiAttachment attachment)
     {
-        // TODO This will cause a new FileItem to be created in XWikiAttachmentContent
-        // but it is the only constructor available. This should be fixed in XAC.
         super(attachment);
         this.storageFile = storage;
     }
@@ -68,8 +67,6 @@ public FilesystemAttachmentContent(final File storage, final XWikiAttachment att
      */
     public FilesystemAttachmentContent(final File storage)
     {
-        // TODO This will cause a new FileItem to be created in XWikiAttachmentContent
-        // but it is the only constructor available. This should be fixed in XAC.
         super();
         this.storageFile = storage;
     }
@@ -104,6 +101,12 @@ public InputStream getContentInputStream()
         }
     }
 
+    @Override
+    public FileChannel getContentChannel() throws IOException
+    {
+        return new FileInputStream(this.storageFile).getChannel();
+    }
+
     @Override
     public void setContent(final InputStream is) throws IOException
     {
@@ -116,14 +119,9 @@ public void setContent(final InputStream is) throws IOException
     }
 
     @Override
-    public int getSize()
+    public long getLongSize()
     {
-        long size = this.storageFile.length();
-        // The most important thing is that it doesn't roll over into the negative space.
-        if (size > ((long) Integer.MAX_VALUE)) {
-            return Integer.MAX_VALUE;
-        }
-        return (int) size;
+        return this.storageFile.length();
     }
 
     /*
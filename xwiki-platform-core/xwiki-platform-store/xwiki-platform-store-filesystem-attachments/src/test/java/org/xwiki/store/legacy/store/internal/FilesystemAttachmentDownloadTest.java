@@ -0,0 +1,201 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.store.legacy.store.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.jmock.Expectations;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.model.internal.reference.PathStringEntityReferenceSerializer;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.store.filesystem.internal.DefaultFilesystemStoreTools;
+import org.xwiki.store.filesystem.internal.FilesystemStoreTools;
+import org.xwiki.store.locks.dummy.internal.DummyLockProvider;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.plugin.XWikiPluginManager;
+import com.xpn.xwiki.web.DownloadAction;
+import com.xpn.xwiki.web.XWikiEngineContext;
+import com.xpn.xwiki.web.XWikiRequest;
+import com.xpn.xwiki.web.XWikiResponse;
+
+/**
+ * Tests for downloading attachments loaded by the {@link FilesystemAttachmentStore}, whose content is transferred by
+ * the {@link DownloadAction} straight from the attachment file.
+ * 
+ * @version $Id$
+ * @since 4.4M1
+ */
+public class FilesystemAttachmentDownloadTest extends AbstractFilesystemAttachmentStoreTest
+{
+    private static final String FILE_NAME = "file.bin";
+
+    private static final int CONTENT_SIZE = 25000;
+
+    private final byte[] content = new byte[CONTENT_SIZE];
+
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    private final Date date = new Date(1350000000000L);
+
+    private XWikiContext context;
+
+    private XWikiRequest request;
+
+    private XWikiResponse response;
+
+    /**
+     * The dir in /tmp/ which we use as our sandbox.
+     */
+    private File storageLocation;
+
+    @Before
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        getMockery().setImposteriser(ClassImposteriser.INSTANCE);
+
+        for (int i = 0; i < this.content.length; ++i) {
+            this.content[i] = (byte) i;
+        }
+
+        this.context = new XWikiContext();
+        final XWiki mockXWiki = getMockery().mock(XWiki.class);
+        this.context.setWiki(mockXWiki);
+        this.request = getMockery().mock(XWikiRequest.class);
+        this.context.setRequest(this.request);
+        this.response = getMockery().mock(XWikiResponse.class);
+        this.context.setResponse(this.response);
+        final XWikiEngineContext mockEngineContext = getMockery().mock(XWikiEngineContext.class);
+        this.context.setEngineContext(mockEngineContext);
+
+        final XWikiPluginManager pluginManager = new XWikiPluginManager();
+        pluginManager.initInterface();
+        final ServletOutputStream out = new ServletOutputStream()
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                FilesystemAttachmentDownloadTest.this.written.write(b);
+            }
+        };
+
+        getMockery().checking(new Expectations() {{
+            allowing(mockXWiki).getPluginManager(); will(returnValue(pluginManager));
+            allowing(mockEngineContext).getMimeType(FILE_NAME); will(returnValue("application/octet-stream"));
+
+            allowing(request).getRequestURI(); will(returnValue("/xwiki/bin/download/Main/WebHome/file.bin"));
+            allowing(request).getParameter(with(any(String.class))); will(returnValue(null));
+            allowing(request).getDateHeader("If-Modified-Since"); will(returnValue(-1L));
+            allowing(request).getHeader("If-None-Match"); will(returnValue(null));
+            allowing(request).getHeader("If-Range"); will(returnValue(null));
+
+            allowing(response).getOutputStream(); will(returnValue(out));
+            ignoring(response).setContentType(with(any(String.class)));
+            ignoring(response).setCharacterEncoding(with(any(String.class)));
+            ignoring(response).addHeader(with(any(String.class)), with(any(String.class)));
+            ignoring(response).setDateHeader(with(any(String.class)), with(any(long.class)));
+            ignoring(response).setHeader(with(any(String.class)), with(any(String.class)));
+        }});
+
+        final File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+        this.storageLocation = new File(tmpDir, "test-storage-location");
+        final FilesystemStoreTools fileTools =
+            new DefaultFilesystemStoreTools(new PathStringEntityReferenceSerializer(),
+                this.storageLocation,
+                new DummyLockProvider());
+
+        // Put the content where the store expects it, then load the attachment the way a request would.
+        final XWikiDocument doc = new XWikiDocument(new DocumentReference("xwiki", "Main", "WebHome"));
+        final XWikiAttachment attachment = new XWikiAttachment(doc, FILE_NAME);
+        attachment.setDate(this.date);
+        doc.getAttachmentList().add(attachment);
+        FileUtils.writeByteArrayToFile(
+            fileTools.getAttachmentFileProvider(attachment).getAttachmentContentFile(), this.content);
+
+        new FilesystemAttachmentStore(fileTools).loadAttachmentContent(attachment, this.context, false);
+        this.context.setDoc(doc);
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception
+    {
+        FileUtils.deleteDirectory(this.storageLocation);
+        super.tearDown();
+    }
+
+    @Test
+    public void contentIsReadFromFileChannel() throws Exception
+    {
+        final FileChannel channel =
+            this.context.getDoc().getAttachment(FILE_NAME).getAttachment_content().getContentChannel();
+        Assert.assertNotNull("The filesystem store should expose the attachment file", channel);
+        try {
+            Assert.assertEquals(CONTENT_SIZE, channel.size());
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void normalDownload() throws Exception
+    {
+        getMockery().checking(new Expectations() {{
+            allowing(request).getHeader("Range"); will(returnValue(null));
+            one(response).setContentLength(CONTENT_SIZE);
+        }});
+
+        Assert.assertNull(new DownloadAction().render(this.context));
+        Assert.assertTrue(Arrays.equals(this.content, this.written.toByteArray()));
+    }
+
+    @Test
+    public void rangeDownload() throws Exception
+    {
+        getMockery().checking(new Expectations() {{
+            allowing(request).getHeader("Range"); will(returnValue("bytes=20000-"));
+            one(response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            one(response).setContentLength(CONTENT_SIZE - 20000);
+        }});
+
+        Assert.assertNull(new DownloadAction().render(this.context));
+        Assert.assertTrue(Arrays.equals(ArrayUtils.subarray(this.content, 20000, CONTENT_SIZE),
+            this.written.toByteArray()));
+    }
+}
@@ -20,26 +20,69 @@
 package org.xwiki.uiextension.internal;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
+import javax.inject.Singleton;
 
 import org.slf4j.Logger;
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
 import org.xwiki.uiextension.UIExtension;
 import org.xwiki.uiextension.UIExtensionManager;
 
 /**
  * Default UIExtensionManager, retrieves all the extensions for a given extension point.
+ * <p>
+ * The extensions visible from the current context (current wiki and current user) are looked up only once and indexed
+ * by extension point. The index is dropped as soon as a {@link UIExtension} component is registered or unregistered in
+ * any Component Manager, so that lookups are answered from memory without querying the Component Manager.
  *
  * @version $Id$
  * @since 4.3.1
  */
-public class DefaultUIExtensionManager implements UIExtensionManager
+@Component
+@Singleton
+public class DefaultUIExtensionManager implements UIExtensionManager, Initializable, Disposable
 {
+    /**
+     * The name of the listener and the identifier of the cache holding the extension point indexes.
+     */
+    private static final String NAME = "uiextension.manager";
+
+    /**
+     * The maximum number of contexts (wiki and user couples) for which an index is kept.
+     */
+    private static final int CACHE_CAPACITY = 500;
+
+    /**
+     * The events invalidating the indexes.
+     */
+    private static final List<Event> EVENTS = Arrays.<Event> asList(
+        new ComponentDescriptorAddedEvent(UIExtension.class), new ComponentDescriptorRemovedEvent(UIExtension.class));
+
     /**
      * The logger to log.
      */
@@ -55,22 +98,142 @@ public class DefaultUIExtensionManager implements UIExtensionManager
     @Named("context")
     private Provider<ComponentManager> contextComponentManagerProvider;
 
+    /**
+     * Used to get the current wiki and the current user, which select the Component Managers used by the Context
+     * Component Manager.
+     */
+    @Inject
+    private DocumentAccessBridge documentAccessBridge;
+
+    /**
+     * Used to create the cache holding the extension point indexes.
+     */
+    @Inject
+    private CacheManager cacheManager;
+
+    /**
+     * Used to be notified when UI extensions are registered or unregistered.
+     */
+    @Inject
+    private ObservationManager observationManager;
+
+    /**
+     * The extensions, indexed by extension point, for each context (wiki and user couple).
+     */
+    private Cache<Map<String, List<UIExtension>>> indexes;
+
+    /**
+     * Incremented each time the indexes are dropped.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Drops all the indexes when a UI extension is registered or unregistered.
+     */
+    private final EventListener listener = new EventListener()
+    {
+        @Override
+        public List<Event> getEvents()
+        {
+            return EVENTS;
+        }
+
+        @Override
+        public String getName()
+        {
+            return NAME;
+        }
+
+        @Override
+        public void onEvent(Event event, Object source, Object data)
+        {
+            generation.incrementAndGet();
+            indexes.removeAll();
+        }
+    };
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration(NAME);
+        LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+        lru.setMaxEntries(CACHE_CAPACITY);
+        cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+
+        try {
+            this.indexes = this.cacheManager.createNewCache(cacheConfiguration);
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the UI extensions cache", e);
+        }
+
+        this.observationManager.addListener(this.listener);
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.observationManager.removeListener(NAME);
+        this.indexes.dispose();
+    }
+
     @Override
     public List<UIExtension> get(String extensionPointId)
     {
-        List<UIExtension> extensions = new ArrayList<UIExtension>();
+        List<UIExtension> extensions = getIndex().get(extensionPointId);
+
+        return extensions != null ? extensions : Collections.<UIExtension> emptyList();
+    }
+
+    /**
+     * @return the extensions visible from the current context, indexed by extension point
+     */
+    private Map<String, List<UIExtension>> getIndex()
+    {
+        String key = String.format("wiki:%s/user:%s", this.documentAccessBridge.getCurrentWiki(),
+            this.documentAccessBridge.getCurrentUser());
+
+        Map<String, List<UIExtension>> index = this.indexes.get(key);
+        if (index == null) {
+            // Don't keep an index built while extensions were being registered or unregistered since it could be
+            // missing some of them
+            long currentGeneration = this.generation.get();
+            index = createIndex();
+            if (currentGeneration == this.generation.get()) {
+                this.indexes.set(key, index);
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Lookup all the extensions visible from the current context and group them by extension point, keeping the order
+     * in which they are returned by the Context Component Manager.
+     *
+     * @return the extensions visible from the current context, indexed by extension point
+     */
+    private Map<String, List<UIExtension>> createIndex()
+    {
+        Map<String, List<UIExtension>> index = new HashMap<String, List<UIExtension>>();
 
         try {
             List<UIExtension> allExtensions = contextComponentManagerProvider.get().getInstanceList(UIExtension.class);
             for (UIExtension extension : allExtensions) {
-                if (extension.getExtensionPointId().equals(extensionPointId)) {
-                    extensions.add(extension);
+                List<UIExtension> extensions = index.get(extension.getExtensionPointId());
+                if (extensions == null) {
+                    extensions = new ArrayList<UIExtension>();
+                    index.put(extension.getExtensionPointId(), extensions);
                 }
+                extensions.add(extension);
             }
         } catch (ComponentLookupException e) {
             logger.error("Failed to lookup UIExtension instances, error: [{}]", e);
         }
 
-        return extensions;
+        for (Map.Entry<String, List<UIExtension>> entry : index.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+
+        return Collections.unmodifiableMap(index);
     }
 }
@@ -0,0 +1,156 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.uiextension;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Provider;
+
+import org.jmock.Expectations;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.test.AbstractMockingComponentTestCase;
+import org.xwiki.test.annotation.MockingRequirement;
+import org.xwiki.uiextension.internal.DefaultUIExtensionManager;
+
+@MockingRequirement(value = DefaultUIExtensionManager.class)
+public class DefaultUIExtensionManagerTest extends AbstractMockingComponentTestCase
+{
+    private static final String INDEX_KEY = "wiki:xwiki/user:XWiki.Admin";
+
+    private ComponentManager contextComponentManager;
+
+    private Cache<Map<String, List<UIExtension>>> cache;
+
+    private UIExtensionManager manager;
+
+    private UIExtension testUix1 = new UIExtensions.TestUix1valueZ();
+
+    private UIExtension testUix2 = new UIExtensions.TestUix2valueY();
+
+    private UIExtension otherUix = new UIExtensions.TestUix1valueZ()
+    {
+        @Override
+        public String getExtensionPointId()
+        {
+            return "platform.other";
+        }
+    };
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void configure() throws Exception
+    {
+        this.contextComponentManager =
+            getComponentManager().registerMockComponent(getMockery(), ComponentManager.class, "context", "context");
+        final Provider<ComponentManager> componentManagerProvider =
+            getComponentManager().getInstance(
+                new DefaultParameterizedType(null, Provider.class, ComponentManager.class), "context");
+        final DocumentAccessBridge documentAccessBridge = getComponentManager().getInstance(DocumentAccessBridge.class);
+        final CacheManager cacheManager = getComponentManager().getInstance(CacheManager.class);
+        final ObservationManager observationManager = getComponentManager().getInstance(ObservationManager.class);
+        this.cache = getMockery().mock(Cache.class);
+
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(componentManagerProvider).get();
+                will(returnValue(contextComponentManager));
+                allowing(documentAccessBridge).getCurrentWiki();
+                will(returnValue("xwiki"));
+                allowing(documentAccessBridge).getCurrentUser();
+                will(returnValue("XWiki.Admin"));
+                oneOf(cacheManager).createNewCache(with(any(CacheConfiguration.class)));
+                will(returnValue(cache));
+                oneOf(observationManager).addListener(with(any(EventListener.class)));
+            }
+        });
+
+        this.manager = getComponentManager().getInstance(UIExtensionManager.class);
+    }
+
+    @Test
+    public void getBuildsIndexWhenMissing() throws Exception
+    {
+        getMockery().checking(new Expectations()
+        {
+            {
+                oneOf(cache).get(INDEX_KEY);
+                will(returnValue(null));
+                oneOf(contextComponentManager).getInstanceList(UIExtension.class);
+                will(returnValue(Arrays.asList(testUix1, otherUix, testUix2)));
+                oneOf(cache).set(with(INDEX_KEY), with(any(Map.class)));
+            }
+        });
+
+        Assert.assertEquals(Arrays.asList(testUix1, testUix2), this.manager.get("platform.test"));
+    }
+
+    @Test
+    public void getUsesExistingIndex() throws Exception
+    {
+        final Map<String, List<UIExtension>> index = new HashMap<String, List<UIExtension>>();
+        index.put("platform.test", Arrays.asList(testUix2, testUix1));
+        index.put("platform.other", Arrays.asList(otherUix));
+
+        getMockery().checking(new Expectations()
+        {
+            {
+                exactly(3).of(cache).get(INDEX_KEY);
+                will(returnValue(index));
+                never(contextComponentManager).getInstanceList(UIExtension.class);
+            }
+        });
+
+        Assert.assertEquals(Arrays.asList(testUix2, testUix1), this.manager.get("platform.test"));
+        Assert.assertEquals(Arrays.asList(otherUix), this.manager.get("platform.other"));
+        Assert.assertEquals(Collections.emptyList(), this.manager.get("platform.unknown"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getReturnsImmutableList() throws Exception
+    {
+        getMockery().checking(new Expectations()
+        {
+            {
+                oneOf(cache).get(INDEX_KEY);
+                will(returnValue(null));
+                oneOf(contextComponentManager).getInstanceList(UIExtension.class);
+                will(returnValue(Arrays.asList(testUix1)));
+                oneOf(cache).set(with(INDEX_KEY), with(any(Map.class)));
+            }
+        });
+
+        this.manager.get("platform.test").add(testUix2);
+    }
+}
@@ -129,7 +129,7 @@ public void sendEmailNotification(String subscriber, List<WatchListEvent> events
             template = context.getMainXWiki() + ":" + DEFAULT_EMAIL_TEMPLATE;
         }
 
-        // Send message from template
-        emailService.sendMailFromTemplate(template, sender, emailAddr, null, null, language, vcontext, context);
+        // Queue the message so that the watchlist job doesn't wait for the SMTP server
+        emailService.queueMailFromTemplate(template, sender, emailAddr, null, null, language, vcontext, context);
     }
 }
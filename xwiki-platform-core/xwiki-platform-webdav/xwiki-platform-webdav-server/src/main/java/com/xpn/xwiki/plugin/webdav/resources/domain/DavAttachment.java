@@ -20,8 +20,10 @@
 package com.xpn.xwiki.plugin.webdav.resources.domain;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.server.io.IOUtil;
 import org.apache.jackrabbit.webdav.DavConstants;
 import org.apache.jackrabbit.webdav.DavException;
@@ -98,7 +100,12 @@ public void spool(OutputContext outputContext) throws IOException
             OutputStream out = outputContext.getOutputStream();
             if (null != out) {
                 try {
-                    out.write(getContext().getContent(attachment));
+                    InputStream in = getContext().getContentInputStream(attachment);
+                    try {
+                        IOUtils.copyLarge(in, out);
+                    } finally {
+                        in.close();
+                    }
                     out.flush();
                 } catch (DavException ex) {
                     throw new IOException(ex.getMessage());
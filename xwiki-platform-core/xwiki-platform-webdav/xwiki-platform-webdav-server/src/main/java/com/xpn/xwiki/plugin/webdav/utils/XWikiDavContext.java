@@ -19,6 +19,7 @@
  */
 package com.xpn.xwiki.plugin.webdav.utils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
@@ -259,7 +260,9 @@ public String getMimeType(XWikiAttachment attachment)
      * @param attachment xwiki attachment.
      * @return attachment content as a byte array.
      * @throws DavException if an error occurs while reading the attachment.
+     * @deprecated since 4.4M1 use {@link #getContentInputStream(XWikiAttachment)} instead
      */
+    @Deprecated
     public byte[] getContent(XWikiAttachment attachment) throws DavException
     {
         try {
@@ -269,6 +272,22 @@ public byte[] getContent(XWikiAttachment attachment) throws DavException
         }
     }
 
+    /**
+     * Returns the content of the attachment.
+     * 
+     * @param attachment xwiki attachment.
+     * @return attachment content as a stream, so that it doesn't have to be loaded in memory.
+     * @throws DavException if an error occurs while reading the attachment.
+     */
+    public InputStream getContentInputStream(XWikiAttachment attachment) throws DavException
+    {
+        try {
+            return attachment.getContentInputStream(xwikiContext);
+        } catch (XWikiException ex) {
+            throw new DavException(DavServletResponse.SC_INTERNAL_SERVER_ERROR, ex);
+        }
+    }
+
     /**
      * Utility method for reading a given input stream into a byte array.
      * 
@@ -292,8 +311,23 @@ public byte[] getFileContentAsBytes(InputStream in) throws DavException
      * @param data Data to be put into the attachment (file content).
      * @param doc The document to which the attachment is made.
      * @throws DavException Indicates an internal error.
+     * @deprecated since 4.4M1 use {@link #addAttachment(XWikiDocument, InputStream, String)} instead
      */
+    @Deprecated
     public void addAttachment(XWikiDocument doc, byte[] data, String attachmentName) throws DavException
+    {
+        addAttachment(doc, new ByteArrayInputStream(data), attachmentName);
+    }
+
+    /**
+     * Adds an attachment to the {@link XWikiDocument} represented by this resource.
+     * 
+     * @param attachmentName Name of this attachment.
+     * @param data Data to be put into the attachment (file content), streamed to the attachment storage.
+     * @param doc The document to which the attachment is made.
+     * @throws DavException Indicates an internal error.
+     */
+    public void addAttachment(XWikiDocument doc, InputStream data, String attachmentName) throws DavException
     {
         int i = attachmentName.indexOf("\\");
         if (i == -1) {
@@ -307,7 +341,11 @@ public void addAttachment(XWikiDocument doc, byte[] data, String attachmentName)
             doc.getAttachmentList().add(attachment);
         }
 
-        attachment.setContent(data);
+        try {
+            attachment.setContent(data);
+        } catch (IOException ex) {
+            throw new DavException(DavServletResponse.SC_INTERNAL_SERVER_ERROR, ex);
+        }
         attachment.setFilename(filename);
         attachment.setAuthor(xwikiContext.getUser());
 
@@ -239,7 +239,7 @@ public void importPackage(String packageName, String targetWiki, XWikiContext co
 
             // Import package
             try {
-                importer.Import(packFile.getContent(context));
+                importer.Import(packFile.getContentInputStream(context));
             } catch (IOException e) {
                 throw new WikiManagerException(WikiManagerException.ERROR_WM_PACKAGEIMPORT, msg.get(
                     WikiManagerMessageTool.ERROR_PACKAGEIMPORT, packageName), e);